@@ -190,6 +190,8 @@ public class DataCollector
         {
             uuid = OPT_OUT;
             recordingThisSession = false;
+            // Don't send anything which was recorded before they opted out:
+            DataSubmitter.discardEvents();
         }
         Config.putPropString(PROPERTY_UUID, uuid);
     }
@@ -22,27 +22,34 @@
 package bluej.collect;
 
 import javax.swing.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javafx.application.Platform;
 
 import bluej.Boot;
 import bluej.Config;
+import bluej.collect.EventSpool.SpooledEvent;
 import bluej.extensions.event.ApplicationEvent;
 import bluej.extmgr.ExtensionsManager;
 import bluej.pkgmgr.Project;
+import bluej.utility.Debug;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
@@ -56,6 +63,15 @@ import threadchecker.Tag;
  * The class has nothing to do with collecting the data, and deliberately
  * does not depend on any other BlueJ classes.  Package-visible.
  * 
+ * Events are taken from the queue in batches, written to an on-disk spool
+ * (see EventSpool) and then sent from the spool over a single kept-alive
+ * connection.  Events which cannot be sent (after retrying) stay in the spool;
+ * we keep spooling new events, and try sending again after a delay which grows
+ * while the server remains unreachable.  Anything still unsent when BlueJ exits
+ * is sent in a later session.  We only give up on data collection for the
+ * session if the server rejects an event, or the spool cannot be written
+ * (including when it is full).
+ * 
  * @author Davin McCall
  */
 class DataSubmitter
@@ -64,25 +80,83 @@ class DataSubmitter
         //For testing:
         //"http://localhost:3000/master_events";
 
+    /**
+     * The most events we will take from the queue in one batch
+     */
+    private static final int BATCH_SIZE = 20;
+    /**
+     * How long we will wait for more events to arrive, before processing a batch
+     * which has fewer than BATCH_SIZE events.  Events tend to arrive in bursts (e.g.
+     * a compilation with several errors), so this saves a disk sync per event.
+     */
+    private static final int BATCH_DELAY_MS = 250;
+    /**
+     * How many times in a row we try to send an event, before leaving it in the
+     * spool until later
+     */
+    private static final int MAX_ATTEMPTS = 4;
+    /**
+     * The delay before the first retry; this doubles for each subsequent retry.
+     */
+    private static final int INITIAL_RETRY_DELAY_MS = 500;
+    /**
+     * How long we wait after failing to send (MAX_ATTEMPTS times) before trying
+     * again; this doubles each time sending fails, up to MAX_BACKOFF_MS.  In the
+     * mean time, new events are only spooled.
+     */
+    private static final long INITIAL_BACKOFF_MS = 30 * 1000;
+    private static final long MAX_BACKOFF_MS = 10 * 60 * 1000;
     
     private static AtomicBoolean givenUp = new AtomicBoolean(false);
     
     /**
-     * isRunning is only touched while synchonized on queue
+     * isRunning, flushRequested and discardRequested are only touched while synchonized on queue
      */
     private static boolean isRunning = false;
+    private static boolean flushRequested = false;
+    private static boolean discardRequested = false;
     
     private static List<Event> queue = new LinkedList<Event>();
     
     private static int sequenceNum;
 
     /**
-     * The versions of the files as we have last sent them to the server.
+     * The versions of the files as we have last sent them to the server, i.e. as
+     * updated by the events which the server has acknowledged.
      * 
-     * Should only be accessed by the postData method, which is running on
+     * Should only be accessed by the processQueue method, which is running on
      * the event-sending thread
      */
     private static Map<FileKey, List<String> > fileVersions = new HashMap<FileKey, List<String> >();
+    /**
+     * The versions of the files as the server will have them once it has received
+     * all the events in the spool.  New events are formed against these versions,
+     * since the server receives events in order.  Only accessed on the event-sending thread.
+     */
+    private static Map<FileKey, List<String> > spooledVersions = new HashMap<FileKey, List<String> >();
+
+    /**
+     * The spool (opened on first use, on the event-sending thread).
+     */
+    @OnThread(Tag.Worker)
+    private static EventSpool spool;
+
+    /**
+     * The HTTP client, created on first use.  Its connection manager keeps the
+     * connection alive between events.
+     */
+    @OnThread(Tag.Worker)
+    private static DefaultHttpClient client;
+
+    /**
+     * The current delay after a failure to send, and the earliest time at which
+     * we next try to send (0 if sending hasn't failed).  Only accessed on the
+     * event-sending thread.
+     */
+    @OnThread(Tag.Worker)
+    private static long backoffMs = INITIAL_BACKOFF_MS;
+    @OnThread(Tag.Worker)
+    private static long nextSendTime = 0;
     
     /**
      * Submit data to be posted to the server. The data is added to a queue which is processed by
@@ -100,17 +174,45 @@ class DataSubmitter
             queue.add(evt);
             
             if (! isRunning) {
-                new Thread() {
-                    @OnThread(value = Tag.Worker, ignoreParent = true)
-                    public void run()
-                    {
-                        processQueue();
-                    }
-                }.start();
-                isRunning = true;
+                startRunning();
+            }
+            else if (queue.size() >= BATCH_SIZE) {
+                queue.notifyAll(); // batch is full; no need to wait any longer
+            }
+        }
+    }
+
+    /**
+     * Discards all events which have not yet been sent, including those spooled from
+     * earlier sessions, and deletes the spool file.  Used when the user opts out.
+     * 
+     * Package-visible, only used by DataCollector
+     */
+    static void discardEvents()
+    {
+        synchronized (queue) {
+            queue.clear();
+            discardRequested = true;
+            if (! isRunning) {
+                startRunning();
             }
         }
     }
+
+    /**
+     * Starts the thread which processes the queue.  Must be called while synchronized on queue.
+     */
+    private static void startRunning()
+    {
+        new Thread() {
+            @OnThread(value = Tag.Worker, ignoreParent = true)
+            public void run()
+            {
+                processQueue();
+            }
+        }.start();
+        isRunning = true;
+    }
     
     /**
      * Process the queue of items to be posted to the server.
@@ -119,21 +221,24 @@ class DataSubmitter
     private static void processQueue()
     {
         while (true) {
-            Event evt;
+            boolean discard;
             synchronized (queue) {
-                if (queue.isEmpty()) {
-                    isRunning = false;
-                    queue.notifyAll(); // in case anyone is waiting for us to finish
-                    return;
-                }
-                evt = queue.remove(0);
+                discard = discardRequested;
+                discardRequested = false;
+            }
+            if (discard) {
+                deleteSpool();
+            }
+
+            List<Event> batch = takeBatch();
+            if (batch == null) {
+                return;
             }
-            
 
             if (!givenUp.get())
             {
-                givenUp.set(!postData(evt));
-                // If we just gave up on this event:
+                givenUp.set(!spoolEvents(batch) || !trySendSpooledEvents());
+                // If we just gave up on this batch:
                 if (givenUp.get())
                 {
                     SwingUtilities.invokeLater(() -> {
@@ -154,62 +259,278 @@ class DataSubmitter
             }
         }
     }
-    
+
     /**
-     * Actually post the data to the server.
+     * Takes the next batch of events from the queue.  If the queue holds fewer than
+     * BATCH_SIZE events, waits up to BATCH_DELAY_MS for more to arrive (unless someone
+     * is waiting for the queue to be flushed).
      * 
-     * Returns false if there was an error.
+     * Returns null, and marks the thread as no longer running, if the queue is empty.
      */
     @OnThread(Tag.Worker)
-    private static boolean postData(Event evt)
-    {   
-        HttpParams params = new BasicHttpParams();
-        HttpConnectionParams.setConnectionTimeout(params, Boot.isTrialRecording() ? 30000 : 10000);
-        HttpConnectionParams.setSoTimeout(params, Boot.isTrialRecording() ? 30000 : 10000);
-        HttpClient client = new DefaultHttpClient(params);
-        
+    private static List<Event> takeBatch()
+    {
+        synchronized (queue) {
+            try {
+                long endTime = System.currentTimeMillis() + BATCH_DELAY_MS;
+                long waitTime = BATCH_DELAY_MS;
+                while (!queue.isEmpty() && queue.size() < BATCH_SIZE && !flushRequested && waitTime > 0) {
+                    queue.wait(waitTime);
+                    waitTime = endTime - System.currentTimeMillis();
+                }
+            }
+            catch (InterruptedException e) {
+                // Just process what we have
+            }
+
+            if (queue.isEmpty()) {
+                isRunning = false;
+                queue.notifyAll(); // in case anyone is waiting for us to finish
+                return null;
+            }
+
+            List<Event> batch = new ArrayList<>(queue.subList(0, Math.min(BATCH_SIZE, queue.size())));
+            queue.subList(0, batch.size()).clear();
+            return batch;
+        }
+    }
+
+    /**
+     * Forms the data for each event in the batch, and writes it to the spool.  Each
+     * event's success callback is run against fileVersions once the server has
+     * acknowledged it (see sendSpooledEvents).
+     * 
+     * Returns false if there was an error, or the spool is full.
+     */
+    @OnThread(Tag.Worker)
+    private static boolean spoolEvents(List<Event> batch)
+    {
         try {
-            HttpPost post = new HttpPost(submitUrl);
+            EventSpool spool = getSpool();
+            for (Event evt : batch) {
+                if (spool.isFull()) {
+                    // The server has been unreachable for a long time.  Stop here,
+                    // rather than dropping events which later events depend on;
+                    // what is spooled will be sent in a later session:
+                    Debug.message("Data collection spool is full; no longer recording events");
+                    spool.sync();
+                    return false;
+                }
 
-            MultipartEntity mpe = evt.makeData(sequenceNum, fileVersions);
-            if (mpe == null)
-            {
-                return true; // nothing to send, no error
+                MultipartEntity mpe = evt.makeData(sequenceNum, spooledVersions);
+                if (mpe == null)
+                {
+                    continue; // nothing to send, no error
+                }
+
+                //Only increment sequence number if we actually send data:
+                sequenceNum += 1;
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                mpe.writeTo(body);
+                spool.append(new SpooledEvent(mpe.getContentType().getValue(), body.toByteArray()),
+                        () -> evt.success(fileVersions));
+                // The next event must be formed against the versions the server will have
+                // once it has received this one.  This only updates our projection of the
+                // server's versions; fileVersions is updated when the server acknowledges it:
+                evt.success(spooledVersions);
+            }
+            spool.sync();
+            return true;
+        }
+        catch (IOException ioe) {
+            Debug.reportError("Problem spooling data collection events", ioe);
+            return false;
+        }
+    }
+
+    /**
+     * Sends all events in the spool to the server, in order, unless we are waiting
+     * to retry after failing to reach the server.  If the server cannot be reached,
+     * the events stay in the spool and we wait (for longer each time) before trying
+     * again.
+     * 
+     * Returns false if we should give up for this session, i.e. if the server
+     * rejected an event or the spool could not be read.
+     */
+    @OnThread(Tag.Worker)
+    private static boolean trySendSpooledEvents()
+    {
+        if (System.currentTimeMillis() < nextSendTime) {
+            return true;
+        }
+
+        PostResult result;
+        try {
+            result = sendSpooledEvents(getSpool(), submitUrl);
+        }
+        catch (IOException ioe) {
+            Debug.reportError("Problem opening data collection spool", ioe);
+            return false;
+        }
+
+        if (result == PostResult.FAILED) {
+            nextSendTime = System.currentTimeMillis() + backoffMs;
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+        else {
+            nextSendTime = 0;
+            backoffMs = INITIAL_BACKOFF_MS;
+        }
+        return result != PostResult.REJECTED;
+    }
+
+    /**
+     * Sends all events in the given spool to the server at the given address, in order,
+     * retrying with an increasing delay if the server cannot be reached.  Each event is
+     * removed from the spool (running its callback) once the server has acknowledged it.
+     * 
+     * Returns SENT if the spool is now empty, FAILED if the remaining events should be
+     * sent later, or REJECTED if the server refused an event (in which case the spool
+     * is cleared) or the spool could not be read.  Package-visible for testing.
+     */
+    @OnThread(Tag.Worker)
+    static PostResult sendSpooledEvents(EventSpool spool, String url)
+    {
+        try {
+            int attempts = 0;
+            int retryDelay = INITIAL_RETRY_DELAY_MS;
+            while (!spool.isEmpty()) {
+                PostResult result = postData(spool.peek(), url);
+                if (result == PostResult.SENT) {
+                    spool.removeFirst();
+                    attempts = 0;
+                    retryDelay = INITIAL_RETRY_DELAY_MS;
+                }
+                else if (result == PostResult.REJECTED) {
+                    // Later events may depend on this one (e.g. file diffs), so they
+                    // can't be applied either:
+                    spool.clear();
+                    return PostResult.REJECTED;
+                }
+                else {
+                    attempts += 1;
+                    if (attempts >= MAX_ATTEMPTS) {
+                        // Leave the events in the spool, for later:
+                        return PostResult.FAILED;
+                    }
+                    Thread.sleep(retryDelay);
+                    retryDelay *= 2;
+                }
             }
+            return PostResult.SENT;
+        }
+        catch (IOException ioe) {
+            // We can't trust the spool's contents:
+            Debug.reportError("Problem reading data collection spool", ioe);
+            return PostResult.REJECTED;
+        }
+        catch (InterruptedException ie) {
+            return PostResult.FAILED;
+        }
+    }
+
+    static enum PostResult
+    {
+        SENT,
+        // Could not reach the server, or the server had a problem; worth trying again:
+        FAILED,
+        // The server refused the event:
+        REJECTED
+    }
+    
+    /**
+     * Actually post the data to the server.
+     */
+    @OnThread(Tag.Worker)
+    private static PostResult postData(SpooledEvent evt, String url)
+    {
+        try {
+            HttpPost post = new HttpPost(url);
+            ByteArrayEntity entity = new ByteArrayEntity(evt.body);
+            entity.setContentType(evt.contentType);
+            post.setEntity(entity);
+            HttpResponse response = getClient().execute(post);
+            // Must consume the response so the connection can be reused:
+            EntityUtils.consume(response.getEntity());
             
-            //Only increment sequence number if we actually send data:
-            sequenceNum += 1;
-            post.setEntity(mpe);
-            HttpResponse response = client.execute(post);
+            int status = response.getStatusLine().getStatusCode();
+            if (status >= 500)
+            {
+                return PostResult.FAILED;
+            }
             
             for (Header h : response.getAllHeaders())
             {
                 if ("X-Status".equals(h.getName()) && !"Created".equals(h.getValue()))
                 {
-                    return false;
+                    return PostResult.REJECTED;
                 }
             }
             
-            if (response.getStatusLine().getStatusCode() != 200)
+            if (status != 200)
             {
-                return false;
+                return PostResult.REJECTED;
             }
-            
-            evt.success(fileVersions);
-                
-            EntityUtils.consume(response.getEntity());
-        }
-        catch (ClientProtocolException cpe) {
-            return false;
         }
         catch (IOException ioe) {
-            //For now:
-            ioe.printStackTrace();
-            
-            return false;
+            Debug.message("Problem submitting data collection event: " + ioe);
+            return PostResult.FAILED;
         }
         
-        return true;
+        return PostResult.SENT;
+    }
+
+    @OnThread(Tag.Worker)
+    private static HttpClient getClient()
+    {
+        if (client == null) {
+            HttpParams params = new BasicHttpParams();
+            HttpConnectionParams.setConnectionTimeout(params, Boot.isTrialRecording() ? 30000 : 10000);
+            HttpConnectionParams.setSoTimeout(params, Boot.isTrialRecording() ? 30000 : 10000);
+            client = new DefaultHttpClient(new ThreadSafeClientConnManager(), params);
+        }
+        else {
+            // The server will have closed connections which were idle for long,
+            // so don't try to reuse them:
+            client.getConnectionManager().closeIdleConnections(30, TimeUnit.SECONDS);
+        }
+        return client;
+    }
+
+    @OnThread(Tag.Worker)
+    private static EventSpool getSpool() throws IOException
+    {
+        if (spool == null) {
+            File file = Config.getUserConfigFile("blackbox-spool");
+            try {
+                spool = new EventSpool(file);
+            }
+            catch (IOException ioe) {
+                // Most likely in use by another instance of BlueJ.  Carry on without
+                // keeping events between sessions:
+                Debug.message("Could not open data collection spool " + file + ": " + ioe.getMessage());
+                File tempFile = File.createTempFile("blackbox-spool", null);
+                tempFile.deleteOnExit();
+                spool = new EventSpool(tempFile);
+            }
+        }
+        return spool;
+    }
+
+    /**
+     * Deletes the spool, and with it all unsent events.
+     */
+    @OnThread(Tag.Worker)
+    private static void deleteSpool()
+    {
+        try {
+            getSpool().delete();
+        }
+        catch (IOException ioe) {
+            Debug.reportError("Problem deleting data collection spool", ioe);
+        }
+        spool = null;
+        spooledVersions = new HashMap<FileKey, List<String> >(fileVersions);
     }
     
     /**
@@ -224,6 +545,8 @@ class DataSubmitter
         {
             synchronized (queue)
             {
+                flushRequested = true;
+                queue.notifyAll(); // don't wait for a batch to fill up
                 // Keep waiting if there is anything in the queue,
                 // or the queue is empty but the submitter thread is still running.
                 while (!queue.isEmpty() || isRunning)
@@ -234,6 +557,7 @@ class DataSubmitter
                     }
                     queue.wait(waitTime);
                 }
+                flushRequested = false;
             }
         }
         catch (InterruptedException e)
@@ -38,9 +38,9 @@ interface Event
      * forms a new record to be sent to the server
      * 
      * @param sequenceNum The sequence number to use for the event
-     * @param fileVersions Our local version of the files, as we have last
-     * successfully sent them to the server.  Maps a file identifier to a list
-     * of lines in the file
+     * @param fileVersions Our local version of the files, as the server will
+     * have them once it has received all earlier events.  Maps a file identifier
+     * to a list of lines in the file
      * @return A MultipartEntity to send to the server
      */
     @OnThread(Tag.Worker)
@@ -49,7 +49,8 @@ interface Event
     /**
      * A callback that is called after the event has been successfully sent to
      * the server.  If necessary, it should update the passed-in map with the
-     * file contents
+     * file contents.  It is also called when the event is queued for sending,
+     * on the map later events are formed against (see makeData)
      * @param fileVersions Map, to be modified by the method
      */
     void success(Map<FileKey, List<String> > fileVersions);
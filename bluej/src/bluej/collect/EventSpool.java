@@ -0,0 +1,345 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.collect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayDeque;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * An append-only file of events which have been prepared for sending to the server
+ * but which have not yet been acknowledged by it.  Events are only removed from the
+ * front of the spool, once they have been sent; anything left in the spool when BlueJ
+ * exits (e.g. because there was no network connection) is sent in the next session.
+ * Each event carries its own session identifier and sequence number, so the server
+ * files it correctly even when it arrives late.
+ *
+ * <p>The file starts with a small header holding the offset of the first unsent record.
+ * Each record is a length followed by the gzipped content type and body of the event.
+ * A partially-written record at the end of the file (e.g. after a crash) is discarded
+ * when the spool is opened.  Once enough sent records have built up at the front of the
+ * file, the unsent records are moved down over them, so the file does not keep growing
+ * while events are being sent.  The unsent records are limited to MAX_UNSENT_SIZE bytes
+ * in total (see isFull()).
+ *
+ * <p>The file is locked while it is open, so that two instances of BlueJ cannot both
+ * use it; the second instance to open it gets an IOException, and should use a spool
+ * of its own.
+ *
+ * Package-visible; only used by DataSubmitter.
+ */
+@OnThread(Tag.Worker)
+class EventSpool
+{
+    private static final int MAGIC = 0x424A4553; // "BJES"
+    private static final int HEADER_SIZE = 12; // magic, then offset of first unsent record
+    /**
+     * The amount of unsent data beyond which the spool counts as full.  Events are
+     * compressed, so this is a great many events.
+     */
+    static final long MAX_UNSENT_SIZE = 16 * 1024 * 1024;
+    /**
+     * How many bytes of sent records we allow at the front of the file before we
+     * move the unsent records down over them.
+     */
+    private static final long COMPACT_THRESHOLD = 256 * 1024;
+
+    private final File spoolFile;
+    private final RandomAccessFile file;
+    // Offset of the first unsent record:
+    private long sentOffset;
+    // Offset just past the last complete record:
+    private long endOffset;
+    // The number of unsent records which were in the file when it was opened:
+    private int earlierRecords;
+    // Callbacks for the unsent records which were appended since the file was opened:
+    private final ArrayDeque<Runnable> onSent = new ArrayDeque<>();
+
+    /**
+     * An event, ready to be sent to the server.
+     */
+    @OnThread(Tag.Any)
+    static class SpooledEvent
+    {
+        final String contentType;
+        final byte[] body;
+
+        SpooledEvent(String contentType, byte[] body)
+        {
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Opens the given spool file, creating it if necessary.  Any unsent events
+     * from a previous session are kept.
+     */
+    EventSpool(File spoolFile) throws IOException
+    {
+        this.spoolFile = spoolFile;
+        file = new RandomAccessFile(spoolFile, "rw");
+        FileLock lock;
+        try
+        {
+            // Released when the file is closed:
+            lock = file.getChannel().tryLock();
+        }
+        catch (OverlappingFileLockException e)
+        {
+            lock = null;
+        }
+        if (lock == null)
+        {
+            file.close();
+            throw new IOException("Spool file is in use: " + spoolFile);
+        }
+
+        if (file.length() < HEADER_SIZE || file.readInt() != MAGIC)
+        {
+            reset();
+            return;
+        }
+
+        sentOffset = file.readLong();
+        if (sentOffset < HEADER_SIZE || sentOffset > file.length())
+        {
+            reset();
+            return;
+        }
+
+        // Find the end of the last complete record:
+        endOffset = sentOffset;
+        long length = file.length();
+        while (endOffset + 4 <= length)
+        {
+            file.seek(endOffset);
+            int recordLength = file.readInt();
+            if (recordLength < 0 || endOffset + 4 + recordLength > length)
+            {
+                break;
+            }
+            endOffset += 4 + recordLength;
+            earlierRecords += 1;
+        }
+        file.setLength(endOffset);
+    }
+
+    /**
+     * Adds an event to the end of the spool.  The event is not guaranteed to be on disk
+     * until sync() is called.
+     *
+     * @param onSent Run when the event is removed from the spool by removeFirst(), i.e.
+     *               once the event has been sent.  Not run if the spool is cleared or closed
+     *               before then.
+     */
+    void append(SpooledEvent event, Runnable onSent) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(event.body.length / 4 + 64);
+        try (DataOutputStream os = new DataOutputStream(new GZIPOutputStream(bytes)))
+        {
+            os.writeUTF(event.contentType);
+            os.write(event.body);
+        }
+
+        file.seek(endOffset);
+        file.writeInt(bytes.size());
+        file.write(bytes.toByteArray());
+        endOffset = file.getFilePointer();
+        this.onSent.addLast(onSent);
+    }
+
+    /**
+     * Makes sure that all appended events are written to disk.
+     */
+    void sync() throws IOException
+    {
+        file.getFD().sync();
+    }
+
+    /**
+     * Checks whether the spool holds so much unsent data that no more events should
+     * be appended.
+     */
+    boolean isFull()
+    {
+        return endOffset - sentOffset >= MAX_UNSENT_SIZE;
+    }
+
+    /**
+     * Checks whether there are any unsent events in the spool.
+     */
+    boolean isEmpty()
+    {
+        return sentOffset == endOffset;
+    }
+
+    /**
+     * Gets the first unsent event, or null if there are none.
+     */
+    SpooledEvent peek() throws IOException
+    {
+        if (isEmpty())
+        {
+            return null;
+        }
+
+        file.seek(sentOffset);
+        byte[] record = new byte[file.readInt()];
+        file.readFully(record);
+        try (DataInputStream is = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(record))))
+        {
+            String contentType = is.readUTF();
+            ByteArrayOutputStream body = new ByteArrayOutputStream(record.length * 4);
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1)
+            {
+                body.write(buffer, 0, n);
+            }
+            return new SpooledEvent(contentType, body.toByteArray());
+        }
+    }
+
+    /**
+     * Removes the first unsent event (i.e. the one returned by peek()), because it has
+     * been sent, and runs its callback (if it was appended since the spool was opened).
+     * Once all events have been sent, the file is truncated; before then, the file is
+     * compacted once the sent records at its front outgrow COMPACT_THRESHOLD.
+     */
+    void removeFirst() throws IOException
+    {
+        if (isEmpty())
+        {
+            return;
+        }
+
+        Runnable callback = null;
+        if (earlierRecords > 0)
+        {
+            earlierRecords -= 1;
+        }
+        else
+        {
+            callback = onSent.removeFirst();
+        }
+
+        file.seek(sentOffset);
+        sentOffset += 4 + file.readInt();
+        if (isEmpty())
+        {
+            reset();
+        }
+        else if (sentOffset - HEADER_SIZE >= COMPACT_THRESHOLD
+                && sentOffset - HEADER_SIZE >= endOffset - sentOffset + 4)
+        {
+            compact();
+        }
+        else
+        {
+            file.seek(4);
+            file.writeLong(sentOffset);
+        }
+        if (callback != null)
+        {
+            callback.run();
+        }
+    }
+
+    /**
+     * Discards all unsent events.
+     */
+    void clear() throws IOException
+    {
+        reset();
+    }
+
+    void close() throws IOException
+    {
+        file.close();
+    }
+
+    /**
+     * Closes the spool and deletes its file, discarding all unsent events.
+     */
+    void delete() throws IOException
+    {
+        reset();
+        file.close();
+        spoolFile.delete();
+    }
+
+    /**
+     * Moves the unsent records to the front of the file, over the sent records.  Only
+     * called when there is room for the unsent records, plus a four-byte end marker,
+     * before sentOffset, so that the records are not overwritten until the header says
+     * they have been moved, and a crash at any point leaves a readable spool.
+     */
+    private void compact() throws IOException
+    {
+        long unsentLength = endOffset - sentOffset;
+        byte[] buffer = new byte[64 * 1024];
+        for (long copied = 0; copied < unsentLength; )
+        {
+            int n = (int)Math.min(buffer.length, unsentLength - copied);
+            file.seek(sentOffset + copied);
+            file.readFully(buffer, 0, n);
+            file.seek(HEADER_SIZE + copied);
+            file.write(buffer, 0, n);
+            copied += n;
+        }
+        // Marks the end of the moved records, in case we crash before truncating:
+        file.writeInt(-1);
+        sync();
+
+        sentOffset = HEADER_SIZE;
+        endOffset = HEADER_SIZE + unsentLength;
+        file.seek(4);
+        file.writeLong(sentOffset);
+        sync();
+        file.setLength(endOffset);
+    }
+
+    private void reset() throws IOException
+    {
+        file.setLength(0);
+        file.seek(0);
+        file.writeInt(MAGIC);
+        file.writeLong(HEADER_SIZE);
+        sentOffset = HEADER_SIZE;
+        endOffset = HEADER_SIZE;
+        earlierRecords = 0;
+        onSent.clear();
+    }
+}
@@ -21,27 +21,35 @@
  */
 package bluej.compiler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticListener;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import javax.tools.StandardLocation;
 import javax.tools.ToolProvider;
 
 import bluej.Config;
 import bluej.compiler.Diagnostic.DiagnosticOrigin;
+import bluej.utility.Debug;
 
 /**
  * A compiler implementation using the Compiler API introduced in Java 6.
@@ -52,6 +60,51 @@ public class CompilerAPICompiler extends Compiler
 {
     private static final AtomicInteger nextDiagnosticIdentifier = new AtomicInteger(1);
 
+    // For compiling shell classes in memory (see compileShell):
+    private JavaCompiler shellCompiler;
+    private MemoryOutputFileManager shellFileManager;
+    private List<File> shellClassPath;
+    // The size and modification time of each archive on the class path, when the file
+    // manager was opened; the file manager keeps an index of each archive's contents:
+    private List<Long> shellClassPathStamps;
+    private List<File> shellBootClassPath;
+    private List<File> shellSourcePath;
+    private Charset shellCharset;
+
+    /**
+     * A file manager which keeps generated class files in memory.
+     */
+    private static class MemoryOutputFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+    {
+        // Keyed by binary class name:
+        final Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<String, ByteArrayOutputStream>();
+        
+        MemoryOutputFileManager(StandardJavaFileManager fileManager)
+        {
+            super(fileManager);
+        }
+        
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className,
+                JavaFileObject.Kind kind, FileObject sibling) throws IOException
+        {
+            if (kind != JavaFileObject.Kind.CLASS) {
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+            }
+            
+            URI uri = URI.create("mem:///" + className.replace('.', '/') + ".class");
+            return new SimpleJavaFileObject(uri, kind) {
+                @Override
+                public OutputStream openOutputStream()
+                {
+                    ByteArrayOutputStream os = new ByteArrayOutputStream();
+                    outputs.put(className, os);
+                    return os;
+                }
+            };
+        }
+    }
+
     public CompilerAPICompiler()
     {
         setDebug(true);
@@ -87,7 +140,207 @@ public class CompilerAPICompiler extends Compiler
             return false;
         }
         
-        DiagnosticListener<JavaFileObject> diagListener = new DiagnosticListener<JavaFileObject>() {
+        DiagnosticListener<JavaFileObject> diagListener = createDiagnosticListener(sources, observer, internal, type);
+        
+        try
+        {  
+            //setup the filemanager
+            StandardJavaFileManager sjfm = jc.getStandardFileManager(diagListener, null, fileCharset);
+            List<File> pathList = new ArrayList<File>();
+            List<File> outputList = new ArrayList<File>();
+            outputList.add(getDestDir());
+            pathList.addAll(getClassPath());
+            
+            // In BlueJ, the destination directory and the source path are
+            // always the same
+            sjfm.setLocation(StandardLocation.SOURCE_PATH, outputList);
+            sjfm.setLocation(StandardLocation.CLASS_PATH, pathList);
+            File tempDir = null;
+            if (type.keepClasses())
+            {
+                sjfm.setLocation(StandardLocation.CLASS_OUTPUT, outputList);
+            }
+            else
+            {
+                // We could make a new file manager that memory-mapped the output files
+                // and discarded them... but creating a temporary dir is much more
+                // straightforward:
+                tempDir = Files.createTempDirectory("bluej").toFile();
+                sjfm.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(tempDir));
+            }
+            
+            //get the source files for compilation  
+            Iterable<? extends JavaFileObject> compilationUnits1 =
+                sjfm.getJavaFileObjectsFromFiles(Arrays.asList(sources));
+            //add any options
+            if(isDebug()) {
+                optionsList.add("-g");
+            }
+            if(isDeprecation()) {
+                optionsList.add("-deprecation");
+            }
+            
+            File[] bootClassPath = getBootClassPath();
+            if (bootClassPath != null && bootClassPath.length != 0) {
+                sjfm.setLocation(StandardLocation.PLATFORM_CLASS_PATH, Arrays.asList(bootClassPath));
+            }
+            
+            optionsList.addAll(userOptions);
+            
+            //compile
+            result = jc.getTask(null, sjfm, diagListener, optionsList, null, compilationUnits1).call();
+            sjfm.close();
+            if (tempDir != null)
+                tempDir.delete();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace(System.out);
+            return false;
+        }
+
+        return result;
+    }
+
+    /**
+     * Compile a shell class (BlueJ-generated code, for an interactive invocation) from
+     * source held in memory. Neither the source nor the resulting class files are
+     * written to disk.
+     * 
+     * <p>The file manager, which holds the index of the class path, is kept open between
+     * shell compilations (unless the class path, or an archive on it, changes), since opening
+     * it is a large part of the cost of compiling a small shell class.  It holds the archives
+     * on the class path open, so it should be closed (see closeShellFileManager) when the
+     * project using them is closed.
+     * 
+     * @param sourceFile  The file which the shell source would have been written to; used
+     *                    as the name of the source in diagnostics
+     * @param source      The shell source
+     * @param classes     Receives the generated classes, keyed by binary name
+     * 
+     * @return  true if successful
+     */
+    public boolean compileShell(File sourceFile, String source, CompileObserver observer,
+            List<String> userOptions, Charset fileCharset, CompileType type, Map<String, byte[]> classes)
+    {
+        if (shellCompiler == null) {
+            shellCompiler = ToolProvider.getSystemJavaCompiler();
+            if (shellCompiler == null) {
+                observer.compilerMessage(new bluej.compiler.Diagnostic(bluej.compiler.Diagnostic.ERROR,
+                        "The compiler does not appear to be available."), type);
+                return false;
+            }
+        }
+        
+        File[] sources = {sourceFile};
+        DiagnosticListener<JavaFileObject> diagListener = createDiagnosticListener(sources, observer, true, type);
+        
+        try
+        {
+            List<File> sourcePath = Collections.singletonList(getDestDir());
+            File[] bootClassPathArray = getBootClassPath();
+            List<File> bootClassPath = bootClassPathArray == null ? Collections.emptyList() : Arrays.asList(bootClassPathArray);
+            List<Long> classPathStamps = getArchiveStamps(getClassPath());
+            if (shellFileManager == null || ! getClassPath().equals(shellClassPath)
+                    || ! classPathStamps.equals(shellClassPathStamps) || ! bootClassPath.equals(shellBootClassPath)
+                    || ! sourcePath.equals(shellSourcePath) || ! fileCharset.equals(shellCharset)) {
+                closeShellFileManager();
+                StandardJavaFileManager sjfm = shellCompiler.getStandardFileManager(null, null, fileCharset);
+                sjfm.setLocation(StandardLocation.SOURCE_PATH, sourcePath);
+                sjfm.setLocation(StandardLocation.CLASS_PATH, getClassPath());
+                sjfm.setLocation(StandardLocation.CLASS_OUTPUT, sourcePath);
+                // As for compile():
+                if (! bootClassPath.isEmpty()) {
+                    sjfm.setLocation(StandardLocation.PLATFORM_CLASS_PATH, bootClassPath);
+                }
+                shellFileManager = new MemoryOutputFileManager(sjfm);
+                shellClassPath = new ArrayList<File>(getClassPath());
+                shellClassPathStamps = classPathStamps;
+                shellBootClassPath = bootClassPath;
+                shellSourcePath = sourcePath;
+                shellCharset = fileCharset;
+            }
+            
+            JavaFileObject sourceObject = new SimpleJavaFileObject(sourceFile.toURI(), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors)
+                {
+                    return source;
+                }
+            };
+            
+            List<String> optionsList = new ArrayList<String>();
+            if(isDebug()) {
+                optionsList.add("-g");
+            }
+            if(isDeprecation()) {
+                optionsList.add("-deprecation");
+            }
+            // Don't generate classes for any sources which are compiled as a side effect:
+            optionsList.add("-implicit:none");
+            optionsList.addAll(userOptions);
+            
+            shellFileManager.outputs.clear();
+            boolean result = shellCompiler.getTask(null, shellFileManager, diagListener, optionsList, null,
+                    Collections.singletonList(sourceObject)).call();
+            for (Map.Entry<String, ByteArrayOutputStream> output : shellFileManager.outputs.entrySet()) {
+                classes.put(output.getKey(), output.getValue().toByteArray());
+            }
+            shellFileManager.outputs.clear();
+            return result;
+        }
+        catch(IOException | IllegalArgumentException e)
+        {
+            e.printStackTrace(System.out);
+            closeShellFileManager();
+            return false;
+        }
+    }
+
+    /**
+     * Close the file manager kept for shell compilations, if there is one, so that the
+     * archives on its class path are no longer held open.  A new file manager is opened by
+     * the next shell compilation.
+     */
+    public void closeShellFileManager()
+    {
+        if (shellFileManager != null) {
+            try {
+                shellFileManager.close();
+            }
+            catch (IOException ioe) {
+                Debug.reportError("Problem closing shell compiler file manager", ioe);
+            }
+            shellFileManager = null;
+            shellClassPath = null;
+            shellClassPathStamps = null;
+        }
+    }
+
+    /**
+     * Get the size and modification time of each archive (i.e. each file, rather than
+     * directory) in the given class path, so that an archive being replaced can be noticed.
+     */
+    private static List<Long> getArchiveStamps(List<File> classPath)
+    {
+        List<Long> stamps = new ArrayList<Long>();
+        for (File entry : classPath) {
+            if (entry.isFile()) {
+                stamps.add(entry.length());
+                stamps.add(entry.lastModified());
+            }
+        }
+        return stamps;
+    }
+
+    /**
+     * Create a listener which passes on diagnostics from the compiler to the given
+     * observer, in BlueJ's form.
+     */
+    private DiagnosticListener<JavaFileObject> createDiagnosticListener(final File[] sources,
+            final CompileObserver observer, final boolean internal, final CompileType type)
+    {
+        return new DiagnosticListener<JavaFileObject>() {
             @Override
             public void report(Diagnostic<? extends JavaFileObject> diag)
             {
@@ -180,65 +433,6 @@ public class CompilerAPICompiler extends Compiler
                     observer.compilerMessage(bjDiagnostic, type);
             }
         };
-        
-        try
-        {  
-            //setup the filemanager
-            StandardJavaFileManager sjfm = jc.getStandardFileManager(diagListener, null, fileCharset);
-            List<File> pathList = new ArrayList<File>();
-            List<File> outputList = new ArrayList<File>();
-            outputList.add(getDestDir());
-            pathList.addAll(getClassPath());
-            
-            // In BlueJ, the destination directory and the source path are
-            // always the same
-            sjfm.setLocation(StandardLocation.SOURCE_PATH, outputList);
-            sjfm.setLocation(StandardLocation.CLASS_PATH, pathList);
-            File tempDir = null;
-            if (type.keepClasses())
-            {
-                sjfm.setLocation(StandardLocation.CLASS_OUTPUT, outputList);
-            }
-            else
-            {
-                // We could make a new file manager that memory-mapped the output files
-                // and discarded them... but creating a temporary dir is much more
-                // straightforward:
-                tempDir = Files.createTempDirectory("bluej").toFile();
-                sjfm.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(tempDir));
-            }
-            
-            //get the source files for compilation  
-            Iterable<? extends JavaFileObject> compilationUnits1 =
-                sjfm.getJavaFileObjectsFromFiles(Arrays.asList(sources));
-            //add any options
-            if(isDebug()) {
-                optionsList.add("-g");
-            }
-            if(isDeprecation()) {
-                optionsList.add("-deprecation");
-            }
-            
-            File[] bootClassPath = getBootClassPath();
-            if (bootClassPath != null && bootClassPath.length != 0) {
-                sjfm.setLocation(StandardLocation.PLATFORM_CLASS_PATH, Arrays.asList(bootClassPath));
-            }
-            
-            optionsList.addAll(userOptions);
-            
-            //compile
-            result = jc.getTask(null, sjfm, diagListener, optionsList, null, compilationUnits1).call();
-            sjfm.close();
-            if (tempDir != null)
-                tempDir.delete();
-        }
-        catch(IOException e)
-        {
-            e.printStackTrace(System.out);
-            return false;
-        }
-
-        return result;
     }
 
     /**
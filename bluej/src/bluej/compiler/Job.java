@@ -104,7 +104,7 @@ class Job
             for (int i = 0; i < sources.length; i++)
                 actualSourceFiles[i] = sources[i].getJavaCompileInputFile();
 
-            boolean successful = compiler.compile(actualSourceFiles, observer, internal, userCompileOptions, fileCharset, type);
+            boolean successful = runCompiler(actualSourceFiles, userCompileOptions, fileCharset, type);
 
             if(observer != null) {
                 observer.endCompile(sources, successful, type, compilationSequence);
@@ -117,4 +117,14 @@ class Job
             }
         }
     }
+
+    /**
+     * Run the compiler over the given source files.
+     * 
+     * @return  true if the compilation was successful
+     */
+    protected boolean runCompiler(File[] sourceFiles, List<String> options, Charset fileCharset, CompileType type)
+    {
+        return compiler.compile(sourceFiles, observer, internal, options, fileCharset, type);
+    }
 }
@@ -25,6 +25,7 @@ import java.io.File;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import bluej.Config;
 import bluej.classmgr.BPClassLoader;
@@ -51,7 +52,7 @@ public class JobQueue
     // ---- instance ----
 
     private CompilerThread thread = null;
-    private Compiler compiler = null;
+    private CompilerAPICompiler compiler = null;
 
     /**
      * Construct the JobQueue. This is private; use getJobQueue() to get the job queue instance.
@@ -90,6 +91,50 @@ public class JobQueue
                 destDir, suppressUnchecked, options, fileCharset, type, reason));
     }
 
+    /**
+     * Adds a job to compile a shell class in memory to the compile queue. The source is
+     * not written to disk, and neither are the generated classes; they are put in the
+     * given map (keyed by binary name) before the observer is notified of the end of
+     * the compilation.
+     * 
+     * @param sourceFile  The file which would hold the shell source (used in diagnostics,
+     *                    and to identify the shell class)
+     * @param source      The source of the shell class
+     * @param observer    Observer to be notified when compilation begins,
+     *                    errors/warnings, completes
+     * @param classPath   The classpath to use to locate objects/source code
+     * @param destDir     The project directory
+     * @param classes     The map to receive the generated classes
+     */
+    public void addShellJob(CompileInputFile sourceFile, String source, CompileObserver observer,
+            BPClassLoader bpClassLoader, File destDir, Charset fileCharset, Map<String, byte[]> classes)
+    {
+        List<String> options = new ArrayList<String>();
+        String optionString = Config.getPropString(Compiler.COMPILER_OPTIONS, "");
+        options.addAll(Utility.dequoteCommandLine(optionString));
+        
+        thread.addJob(new ShellJob(sourceFile, source, compiler, observer, bpClassLoader,
+                destDir, options, fileCharset, classes));
+    }
+
+    /**
+     * Release the files (in particular, the archives on the class path) which the compiler
+     * keeps open between shell compilations.  This should be done when a package or project
+     * is closed, so that its libraries are not held open for the rest of the session.  It is
+     * done on the compiler thread, after any jobs already queued.
+     */
+    public void releaseShellFiles()
+    {
+        thread.addJob(new Job(new CompileInputFile[0], compiler, null, null, null, true,
+                null, null, CompileType.INTERNAL_COMPILE, null) {
+            @Override
+            public void compile()
+            {
+                JobQueue.this.compiler.closeShellFileManager();
+            }
+        });
+    }
+
     /**
      * Wait until the compiler job queue is empty, then return.
      */
@@ -0,0 +1,57 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.compiler;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import bluej.classmgr.BPClassLoader;
+
+/**
+ * A compiler job for a shell class, which is compiled from source held in memory
+ * and produces classes in memory (see CompilerAPICompiler.compileShell).
+ */
+class ShellJob extends Job
+{
+    private final CompilerAPICompiler shellCompiler;
+    private final String source;
+    private final Map<String, byte[]> classes;
+
+    public ShellJob(CompileInputFile sourceFile, String source, CompilerAPICompiler compiler,
+            CompileObserver observer, BPClassLoader bpClassLoader, File destDir,
+            List<String> userCompileOptions, Charset fileCharset, Map<String, byte[]> classes)
+    {
+        super(new CompileInputFile[] {sourceFile}, compiler, observer, bpClassLoader, destDir, true,
+                userCompileOptions, fileCharset, CompileType.INTERNAL_COMPILE, CompileReason.INVOKE);
+        this.shellCompiler = compiler;
+        this.source = source;
+        this.classes = classes;
+    }
+
+    @Override
+    protected boolean runCompiler(File[] sourceFiles, List<String> options, Charset fileCharset, CompileType type)
+    {
+        return shellCompiler.compileShell(sourceFiles[0], source, observer, options, fileCharset, type, classes);
+    }
+}
@@ -26,6 +26,7 @@ import java.net.URL;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import bluej.classmgr.BPClassLoader;
 import bluej.debugger.jdi.JdiDebugger;
@@ -218,6 +219,18 @@ public abstract class Debugger
      */
     @OnThread(Tag.Any)
     public abstract TestResultsWithRunTime runTestMethod(String className, String methodName);
+
+    /**
+     * Run all the test methods in each of a series of test classes, as a single request
+     * to the remote machine. The results for each class are passed to the listener as they
+     * become available, in the order the classes were given; the listener is called on the
+     * calling thread.
+     * 
+     * @param  classNames  the fully qualified names of the classes
+     * @param  listener    receives the name and test results of each class
+     */
+    @OnThread(Tag.Any)
+    public abstract void runTestClasses(List<String> classNames, BiConsumer<String, TestResultsWithRunTime> listener);
     
     /**
      * Dispose all top level windows in the remote machine.
@@ -232,6 +245,19 @@ public abstract class Debugger
     public abstract DebuggerResult runClassMain(String className)
         throws ClassNotFoundException;
 
+    /**
+     * Supply the bytecode for a class (such as a shell class which has been compiled
+     * in memory). The class will be defined by the current user class loader when it
+     * is first loaded.
+     * 
+     * @param className  The binary name of the class
+     * @param bytes      The class file contents
+     * @return  true if successful; false if the class must instead be made available
+     *          to the class loader as a class file
+     */
+    @OnThread(Tag.Any)
+    public abstract boolean defineClass(String className, byte[] bytes);
+
     /**
      * Instantiate a class using the default constructor for that class.
      * @param className  The name of the class to instantiate
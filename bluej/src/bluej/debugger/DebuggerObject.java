@@ -22,6 +22,7 @@
 package bluej.debugger;
 
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.List;
 
 import bluej.debugger.gentype.GenTypeClass;
@@ -125,6 +126,23 @@ public abstract class DebuggerObject
      */
     public abstract String getElementValueString(int index);
 
+    /**
+     * Return string representations (as per getElementValueString) of a range of
+     * array elements.  This may be considerably faster than retrieving each of the
+     * elements individually.
+     * 
+     * @param index  the index of the first element
+     * @param count  the number of elements
+     */
+    public List<String> getElementValueStrings(int index, int count)
+    {
+        List<String> values = new ArrayList<>(count);
+        for (int i = index; i < index + count; i++) {
+            values.add(getElementValueString(i));
+        }
+        return values;
+    }
+
     /**
      * Return the JDI object. This exposes the JDI to Inspectors.
      * If JDI is not being used, it should return null.
@@ -0,0 +1,295 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.debugger.jdi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+
+import bluej.runtime.ExecServer;
+import bluej.utility.Debug;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * The command channel to the ExecServer in a debug VM: a loopback socket over which
+ * commands that need no references to objects in the debug VM can be sent, much more
+ * cheaply than by setting fields and resuming the worker thread over the debugger
+ * connection. (See ExecServer.startCommandThread.)
+ *
+ * <p>Objects which are passed to or returned from a command are passed in ExecServer's
+ * static fields, which the caller sets or reads over the debugger connection. Actions
+ * which run user code (constructing objects, running tests and test setup) are not
+ * sent here: they must run on the server thread, so that they can be debugged.
+ *
+ * <p>The debug VM connects to the channel once it has started. Until it has done so, or
+ * if the channel fails, the commands here return NOT_SENT and the caller should fall
+ * back to using the worker thread.
+ */
+@OnThread(Tag.Any)
+class ExecCommandChannel
+{
+    /** Returned by commands when the channel is not available. */
+    static final int NOT_SENT = -1;
+
+    // How long to wait for the debug VM to connect:
+    private static final int CONNECT_TIMEOUT = 30000;
+    // How long to wait for a reply before giving up on the channel:
+    private static final int REPLY_TIMEOUT = 30000;
+
+    private final ServerSocket serverSocket;
+    private final long token;
+
+    // The socket is guarded by socketLock rather than by this object, so that the channel
+    // can be closed while a command is waiting for a reply:
+    private final Object socketLock = new Object();
+    private Socket socket;
+    private boolean closed;
+
+    // Only used while holding this object's lock:
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    /**
+     * Create a channel, ready for a debug VM to connect to.
+     *
+     * @throws IOException if the channel couldn't be created
+     */
+    ExecCommandChannel() throws IOException
+    {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        token = new SecureRandom().nextLong();
+    }
+
+    /**
+     * Get the arguments to pass to the debug VM so that it will connect to this channel.
+     */
+    List<String> getVMArgs()
+    {
+        return Arrays.asList("-D" + ExecServer.COMMAND_PORT_PROPERTY + "=" + serverSocket.getLocalPort(),
+                "-D" + ExecServer.COMMAND_TOKEN_PROPERTY + "=" + token);
+    }
+
+    /**
+     * Start waiting (in the background) for the debug VM to connect.
+     */
+    void acceptConnection()
+    {
+        Thread acceptThread = new Thread("BlueJ command channel")
+        {
+            @Override
+            @OnThread(value = Tag.Worker, ignoreParent = true)
+            public void run()
+            {
+                try {
+                    serverSocket.setSoTimeout(CONNECT_TIMEOUT);
+                    while (true) {
+                        Socket s = serverSocket.accept();
+                        s.setTcpNoDelay(true);
+                        s.setSoTimeout(REPLY_TIMEOUT);
+                        DataInputStream sin = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                        // Ignore anything other than the debug VM we launched:
+                        if (sin.readLong() != token) {
+                            s.close();
+                            continue;
+                        }
+                        synchronized (socketLock) {
+                            if (closed) {
+                                s.close();
+                                break;
+                            }
+                            socket = s;
+                        }
+                        synchronized (ExecCommandChannel.this) {
+                            in = sin;
+                            out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                        }
+                        break;
+                    }
+                }
+                catch (IOException ioe) {
+                    Debug.message("Debug VM did not connect to command channel: " + ioe);
+                }
+                finally {
+                    try {
+                        serverSocket.close();
+                    }
+                    catch (IOException ioe) {}
+                }
+            }
+        };
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Remove an object from a scope in the debug VM.
+     */
+    synchronized int removeObject(String scopeId, String instanceName)
+    {
+        if (out == null) {
+            return NOT_SENT;
+        }
+        try {
+            out.writeInt(ExecServer.CMD_REMOVE_OBJECT);
+            writeString(scopeId);
+            writeString(instanceName);
+            return getReply();
+        }
+        catch (IOException ioe) {
+            return failed(ioe);
+        }
+    }
+
+    /**
+     * Supply the bytecode for a class. Returns 1 if successful, or 0 if the current class
+     * loader in the debug VM doesn't support this.
+     */
+    synchronized int defineClass(String className, byte[] bytes)
+    {
+        if (out == null) {
+            return NOT_SENT;
+        }
+        try {
+            out.writeInt(ExecServer.CMD_DEFINE_CLASS);
+            writeString(className);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            return getReply();
+        }
+        catch (IOException ioe) {
+            return failed(ioe);
+        }
+    }
+
+    /**
+     * Create a new class loader, for the given class path (URLs separated by newlines).
+     */
+    synchronized int newClassLoader(String classPath)
+    {
+        if (out == null) {
+            return NOT_SENT;
+        }
+        try {
+            out.writeInt(ExecServer.CMD_NEW_LOADER);
+            writeString(classPath);
+            return getReply();
+        }
+        catch (IOException ioe) {
+            return failed(ioe);
+        }
+    }
+
+    /**
+     * Load (but don't initialise) a class using the current class loader. Returns 1
+     * if successful, leaving the class in ExecServer.workerReturn, or 0 if the class
+     * couldn't be loaded.
+     */
+    synchronized int loadClass(String className)
+    {
+        if (out == null) {
+            return NOT_SENT;
+        }
+        try {
+            out.writeInt(ExecServer.CMD_LOAD_CLASS);
+            writeString(className);
+            return getReply();
+        }
+        catch (IOException ioe) {
+            return failed(ioe);
+        }
+    }
+
+    /**
+     * Add the object in ExecServer.object to a scope in the debug VM.
+     */
+    synchronized int addObject(String scopeId, String instanceName)
+    {
+        if (out == null) {
+            return NOT_SENT;
+        }
+        try {
+            out.writeInt(ExecServer.CMD_ADD_OBJECT);
+            writeString(scopeId);
+            writeString(instanceName);
+            return getReply();
+        }
+        catch (IOException ioe) {
+            return failed(ioe);
+        }
+    }
+
+    /**
+     * Close the channel. A command which is waiting for a reply will fail.
+     */
+    void close()
+    {
+        synchronized (socketLock) {
+            closed = true;
+            try {
+                serverSocket.close();
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+            catch (IOException ioe) {}
+        }
+    }
+
+    private void writeString(String s) throws IOException
+    {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    private int getReply() throws IOException
+    {
+        out.flush();
+        return in.readInt();
+    }
+
+    /**
+     * The channel has failed; close it, so that the worker thread is used from now on.
+     */
+    private int failed(IOException ioe)
+    {
+        boolean wasClosed;
+        synchronized (socketLock) {
+            wasClosed = closed;
+        }
+        if (!wasClosed) {
+            Debug.message("Command channel to debug VM failed: " + ioe);
+            close();
+        }
+        in = null;
+        out = null;
+        return NOT_SENT;
+    }
+}
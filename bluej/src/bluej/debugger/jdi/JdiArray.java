@@ -21,6 +21,9 @@
  */
 package bluej.debugger.jdi;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import bluej.debugger.DebuggerObject;
 import bluej.debugger.gentype.GenTypeArray;
 import bluej.debugger.gentype.GenTypeArrayClass;
@@ -183,6 +186,19 @@ public class JdiArray extends JdiObject
         return JdiUtils.getJdiUtils().getValueString(val);
     }
 
+    @Override
+    public List<String> getElementValueStrings(int index, int count)
+    {
+        List<String> values = new ArrayList<>(count);
+        if (count > 0) {
+            JdiUtils jdiUtils = JdiUtils.getJdiUtils();
+            for (Value val : ((ArrayReference) obj).getValues(index, count)) {
+                values.add(jdiUtils.getValueString(val));
+            }
+        }
+        return values;
+    }
+
     /*
      * Return the object in object field 'slot'.
      *
@@ -22,16 +22,20 @@
 package bluej.debugger.jdi;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import bluej.debugger.DebuggerClass;
 import bluej.debugger.DebuggerField;
+import bluej.debugger.jdi.JdiReflective.FieldInfo;
 import bluej.utility.Debug;
 
 import com.sun.jdi.ClassType;
 import com.sun.jdi.Field;
 import com.sun.jdi.InterfaceType;
 import com.sun.jdi.ReferenceType;
+import com.sun.jdi.Value;
 
 /**
  * Represents an class running on the user (remote) machine.
@@ -72,14 +76,24 @@ public class JdiClass extends DebuggerClass
     @Override
     public List<DebuggerField> getStaticFields()
     {
-        List<Field> visibleFields = remoteClass.visibleFields();
+        FieldInfo fieldInfo = JdiReflective.getFieldInfo(remoteClass);
+        // Fetch all the values in one request, rather than one request per field:
+        Map<Field, Value> values = staticFields.isEmpty() ? Collections.emptyMap() : remoteClass.getValues(staticFields);
         List<DebuggerField> rlist = new ArrayList<DebuggerField>(staticFields.size());
         for (Field field : staticFields) {
-            rlist.add(new JdiField(field, null, ! visibleFields.contains(field)));
+            rlist.add(new JdiField(field, null, fieldInfo.isHidden(field), values.get(field)));
         }
         return rlist;
     }
 
+    @Override
+    public DebuggerField getStaticField(int slot)
+    {
+        // Only the requested field's value is fetched, when it is needed:
+        Field field = staticFields.get(slot);
+        return new JdiField(field, null, JdiReflective.getFieldInfo(remoteClass).isHidden(field));
+    }
+
     /*
      * Returns true if this represents a Java interface
      */
@@ -109,7 +123,7 @@ public class JdiClass extends DebuggerClass
         staticFields = new ArrayList<Field>();
 
         if (remoteClass != null) {
-            List<Field> allFields = remoteClass.allFields();
+            List<Field> allFields = JdiReflective.getFieldInfo(remoteClass).fields;
             for (int i = 0; i < allFields.size(); i++) {
                 Field field = (Field) allFields.get(i);
                 if (field.isStatic())
@@ -24,6 +24,7 @@ package bluej.debugger.jdi;
 import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -31,6 +32,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import bluej.BlueJEvent;
 import bluej.BlueJEventListener;
@@ -89,6 +91,18 @@ public class JdiDebugger extends Debugger
     @OnThread(Tag.Any)
     private MachineLoaderThread machineLoader;
     
+    /**
+     * A VM which has been launched in advance, ready to replace the current VM when it is
+     * restarted; null if there is none (yet). Only used if standbyEnabled is true.
+     */
+    @OnThread(value = Tag.Any, requireSynchronized = true)
+    private VMReference standbyVM;
+    // Whether a standby VM is currently being launched
+    @OnThread(value = Tag.Any, requireSynchronized = true)
+    private boolean standbyLaunching = false;
+    @OnThread(Tag.Any)
+    private final boolean standbyEnabled = Config.getPropBoolean("bluej.vm.standby", true);
+    
     /** An object to provide a lock for server thread execution */
     @OnThread(Tag.Any)
     private Object serverThreadLock = new Object();
@@ -159,7 +173,19 @@ public class JdiDebugger extends Debugger
     @Override
     public void setUserLibraries(URL[] libraries)
     {
-        this.libraries = libraries;
+        VMReference oldStandby;
+        synchronized (this) {
+            if (Arrays.equals(libraries, this.libraries)) {
+                return;
+            }
+            this.libraries = libraries;
+            // A standby VM has the old libraries on its class path:
+            oldStandby = standbyVM;
+            standbyVM = null;
+        }
+        if (oldStandby != null) {
+            oldStandby.close();
+        }
     }
     
     /**
@@ -253,6 +279,11 @@ public class JdiDebugger extends Debugger
             selfRestart = false;
             machineLoader = null;
         }
+        
+        if (!restart && standbyVM != null) {
+            standbyVM.close();
+            standbyVM = null;
+        }
     }
 
     /**
@@ -590,8 +621,6 @@ public class JdiDebugger extends Debugger
     public TestResultsWithRunTime runTestMethod(String className, String methodName) 
     {
         ArrayReference arrayRef = null;
-        List<DebuggerTestResult> results = new ArrayList<>();
-        TestResultsWithRunTime testResultsWithRunTime = new TestResultsWithRunTime();
         try
         {
             VMReference vmr = getVM();
@@ -604,72 +633,185 @@ public class JdiDebugger extends Debugger
                 
                 if (arrayRef == null || arrayRef.length() == 0)
                 {
-                    results.add(new JdiTestResultError(className, methodName, "VM returned unknown result",
-                            "", null, 0));
-                    testResultsWithRunTime.setResults(results);
-                    testResultsWithRunTime.setTotalRunTime(0);
-                    return testResultsWithRunTime;
+                    return makeErrorResult(className, methodName, "VM returned unknown result");
                 }
                 
-                int runTimeMs = Integer.parseInt(((StringReference) arrayRef.getValue(0)).value());
-                int i = 1;
-                while (i < arrayRef.length())
+                // Fetch all the elements at once, rather than one at a time:
+                List<Value> values = arrayRef.getValues();
+                String[] items = new String[values.size()];
+                for (int i = 0; i < items.length; i++)
                 {
-                    
-                    String actualMethodName = ((StringReference) arrayRef.getValue(i)).value();
-                    String failureType = ((StringReference) arrayRef.getValue(i + 7)).value();
-                    
-                    if (failureType.equals("success"))
-                    {
-                        results.add(new JdiTestResult(className, actualMethodName, 0));
-                        
-                    }
-                    else
-                    {
-                        String exMsg = ((StringReference) arrayRef.getValue(i)).value();
-                        String traceMsg = ((StringReference) arrayRef.getValue(i + 2)).value();
-                        String failureClass = ((StringReference) arrayRef.getValue(i + 3)).value();
-                        String failureSource = ((StringReference) arrayRef.getValue(i + 4)).value();
-                        String failureMethod = ((StringReference) arrayRef.getValue(i + 5)).value();
-                        int lineNo = Integer.parseInt(((StringReference) arrayRef.getValue(i + 6)).value());
-                        SourceLocation failPoint = new SourceLocation(failureClass, failureSource,
-                                failureMethod, lineNo);
-
-                        if (failureType.equals("failure"))
-                        {
-                            results.add(new JdiTestResultFailure(className, actualMethodName, exMsg, traceMsg,
-                                    failPoint, 0));
-                        }
-                        else
-                        {
-                            results.add(new JdiTestResultError(className, actualMethodName, exMsg, traceMsg,
-                                    failPoint, 0));
-                        }
-                    }
-
-                    i = i + 8;
+                    StringReference item = (StringReference) values.get(i);
+                    items[i] = item == null ? "" : item.value();
                 }
-                testResultsWithRunTime.setTotalRunTime(runTimeMs);
-                testResultsWithRunTime.setResults(results);
-                return testResultsWithRunTime;
+                return makeTestResults(className, methodName, items);
             }
         }
         catch (InvocationException ie) 
         {
             // what to do here??
-            results.add(new JdiTestResultError(className, methodName, "Internal invocation error",
-                   "", null, 0));
-            testResultsWithRunTime.setResults(results);
-            testResultsWithRunTime.setTotalRunTime(0);
-            return testResultsWithRunTime;
+            return makeErrorResult(className, methodName, "Internal invocation error");
         } 
         catch (VMDisconnectedException vmde)
         {
-            results.add(new JdiTestResultError(className, null, "VM restarted", "",
-                    null, 0));
-            testResultsWithRunTime.setResults(results);
-            testResultsWithRunTime.setTotalRunTime(0);
-            return testResultsWithRunTime;
+            return makeErrorResult(className, null, "VM restarted");
+        }
+    }
+
+    @Override
+    @OnThread(Tag.Any)
+    public void runTestClasses(List<String> classNames, BiConsumer<String, TestResultsWithRunTime> listener)
+    {
+        TestResultsDecoder decoder = new TestResultsDecoder(classNames, listener);
+        String error = "VM returned unknown result";
+        try
+        {
+            VMReference vmr = getVM();
+            synchronized (serverThreadLock)
+            {
+                Value results = null;
+                if (vmr != null)
+                {
+                    results = vmr.invokeRunTestBatch(String.join("\n", classNames), decoder::decode);
+                }
+                if (results instanceof StringReference)
+                {
+                    decoder.decode(((StringReference) results).value());
+                }
+            }
+        }
+        catch (InvocationException ie)
+        {
+            error = "Internal invocation error";
+        }
+        catch (VMDisconnectedException vmde)
+        {
+            error = "VM restarted";
+        }
+
+        // Report an error for any classes we didn't get results for:
+        for (String className : classNames.subList(decoder.classCount, classNames.size()))
+        {
+            listener.accept(className, makeErrorResult(className, null, error));
+        }
+    }
+
+    /**
+     * Make the results of running tests from the items returned by ExecServer.runTestMethod:
+     * the run time, then eight items for each test. (See ExecServer.runTestMethod.)
+     */
+    @OnThread(Tag.Any)
+    private static TestResultsWithRunTime makeTestResults(String className, String methodName, String[] items)
+    {
+        if (items.length == 0)
+        {
+            return makeErrorResult(className, methodName, "VM returned unknown result");
+        }
+        int runTimeMs = Integer.parseInt(items[0]);
+        if (runTimeMs < 0)
+        {
+            // The tests could not be run at all:
+            return makeErrorResult(className, methodName, "Internal invocation error");
+        }
+        
+        List<DebuggerTestResult> results = new ArrayList<>();
+        int i = 1;
+        while (i < items.length)
+        {
+            String actualMethodName = items[i];
+            String failureType = items[i + 7];
+            
+            if (failureType.equals("success"))
+            {
+                results.add(new JdiTestResult(className, actualMethodName, 0));
+            }
+            else
+            {
+                String exMsg = items[i];
+                String traceMsg = items[i + 2];
+                String failureClass = items[i + 3];
+                String failureSource = items[i + 4];
+                String failureMethod = items[i + 5];
+                int lineNo = Integer.parseInt(items[i + 6]);
+                SourceLocation failPoint = new SourceLocation(failureClass, failureSource,
+                        failureMethod, lineNo);
+
+                if (failureType.equals("failure"))
+                {
+                    results.add(new JdiTestResultFailure(className, actualMethodName, exMsg, traceMsg,
+                            failPoint, 0));
+                }
+                else
+                {
+                    results.add(new JdiTestResultError(className, actualMethodName, exMsg, traceMsg,
+                            failPoint, 0));
+                }
+            }
+
+            i = i + 8;
+        }
+        
+        TestResultsWithRunTime testResultsWithRunTime = new TestResultsWithRunTime();
+        testResultsWithRunTime.setTotalRunTime(runTimeMs);
+        testResultsWithRunTime.setResults(results);
+        return testResultsWithRunTime;
+    }
+
+    @OnThread(Tag.Any)
+    private static TestResultsWithRunTime makeErrorResult(String className, String methodName, String error)
+    {
+        List<DebuggerTestResult> results = new ArrayList<>();
+        // The method name is null if the error is for the whole class:
+        results.add(new JdiTestResultError(className, methodName == null ? "" : methodName, error, "", null, 0));
+        TestResultsWithRunTime testResultsWithRunTime = new TestResultsWithRunTime();
+        testResultsWithRunTime.setResults(results);
+        testResultsWithRunTime.setTotalRunTime(0);
+        return testResultsWithRunTime;
+    }
+
+    /**
+     * Decodes the results of a batch test run (see ExecServer.runTestBatch), passing
+     * the results of each class to a listener. The encoded results can be supplied a
+     * piece at a time, as they are received; each string supplied must be an extension
+     * of the last one.
+     */
+    @OnThread(Tag.Any)
+    private static class TestResultsDecoder
+    {
+        private final List<String> classNames;
+        private final BiConsumer<String, TestResultsWithRunTime> listener;
+        private int pos = 0;
+        // The number of classes for which results have been passed on:
+        int classCount = 0;
+
+        TestResultsDecoder(List<String> classNames, BiConsumer<String, TestResultsWithRunTime> listener)
+        {
+            this.classNames = classNames;
+            this.listener = listener;
+        }
+
+        void decode(String encoded)
+        {
+            while (pos < encoded.length() && classCount < classNames.size())
+            {
+                String className = next(encoded);
+                String[] items = new String[Integer.parseInt(next(encoded))];
+                for (int i = 0; i < items.length; i++)
+                {
+                    items[i] = next(encoded);
+                }
+                classCount++;
+                listener.accept(className, makeTestResults(className, null, items));
+            }
+        }
+
+        private String next(String encoded)
+        {
+            int colon = encoded.indexOf(':', pos);
+            int start = colon + 1;
+            int end = start + Integer.parseInt(encoded.substring(pos, colon));
+            pos = end;
+            return encoded.substring(start, end);
         }
     }
     
@@ -713,6 +855,21 @@ public class JdiDebugger extends Debugger
         }
     }
 
+    @Override
+    @OnThread(Tag.Any)
+    public boolean defineClass(String className, byte[] bytes)
+    {
+        VMReference vmr = getVM();
+        if (vmr != null) {
+            try {
+                return vmr.defineClass(className, bytes);
+            }
+            catch (VMDisconnectedException vde) { }
+            catch (VMOutOfMemoryException vmoome) { }
+        }
+        return false;
+    }
+
     @Override
     public CompletableFuture<FXPlatformSupplier<DebuggerResult>> launchFXApp(String className)
     {
@@ -1126,6 +1283,78 @@ public class JdiDebugger extends Debugger
             return mlt.getVMNoWait();
     }
 
+    /**
+     * Take the standby VM, if there is one, and make it active. Returns null if there is no
+     * usable standby VM.
+     */
+    @OnThread(Tag.Worker)
+    private VMReference takeStandbyVM()
+    {
+        VMReference standby;
+        synchronized (this) {
+            standby = standbyVM;
+            standbyVM = null;
+        }
+        
+        if (standby != null && ! standby.activate()) {
+            // It has died in the meantime:
+            standby.close();
+            standby = null;
+        }
+        return standby;
+    }
+    
+    /**
+     * Launch a standby VM in the background, if enabled and there isn't one already.
+     * The standby VM takes over when the current VM is restarted, so that the user
+     * doesn't have to wait for a new VM to start.
+     */
+    @OnThread(Tag.Any)
+    private void launchStandbyVM()
+    {
+        synchronized (this) {
+            if (! standbyEnabled || ! autoRestart || standbyVM != null || standbyLaunching) {
+                return;
+            }
+            standbyLaunching = true;
+        }
+        
+        Thread standbyLauncher = new Thread("BlueJ standby VM launcher") {
+            @Override
+            @OnThread(value = Tag.Worker, ignoreParent = true)
+            public void run()
+            {
+                URL[] standbyLibraries;
+                synchronized (JdiDebugger.this) {
+                    standbyLibraries = libraries;
+                }
+                
+                VMReference newVM = null;
+                try {
+                    newVM = new VMReference(JdiDebugger.this, terminal, startingDirectory, standbyLibraries, true);
+                }
+                catch (JdiVmCreationException e) {
+                    // Never mind; the next VM will be launched when it is needed
+                }
+                
+                synchronized (JdiDebugger.this) {
+                    standbyLaunching = false;
+                    // Keep the new VM only if nothing has changed while it was being launched:
+                    if (newVM != null && autoRestart && standbyVM == null && standbyLibraries == libraries) {
+                        standbyVM = newVM;
+                        newVM = null;
+                    }
+                }
+                if (newVM != null) {
+                    newVM.close();
+                }
+            }
+        };
+        standbyLauncher.setDaemon(true);
+        standbyLauncher.setPriority(loaderPriority);
+        standbyLauncher.start();
+    }
+
     /**
      * A thread which loads a new instance of the debugger.
      */
@@ -1139,7 +1368,10 @@ public class JdiDebugger extends Debugger
         public void run()
         {
             try {
-                VMReference newVM = new VMReference(JdiDebugger.this, terminal, startingDirectory, libraries);
+                VMReference newVM = takeStandbyVM();
+                if (newVM == null) {
+                    newVM = new VMReference(JdiDebugger.this, terminal, startingDirectory, libraries, false);
+                }
 
                 BPClassLoader lastLoader;
                 synchronized(JdiDebugger.this) {
@@ -1159,6 +1391,8 @@ public class JdiDebugger extends Debugger
                 synchronized(JdiDebugger.this) {
                     vmRef = newVM;
                 }
+                
+                launchStandbyVM();
             }
             catch (JdiVmCreationException e) {
                 raiseStateChangeEvent(Debugger.LAUNCH_FAILED);
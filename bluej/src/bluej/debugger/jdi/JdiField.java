@@ -44,6 +44,11 @@ public class JdiField extends DebuggerField
     @OnThread(Tag.Any)
     private final JdiObject object;
     private boolean hidden;
+    // The value of the field, if it was fetched when this JdiField was created:
+    @OnThread(Tag.Any)
+    private final Value value;
+    @OnThread(Tag.Any)
+    private final boolean havePrefetchedValue;
     
     @OnThread(Tag.Any)
     public JdiField(Field field, JdiObject object, boolean hidden)
@@ -51,6 +56,24 @@ public class JdiField extends DebuggerField
         this.field = field;
         this.object = object;
         this.hidden = hidden;
+        this.value = null;
+        this.havePrefetchedValue = false;
+    }
+    
+    /**
+     * Construct a JdiField for which the value has already been fetched (typically
+     * along with the values of other fields, using a single request to the debug VM).
+     * The value is used for both getValueString() and getValueObject(), so that they
+     * agree with each other (and with the other fields fetched at the same time).
+     */
+    @OnThread(Tag.Any)
+    public JdiField(Field field, JdiObject object, boolean hidden, Value value)
+    {
+        this.field = field;
+        this.object = object;
+        this.hidden = hidden;
+        this.value = value;
+        this.havePrefetchedValue = true;
     }
 
     @Override
@@ -82,28 +105,13 @@ public class JdiField extends DebuggerField
     @SuppressWarnings("threadchecker")
     public String getValueString()
     {
-        Value value;
-        if (object != null) {
-            value = object.obj.getValue(field);
-        }
-        else {
-            value = field.declaringType().getValue(field);
-        }
-
-        return JdiUtils.getJdiUtils().getValueString(value);
+        return JdiUtils.getJdiUtils().getValueString(getValue());
     }
 
     @Override
     public DebuggerObject getValueObject(JavaType expectedType)
     {
-        Value value;
-        if (object != null) {
-            value = object.obj.getValue(field);
-        }
-        else {
-            value = field.declaringType().getValue(field);
-        }
-        
+        Value value = getValue();
         if (value == null) {
             return JdiObject.getDebuggerObject(null);
         }
@@ -119,6 +127,25 @@ public class JdiField extends DebuggerField
         return null;
     }
 
+    /**
+     * Get the value of the field: the value fetched when this JdiField was created, if
+     * there is one, otherwise the current value from the debug VM.
+     */
+    @OnThread(Tag.Any)
+    @SuppressWarnings("threadchecker")
+    private Value getValue()
+    {
+        if (havePrefetchedValue) {
+            return value;
+        }
+        else if (object != null) {
+            return object.obj.getValue(field);
+        }
+        else {
+            return field.declaringType().getValue(field);
+        }
+    }
+
     @Override
     public DebuggerClass getDeclaringClass()
     {
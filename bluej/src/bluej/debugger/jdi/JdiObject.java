@@ -22,11 +22,14 @@
 package bluej.debugger.jdi;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import bluej.debugger.DebuggerClass;
 import bluej.debugger.DebuggerField;
+import bluej.debugger.jdi.JdiReflective.FieldInfo;
 import bluej.debugger.DebuggerObject;
 import bluej.debugger.gentype.GenTypeClass;
 import bluej.debugger.gentype.JavaType;
@@ -36,6 +39,7 @@ import com.sun.jdi.ArrayReference;
 import com.sun.jdi.Field;
 import com.sun.jdi.ObjectReference;
 import com.sun.jdi.ReferenceType;
+import com.sun.jdi.Value;
 import threadchecker.OnThread;
 import threadchecker.Tag;
 
@@ -108,7 +112,7 @@ public class JdiObject extends DebuggerObject
     protected ObjectReference obj;  // the remote object represented
     GenTypeClass genType = null; // the generic type, if known
     @OnThread(Tag.Any)
-    private final List<Field> fields = new ArrayList<>();
+    private FieldInfo fieldInfo = FieldInfo.EMPTY;
     
     // used by JdiArray.
     protected JdiObject()
@@ -261,15 +265,54 @@ public class JdiObject extends DebuggerObject
     @OnThread(Tag.Any)
     public List<DebuggerField> getFields()
     {
-        List<Field> visibleFields = obj.referenceType().visibleFields();
-        List<DebuggerField> rlist = new ArrayList<DebuggerField>(fields.size());
-        for (Field field : fields) {
+        List<Field> shownFields = getShownFields();
+        
+        // Fetch all the values in one request, rather than one request per field:
+        Map<Field, Value> values = shownFields.isEmpty() ? Collections.emptyMap() : obj.getValues(shownFields);
+        List<DebuggerField> rlist = new ArrayList<DebuggerField>(shownFields.size());
+        for (Field field : shownFields) {
+            rlist.add(new JdiField(field, this, fieldInfo.isHidden(field), values.get(field)));
+        }
+        return rlist;
+    }
+    
+    @Override
+    @OnThread(Tag.Any)
+    public DebuggerField getField(int slot)
+    {
+        // Only the requested field's value is fetched, when it is needed:
+        Field field = getShownFields().get(slot);
+        return new JdiField(field, this, fieldInfo.isHidden(field));
+    }
+    
+    @Override
+    @OnThread(Tag.Any)
+    public DebuggerField getInstanceField(int slot)
+    {
+        for (Field field : getShownFields()) {
+            if (! field.isStatic()) {
+                if (slot == 0) {
+                    return new JdiField(field, this, fieldInfo.isHidden(field));
+                }
+                slot--;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the fields which are shown for this object (i.e. all except synthetic fields).
+     */
+    @OnThread(Tag.Any)
+    private List<Field> getShownFields()
+    {
+        List<Field> shownFields = new ArrayList<>(fieldInfo.fields.size());
+        for (Field field : fieldInfo.fields) {
             if (! checkIgnoreField(field)) {
-                boolean visible = visibleFields.remove(field);
-                rlist.add(new JdiField(field, this, !visible));
+                shownFields.add(field);
             }
         }
-        return rlist;
+        return shownFields;
     }
 
     @OnThread(Tag.Any)
@@ -287,13 +330,13 @@ public class JdiObject extends DebuggerObject
         if (obj != null) {
             ReferenceType cls = obj.referenceType();
             if (cls != null) {
-                fields.addAll(cls.allFields());
+                fieldInfo = JdiReflective.getFieldInfo(cls);
                 return;
             }
         }
         // either null object or unavailable fields
         // lets give them an empty list of fields
-        fields.clear();
+        fieldInfo = FieldInfo.EMPTY;
     }
 
     /**
@@ -68,10 +68,12 @@ import com.sun.jdi.LocalVariable;
 import com.sun.jdi.Location;
 import com.sun.jdi.LongType;
 import com.sun.jdi.Method;
+import com.sun.jdi.ObjectCollectedException;
 import com.sun.jdi.ReferenceType;
 import com.sun.jdi.ShortType;
 import com.sun.jdi.StackFrame;
 import com.sun.jdi.Type;
+import com.sun.jdi.VMDisconnectedException;
 import com.sun.jdi.VirtualMachine;
 import threadchecker.OnThread;
 import threadchecker.Tag;
@@ -94,6 +96,37 @@ public class JdiReflective extends Reflective
     private ClassLoaderReference sourceLoader = null;
     private VirtualMachine sourceVM = null;
 
+    /**
+     * The fields of a class, including inherited fields, along with a note of
+     * which of them are hidden (shadowed by a field of the same name in a subclass).
+     */
+    @OnThread(Tag.Any)
+    static final class FieldInfo
+    {
+        static final FieldInfo EMPTY = new FieldInfo(Collections.emptyList(), Collections.emptySet());
+
+        final List<Field> fields;
+        private final Set<Field> hiddenFields;
+
+        private FieldInfo(List<Field> fields, Set<Field> hiddenFields)
+        {
+            this.fields = fields;
+            this.hiddenFields = hiddenFields;
+        }
+
+        boolean isHidden(Field field)
+        {
+            return hiddenFields.contains(field);
+        }
+    }
+
+    // Field information for each class in the debug VM.  Working this out for a class
+    // with many fields isn't cheap, and it is needed every time an object of the class
+    // is inspected.  Entries are discarded when their class loader is replaced, or their
+    // VM is closed; see discardFieldInfo().
+    @OnThread(Tag.Any)
+    private static final Map<ReferenceType, FieldInfo> fieldInfoCache = new HashMap<>();
+
     /**
      * Constructor - loaded type
      */
@@ -140,6 +173,51 @@ public class JdiReflective extends Reflective
         this.sourceVM = vm;
     }
     
+    /**
+     * Get the fields (including inherited fields) of the given class.
+     */
+    @OnThread(Tag.Any)
+    static FieldInfo getFieldInfo(ReferenceType type)
+    {
+        synchronized (fieldInfoCache) {
+            FieldInfo info = fieldInfoCache.get(type);
+            if (info != null) {
+                return info;
+            }
+        }
+
+        List<Field> fields = Collections.unmodifiableList(new ArrayList<>(type.allFields()));
+        Set<Field> hiddenFields = new HashSet<>(fields);
+        hiddenFields.removeAll(type.visibleFields());
+        FieldInfo info = new FieldInfo(fields, hiddenFields);
+        synchronized (fieldInfoCache) {
+            fieldInfoCache.put(type, info);
+        }
+        return info;
+    }
+
+    /**
+     * Discard cached field information for classes in the given VM which were loaded
+     * by the given class loader, or for all classes in the VM if the loader is null.
+     */
+    @OnThread(Tag.Any)
+    static void discardFieldInfo(VirtualMachine vm, ClassLoaderReference loader)
+    {
+        synchronized (fieldInfoCache) {
+            fieldInfoCache.keySet().removeIf(type -> {
+                if (type.virtualMachine() != vm) {
+                    return false;
+                }
+                try {
+                    return loader == null || loader.equals(type.classLoader());
+                }
+                catch (VMDisconnectedException | ObjectCollectedException e) {
+                    return true;
+                }
+            });
+        }
+    }
+
     /**
      * Get the JDI ReferenceType this reflective represents.
      */
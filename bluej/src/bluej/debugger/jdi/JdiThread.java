@@ -295,6 +295,7 @@ class JdiThread extends DebuggerThread
             if (name.startsWith("AWT-") ||
                     name.equals("DestroyJavaVM") ||
                     name.equals("BlueJ worker thread") ||
+                    name.equals("BlueJ command thread") ||
                     name.equals("Timer Queue") ||
                     name.equals("Screen Updater") ||
                     name.startsWith("SunToolkit.") ||
@@ -349,17 +350,28 @@ class JdiThread extends DebuggerThread
             if(thr.isSuspended()) {
                 List<SourceLocation> stack = new ArrayList<SourceLocation>();
                 List<StackFrame> frames = thr.frames();
+                // Deep (e.g. recursive) stacks tend to have many frames from the same
+                // few classes, so look up each source name only once:
+                Map<ReferenceType, String> sourceNames = new HashMap<>();
 
                 for(int i = 0; i < frames.size(); i++) {
                     StackFrame f = (StackFrame)frames.get(i);
                     Location loc = f.location();
-                    String className = loc.declaringType().name();
+                    ReferenceType declaringType = loc.declaringType();
+                    String className = declaringType.name();
                     
-                    String fileName = null;
-                    try {
-                        fileName = loc.sourceName();
+                    String fileName;
+                    if (sourceNames.containsKey(declaringType)) {
+                        fileName = sourceNames.get(declaringType);
+                    }
+                    else {
+                        fileName = null;
+                        try {
+                            fileName = loc.sourceName();
+                        }
+                        catch(AbsentInformationException e) { }
+                        sourceNames.put(declaringType, fileName);
                     }
-                    catch(AbsentInformationException e) { }
                     String methodName = loc.method().name();
                     int lineNumber = loc.lineNumber();
 
@@ -409,12 +421,17 @@ class JdiThread extends DebuggerThread
                 List<Type> localTypes = new ArrayList<Type>();
                 List<String> genericSigs = new ArrayList<String>();
                 List<String> typeNames = new ArrayList<String>();
+                List<Boolean> isObject = new ArrayList<Boolean>();
                 ReferenceType declaringType = frame.location().declaringType();
                 
+                // Fetch all the values in one request:
+                Map<LocalVariable, Value> values = frame.getValues(vars);
+                
                 for(int i = 0; i < vars.size(); i++) {
                     LocalVariable var = vars.get(i);
-                    String val = JdiUtils.getJdiUtils().getValueString(frame.getValue(var));
-                    localVals.add(val);
+                    Value value = values.get(var);
+                    localVals.add(JdiUtils.getJdiUtils().getValueString(value));
+                    isObject.add(value instanceof ObjectReference);
                     
                     try {
                         localTypes.add(var.type());
@@ -435,7 +452,7 @@ class JdiThread extends DebuggerThread
                             typeNames.get(i), declaringType);
                     int iFinal = i;
                     localVars.add(new VarDisplayInfo(vartype, var, localVals.get(i),
-                        varIsObject(frameNo, i) ?
+                        isObject.get(i) ?
                             () -> getStackObject(frameNo, iFinal)
                             : null
                     ));
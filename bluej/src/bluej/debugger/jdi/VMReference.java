@@ -35,10 +35,13 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import bluej.debugger.RunOnThread;
 import bluej.utility.DialogManager;
@@ -147,6 +150,9 @@ public class VMReference
     // the name of the method used to show  the terminal on input
     public static final String SERVER_SHOW_TERMINAL_ON_INPUT_NAME = "showTerminalOnInput";
 
+    // how often (ms) to fetch the results so far during a batch test run
+    private static final long TEST_PROGRESS_INTERVAL = 250;
+
     // A map which can be used to map instances of VirtualMachine to VMReference 
     private static Map<VirtualMachine, VMReference> vmToReferenceMap = new HashMap<VirtualMachine, VMReference>();
     
@@ -185,10 +191,27 @@ public class VMReference
 
     // the current class loader in the ExecServer
     private ClassLoaderReference currentLoader = null;
+    
+    // the channel for commands which don't need the debugger connection (null if unavailable)
+    private ExecCommandChannel commandChannel = null;
 
     private int exitStatus;
     @OnThread(Tag.Any)
     private ExceptionDescription lastException;
+    
+    // Whether this VM is on standby, ready to replace the active VM. Events from a
+    // standby VM are not passed on to the owner, and it doesn't take terminal input.
+    // (The standby state is protected by its own lock, since the VM event handler
+    // must not wait for this object's monitor.)
+    private final Object standbyLock = new Object();
+    private boolean standby;
+    // Whether a standby VM has been disconnected (and so can't be activated)
+    private boolean disconnected = false;
+    // The writer for the input stream of the remote process, until it is connected to the terminal
+    @OnThread(Tag.Any)
+    private Writer pendingInputWriter;
+    // Threads reported to the owner on activation, whose start events may still arrive
+    private Set<ThreadReference> reportedThreads = new HashSet<>();
 
     /**
      * Launch a remote debug VM using a TCP/IP socket.
@@ -256,6 +279,14 @@ public class VMReference
             paramList.add("-Dfile.encoding=" + streamEncoding);
         }
         
+        try {
+            commandChannel = new ExecCommandChannel();
+            paramList.addAll(commandChannel.getVMArgs());
+        }
+        catch (IOException ioe) {
+            Debug.message("Could not create command channel for debug VM: " + ioe);
+        }
+        
         paramList.add(SERVER_CLASSNAME);
         
         // set output encoding if specified, default is to use system default
@@ -339,6 +370,9 @@ public class VMReference
                         try {
                             machine = connector.accept(arguments);
                             redirectToTerminal(term, remoteVMprocess, streamEncoding);
+                            if (commandChannel != null) {
+                                commandChannel.acceptConnection();
+                            }
                         }
                         catch (Throwable t) {
                             // failed to connect.
@@ -537,19 +571,30 @@ public class VMReference
         
         errorStreamRedirector = redirectIOStream(errorReader, term.getErrorWriter());
         outputStreamRedirector = redirectIOStream(outReader, term.getWriter());
-        inputStreamRedirector = redirectIOStream(term.getReader(), inputWriter);
+        
+        // A standby VM mustn't take input intended for the active VM:
+        if (standby) {
+            pendingInputWriter = inputWriter;
+        }
+        else {
+            inputStreamRedirector = redirectIOStream(term.getReader(), inputWriter);
+        }
     }
 
     /**
      * Create the second virtual machine and start the execution server (class
      * ExecServer) on that machine.
+     * 
+     * @param standby  whether the machine is to be kept on standby, until activate() is called
      */
     @OnThread(Tag.Any)
-    public VMReference(JdiDebugger owner, DebuggerTerminal term, File initialDirectory, URL[] libraries)
+    public VMReference(JdiDebugger owner, DebuggerTerminal term, File initialDirectory, URL[] libraries,
+            boolean standby)
         throws JdiVmCreationException
     {
         this.owner = owner;
         this.term = term;
+        this.standby = standby;
         
         // machine will be suspended at startup
         machine = localhostSocketLaunch(initialDirectory, libraries, term, Bootstrap.virtualMachineManager());
@@ -561,6 +606,40 @@ public class VMReference
         vmToReferenceMap.put(machine, this);
     }
 
+    /**
+     * Make a standby machine into the active machine: connect it to terminal input, and
+     * report its threads and state to the owner. Returns false if the machine has been
+     * disconnected (in which case it cannot be used).
+     */
+    @OnThread(Tag.Any)
+    public boolean activate()
+    {
+        synchronized (standbyLock) {
+            if (disconnected) {
+                return false;
+            }
+            standby = false;
+            
+            if (pendingInputWriter != null) {
+                inputStreamRedirector = redirectIOStream(term.getReader(), pendingInputWriter);
+                pendingInputWriter = null;
+            }
+            
+            try {
+                for (ThreadReference thread : machine.allThreads()) {
+                    reportedThreads.add(thread);
+                    owner.threadStart(thread);
+                }
+            }
+            catch (VMDisconnectedException vmde) {
+                return false;
+            }
+        }
+        
+        owner.raiseStateChangeEvent(Debugger.IDLE);
+        return true;
+    }
+
     /**
      * Wait for all our virtual machine initialisation to occur.
      */
@@ -581,8 +660,12 @@ public class VMReference
     @OnThread(Tag.Any)
     public synchronized void close()
     {
+        if (commandChannel != null) {
+            commandChannel.close();
+        }
         if (machine != null) {
             closeIO();
+            JdiReflective.discardFieldInfo(machine, null);
             // cause the debug VM to exit when disposed
             try {
                 setStaticFieldValue(serverClass, ExecServer.WORKER_ACTION_NAME, machine.mirrorOf(ExecServer.EXIT_VM));
@@ -739,28 +822,85 @@ public class VMReference
     @OnThread(Tag.Any)
     ClassLoaderReference newClassLoader(URL [] urls)
     {
+        StringBuffer newcpath = new StringBuffer(200);
+        for (int index = 0; index < urls.length; index++) {
+            newcpath.append ( urls[index].toString());
+            newcpath.append ('\n');
+        }
+        
         synchronized(workerThread) {
             workerThreadReadyWait();
             workerThreadReserved = true;
-            setStaticFieldValue(serverClass, ExecServer.WORKER_ACTION_NAME, machine.mirrorOf(ExecServer.NEW_LOADER));
             
-            StringBuffer newcpath = new StringBuffer(200);
-            for (int index = 0; index < urls.length; index++) {
-                newcpath.append ( urls[index].toString());
-                newcpath.append ('\n');
+            ClassLoaderReference oldLoader = currentLoader;
+            if (commandChannel != null && commandChannel.newClassLoader(newcpath.toString()) != ExecCommandChannel.NOT_SENT) {
+                currentLoader = (ClassLoaderReference) getStaticFieldObject(serverClass, ExecServer.CURRENT_LOADER_NAME);
+            }
+            else {
+                setStaticFieldValue(serverClass, ExecServer.WORKER_ACTION_NAME, machine.mirrorOf(ExecServer.NEW_LOADER));
+                setStaticFieldObject(serverClass, ExecServer.CLASSPATH_NAME, newcpath.toString());
+                
+                workerThreadReady = false;
+                workerThread.resume();
+                workerThreadFinishWait();
+                
+                currentLoader = (ClassLoaderReference) getStaticFieldObject(serverClass, ExecServer.WORKER_RETURN_NAME);
+            }
+            if (oldLoader != null) {
+                JdiReflective.discardFieldInfo(machine, oldLoader);
             }
+            workerThreadReserved = false;
+            workerThread.notify();
             
-            setStaticFieldObject(serverClass, ExecServer.CLASSPATH_NAME, newcpath.toString());
+            return currentLoader;
+        }
+    }
+    
+    /**
+     * Supply the bytecode for a class, to be defined by the current class loader
+     * in the remote VM when the class is first loaded. May throw VMDisconnectedException.
+     * 
+     * @param className  the binary name of the class
+     * @param bytes      the class file contents
+     * @return  true if successful, or false if the class loader doesn't support this
+     */
+    @OnThread(Tag.Any)
+    boolean defineClass(String className, byte[] bytes)
+    {
+        if (commandChannel != null) {
+            synchronized(workerThread) {
+                // Make sure any previous worker action has finished:
+                workerThreadReadyWait();
+                int result = commandChannel.defineClass(className, bytes);
+                if (result != ExecCommandChannel.NOT_SENT) {
+                    return result == 1;
+                }
+            }
+        }
+        
+        // The bytecode is sent as a string, with one character per byte, since that
+        // can be mirrored in the remote VM with a single request:
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i] = (char) (bytes[i] & 0xff);
+        }
+        
+        synchronized(workerThread) {
+            workerThreadReadyWait();
+            workerThreadReserved = true;
+            setStaticFieldValue(serverClass, ExecServer.WORKER_ACTION_NAME, machine.mirrorOf(ExecServer.DEFINE_CLASS));
+            setStaticFieldObject(serverClass, ExecServer.CLASSNAME_NAME, className);
+            setStaticFieldObject(serverClass, ExecServer.CLASS_BYTES_NAME, new String(chars));
             
             workerThreadReady = false;
             workerThread.resume();
             workerThreadFinishWait();
             
-            currentLoader = (ClassLoaderReference) getStaticFieldObject(serverClass, ExecServer.WORKER_RETURN_NAME);
+            ObjectReference result = getStaticFieldObject(serverClass, ExecServer.WORKER_RETURN_NAME);
             workerThreadReserved = false;
             workerThread.notify();
             
-            return currentLoader;
+            return result != null;
         }
     }
     
@@ -805,15 +945,23 @@ public class VMReference
         synchronized(workerThread) {
             workerThreadReadyWait();
             workerThreadReserved = true;
-            setStaticFieldValue(serverClass, ExecServer.CLASSLOADER_NAME, clr);
-            setStaticFieldValue(serverClass, ExecServer.WORKER_ACTION_NAME, machine.mirrorOf(ExecServer.LOAD_CLASS));
-            setStaticFieldObject(serverClass, ExecServer.CLASSNAME_NAME, className);
-            
-            workerThreadReady = false;
-            workerThread.resume();
-            workerThreadFinishWait();
+            // The command channel can only use the current loader:
+            int sent = ExecCommandChannel.NOT_SENT;
+            if (clr == null && commandChannel != null) {
+                sent = commandChannel.loadClass(className);
+            }
+            if (sent == ExecCommandChannel.NOT_SENT) {
+                setStaticFieldValue(serverClass, ExecServer.CLASSLOADER_NAME, clr);
+                setStaticFieldValue(serverClass, ExecServer.WORKER_ACTION_NAME, machine.mirrorOf(ExecServer.LOAD_CLASS));
+                setStaticFieldObject(serverClass, ExecServer.CLASSNAME_NAME, className);
+                
+                workerThreadReady = false;
+                workerThread.resume();
+                workerThreadFinishWait();
+            }
             
-            ClassObjectReference robject = (ClassObjectReference) getStaticFieldObject(serverClass, ExecServer.WORKER_RETURN_NAME);
+            ClassObjectReference robject = sent == 0 ? null
+                    : (ClassObjectReference) getStaticFieldObject(serverClass, ExecServer.WORKER_RETURN_NAME);
             workerThreadReserved = false;
             workerThread.notify();
             
@@ -1043,7 +1191,14 @@ public class VMReference
             // Do the owner disconnect first, because it is synchronized on
             // JdiDebugger. This allows machine loader thread to check the exit
             // status in a meaningful way.
-            owner.vmDisconnect();
+            boolean wasStandby;
+            synchronized (standbyLock) {
+                wasStandby = standby;
+                disconnected = true;
+            }
+            if (! wasStandby) {
+                owner.vmDisconnect();
+            }
             
             // If VM disconnect occurs during invocation, the server thread won't
             // restart in this VM; the method waiting for it to start will hang
@@ -1071,6 +1226,11 @@ public class VMReference
      */
     public void threadStartEvent(ThreadStartEvent tse)
     {
+        synchronized (standbyLock) {
+            if (standby || reportedThreads.remove(tse.thread())) {
+                return;
+            }
+        }
         owner.threadStart(tse.thread());
     }
 
@@ -1080,6 +1240,12 @@ public class VMReference
     public void threadDeathEvent(ThreadDeathEvent tde)
     {
         ThreadReference tr = tde.thread();
+        synchronized (standbyLock) {
+            if (standby) {
+                return;
+            }
+            reportedThreads.remove(tr);
+        }
         owner.threadDeath(tr);
 
         // There appears to be a VM bug related to system.exit() being called
@@ -1221,7 +1387,13 @@ public class VMReference
             synchronized (this) {
                 serverThreadStarted = true;
                 serverThread = event.thread();
-                owner.raiseStateChangeEvent(Debugger.IDLE);
+                boolean isStandby;
+                synchronized (standbyLock) {
+                    isStandby = standby;
+                }
+                if (! isStandby) {
+                    owner.raiseStateChangeEvent(Debugger.IDLE);
+                }
                 notifyAll();
             }
         }
@@ -1673,6 +1845,26 @@ public class VMReference
         }
     }
     
+    /**
+     * Wait for the server thread to start, for at most the given time.
+     * 
+     * @return  true if the server thread has started
+     */
+    private boolean serverThreadStartWait(long timeoutMillis)
+    {
+        synchronized(this) {
+            try {
+                if (!serverThreadStarted) {
+                    if (exitStatus == Debugger.TERMINATED)
+                        throw new VMDisconnectedException();
+                    wait(timeoutMillis);
+                }
+            }
+            catch (InterruptedException ie) {}
+            return serverThreadStarted;
+        }
+    }
+    
     /**
      * Resume the server thread to begin executing some function.
      * 
@@ -1989,6 +2181,49 @@ public class VMReference
         return rval;
     }
 
+    /**
+     * Run all the tests in each of a list of test classes, with a single request to the
+     * debug VM (see ExecServer.runTestBatch). While the tests run, the results for the
+     * classes which have finished so far are periodically passed to the progress consumer.
+     * 
+     * @param classNames  the fully qualified names of the classes, separated by newlines
+     * @param progress    receives the encoded results so far; each string passed
+     *                    is an extension of the previous one
+     * @return  the encoded results for all the classes (a StringReference), or null if
+     *          the results could not be obtained
+     * @throws InvocationException
+     */
+    public Value invokeRunTestBatch(String classNames, Consumer<String> progress)
+        throws InvocationException
+    {
+        // Calls to this method are serialized via serverThreadLock in JdiDebugger
+
+        serverThreadStartWait();
+        
+        setStaticFieldObject(serverClass, ExecServer.CLASS_TO_RUN_NAME, classNames);
+        setStaticFieldValue(serverClass, ExecServer.EXEC_ACTION_NAME, machine.mirrorOf(ExecServer.TEST_RUN_BATCH));
+        
+        serverThreadStarted = false;
+        resumeServerThread();
+        Field resultsField = serverClass.fieldByName(ExecServer.TEST_RESULTS_NAME);
+        while (!serverThreadStartWait(TEST_PROGRESS_INTERVAL)) {
+            Value results = serverClass.getValue(resultsField);
+            if (results instanceof StringReference) {
+                progress.accept(((StringReference) results).value());
+            }
+        }
+        
+        Value rval = getStaticFieldObject(serverClass, ExecServer.METHOD_RETURN_NAME);
+        if (rval == null) {
+            ObjectReference e = getStaticFieldObject(serverClass, ExecServer.EXCEPTION_NAME);
+            if (e != null) {
+                exceptionEvent(new InvocationException(e));
+                throw new InvocationException(e);
+            }
+        }
+        return rval;
+    }
+
     /**
      * Dispose of all gui windows opened from the debug vm.
      */
@@ -1997,6 +2232,10 @@ public class VMReference
         // Calls to this method are serialized via serverThreadLock in JdiDebugger
 
         serverThreadStartWait();
+        
+        // Not sent over the command channel: disposing a window waits for the event
+        // thread, which may be busy running user code, and other commands would be
+        // held up behind it.
             
         // set the action to "dispose windows"
         setStaticFieldValue(serverClass, ExecServer.EXEC_ACTION_NAME, machine.mirrorOf(ExecServer.DISPOSE_WINDOWS));
@@ -2017,6 +2256,13 @@ public class VMReference
         try {
             synchronized(workerThread) {
                 workerThreadReadyWait();
+                if (commandChannel != null) {
+                    // The object is passed in its field; the rest goes over the channel:
+                    setStaticFieldValue(serverClass, ExecServer.OBJECT_NAME, object);
+                    if (commandChannel.addObject(scopeId, instanceName) != ExecCommandChannel.NOT_SENT) {
+                        return;
+                    }
+                }
                 setStaticFieldValue(serverClass, ExecServer.WORKER_ACTION_NAME, machine.mirrorOf(ExecServer.ADD_OBJECT));
                 
                 // parameters
@@ -2040,7 +2286,13 @@ public class VMReference
     {
         synchronized(workerThread) {
             try {
+                // (Waiting for the worker thread also makes sure that any object being added
+                // has been added before it is removed.)
                 workerThreadReadyWait();
+                if (commandChannel != null
+                        && commandChannel.removeObject(scopeId, instanceName) != ExecCommandChannel.NOT_SENT) {
+                    return;
+                }
                 setStaticFieldValue(serverClass, ExecServer.WORKER_ACTION_NAME, machine.mirrorOf(ExecServer.REMOVE_OBJECT));
         
                 // parameters
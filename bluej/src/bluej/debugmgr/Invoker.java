@@ -64,16 +64,17 @@ import threadchecker.Tag;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Debugger class that arranges invocation of constructors or methods. This
@@ -89,6 +90,13 @@ public class Invoker
     public static final int OBJ_NAME_LENGTH = 8;
     public static final String SHELLNAME = "__SHELL";
     private static int shellNumber = 0;
+    
+    /**
+     * Whether shell classes are compiled in memory and passed directly to the debug VM,
+     * rather than being written to (and compiled in) the package directory.
+     */
+    private static final boolean COMPILE_SHELLS_IN_MEMORY =
+            Config.getPropBoolean("bluej.compiler.inMemoryShells", true);
 
     private static final synchronized String getShellName()
     {
@@ -122,6 +130,11 @@ public class Invoker
     private NameTransform nameTransform;
     private InvokerCompiler compiler;
     private Charset sourceCharset;
+    /** The shell source, if it is to be compiled in memory (otherwise null) */
+    private String shellSource;
+    /** The classes generated by compiling the shell source in memory */
+    @OnThread(Tag.Any)
+    private final Map<String, byte[]> shellClasses = new ConcurrentHashMap<>();
     
     /** Name of the target object to which the call is applied */
     private final String instanceName;
@@ -171,15 +184,7 @@ public class Invoker
                 return typeName;
             }
         };
-        compiler = new InvokerCompiler() {
-            public void compile(File[] files, CompileObserver observer)
-            {
-                Project project = pkg.getProject();
-                List<CompileInputFile> wrapped = Utility.mapList(Arrays.asList(files), f -> new CompileInputFile(f, f));
-                JobQueue.getJobQueue().addJob(wrapped.toArray(new CompileInputFile[0]), observer, project.getClassLoader(),
-                        project.getProjectDir(), true, project.getProjectCharset(), CompileReason.INVOKE, CompileType.INTERNAL_COMPILE);
-            }
-        };
+        compiler = createCompiler(pkg);
         this.shellName = getShellName();
         this.sourceCharset = pkg.getProject().getProjectCharset();
         this.typeMap = null;
@@ -286,7 +291,16 @@ public class Invoker
         this.objectBench = pmf.getObjectBench();
         this.debugger = pkg.getProject().getDebugger();
         this.nameTransform = new CleverQualifyTypeNameTransform(pkg);
-        compiler = new InvokerCompiler() {
+        compiler = createCompiler(pkg);
+        this.sourceCharset = pmf.getProject().getProjectCharset();
+    }
+    
+    /**
+     * Create the compiler used to compile shell classes for the given package.
+     */
+    private static InvokerCompiler createCompiler(Package pkg)
+    {
+        return new InvokerCompiler() {
             public void compile(File[] files, CompileObserver observer)
             {
                 Project project = pkg.getProject();
@@ -294,8 +308,14 @@ public class Invoker
                 JobQueue.getJobQueue().addJob(wrapped.toArray(new CompileInputFile[0]), observer, project.getClassLoader(),
                         project.getProjectDir(), true, project.getProjectCharset(), CompileReason.INVOKE, CompileType.INTERNAL_COMPILE);
             }
+            
+            public void compileShell(File shellFile, String source, CompileObserver observer, Map<String, byte[]> classes)
+            {
+                Project project = pkg.getProject();
+                JobQueue.getJobQueue().addShellJob(new CompileInputFile(shellFile, shellFile), source, observer,
+                        project.getClassLoader(), project.getProjectDir(), project.getProjectCharset(), classes);
+            }
         };
-        this.sourceCharset = pmf.getProject().getProjectCharset();
     }
     
     /**
@@ -791,10 +811,10 @@ public class Invoker
         String scopeSave = buffer.toString();
 
         File shellFile = new File(pkgPath, shellName + ".java");
+        StringWriter shellText = new StringWriter();
         BufferedWriter shell = null;
         try {
-            FileOutputStream fos = new FileOutputStream(shellFile);
-            shell = new BufferedWriter(new OutputStreamWriter(fos, sourceCharset));
+            shell = new BufferedWriter(shellText);
 
             shell.write(packageLine);
             shell.newLine();
@@ -829,6 +849,13 @@ public class Invoker
             shell.write("}}"); // end method, class
             shell.newLine();
             shell.close();
+            
+            if (COMPILE_SHELLS_IN_MEMORY) {
+                shellSource = shellText.toString();
+            }
+            else {
+                Files.write(shellFile.toPath(), shellText.toString().getBytes(sourceCharset));
+            }
         }
         catch (IOException e) {
             DialogManager.showErrorFX(parent, "could-not-write-shell-file");
@@ -1016,8 +1043,13 @@ public class Invoker
      */
     private void compileInvocationFile(File shellFile)
     {
-        File[] files = {shellFile};
-        compiler.compile(files, new EventqueueCompileObserverAdapter(this));
+        if (shellSource != null) {
+            compiler.compileShell(shellFile, shellSource, new EventqueueCompileObserverAdapter(this), shellClasses);
+        }
+        else {
+            File[] files = {shellFile};
+            compiler.compile(files, new EventqueueCompileObserverAdapter(this));
+        }
     }
 
     // -- CompileObserver interface --
@@ -1152,6 +1184,7 @@ public class Invoker
         new Thread() {
             public void run() {
                 try {
+                    defineShellClasses();
                     DebuggerResult result = debugger.runClassMain(shellClassName);
                     
                     Platform.runLater(new Runnable() {
@@ -1172,6 +1205,29 @@ public class Invoker
         }.start();
     }
     
+    /**
+     * Pass the classes from an in-memory shell compilation to the debug VM. If the
+     * debug VM can't accept them directly, they are written to the package directory
+     * (and removed again by deleteShellFiles()).
+     */
+    @OnThread(Tag.Any)
+    private void defineShellClasses()
+    {
+        for (Map.Entry<String, byte[]> shellClass : shellClasses.entrySet()) {
+            String className = shellClass.getKey();
+            if (! debugger.defineClass(className, shellClass.getValue())) {
+                File classFile = new File(pkgPath, JavaNames.getBase(className) + ".class");
+                try {
+                    Files.write(classFile.toPath(), shellClass.getValue());
+                }
+                catch (IOException ioe) {
+                    Debug.reportError("Could not write shell class file", ioe);
+                }
+            }
+        }
+        shellClasses.clear();
+    }
+    
     /**
      * After an execution has finished, check whether there is a result (such as
      * a freshly created object, a function result or an exception) and make
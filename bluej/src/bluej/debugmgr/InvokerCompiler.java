@@ -22,6 +22,7 @@
 package bluej.debugmgr;
 
 import java.io.File;
+import java.util.Map;
 
 import bluej.compiler.CompileObserver;
 
@@ -33,4 +34,14 @@ import bluej.compiler.CompileObserver;
 public interface InvokerCompiler
 {
     void compile(File [] files, CompileObserver observer);
+    
+    /**
+     * Compile a shell class from source held in memory. The generated classes (keyed
+     * by binary name) are put in the given map before the observer is notified of the
+     * end of the compilation.
+     * 
+     * @param shellFile  The file which would hold the shell source
+     * @param source     The shell source
+     */
+    void compileShell(File shellFile, String source, CompileObserver observer, Map<String, byte[]> classes);
 }
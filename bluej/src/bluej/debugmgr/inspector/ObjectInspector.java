@@ -481,14 +481,18 @@ public class ObjectInspector extends Inspector
         // in displaying
         // the ... elements because there would be no elements for them to
         // reveal
-        if (arrayObject.getElementCount() > (VISIBLE_ARRAY_START + VISIBLE_ARRAY_TAIL + 2)) {
+        // Only the elements which are displayed are fetched from the debug VM, and
+        // each run of elements is fetched in one go.
+        int count = arrayObject.getElementCount();
+        if (count > (VISIBLE_ARRAY_START + VISIBLE_ARRAY_TAIL + 2)) {
 
             // the destination list
             List<FieldInfo> newArray = new ArrayList<FieldInfo>(2 + VISIBLE_ARRAY_START + VISIBLE_ARRAY_TAIL);
-            newArray.add(0, new FieldInfo("int length", "" + arrayObject.getElementCount()));
+            newArray.add(0, new FieldInfo("int length", "" + count));
+            List<String> startValues = arrayObject.getElementValueStrings(0, VISIBLE_ARRAY_START + 1);
             for (int i = 0; i <= VISIBLE_ARRAY_START; i++) {
                 // first 40 elements are displayed as per normal
-                newArray.add(new FieldInfo("[" + i + "]", arrayObject.getElementValueString(i)));
+                newArray.add(new FieldInfo("[" + i + "]", startValues.get(i)));
                 indexToSlotList.add(i);
             }
 
@@ -496,20 +500,22 @@ public class ObjectInspector extends Inspector
             newArray.add(new FieldInfo("[...]", ""));
             indexToSlotList.add(Integer.valueOf(ARRAY_QUERY_SLOT_VALUE));
 
+            List<String> tailValues = arrayObject.getElementValueStrings(count - VISIBLE_ARRAY_TAIL, VISIBLE_ARRAY_TAIL);
             for (int i = VISIBLE_ARRAY_TAIL; i > 0; i--) {
                 // last 5 elements are displayed
-                int elNum = arrayObject.getElementCount() - i;
-                newArray.add(new FieldInfo("[" + elNum + "]", arrayObject.getElementValueString(elNum)));
-                indexToSlotList.add(arrayObject.getElementCount() - i);
+                int elNum = count - i;
+                newArray.add(new FieldInfo("[" + elNum + "]", tailValues.get(VISIBLE_ARRAY_TAIL - i)));
+                indexToSlotList.add(elNum);
             }
             return newArray;
         }
         else {
-            List<FieldInfo> fullArrayFieldList = new ArrayList<FieldInfo>(arrayObject.getElementCount() + 1);
-            fullArrayFieldList.add(0, new FieldInfo("int length", "" + arrayObject.getElementCount()));
+            List<FieldInfo> fullArrayFieldList = new ArrayList<FieldInfo>(count + 1);
+            fullArrayFieldList.add(0, new FieldInfo("int length", "" + count));
             
-            for (int i = 0; i < arrayObject.getElementCount(); i++) {
-                fullArrayFieldList.add(new FieldInfo("[" + i + "]", arrayObject.getElementValueString(i)));
+            List<String> values = arrayObject.getElementValueStrings(0, count);
+            for (int i = 0; i < count; i++) {
+                fullArrayFieldList.add(new FieldInfo("[" + i + "]", values.get(i)));
                 indexToSlotList.add(i);
             }
             return fullArrayFieldList;
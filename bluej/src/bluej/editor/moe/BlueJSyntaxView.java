@@ -89,6 +89,8 @@ public class BlueJSyntaxView
     private static final int RIGHT_SCOPE_MARGIN = 4;
     private static final int CURVED_CORNER_SIZE = 4;
     private static final int PARAGRAPH_MARGIN = 24;
+    // Number of lines either side of the visible lines for which scopes are calculated straight away:
+    private static final int SCOPE_LINE_MARGIN = 50;
     
     // See comments in getImageFor for more info.
     // 1 means draw edge, 2 means draw filling
@@ -156,6 +158,13 @@ public class BlueJSyntaxView
      */
     private final Map<ParsedNode,Integer> nodeIndents = new HashMap<ParsedNode,Integer>();
 
+    /**
+     * Lines (0-based) whose scope backgrounds need recalculating, but which were not
+     * recalculated at the time because they were well outside the visible area of the editor.
+     * They are recalculated when they are scrolled into view (see recalculateStaleScopes).
+     */
+    private final BitSet staleScopeLines = new BitSet();
+
     /**
       * Are we in the middle of an update which comes from the RichTextFX stream of changes?
       * If so, we must not ask for character bounds because the offset calculations
@@ -262,11 +271,98 @@ public class BlueJSyntaxView
         // editorPane is null during testing -- just skip updating the scopes in that case:
         if (editorPane == null)
             return;
-        
-        recalcScopeMarkers(pendingScopes,
-                (widthProperty == null || widthProperty.get() == 0) ? 200 :
-                        ((int)widthProperty.get() - PARAGRAPH_MARGIN),
-                firstLineIncl, lastLineIncl, false);
+
+        if (document.isPrinting())
+        {
+            // All lines will be printed, so we need them all now:
+            recalcScopeMarkers(pendingScopes, getScopeWidth(), firstLineIncl, lastLineIncl, false);
+            return;
+        }
+
+        // Only calculate lines in (or near) the visible area; the rest are marked as
+        // stale and will be calculated if and when they are scrolled into view:
+        int firstVisible = editorPane.getFirstVisibleLine();
+        int lastVisible = editorPane.getLastVisibleLine();
+        if (firstVisible == -1)
+        {
+            // Not laid out yet; assume we are showing the top of the document:
+            firstVisible = 0;
+            lastVisible = 0;
+        }
+        int first = Math.max(firstLineIncl, firstVisible - SCOPE_LINE_MARGIN);
+        int last = Math.min(lastLineIncl, lastVisible + SCOPE_LINE_MARGIN);
+
+        staleScopeLines.set(firstLineIncl, lastLineIncl + 1);
+        if (first <= last)
+        {
+            staleScopeLines.clear(first, last + 1);
+            recalcScopeMarkers(pendingScopes, getScopeWidth(), first, last, false);
+        }
+    }
+
+    /**
+     * Recalculate scope margins for any lines in or near the given range (typically, the lines
+     * which have just become visible) which were previously skipped by recalculateScopes.
+     * All line numbers are 0-based.
+     *
+     * @param pendingScopes  map to store updated scope margin information.
+     * @param firstLineIncl  the first line in the range to update (inclusive).
+     * @param lastLineIncl   the last line in the range to update (inclusive).
+     * @return  true if any lines were recalculated.
+     */
+    public boolean recalculateStaleScopes(Map<Integer, ScopeInfo> pendingScopes, int firstLineIncl, int lastLineIncl)
+    {
+        if (editorPane == null)
+            return false;
+
+        int lineCount = document.getDocument().getParagraphs().size();
+        int first = Math.max(0, firstLineIncl - SCOPE_LINE_MARGIN);
+        int last = Math.min(lineCount - 1, lastLineIncl + SCOPE_LINE_MARGIN);
+        boolean any = false;
+        for (int runStart = staleScopeLines.nextSetBit(first); runStart != -1 && runStart <= last;
+                runStart = staleScopeLines.nextSetBit(runStart))
+        {
+            int runEnd = Math.min(staleScopeLines.nextClearBit(runStart) - 1, last);
+            staleScopeLines.clear(runStart, runEnd + 1);
+            recalcScopeMarkers(pendingScopes, getScopeWidth(), runStart, runEnd, false);
+            any = true;
+        }
+        // Discard any marks beyond the end of the document:
+        if (staleScopeLines.length() > lineCount)
+        {
+            staleScopeLines.clear(lineCount, staleScopeLines.length());
+        }
+        return any;
+    }
+
+    /**
+     * Notify that lines have been inserted into or removed from the document, so that
+     * the record of stale lines can be adjusted.  The lines following the given line
+     * are the ones affected.
+     *
+     * @param line           the (0-based) line in which the change began
+     * @param removedLines   the number of lines that were removed after that line
+     * @param insertedLines  the number of lines that were inserted after that line
+     */
+    void linesReplaced(int line, int removedLines, int insertedLines)
+    {
+        int oldTailStart = line + 1 + removedLines;
+        BitSet tail = staleScopeLines.get(oldTailStart, Math.max(oldTailStart, staleScopeLines.length()));
+        staleScopeLines.clear(line + 1, Math.max(line + 1, staleScopeLines.length()));
+        int newTailStart = line + 1 + insertedLines;
+        for (int i = tail.nextSetBit(0); i != -1; i = tail.nextSetBit(i + 1))
+        {
+            staleScopeLines.set(newTailStart + i);
+        }
+    }
+
+    /**
+     * Get the width available for drawing scopes.
+     */
+    private int getScopeWidth()
+    {
+        return (widthProperty == null || widthProperty.get() == 0) ? 200 :
+                ((int)widthProperty.get() - PARAGRAPH_MARGIN);
     }
 
     public Image getImageFor(ScopeInfo s, int lineHeight)
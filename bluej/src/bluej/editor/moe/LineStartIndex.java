@@ -0,0 +1,216 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.editor.moe;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * An index of line start offsets for a document, which is updated incrementally as
+ * the document is edited rather than being rebuilt from the full text.
+ *
+ * <p>Line 0 always starts at offset 0; line n starts just after the (n-1)th newline.
+ *
+ * <p>Edits which do not add or remove newlines (i.e. typing within a line) only adjust a
+ * pending offset delta which applies to all lines from a given line onwards; the delta is
+ * folded into the array when a structural change needs it. Consecutive edits on the same
+ * line therefore cost O(1), and edits which add or remove lines cost a single array shift.
+ * Lookups from offset to line are a binary search.
+ */
+@OnThread(Tag.Any)
+public class LineStartIndex
+{
+    // starts[i] is the start of line i, not counting the pending delta
+    private int[] starts = new int[16];
+    private int lineCount = 1;
+
+    // Lines with index >= deltaFrom must have pendingDelta added to their stored start
+    private int deltaFrom = 0;
+    private int pendingDelta = 0;
+
+    /**
+     * Construct an index for an empty document (which has a single line).
+     */
+    public LineStartIndex()
+    {
+    }
+
+    /**
+     * Get the number of lines in the document. This is always at least one.
+     */
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    /**
+     * Get the offset of the start of the given line (0-based).
+     */
+    public int getLineStart(int line)
+    {
+        int start = starts[line];
+        return line >= deltaFrom ? start + pendingDelta : start;
+    }
+
+    /**
+     * Get the line (0-based) which contains the given offset.  An offset just after a
+     * newline belongs to the following line.
+     */
+    public int getLineForOffset(int offset)
+    {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high)
+        {
+            // Find the last line whose start is <= offset; round up so we always make progress:
+            int mid = (low + high + 1) >>> 1;
+            if (getLineStart(mid) <= offset)
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Reset the index to describe the given text in its entirety.
+     */
+    public void reset(CharSequence text)
+    {
+        pendingDelta = 0;
+        deltaFrom = 0;
+        lineCount = 1;
+        starts[0] = 0;
+        for (int i = 0; i < text.length(); i++)
+        {
+            if (text.charAt(i) == '\n')
+            {
+                ensureCapacity(lineCount + 1);
+                starts[lineCount++] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Update the index for a document change: the text {@code removed} which was
+     * previously at {@code position} was replaced by the text {@code inserted}.
+     */
+    public void replace(int position, String removed, String inserted)
+    {
+        int line = getLineForOffset(position);
+        int removedLines = countNewlines(removed);
+        int insertedLines = countNewlines(inserted);
+        int delta = inserted.length() - removed.length();
+
+        if (removedLines == 0 && insertedLines == 0)
+        {
+            // Simple case; no lines added or removed, later lines just move:
+            addDelta(line + 1, delta);
+            return;
+        }
+
+        applyPendingDelta();
+
+        // Lines (line + 1) to (line + removedLines) inclusive are gone; the following
+        // lines move to make room for the inserted lines:
+        int tailFrom = line + 1 + removedLines;
+        int newCount = lineCount - removedLines + insertedLines;
+        ensureCapacity(newCount);
+        System.arraycopy(starts, tailFrom, starts, line + 1 + insertedLines, lineCount - tailFrom);
+
+        int index = line + 1;
+        for (int i = 0; i < inserted.length(); i++)
+        {
+            if (inserted.charAt(i) == '\n')
+            {
+                starts[index++] = position + i + 1;
+            }
+        }
+        lineCount = newCount;
+
+        addDelta(line + 1 + insertedLines, delta);
+    }
+
+    /**
+     * Add the given delta to the start of all lines from the given line onwards.
+     */
+    private void addDelta(int fromLine, int delta)
+    {
+        if (delta == 0 || fromLine >= lineCount)
+        {
+            return;
+        }
+
+        if (pendingDelta != 0 && fromLine != deltaFrom)
+        {
+            applyPendingDelta();
+        }
+        deltaFrom = fromLine;
+        pendingDelta += delta;
+    }
+
+    /**
+     * Fold any pending delta into the stored line starts.
+     */
+    private void applyPendingDelta()
+    {
+        if (pendingDelta != 0)
+        {
+            for (int i = deltaFrom; i < lineCount; i++)
+            {
+                starts[i] += pendingDelta;
+            }
+            pendingDelta = 0;
+        }
+        deltaFrom = 0;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > starts.length)
+        {
+            int[] newStarts = new int[Math.max(capacity, starts.length * 2)];
+            System.arraycopy(starts, 0, newStarts, 0, lineCount);
+            starts = newStarts;
+        }
+    }
+
+    /**
+     * Count the number of newline characters in the given text.
+     */
+    static int countNewlines(String text)
+    {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++)
+        {
+            if (text.charAt(i) == '\n')
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -164,9 +164,28 @@ public final class MoeEditorPane extends StyledTextArea<ScopeInfo, ImmutableSet<
     {
         return line >= firstVisible && line <= lastVisible;
     }
+
+    /**
+     * Get the first line (0-based) which is currently visible on screen,
+     * or -1 if this is not yet known.
+     */
+    int getFirstVisibleLine()
+    {
+        return firstVisible;
+    }
+
+    /**
+     * Get the last line (0-based) which is currently visible on screen,
+     * or -1 if this is not yet known.
+     */
+    int getLastVisibleLine()
+    {
+        return lastVisible;
+    }
     
     /**
-     * Set up a listener to calculate scope backgrounds for newly visible lines,
+     * Set up a listener to calculate scope backgrounds for newly visible lines
+     * (including those whose calculation was deferred because they were off-screen),
      * and schedule them to be painted if necessary.
      * 
      * @param virtualFlow  the virtual flow to listen to.
@@ -218,9 +237,14 @@ public final class MoeEditorPane extends StyledTextArea<ScopeInfo, ImmutableSet<
                         }
                     }
                     
+                    boolean recalculated = editor.getSourceDocument().recalculateStaleScopes(firstVisible, lastVisible);
                     if (earliestIncomplete != -1)
                     {
                         editor.getSourceDocument().recalculateScopesForLinesInRange(earliestIncomplete, latestIncomplete);
+                        recalculated = true;
+                    }
+                    if (recalculated)
+                    {
                         editor.getSourceDocument().applyPendingScopeBackgrounds();
                     }
                 });
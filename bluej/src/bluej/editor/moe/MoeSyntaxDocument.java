@@ -96,11 +96,10 @@ public class MoeSyntaxDocument
     // Can be null if we are not being used for an editor pane:
     private final BlueJSyntaxView syntaxView;
     private boolean hasFindHighlights = false;
-    // null means not cached, non-null means cached
-    private String cachedContent = null;
-    // null means not cached, non-null means cached
-    // lineStarts[0] is 0, lineStarts[1] is the index of beginning of the next line (i.e. just after \n), and so on.
-    private int[] lineStarts = null;
+    // Line start offsets, kept up to date as the document changes:
+    private final LineStartIndex lineIndex = new LineStartIndex();
+    // Maximum number of characters to supply at once for a partial-return Segment:
+    private final static int SEGMENT_CHUNK_SIZE = 4096;
     // package-visible:
     boolean notYetShown = true;
 
@@ -128,7 +127,14 @@ public class MoeSyntaxDocument
         }
 
         document.plainChanges().subscribe(c -> {
-            invalidateCache();
+            int changedLine = lineIndex.getLineForOffset(c.getPosition());
+            int removedLines = LineStartIndex.countNewlines(c.getRemoved());
+            int insertedLines = LineStartIndex.countNewlines(c.getInserted());
+            lineIndex.replace(c.getPosition(), c.getRemoved(), c.getInserted());
+            if (syntaxView != null && removedLines != insertedLines)
+            {
+                syntaxView.linesReplaced(changedLine, removedLines, insertedLines);
+            }
             // Must fire remove before insert:
             if (!c.getRemoved().isEmpty())
             {
@@ -145,10 +151,7 @@ public class MoeSyntaxDocument
                 // Apply backgrounds from simple update, as it may not even
                 // trigger a reparse.  This must be done later, after the document has finished
                 // doing all the updates to the content, before we can mess with paragraph styles:
-                JavaFXUtil.runAfterCurrent(() -> {
-                    invalidateCache();
-                    applyPendingScopeBackgrounds();
-                });
+                JavaFXUtil.runAfterCurrent(() -> applyPendingScopeBackgrounds());
             }
         });
     }
@@ -245,80 +248,64 @@ public class MoeSyntaxDocument
 
     public TwoDimensional.Position offsetToPosition(int startOffset)
     {
-        if (lineStarts == null)
-        {
-            return document.offsetToPosition(startOffset, Bias.Forward);
-        }
-        else
+        int lineFinal = lineIndex.getLineForOffset(startOffset);
+        int column = startOffset - lineIndex.getLineStart(lineFinal);
+        return new TwoDimensional.Position()
         {
-            // No need to check first line:
-            int line = 1;
-            for (; line < lineStarts.length; line++)
+            @Override
+            public TwoDimensional getTargetObject()
             {
-                if (startOffset < lineStarts[line])
-                    break;
-
+                return document;
             }
-            line -= 1; // We went just past it, so now go back one
-            int lineFinal = line;
-            int column = startOffset - lineStarts[lineFinal];
-            return new TwoDimensional.Position()
-            {
-                @Override
-                public TwoDimensional getTargetObject()
-                {
-                    return document;
-                }
 
-                @Override
-                public int getMajor()
-                {
-                    return lineFinal;
-                }
+            @Override
+            public int getMajor()
+            {
+                return lineFinal;
+            }
 
-                @Override
-                public int getMinor()
-                {
-                    return column;
-                }
+            @Override
+            public int getMinor()
+            {
+                return column;
+            }
 
-                @Override
-                public boolean sameAs(TwoDimensional.Position other)
-                {
-                    return getTargetObject() == other.getTargetObject() && getMajor() == other.getMajor() && getMinor() == other.getMinor();
-                }
+            @Override
+            public boolean sameAs(TwoDimensional.Position other)
+            {
+                return getTargetObject() == other.getTargetObject() && getMajor() == other.getMajor() && getMinor() == other.getMinor();
+            }
 
-                @Override
-                public TwoDimensional.Position clamp()
-                {
-                    return this;
-                }
+            @Override
+            public TwoDimensional.Position clamp()
+            {
+                return this;
+            }
 
-                @Override
-                public TwoDimensional.Position offsetBy(int offset, Bias bias)
-                {
-                    // Just fall back to document, don't think we call this anyway:
-                    return document.offsetToPosition(startOffset + offset, Bias.Forward);
-                }
+            @Override
+            public TwoDimensional.Position offsetBy(int offset, Bias bias)
+            {
+                // Just fall back to document, don't think we call this anyway:
+                return document.offsetToPosition(startOffset + offset, Bias.Forward);
+            }
 
-                @Override
-                public int toOffset()
-                {
-                    return startOffset;
-                }
-            };
-        }
+            @Override
+            public int toOffset()
+            {
+                return startOffset;
+            }
+        };
     }
 
-    private int getAbsolutePosition(int lineIndex, int columnIndex)
+    private int getAbsolutePosition(int line, int columnIndex)
     {
-        if (lineStarts == null || lineIndex >= lineStarts.length) // Second part shouldn't happen, but just in case
+        if (line >= lineIndex.getLineCount()) // Shouldn't happen, but just in case
         {
-            return document.getAbsolutePosition(lineIndex, columnIndex);
+            return document.getAbsolutePosition(line, columnIndex);
         }
         else
         {
-            return lineStarts[lineIndex] + columnIndex;
+            return lineIndex.getLineStart(line) + columnIndex;
         }
     }
 
@@ -375,32 +362,6 @@ public class MoeSyntaxDocument
         }
     }
 
-    private void invalidateCache()
-    {
-        cachedContent = null;
-        lineStarts = null;
-    }
-
-    private void cacheContent()
-    {
-        if (cachedContent == null)
-            cachedContent = document.getText();
-        if (lineStarts == null)
-        {
-            lineStarts = new int[document.getParagraphs().size()];
-            lineStarts[0] = 0;
-            int curLine = 0;
-            for (int character = 0; character < cachedContent.length(); character++)
-            {
-                if (cachedContent.charAt(character) == '\n')
-                {
-                    curLine += 1;
-                    lineStarts[curLine] = character + 1;
-                }
-            }
-        }
-    }
-    
     /**
      * Access the parsed node structure of this document.
      */
@@ -580,10 +541,27 @@ public class MoeSyntaxDocument
             return;
         }
         
-        cacheContent();
         syntaxView.recalculateScopes(pendingScopeBackgrounds, firstLineIncl, lastLineIncl);
     }
 
+    /**
+     * Recalculate (and schedule for re-drawing) scope margins for lines in or near the given
+     * range whose recalculation was previously deferred because they were not visible.
+     *
+     * @param firstLineIncl  the first line in the range, inclusive; 0-based.
+     * @param lastLineIncl   the last line in the range, inclusive; 0-based.
+     * @return  true if any scope margins were recalculated.
+     */
+    public boolean recalculateStaleScopes(int firstLineIncl, int lastLineIncl)
+    {
+        if (syntaxView == null)
+        {
+            return false;
+        }
+
+        return syntaxView.recalculateStaleScopes(pendingScopeBackgrounds, firstLineIncl, lastLineIncl);
+    }
+
     /**
      * Apply pending scope background updates. Must not be called from a document update
      * event.
@@ -1017,22 +995,61 @@ public class MoeSyntaxDocument
 
     public String getText(int start, int length)
     {
-        if (cachedContent == null)
+        char[] text = new char[length];
+        copyText(start, length, text);
+        return new String(text);
+    }
+
+    /**
+     * Get text from the document into the given segment.  If the segment has partial return
+     * enabled, at most SEGMENT_CHUNK_SIZE characters are supplied (the segment count indicates
+     * how many), and the segment's existing array is re-used where possible.
+     */
+    public void getText(int startOffset, int length, Segment segment)
+    {
+        if (segment.isPartialReturn())
         {
-            return document.getText(start, start + length);
+            length = Math.min(length, SEGMENT_CHUNK_SIZE);
         }
-        else
+        char[] array = segment.array;
+        if (array == null || array.length < length)
         {
-            return cachedContent.substring(start, start + length);
+            array = new char[segment.isPartialReturn() ? Math.max(length, Math.min(SEGMENT_CHUNK_SIZE, getLength())) : length];
         }
+        copyText(startOffset, length, array);
+        segment.array = array;
+        segment.offset = 0;
+        segment.count = length;
     }
 
-    public void getText(int startOffset, int length, Segment segment)
+    /**
+     * Copy a range of the document's text into the given array (at index 0), reading directly
+     * from the document paragraphs rather than taking a copy of the whole document text.
+     */
+    private void copyText(int start, int length, char[] dest)
     {
-        String s = getText(startOffset, length);
-        segment.array = s.toCharArray();
-        segment.offset = 0;
-        segment.count = s.length();
+        if (start < 0 || length < 0 || start + length > getLength())
+        {
+            throw new IndexOutOfBoundsException("Range " + start + "+" + length + " outside document of length " + getLength());
+        }
+
+        int line = lineIndex.getLineForOffset(start);
+        int column = start - lineIndex.getLineStart(line);
+        int copied = 0;
+        while (copied < length)
+        {
+            String lineText = document.getParagraph(line).getText();
+            int amount = Math.min(lineText.length() - column, length - copied);
+            lineText.getChars(column, column + amount, dest, copied);
+            copied += amount;
+            if (copied < length)
+            {
+                // Include the newline which terminates the line:
+                dest[copied++] = '\n';
+            }
+            line += 1;
+            column = 0;
+        }
     }
 
     public void insertString(int start, String text)
@@ -1081,20 +1098,12 @@ public class MoeSyntaxDocument
             @Override
             public Element getElement(int index)
             {
-                if (index >= (lineStarts != null ? lineStarts.length : document.getParagraphs().size()))
+                if (index >= lineIndex.getLineCount())
                     return null;
 
-                boolean lastPara = lineStarts != null ? (index == lineStarts.length - 1) : (index == document.getParagraphs().size() - 1);
-                int paraLength;
-                if (lineStarts == null)
-                {
-                    paraLength = document.getParagraph(index).length() + (lastPara ? 0 : 1 /* newline */);
-                }
-                else
-                {
-                    paraLength = lastPara ? (document.getLength() - lineStarts[index]) : lineStarts[index + 1] - lineStarts[index];
-                }
+                boolean lastPara = index == lineIndex.getLineCount() - 1;
                 int pos = getAbsolutePosition(index, 0);
+                int paraLength = (lastPara ? document.getLength() : lineIndex.getLineStart(index + 1)) - pos;
                 return new Element()
                 {
                     @Override
@@ -1150,10 +1159,7 @@ public class MoeSyntaxDocument
             @Override
             public int getElementCount()
             {
-                if (lineStarts != null)
-                    return lineStarts.length;
-                else
-                    return document.getParagraphs().size();
+                return lineIndex.getLineCount();
             }
         };
     }
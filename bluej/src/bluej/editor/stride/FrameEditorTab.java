@@ -1800,7 +1800,10 @@ public class FrameEditorTab extends FXTab implements InteractionManager, Suggest
     public void modifiedFrame(Frame f, boolean force)
     {
         if (f != null)
+        {
             f.trackBlank(); // Do this even if loading
+            f.markCodeStale();
+        }
 
 
         // If we are loading, we'll thread hop
@@ -1887,7 +1890,7 @@ public class FrameEditorTab extends FXTab implements InteractionManager, Suggest
     private FrameState getCurrentState(RecallableFocus f)
     {
         regenerateCode();
-        return new FrameState(getTopLevelFrame(), getSource(), f);
+        return new FrameState(getTopLevelFrame(), getSource(), f, undoRedoManager.getCurrent());
     }
 
     @OnThread(Tag.FXPlatform)
@@ -1900,7 +1903,8 @@ public class FrameEditorTab extends FXTab implements InteractionManager, Suggest
 
         editor.recordEdits(StrideEditReason.FLUSH);
         undoRedoManager.startRestoring();
-        updateClassContents(undoRedoManager.undo());
+        FrameState shown = undoRedoManager.getCurrent();
+        updateClassContents(shown, undoRedoManager.undo());
         undoRedoManager.stopRestoring();
         editor.recordEdits(StrideEditReason.UNDO_GLOBAL);
     }
@@ -1910,19 +1914,24 @@ public class FrameEditorTab extends FXTab implements InteractionManager, Suggest
     {
         editor.recordEdits(StrideEditReason.FLUSH);
         undoRedoManager.startRestoring();
-        updateClassContents(undoRedoManager.redo());
+        FrameState shown = undoRedoManager.getCurrent();
+        updateClassContents(shown, undoRedoManager.redo());
         undoRedoManager.stopRestoring();
         editor.recordEdits(StrideEditReason.REDO_GLOBAL);
     }
 
+    /**
+     * Restore the given state, replacing the given state which is currently shown.
+     */
     @OnThread(Tag.FXPlatform)
-    private void updateClassContents(FrameState state)
+    private void updateClassContents(FrameState shown, FrameState state)
     {
         if (state != null) {
-            final ClassElement classElement = state.getClassElement(projectResolver,
+            state.restoreTo(getTopLevelFrame(), shown, this, projectResolver,
                     editor.getPackage().getQualifiedName());
-            getTopLevelFrame().restoreCast(classElement);
+            // Restoring marks the frames it changes as modified, so only their code is regenerated:
             getTopLevelFrame().regenerateCode();
+            state.noteShown(getTopLevelFrame().getCode(), shown);
             Node n = state.recallFocus(getTopLevelFrame());
             if (n != null)
             {
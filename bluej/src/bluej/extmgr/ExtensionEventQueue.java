@@ -0,0 +1,186 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.extmgr;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
+
+import bluej.Config;
+import bluej.extensions.event.ExtensionEvent;
+import bluej.utility.Debug;
+import bluej.utility.Utility;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * The queue of events waiting to be delivered to one extension. Events are delivered
+ * later, on the GUI thread, so that whatever generated an event (such as a compilation)
+ * isn't held up by the extensions handling it. Each extension receives its events in
+ * the order they were generated.
+ *
+ * <p>This does not isolate extensions from each other, or the GUI from extensions.
+ * Extensions' listeners must be called on the GUI thread, since that is where the
+ * extensions API may be used, and every extension's queue is drained there; so a
+ * handler which takes a long time freezes the GUI, and holds up the events of every
+ * other extension, while it runs. The queue is drained a slice of time at a time, which
+ * lets the GUI thread do other work between events, but not during one. Handlers which
+ * are slow are reported in the debug log.
+ *
+ * <p>Events are only dropped if an extension falls more than CAPACITY events behind, in
+ * which case its oldest waiting events are dropped. A slow handler therefore only loses
+ * events if they keep arriving faster than it handles them.
+ */
+@OnThread(Tag.SwingIsFX)
+class ExtensionEventQueue
+{
+    // The most events which may be waiting:
+    static final int CAPACITY = 256;
+    // How long to deliver events for before letting the GUI thread do other work:
+    private static final long SLICE_NANOS = 20_000_000L;
+    // Handlers which take longer than this are reported:
+    private static final long SLOW_HANDLER_NANOS = 100_000_000L;
+
+    // The extension's class name (for messages), and the delivery of an event to it:
+    private final Supplier<String> extensionName;
+    private final Consumer<ExtensionEvent> handler;
+    private final ArrayDeque<ExtensionEvent> pending = new ArrayDeque<>();
+    private boolean drainScheduled = false;
+
+    // Statistics, shown in the extensions dialog:
+    private long handledCount;
+    private long totalNanos;
+    private long longestNanos;
+    private long slowCount;
+    private long droppedCount;
+
+    ExtensionEventQueue(ExtensionWrapper wrapper)
+    {
+        this(wrapper::getExtensionClassName, wrapper::safeEventOccurred);
+    }
+
+    /**
+     * Create a queue which delivers events to the given handler.
+     */
+    ExtensionEventQueue(Supplier<String> extensionName, Consumer<ExtensionEvent> handler)
+    {
+        this.extensionName = extensionName;
+        this.handler = handler;
+    }
+
+    /**
+     * Add an event to the queue, to be delivered later.
+     */
+    void post(ExtensionEvent event)
+    {
+        if (pending.size() >= CAPACITY) {
+            pending.removeFirst();
+            if (droppedCount++ == 0) {
+                Debug.message("Extension " + extensionName.get()
+                        + " is not keeping up with events; some events will not be delivered to it");
+            }
+        }
+        pending.addLast(event);
+
+        if (!drainScheduled) {
+            drainScheduled = true;
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    /**
+     * Deliver an event now, after delivering any events which are already waiting.
+     * This is for events which the extension must see before we continue, for example
+     * because the extension is about to be terminated.
+     */
+    void deliverNow(ExtensionEvent event)
+    {
+        while (!pending.isEmpty()) {
+            deliver(pending.removeFirst());
+        }
+        deliver(event);
+    }
+
+    /**
+     * Discard any waiting events.
+     */
+    void clear()
+    {
+        pending.clear();
+    }
+
+    /**
+     * Get the number of events which have been dropped because the extension fell too
+     * far behind.
+     */
+    long getDroppedCount()
+    {
+        return droppedCount;
+    }
+
+    /**
+     * Get a description of how quickly the extension has handled events, for display.
+     */
+    String getStatistics()
+    {
+        long averageMillis = handledCount == 0 ? 0 : totalNanos / handledCount / 1_000_000L;
+        return Utility.mergeStrings(Config.getString("extmgr.details.events"), new String[] {
+                Long.toString(handledCount), Long.toString(averageMillis),
+                Long.toString(longestNanos / 1_000_000L), Long.toString(droppedCount)});
+    }
+
+    private void drain()
+    {
+        drainScheduled = false;
+        long sliceStart = System.nanoTime();
+        while (!pending.isEmpty()) {
+            if (System.nanoTime() - sliceStart > SLICE_NANOS) {
+                // Let the GUI thread do something else before we carry on:
+                drainScheduled = true;
+                SwingUtilities.invokeLater(this::drain);
+                return;
+            }
+            deliver(pending.removeFirst());
+        }
+    }
+
+    private void deliver(ExtensionEvent event)
+    {
+        long start = System.nanoTime();
+        handler.accept(event);
+        long taken = System.nanoTime() - start;
+
+        handledCount++;
+        totalNanos += taken;
+        longestNanos = Math.max(longestNanos, taken);
+        if (taken > SLOW_HANDLER_NANOS) {
+            slowCount++;
+            // Report the first slow event, and then increasingly rarely:
+            if (Long.bitCount(slowCount) == 1) {
+                Debug.message("Extension " + extensionName.get() + " took " + (taken / 1_000_000L)
+                        + "ms to handle " + event + " (" + slowCount + " slow events so far)");
+            }
+        }
+    }
+}
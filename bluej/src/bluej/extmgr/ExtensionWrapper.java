@@ -79,6 +79,9 @@ public class ExtensionWrapper
     private String  extensionStatusString;
     private Project project;
 
+    // Events waiting to be delivered to the extension:
+    private final ExtensionEventQueue eventQueue = new ExtensionEventQueue(this);
+
     /**
      * Construct a new ExtensionWrapper for the given jar file.
      * 
@@ -236,6 +239,15 @@ public class ExtensionWrapper
     }
 
 
+    /**
+     * Gets the queue of events waiting to be delivered to this extension.
+     */
+    ExtensionEventQueue getEventQueue()
+    {
+        return eventQueue;
+    }
+
+
     /**
      *  Checks if a this extension is valid
      *
@@ -266,6 +278,7 @@ public class ExtensionWrapper
      */
     void terminate()
     {
+        eventQueue.clear();
         safeTerminate();
 
         // Needed to signal to the revalidate (below) that this instance is no longer here.            
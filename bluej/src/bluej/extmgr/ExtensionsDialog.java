@@ -101,9 +101,10 @@ public class ExtensionsDialog
             boolean isProject = wrapper.getProject() != null;
             String extensionFileName = wrapper.getExtensionFileName();
             URL url = wrapper.safeGetURL();
+            String eventStatistics = wrapper.getEventQueue().getStatistics();
             // But create the TitledPane on the FX thread:
             Platform.runLater(() -> 
-                extensionsVBox.getChildren().add(makeDisplay(extensionName, extensionStatus, extensionVersion, extensionDescription, isProject, extensionFileName, url))
+                extensionsVBox.getChildren().add(makeDisplay(extensionName, extensionStatus, extensionVersion, extensionDescription, isProject, extensionFileName, url, eventStatistics))
             );
         });
     }
@@ -114,7 +115,7 @@ public class ExtensionsDialog
     }
 
     @OnThread(Tag.FXPlatform)
-    private TitledPane makeDisplay(String extensionName, String extensionStatus, String extensionVersion, String extensionDescription, boolean isProject, String extensionFileName, URL url)
+    private TitledPane makeDisplay(String extensionName, String extensionStatus, String extensionVersion, String extensionDescription, boolean isProject, String extensionFileName, URL url, String eventStatistics)
     {
         String typeShort = isProject ? projectString : systemString;
         String typeLong = isProject ? projectLongString : systemLongString;
@@ -129,6 +130,7 @@ public class ExtensionsDialog
 
         mainPanel.getChildren().add(new Label(locationTag + " " + extensionFileName +
             " (" + extensionStatus +')'));
+        mainPanel.getChildren().add(new Label(eventStatistics));
 
         Text description = new Text(extensionDescription);
         mainPanel.getChildren().add(new TextFlow(description));
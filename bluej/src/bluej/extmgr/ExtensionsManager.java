@@ -369,13 +369,30 @@ public class ExtensionsManager
     }
 
     /**
-     * Delegates an event to all known extensions.
+     * Delegates an event to all known extensions. The event is queued for each
+     * extension, and delivered to it later (see ExtensionEventQueue).
      */
+    @OnThread(Tag.SwingIsFX)
     public void delegateEvent(ExtensionEvent event)
     {
-        synchronized(extensions) {            
-            for (ExtensionWrapper wrapper : extensions) {
-                wrapper.safeEventOccurred(event);
+        List<ExtensionWrapper> wrappers;
+        synchronized(extensions) {
+            wrappers = new ArrayList<ExtensionWrapper>(extensions);
+        }
+
+        // Extensions must see a package closing while it is still open, and they may be
+        // terminated straight afterwards, so that event is delivered immediately:
+        boolean immediate = event instanceof PackageEvent
+                && ((PackageEvent) event).getEvent() == PackageEvent.PACKAGE_CLOSING;
+        for (ExtensionWrapper wrapper : wrappers) {
+            if (! wrapper.isValid()) {
+                continue;
+            }
+            if (immediate) {
+                wrapper.getEventQueue().deliverNow(event);
+            }
+            else {
+                wrapper.getEventQueue().post(event);
             }
         }
     }
@@ -23,6 +23,7 @@ package bluej.groupwork;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -148,4 +149,24 @@ public interface Repository
      * Gets the version control protocol, for data collection purposes
      */
     public String getVCSProtocol();
+
+    /**
+     * Note that the given files in the local copy have just been written (e.g. by saving
+     * the project), so that any status information cached for them is refreshed when the
+     * status is next requested.
+     */
+    public void noteChanged(Collection<File> files);
+
+    /**
+     * Note that files in the local copy have been modified, but it is not known which
+     * (e.g. because saving the project failed part way), so that any status information
+     * cached for the local copy is discarded before the status is next requested.
+     */
+    public void discardCachedStatus();
+    
+    /**
+     * Release any resources (such as file system watchers) held for the local copy.
+     * Called when the project is closed.
+     */
+    public void close();
 }
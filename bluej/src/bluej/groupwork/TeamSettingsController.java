@@ -229,6 +229,16 @@ public class TeamSettingsController
         return trytoEstablishRepository(auth) != null;
     }
     
+    /**
+     * Close the repository, if it has been established. Called when the project is closed.
+     */
+    public void closeRepository()
+    {
+        if (repository != null) {
+            repository.close();
+        }
+    }
+    
     /**
      * Get a list of files (and possibly directories) in the project which should be
      * under version control management. This includes files which have been locally
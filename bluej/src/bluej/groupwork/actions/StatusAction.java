@@ -22,12 +22,16 @@
 package bluej.groupwork.actions;
 
 import bluej.Config;
+import bluej.groupwork.Repository;
 import bluej.groupwork.ui.StatusFrame;
 import bluej.pkgmgr.PkgMgrFrame;
 import bluej.pkgmgr.Project;
 import javafx.stage.Stage;
 import javafx.stage.Window;
 
+import java.io.File;
+import java.util.List;
+
 
 /**
  * Action to show status.
@@ -47,13 +51,18 @@ public class StatusAction extends TeamAction
     {
         // save all bluej.pkg files first
         Project project = pmf.getProject();
-        project.saveAll();
-        doStatus(pmf);
+        List<File> savedFiles = project.saveAll();
+        doStatus(pmf, savedFiles);
     }
 
-    private void doStatus(PkgMgrFrame pmf)
+    private void doStatus(PkgMgrFrame pmf, List<File> savedFiles)
     {
         if (pmf.getProject().getTeamSettingsController().initRepository()) {
+            // We've just saved the project, so cached status may be out of date:
+            Repository repository = pmf.getProject().getTeamSettingsController().trytoEstablishRepository(true);
+            if (repository != null) {
+                repository.noteChanged(savedFiles);
+            }
             StatusFrame status = pmf.getProject().getStatusWindow();
             if (! status.isShowing())
             {
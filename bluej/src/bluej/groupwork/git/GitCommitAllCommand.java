@@ -29,8 +29,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Set;
+import org.eclipse.jgit.api.AddCommand;
 import org.eclipse.jgit.api.CommitCommand;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.RmCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.errors.UnmergedPathException;
 
@@ -60,20 +62,27 @@ public class GitCommitAllCommand extends GitCommand
     @Override
     public TeamworkCommandResult getResult()
     {
-        try (Git repo = Git.open(this.getRepository().getProjectPath())) {
+        try (Git repo = this.getRepository().openGit()) {
             CommitCommand commit = repo.commit();
-            //stage new files
 
             //jGit works with relative paths.
             Path basePath = Paths.get(this.getRepository().getProjectPath().toString());
 
+            //Stage all the changes with a single "add" and a single "rm", since
+            //each of these reads and writes the whole index (DirCache).
+            AddCommand add = repo.add();
+            boolean haveAdditions = false;
+            RmCommand rm = repo.rm();
+            boolean haveRemovals = false;
+
             //files for addition
             for (File f : newFiles)
             {
                 String fileName = GitUtilities.getRelativeFileName(basePath, f);
                 if (!fileName.isEmpty() && !f.isDirectory())
                 {
-                    repo.add().addFilepattern(fileName).call();
+                    add.addFilepattern(fileName);
+                    haveAdditions = true;
                 }
             }
 
@@ -83,18 +92,11 @@ public class GitCommitAllCommand extends GitCommand
                 String fileName = GitUtilities.getRelativeFileName(basePath, f);
                 if (!fileName.isEmpty())
                 {
-                    repo.rm().addFilepattern(fileName).call();
+                    rm.addFilepattern(fileName);
+                    haveRemovals = true;
                 }
             }
 
-
-            //deleted files are handled by the commit command.
-            //by setting setAll to true, we are forcibly including modified
-            //and deleted files to the commit.
-            //setting it to false allow us to add the modified files 
-            //we want include
-            commit.setAll(false);
-
             //modified files
             for (File f : files)
             {
@@ -103,11 +105,28 @@ public class GitCommitAllCommand extends GitCommand
                 {
                     if (!deletedFiles.contains(f))
                     {
-                        repo.add().addFilepattern(fileName).call();
+                        add.addFilepattern(fileName);
+                        haveAdditions = true;
                     }
                 }
             }
 
+            if (haveAdditions)
+            {
+                add.call();
+            }
+            if (haveRemovals)
+            {
+                rm.call();
+            }
+
+            //deleted files are handled by the commit command.
+            //by setting setAll to true, we are forcibly including modified
+            //and deleted files to the commit.
+            //setting it to false allow us to add the modified files 
+            //we want include
+            commit.setAll(false);
+
             //add the comment to the commit.
             commit.setMessage(commitComment);
             //set name and email of the author of the commit.
@@ -44,7 +44,7 @@ public class GitFetchCommand extends GitCommand
       @Override
     public TeamworkCommandResult getResult()
     {
-        try (Git repo = Git.open(this.getRepository().getProjectPath())) {
+        try (Git repo = this.getRepository().openGit()) {
             
             FetchCommand fetch = repo.fetch();
             disableFingerprintCheck(fetch);
@@ -25,23 +25,38 @@ import bluej.groupwork.HistoryInfo;
 import bluej.groupwork.LogHistoryListener;
 import bluej.groupwork.TeamworkCommandError;
 import bluej.groupwork.TeamworkCommandResult;
-import bluej.utility.Debug;
+import bluej.utility.GeneralCache;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 /**
  * A Git history command.
+ * 
+ * <p>Commits are reported to the listener one at a time, newest first, as the history
+ * is walked. The files listed for each commit are those which it changed (compared to
+ * its first parent).
  *
  * @author Fabio Heday
  */
 public class GitHistoryCommand extends GitCommand
 {
+    /**
+     * The files changed by each commit, keyed by commit id. A commit can never change,
+     * so entries are valid for as long as they are kept, whichever repository they are
+     * from.
+     */
+    private static final GeneralCache<ObjectId, String[]> changedFilesCache = new GeneralCache<>(5000);
 
     private final LogHistoryListener listener;
 
@@ -54,38 +69,70 @@ public class GitHistoryCommand extends GitCommand
     @Override
     public TeamworkCommandResult getResult()
     {
-        try (Git repo = Git.open(this.getRepository().getProjectPath())) {
-            Iterable<RevCommit> logs = repo.log().call();
-            logs.forEach((RevCommit rev) -> {
-                ArrayList<String> files = new ArrayList<>();
-                //every commit generates a revision with the commiter information
-                //e.g.: name, e-mail, date and time of commit
-                //to Access the commited files, we need to walk through the
-                //the subtree.
-                try (TreeWalk treeWalk = new TreeWalk(repo.getRepository())){
-                    treeWalk.addTree(rev.getTree());
-                    boolean hasNext = treeWalk.next();
-                    while (hasNext) {
-                        files.add(treeWalk.getPathString());
-                        hasNext = treeWalk.next();
-                    }
-                } catch (IOException ex) {
-                    Debug.reportError(ex.getMessage());
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd hh:mm:ss");
+        try (Git git = this.getRepository().openGit();
+             RevWalk revWalk = new RevWalk(git.getRepository());
+             DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            Repository repo = git.getRepository();
+            diffFormatter.setRepository(repo);
+
+            ObjectId head = repo.resolve("HEAD");
+            if (head == null) {
+                // No commits yet
+                return new TeamworkCommandResult();
+            }
+            revWalk.sort(RevSort.COMMIT_TIME_DESC);
+            revWalk.markStart(revWalk.parseCommit(head));
+
+            for (RevCommit rev : revWalk) {
+                if (isCancelled()) {
+                    break;
                 }
 
+                String[] files = getChangedFiles(rev, revWalk, diffFormatter);
+
                 //Jgit returns the date by seconds after epoch, but Java works in
                 //milliseconds. conversion is needed.
                 Date date = new Date(rev.getCommitTime() * 1000L);
-                String dateString = new SimpleDateFormat("yyyy/MM/dd hh:mm:ss").format(date);
+                String dateString = dateFormat.format(date);
 
-                HistoryInfo info = new HistoryInfo(files.toArray(new String[files.size()]), "", dateString, rev.getAuthorIdent().getName(), rev.getFullMessage());
+                HistoryInfo info = new HistoryInfo(files, "", dateString, rev.getAuthorIdent().getName(), rev.getFullMessage());
                 listener.logInfoAvailable(info);
-            });
-
-        } catch (GitAPIException | IOException ex) {
+            }
+        } catch (IOException ex) {
             return new TeamworkCommandError(ex.getMessage(), ex.getLocalizedMessage());
         }
         return new TeamworkCommandResult();
     }
 
+    /**
+     * Get the paths of the files changed by a commit, relative to its first parent
+     * (or, for the initial commit, all the files it added).
+     */
+    private static String[] getChangedFiles(RevCommit rev, RevWalk revWalk, DiffFormatter diffFormatter)
+        throws IOException
+    {
+        synchronized (changedFilesCache) {
+            String[] files = changedFilesCache.get(rev.getId());
+            if (files != null) {
+                return files;
+            }
+        }
+
+        RevCommit parent = null;
+        if (rev.getParentCount() > 0) {
+            parent = revWalk.parseCommit(rev.getParent(0));
+        }
+        List<DiffEntry> diffs = diffFormatter.scan(parent == null ? null : parent.getTree(), rev.getTree());
+        String[] files = new String[diffs.size()];
+        for (int i = 0; i < files.length; i++) {
+            DiffEntry diff = diffs.get(i);
+            files[i] = diff.getChangeType() == DiffEntry.ChangeType.DELETE ? diff.getOldPath() : diff.getNewPath();
+        }
+
+        synchronized (changedFilesCache) {
+            changedFilesCache.put(rev.copy(), files);
+        }
+        return files;
+    }
 }
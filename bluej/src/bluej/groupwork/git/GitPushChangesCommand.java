@@ -48,7 +48,7 @@ public class GitPushChangesCommand extends GitCommand
     @Override
     public TeamworkCommandResult getResult()
     {
-        try (Git repo = Git.open(this.getRepository().getProjectPath())) {
+        try (Git repo = this.getRepository().openGit()) {
             PushCommand push = repo.push();
             disableFingerprintCheck(push);
             Iterable<PushResult> pushResults = push.call();
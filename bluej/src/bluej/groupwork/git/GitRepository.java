@@ -30,6 +30,7 @@ import bluej.utility.Debug;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import org.eclipse.jgit.api.Git;
@@ -39,12 +40,14 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.RevWalkUtils;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.util.FS;
 
 /**
  *
@@ -179,7 +182,7 @@ public class GitRepository implements Repository
     public void getAllLocallyDeletedFiles(Set<File> files)
     {
         
-        try (Git repo = Git.open(getProjectPath())) {
+        try (Git repo = openGit()) {
             Status s = repo.status().call();
 
             File gitPath = new File(getProjectPath().getParent());
@@ -204,6 +207,24 @@ public class GitRepository implements Repository
         return protocol;
     }
     
+    @Override
+    public void noteChanged(Collection<File> files)
+    {
+        GitStatusWatcher.noteChanged(projectPath, files);
+    }
+
+    @Override
+    public void discardCachedStatus()
+    {
+        GitStatusWatcher.invalidate(projectPath);
+    }
+
+    @Override
+    public void close()
+    {
+        GitStatusWatcher.stop(projectPath);
+    }
+    
     public UsernamePasswordCredentialsProvider getCredentialsProvider() 
     {
         // set a configuration with username and password.
@@ -233,6 +254,36 @@ public class GitRepository implements Repository
         return this.projectPath;
     }
     
+    /**
+     * Open the local repository. The underlying JGit repository is shared (through JGit's
+     * RepositoryCache) by all commands on the same project, so that it isn't re-opened and
+     * its state (such as the lists of references and pack files) re-read by every command.
+     * The returned Git should still be closed once the command is finished with it; the
+     * repository is actually closed some time after it is no longer in use.
+     */
+    Git openGit() throws IOException
+    {
+        RepositoryCache.FileKey key = RepositoryCache.FileKey.lenient(projectPath, FS.DETECTED);
+        return new SharedGit(RepositoryCache.open(key, true));
+    }
+    
+    /**
+     * A Git which releases (rather than closes) its repository when it is closed.
+     */
+    private static class SharedGit extends Git
+    {
+        SharedGit(org.eclipse.jgit.lib.Repository repo)
+        {
+            super(repo);
+        }
+        
+        @Override
+        public void close()
+        {
+            getRepository().close();
+        }
+    }
+    
     
     /** Utility methods **/
     
@@ -26,17 +26,14 @@ import bluej.groupwork.TeamStatusInfo;
 import bluej.groupwork.TeamStatusInfo.Status;
 import bluej.groupwork.TeamworkCommandError;
 import bluej.groupwork.TeamworkCommandResult;
-import static bluej.groupwork.git.GitUtilities.findForkPoint;
-import static bluej.groupwork.git.GitUtilities.getBehindCount;
-import static bluej.groupwork.git.GitUtilities.getDiffs;
 import static bluej.groupwork.git.GitUtilities.getFileNameFromDiff;
-import static bluej.groupwork.git.GitUtilities.isAheadOnly;
 import bluej.utility.Debug;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
@@ -45,8 +42,6 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.errors.NoWorkTreeException;
-import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.lib.IndexDiff;
 
 import threadchecker.OnThread;
 import threadchecker.Tag;
@@ -75,94 +70,19 @@ public class GitStatusCommand extends GitCommand
     public TeamworkCommandResult getResult()
     {
         boolean didFilesChange = true;
-        LinkedList<TeamStatusInfo> returnInfo = new LinkedList<>();
+        StatusList returnInfo = new StatusList();
         File gitPath = this.getRepository().getProjectPath();
 
-        try (Git repo = Git.open(this.getRepository().getProjectPath()))
+        try (Git repo = this.getRepository().openGit())
         {
             //check local status
-            org.eclipse.jgit.api.Status s = repo.status().call();
-
-            // A file which has had changes merged as a result of a pull will be in a "unmerged"
-            // state, and will appear in "uncommitted changes" as well as "conflicting" (with
-            // BOTH_MODIFIED or one of the other "stages").
-            
-            s.getMissing().stream()
-                    .filter(p -> filter.accept(new File(gitPath, p)))
-                    .forEach(item -> {
-                        TeamStatusInfo teamInfo = new TeamStatusInfo(new File(gitPath, item), "", null, Status.DELETED);
-                        returnInfo.add(teamInfo);
-                    });
-
-            // "removed" files have been staged for removal ("git rm")
-            s.getRemoved().stream()
-                    .filter(p -> filter.accept(new File(gitPath, p)))
-                    .forEach(item -> {
-                        // Note this status might get altered below, if the file has been re-created
-                        // in the meantime:
-                        returnInfo.add(new TeamStatusInfo(new File(gitPath, item), "", null,
-                                Status.DELETED));
-                    });
-            
-            s.getUncommittedChanges().stream()
-                    .filter(p -> filter.accept(new File(gitPath, p)))
-                    .forEach(item -> {
-                        TeamStatusInfo teamInfo = new TeamStatusInfo(new File(gitPath, item), "", null, Status.NEEDS_COMMIT);
-                        TeamStatusInfo existingStatusInfo = getTeamStatusInfo(returnInfo, teamInfo.getFile());
-                        if (existingStatusInfo == null) {
-                            //add this new entry to the returnInfo.
-                            returnInfo.add(teamInfo);
-                        }
-                    });
-
-            s.getUntracked().stream()
-                    .filter(p -> filter.accept(new File(gitPath, p)))
-                    .forEach(item -> returnInfo.add(new TeamStatusInfo(new File(gitPath, item), "", null, Status.NEEDS_ADD)));
-
-            s.getUntrackedFolders().stream()
-                    .filter(p -> filter.accept(new File(gitPath, p)))
-                    .forEach(item -> returnInfo.add(new TeamStatusInfo(new File(gitPath, item), "", null, Status.NEEDS_ADD)));
-
-            Map<String, IndexDiff.StageState> conflictsMap = s.getConflictingStageState();
-            s.getConflicting().stream()
-                    .filter(p -> filter.accept(new File(gitPath, p)))
-                    .forEach(item -> {
-                        TeamStatusInfo teamInfo = getTeamStatusInfo(returnInfo, new File(gitPath, item));
-                        if (teamInfo == null)
-                        {
-                            Debug.message("Git unexpected status: file is "
-                                    + "conflicting but not otherwise noted? (" + item + ")");
-                            teamInfo = new TeamStatusInfo(new File(gitPath, item), "", null, Status.NEEDS_MERGE);
-                            returnInfo.add(teamInfo);
-                        }
-                        else
-                        {
-                            IndexDiff.StageState sstate = conflictsMap.get(item);
-                            // Note: for local status, NEEDS_MERGE actually means "needs commit to
-                            // resolve merge".
-                            switch (sstate)
-                            {
-                                case DELETED_BY_THEM:
-                                    teamInfo.setStatus(Status.CONFLICT_LMRD);
-                                    break;
-                                case DELETED_BY_US:
-                                    teamInfo.setStatus(Status.CONFLICT_LDRM);
-                                    break;
-                                case BOTH_ADDED:
-                                    teamInfo.setStatus(Status.CONFLICT_ADD);
-                                    break;
-                                case BOTH_MODIFIED:
-                                    teamInfo.setStatus(Status.NEEDS_MERGE);
-                                    break;
-                                default:
-                                    Debug.message("Git status, unknown/unhandled conflict state: " + sstate + " (" + item + ")");
-                                    teamInfo.setStatus(Status.NEEDS_MERGE);
-                            }
-                        }
-                    });
-
-            // check for files to push to remote repository.
-            List<DiffEntry> listOfDiffsLocal, listOfDiffsRemote;
+            GitStatusWatcher watcher = GitStatusWatcher.forProject(gitPath);
+            watcher.getLocalStatus(repo).forEach((item, status) -> {
+                File file = new File(gitPath, item);
+                if (filter.accept(file)) {
+                    returnInfo.add(new TeamStatusInfo(file, "", null, status));
+                }
+            });
 
             if (includeRemote) {
                 //update information about remote repository.
@@ -174,13 +94,9 @@ public class GitStatusCommand extends GitCommand
                 }
             }
 
-            RevCommit forkPoint = findForkPoint(repo.getRepository(), "origin/master", "HEAD");
-            
-            //find diffs between master/head and the forkpoint.
-            listOfDiffsLocal = getDiffs(repo, "HEAD", forkPoint);
-            //check for differences between forkpoint and remote repo head.
-            listOfDiffsRemote = getDiffs(repo, "origin/master", forkPoint);
-            updateRemoteStatus(gitPath, listOfDiffsLocal, listOfDiffsRemote, returnInfo);
+            // check for files to push to remote repository.
+            GitStatusWatcher.RemoteStatus remoteStatus = watcher.getRemoteStatus(repo);
+            updateRemoteStatus(gitPath, remoteStatus.localDiffs, remoteStatus.remoteDiffs, returnInfo);
             
             if (returnInfo.isEmpty()){
                 didFilesChange = false;
@@ -190,11 +106,10 @@ public class GitStatusCommand extends GitCommand
                 // Git does not show any add up-to-date file. We need to add them manually to returnInfo.
                 addUpToDateFiles(returnInfo, gitPath);
                 
-                while (!returnInfo.isEmpty()) {
-                    TeamStatusInfo teamInfo = returnInfo.removeFirst();
+                for (TeamStatusInfo teamInfo : returnInfo.entries) {
                     listener.gotStatus(teamInfo);
                 }
-                listener.statusComplete(new GitStatusHandle(getRepository(), didFilesChange && isAheadOnly(repo), didFilesChange && getBehindCount(repo) > 0));
+                listener.statusComplete(new GitStatusHandle(getRepository(), didFilesChange && remoteStatus.aheadOnly, didFilesChange && remoteStatus.behindCount > 0));
             }
         }
         catch (IOException | GitAPIException | NoWorkTreeException | GitTreeException ex)
@@ -213,7 +128,7 @@ public class GitStatusCommand extends GitCommand
      * @param returnInfo  list of file status
      * @param path        path to search
      */
-    private void addUpToDateFiles(LinkedList<TeamStatusInfo> returnInfo, File path)
+    private void addUpToDateFiles(StatusList returnInfo, File path)
     {
         for (File item : path.listFiles()) {
             if (filter.accept(item)) {
@@ -221,7 +136,7 @@ public class GitStatusCommand extends GitCommand
                     addUpToDateFiles(returnInfo, item);
                 }
                 else {
-                    TeamStatusInfo itemStatus = getTeamStatusInfo(returnInfo, item);
+                    TeamStatusInfo itemStatus = returnInfo.get(item);
                     if (itemStatus == null) {
                         //file does not exist in the list, therefore it is up-to-date.
                         returnInfo.add(new TeamStatusInfo(item, "", null,
@@ -233,33 +148,37 @@ public class GitStatusCommand extends GitCommand
     }
 
     /**
-     * checks if a file already has an entry on returnInfo
-     *
-     * @param returnInfo list of TeamStatusInfo to be checked
-     * @param file file to check
-     * @return null if there is no entry of that file. The entry if it exists.
+     * The status entries found so far, in the order they were found, together with
+     * an index of the (first) entry for each file.
      */
-    private TeamStatusInfo getTeamStatusInfo(LinkedList<TeamStatusInfo> returnInfo, File file)
+    private static class StatusList
     {
-        try {
-            return returnInfo.stream().filter(entry -> entry.getFile().getPath().contains(file.getPath())).findFirst().get();
-        } catch (Exception e) {
-            return null;
+        final List<TeamStatusInfo> entries = new ArrayList<>();
+        private final Map<File, TeamStatusInfo> byFile = new HashMap<>();
+
+        void add(TeamStatusInfo info)
+        {
+            entries.add(info);
+            byFile.putIfAbsent(info.getFile(), info);
         }
-    }
 
+        /**
+         * Get the entry for the given file, or null if there is no entry for that file.
+         */
+        TeamStatusInfo get(File file)
+        {
+            return byFile.get(file);
+        }
 
-    private Optional<DiffEntry> getDiffFromList(List<DiffEntry> list, DiffEntry entry)
-    {
-        Optional<DiffEntry> result;
-        String entryFileName = getFileNameFromDiff(entry);
-        result = list.stream().filter(p -> getFileNameFromDiff(p).equals(entryFileName)).findFirst();
-        return result;
+        boolean isEmpty()
+        {
+            return entries.isEmpty();
+        }
     }
 
-    private void updateRemoteStatus(LinkedList<TeamStatusInfo> returnInfo, File file, Status remoteStatus)
+    private void updateRemoteStatus(StatusList returnInfo, File file, Status remoteStatus)
     {
-        TeamStatusInfo entry = getTeamStatusInfo(returnInfo, file);
+        TeamStatusInfo entry = returnInfo.get(file);
         if (entry != null) {
             entry.setRemoteStatus(remoteStatus);
         } else {
@@ -269,8 +188,14 @@ public class GitStatusCommand extends GitCommand
         }
     }
 
-    private void updateRemoteStatus(File gitPath, List<DiffEntry> listOfDiffsLocal, List<DiffEntry> listOfDiffsRemote, LinkedList<TeamStatusInfo> returnInfo)
+    private void updateRemoteStatus(File gitPath, List<DiffEntry> listOfDiffsLocal, List<DiffEntry> listOfDiffsRemote, StatusList returnInfo)
     {
+        //local changes, by file name, for matching against the remote changes.
+        Map<String, DiffEntry> localDiffsByName = new HashMap<>();
+        for (DiffEntry localDiffItem : listOfDiffsLocal) {
+            localDiffsByName.putIfAbsent(getFileNameFromDiff(localDiffItem), localDiffItem);
+        }
+
         //first check local changes that does not appear in the remote list.
         for (DiffEntry localDiffItem : listOfDiffsLocal) {
             File file = new File(gitPath, getFileNameFromDiff(localDiffItem));
@@ -289,12 +214,13 @@ public class GitStatusCommand extends GitCommand
 
         //now check for changes between the remote and local.
         for (DiffEntry remoteDiffItem : listOfDiffsRemote) {
-            Optional<DiffEntry> localDiffItem = getDiffFromList(listOfDiffsLocal, remoteDiffItem);
-            File file = new File(gitPath, getFileNameFromDiff(remoteDiffItem));
+            String fileName = getFileNameFromDiff(remoteDiffItem);
+            Optional<DiffEntry> localDiffItem = Optional.ofNullable(localDiffsByName.get(fileName));
+            File file = new File(gitPath, fileName);
             switch (remoteDiffItem.getChangeType()) {
                 case MODIFY:
                     if (localDiffItem.isPresent()) {
-                        TeamStatusInfo entry = getTeamStatusInfo(returnInfo, file);
+                        TeamStatusInfo entry = returnInfo.get(file);
                         switch (localDiffItem.get().getChangeType()) {
                             case MODIFY:
                                 if (entry == null){
@@ -346,7 +272,7 @@ public class GitStatusCommand extends GitCommand
                         updateRemoteStatus(returnInfo, file, Status.NEEDS_CHECKOUT);
                         if (!file.exists()){
                             //this file will be added, but does not exist in the local repository.
-                            TeamStatusInfo tsi = getTeamStatusInfo(returnInfo, file);
+                            TeamStatusInfo tsi = returnInfo.get(file);
                             tsi.setStatus(Status.NEEDS_CHECKOUT);
                         }
                     }
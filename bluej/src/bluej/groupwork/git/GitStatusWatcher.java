@@ -0,0 +1,512 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.groupwork.git;
+
+import bluej.groupwork.TeamStatusInfo.Status;
+import static bluej.groupwork.git.GitUtilities.findForkPoint;
+import static bluej.groupwork.git.GitUtilities.getBehindCount;
+import static bluej.groupwork.git.GitUtilities.getDiffs;
+import static bluej.groupwork.git.GitUtilities.isAheadOnly;
+import bluej.utility.Debug;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.StatusCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * Keeps the status of a Git project up to date between status commands, so that the
+ * whole working tree need not be scanned every time the status is needed.
+ *
+ * <p>The project directory is watched for changes, by a background thread which notes
+ * the changed paths as they are reported; when the status is next requested, only the
+ * paths which have changed since the last request are re-examined. A change to the index,
+ * HEAD or an ignore file (including .git/info/exclude and the global excludes file), or
+ * too many changes at once, cause a full scan. Since changes are reported some time after
+ * they are made, BlueJ notes the files it has itself written (see noteChanged()) so that
+ * they are re-examined by the next request; a full scan can be requested (see
+ * invalidate()) if it is not known which files were written. The diffs against the
+ * remote branch are only recomputed when HEAD or the remote branch has moved.
+ *
+ * <p>There is at most one watcher per project; it is stopped when the repository is closed.
+ */
+@OnThread(Tag.Worker)
+class GitStatusWatcher
+{
+    // Above this many changed paths, it is quicker to scan the whole tree:
+    private static final int MAX_CHANGED_PATHS = 200;
+
+    @OnThread(Tag.Any)
+    private static final Map<File, GitStatusWatcher> watchers = new HashMap<>();
+
+    private final Path projectPath;
+    private final Path gitDir;
+    private final Path gitInfoDir;
+    private WatchService watchService; // null if changes can't be watched
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    // The modification times of the excludes files outside the working tree, as of the last scan:
+    private String excludesStamp;
+
+    // Paths (relative to the project, with '/' as separator) changed since the last scan:
+    private final Set<String> changedPaths = new HashSet<>();
+    private boolean allChanged = true;
+    private ObjectId statusHead;
+    // Local status by path (relative to the project); sorted so that entries for a
+    // directory's contents are contiguous:
+    private final TreeMap<String, Status> localStatus = new TreeMap<>();
+
+    private RemoteStatus remoteStatus;
+
+    /**
+     * The differences between the local and remote branches, for particular
+     * positions of HEAD and of the remote branch.
+     */
+    static class RemoteStatus
+    {
+        private final ObjectId head;
+        private final ObjectId remote;
+        final List<DiffEntry> localDiffs;
+        final List<DiffEntry> remoteDiffs;
+        final boolean aheadOnly;
+        final int behindCount;
+
+        private RemoteStatus(ObjectId head, ObjectId remote, List<DiffEntry> localDiffs,
+                List<DiffEntry> remoteDiffs, boolean aheadOnly, int behindCount)
+        {
+            this.head = head;
+            this.remote = remote;
+            this.localDiffs = localDiffs;
+            this.remoteDiffs = remoteDiffs;
+            this.aheadOnly = aheadOnly;
+            this.behindCount = behindCount;
+        }
+    }
+
+    private GitStatusWatcher(File projectDir)
+    {
+        projectPath = projectDir.toPath().toAbsolutePath();
+        gitDir = projectPath.resolve(".git");
+        gitInfoDir = gitDir.resolve("info");
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            register(projectPath);
+            WatchService service = watchService;
+            Thread drainer = new Thread(() -> drainEvents(service), "Git status watcher");
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+        catch (IOException ioe) {
+            Debug.message("Unable to watch project for changes; git status will scan all files: " + ioe);
+            stopWatching();
+        }
+    }
+
+    /**
+     * Get the watcher for the given project directory, creating it if necessary.
+     */
+    @OnThread(Tag.Any)
+    static GitStatusWatcher forProject(File projectDir)
+    {
+        synchronized (watchers) {
+            return watchers.computeIfAbsent(projectDir.getAbsoluteFile(), GitStatusWatcher::new);
+        }
+    }
+
+    /**
+     * Stop the watcher (if any) for the given project directory.
+     */
+    @OnThread(Tag.Any)
+    static void stop(File projectDir)
+    {
+        GitStatusWatcher watcher;
+        synchronized (watchers) {
+            watcher = watchers.remove(projectDir.getAbsoluteFile());
+        }
+        if (watcher != null) {
+            synchronized (watcher) {
+                watcher.stopWatching();
+            }
+        }
+    }
+
+    /**
+     * Make the next status request for the given project directory re-examine the given
+     * files.  This should be called after BlueJ has written files in the project (e.g. when
+     * saving before a commit), since the changes may not have been reported yet.
+     */
+    @OnThread(Tag.Any)
+    static void noteChanged(File projectDir, Collection<File> files)
+    {
+        GitStatusWatcher watcher;
+        synchronized (watchers) {
+            watcher = watchers.get(projectDir.getAbsoluteFile());
+        }
+        if (watcher != null) {
+            synchronized (watcher) {
+                for (File file : files) {
+                    Path path = file.toPath().toAbsolutePath();
+                    if (path.startsWith(watcher.projectPath)) {
+                        watcher.changedPaths.add(GitUtilities.getRelativeFileName(watcher.projectPath, path.toFile()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Make the next status request for the given project directory scan the whole working
+     * tree.  This should be called after BlueJ has written files in the project without
+     * knowing which (see noteChanged()).
+     */
+    @OnThread(Tag.Any)
+    static void invalidate(File projectDir)
+    {
+        GitStatusWatcher watcher;
+        synchronized (watchers) {
+            watcher = watchers.get(projectDir.getAbsoluteFile());
+        }
+        if (watcher != null) {
+            synchronized (watcher) {
+                watcher.allChanged = true;
+            }
+        }
+    }
+
+    /**
+     * Get the local status of the working tree: the status of every file which is not
+     * up-to-date, keyed by path relative to the project.
+     */
+    synchronized Map<String, Status> getLocalStatus(Git repo) throws IOException, GitAPIException
+    {
+        if (watchService != null) {
+            // Pick up anything reported which the background thread hasn't yet seen:
+            WatchKey key;
+            while (watchService != null && (key = watchService.poll()) != null) {
+                processKey(key);
+            }
+        }
+        else {
+            allChanged = true;
+        }
+
+        ObjectId head = repo.getRepository().resolve("HEAD");
+        String stamp = getExcludesStamp(repo);
+        if (!Objects.equals(head, statusHead) || !stamp.equals(excludesStamp)
+                || changedPaths.size() > MAX_CHANGED_PATHS) {
+            allChanged = true;
+        }
+
+        if (allChanged) {
+            org.eclipse.jgit.api.Status s = repo.status().call();
+            localStatus.clear();
+            addLocalStatus(s, localStatus);
+        }
+        else if (!changedPaths.isEmpty()) {
+            StatusCommand command = repo.status();
+            for (String path : getPathsToRescan()) {
+                command.addPath(path);
+                localStatus.remove(path);
+                // '0' follows '/', so this is everything within the path (if a directory):
+                localStatus.subMap(path + "/", path + "0").clear();
+            }
+            addLocalStatus(command.call(), localStatus);
+        }
+
+        allChanged = false;
+        changedPaths.clear();
+        statusHead = head;
+        excludesStamp = stamp;
+        return new TreeMap<>(localStatus);
+    }
+
+    /**
+     * Get the paths which must be re-examined because of the changed paths. Where a
+     * changed path is within a directory which has a status of its own (an untracked
+     * folder), the whole directory is re-examined, so that its entry is replaced rather
+     * than left alongside entries for its contents.
+     */
+    private Set<String> getPathsToRescan()
+    {
+        Set<String> paths = new HashSet<>();
+        for (String path : changedPaths) {
+            String rescan = path;
+            for (int slash = path.indexOf('/'); slash != -1; slash = path.indexOf('/', slash + 1)) {
+                String parent = path.substring(0, slash);
+                if (localStatus.containsKey(parent)) {
+                    // The outermost such directory:
+                    rescan = parent;
+                    break;
+                }
+            }
+            paths.add(rescan);
+        }
+        return paths;
+    }
+
+    /**
+     * Get a description of the state of the excludes files which are outside the working
+     * tree (and so are not watched): .git/info/exclude, and the global excludes file given
+     * by the core.excludesFile setting.
+     */
+    private String getExcludesStamp(Git repo)
+    {
+        List<File> files = new ArrayList<>();
+        files.add(gitInfoDir.resolve("exclude").toFile());
+        String excludesFile = repo.getRepository().getConfig().getString("core", null, "excludesfile");
+        if (excludesFile != null) {
+            if (excludesFile.startsWith("~/")) {
+                files.add(new File(System.getProperty("user.home"), excludesFile.substring(2)));
+            }
+            else {
+                files.add(new File(excludesFile));
+            }
+        }
+
+        StringBuilder stamp = new StringBuilder();
+        for (File file : files) {
+            stamp.append(file.getPath()).append(' ').append(file.lastModified()).append(' ')
+                .append(file.length()).append('\n');
+        }
+        return stamp.toString();
+    }
+
+    /**
+     * Get the differences between the local branch and the remote branch, since
+     * the point at which they diverged.
+     */
+    synchronized RemoteStatus getRemoteStatus(Git repo) throws IOException, GitTreeException
+    {
+        ObjectId head = repo.getRepository().resolve("HEAD");
+        ObjectId remote = repo.getRepository().resolve("origin/master");
+        if (remoteStatus == null || !Objects.equals(head, remoteStatus.head)
+                || !Objects.equals(remote, remoteStatus.remote)) {
+            RevCommit forkPoint = findForkPoint(repo.getRepository(), "origin/master", "HEAD");
+            //find diffs between master/head and the forkpoint.
+            List<DiffEntry> localDiffs = getDiffs(repo, "HEAD", forkPoint);
+            //check for differences between forkpoint and remote repo head.
+            List<DiffEntry> remoteDiffs = getDiffs(repo, "origin/master", forkPoint);
+            remoteStatus = new RemoteStatus(head, remote, localDiffs, remoteDiffs,
+                    isAheadOnly(repo), getBehindCount(repo));
+        }
+        return remoteStatus;
+    }
+
+    /**
+     * Add the local status of each path in a Git status result to the given map.
+     */
+    private static void addLocalStatus(org.eclipse.jgit.api.Status s, Map<String, Status> statusMap)
+    {
+        // A file which has had changes merged as a result of a pull will be in a "unmerged"
+        // state, and will appear in "uncommitted changes" as well as "conflicting" (with
+        // BOTH_MODIFIED or one of the other "stages").
+
+        s.getMissing().forEach(item -> statusMap.putIfAbsent(item, Status.DELETED));
+
+        // "removed" files have been staged for removal ("git rm")
+        s.getRemoved().forEach(item -> statusMap.putIfAbsent(item, Status.DELETED));
+
+        s.getUncommittedChanges().forEach(item -> statusMap.putIfAbsent(item, Status.NEEDS_COMMIT));
+
+        s.getUntracked().forEach(item -> statusMap.putIfAbsent(item, Status.NEEDS_ADD));
+
+        s.getUntrackedFolders().forEach(item -> statusMap.putIfAbsent(item, Status.NEEDS_ADD));
+
+        Map<String, IndexDiff.StageState> conflictsMap = s.getConflictingStageState();
+        for (String item : s.getConflicting()) {
+            if (!statusMap.containsKey(item)) {
+                Debug.message("Git unexpected status: file is "
+                        + "conflicting but not otherwise noted? (" + item + ")");
+                statusMap.put(item, Status.NEEDS_MERGE);
+                continue;
+            }
+
+            IndexDiff.StageState sstate = conflictsMap.get(item);
+            // Note: for local status, NEEDS_MERGE actually means "needs commit to
+            // resolve merge".
+            switch (sstate)
+            {
+                case DELETED_BY_THEM:
+                    statusMap.put(item, Status.CONFLICT_LMRD);
+                    break;
+                case DELETED_BY_US:
+                    statusMap.put(item, Status.CONFLICT_LDRM);
+                    break;
+                case BOTH_ADDED:
+                    statusMap.put(item, Status.CONFLICT_ADD);
+                    break;
+                case BOTH_MODIFIED:
+                    statusMap.put(item, Status.NEEDS_MERGE);
+                    break;
+                default:
+                    Debug.message("Git status, unknown/unhandled conflict state: " + sstate + " (" + item + ")");
+                    statusMap.put(item, Status.NEEDS_MERGE);
+            }
+        }
+    }
+
+    /**
+     * Note changes as they are reported, until the watch service is closed.  Runs on
+     * its own thread, so that the changes are kept up to date between status requests.
+     */
+    private void drainEvents(WatchService service)
+    {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                synchronized (this) {
+                    if (watchService != service) {
+                        return;
+                    }
+                    processKey(key);
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped watching
+        }
+    }
+
+    /**
+     * Note the paths changed in the events for a watch key, registering any new directories.
+     */
+    private void processKey(WatchKey key)
+    {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                allChanged = true;
+                continue;
+            }
+
+            Path child = dir.resolve((Path) event.context());
+            String name = child.getFileName().toString();
+            if (dir.equals(gitDir)) {
+                // The index and HEAD determine the status of every file:
+                if (name.equals("index") || name.equals("HEAD")) {
+                    allChanged = true;
+                }
+                continue;
+            }
+            if (dir.equals(gitInfoDir)) {
+                if (name.equals("exclude")) {
+                    allChanged = true;
+                }
+                continue;
+            }
+            if (child.equals(gitDir) || name.equals(".gitignore")) {
+                allChanged = true;
+                continue;
+            }
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    register(child);
+                }
+                catch (IOException ioe) {
+                    Debug.message("Unable to watch project for changes; git status will scan all files: " + ioe);
+                    stopWatching();
+                    return;
+                }
+            }
+            changedPaths.add(GitUtilities.getRelativeFileName(projectPath, child.toFile()));
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * Watch a directory and all the directories within it. Of the .git directory, only
+     * the top level and the info directory (which holds the exclude file) are watched.
+     */
+    private void register(Path start) throws IOException
+    {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+            {
+                watch(dir);
+                if (dir.equals(gitDir)) {
+                    if (Files.isDirectory(gitInfoDir)) {
+                        watch(gitInfoDir);
+                    }
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch(Path dir) throws IOException
+    {
+        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirs.put(key, dir);
+    }
+
+    private void stopWatching()
+    {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            }
+            catch (IOException ioe) {
+                // Nothing we can usefully do
+            }
+            watchService = null;
+        }
+        watchedDirs.clear();
+        allChanged = true;
+    }
+}
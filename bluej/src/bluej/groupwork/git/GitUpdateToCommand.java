@@ -88,7 +88,7 @@ public class GitUpdateToCommand extends GitCommand implements UpdateResults
     @OnThread(Tag.Worker)
     public TeamworkCommandResult getResult()
     {
-        try (Git repo = Git.open(this.getRepository().getProjectPath()))
+        try (Git repo = this.getRepository().openGit())
         {
             File gitPath = this.getRepository().getProjectPath();
 
@@ -230,7 +230,7 @@ public class GitUpdateToCommand extends GitCommand implements UpdateResults
     {
         if (! files.isEmpty())
         {
-            try (Git repo = Git.open(this.getRepository().getProjectPath()))
+            try (Git repo = this.getRepository().openGit())
             {
                 Path basePath = Paths.get(this.getRepository().getProjectPath().toString());
                 CheckoutCommand ccommand = repo.checkout();
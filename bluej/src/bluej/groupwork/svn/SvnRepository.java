@@ -23,6 +23,7 @@ package bluej.groupwork.svn;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -266,4 +267,22 @@ public class SvnRepository
     {
         throw new UnsupportedOperationException("Not supported");
     }
+
+    @Override
+    public void noteChanged(Collection<File> files)
+    {
+        // Status is not cached
+    }
+
+    @Override
+    public void discardCachedStatus()
+    {
+        // Status is not cached
+    }
+
+    @Override
+    public void close()
+    {
+        // Nothing to release
+    }
 }
@@ -228,9 +228,12 @@ public class CommitAndPushFrame extends FXCustomizedDialog<Void> implements Comm
 
             if (repository != null) {
                 try {
-                    project.saveAllEditors();
-                    project.saveAll();
+                    List<File> savedFiles = new ArrayList<>(project.saveAllEditors());
+                    savedFiles.addAll(project.saveAll());
+                    repository.noteChanged(savedFiles);
                 } catch (IOException ioe) {
+                    // We don't know which files were saved:
+                    repository.discardCachedStatus();
                     String msg = DialogManager.getMessage("team-error-saving-project");
                     if (msg != null) {
                         msg = Utility.mergeStrings(msg, ioe.getLocalizedMessage());
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -234,7 +235,14 @@ public class HistoryFrame extends FXCustomizedDialog<Void>
      */
     private class HistoryWorker extends FXWorker implements LogHistoryListener
     {
+        // Entries are shown a page at a time while the history is being fetched, so
+        // that the most recent entries of a long history are shown without waiting for
+        // the rest:
+        private static final int PAGE_SIZE = 100;
+
         private List<HistoryInfo> responseList;
+        @OnThread(Tag.Any)
+        private List<HistoryInfo> pendingPage = new ArrayList<>();
         private Repository repository;
         private TeamworkCommand command;
         private TeamworkCommandResult response;
@@ -257,6 +265,22 @@ public class HistoryFrame extends FXCustomizedDialog<Void>
         public void logInfoAvailable(HistoryInfo hInfo)
         {
             responseList.add(hInfo);
+            pendingPage.add(hInfo);
+            if (pendingPage.size() >= PAGE_SIZE) {
+                List<HistoryInfo> page = pendingPage;
+                pendingPage = new ArrayList<>();
+                Platform.runLater(() -> showPage(page));
+            }
+        }
+
+        /**
+         * Show some entries while the rest of the history is still being fetched.
+         */
+        private void showPage(List<HistoryInfo> page)
+        {
+            if (command != null) {
+                listModel.addAll(page);
+            }
         }
 
         public void finished()
@@ -207,10 +207,13 @@ public class UpdateFilesFrame extends FXCustomizedDialog<Void>
 
             if (repository != null) {
                 try {
-                    project.saveAllEditors();
-                    project.saveAll();
+                    List<File> savedFiles = new ArrayList<>(project.saveAllEditors());
+                    savedFiles.addAll(project.saveAll());
+                    repository.noteChanged(savedFiles);
                 }
                 catch (IOException ioe) {
+                    // We don't know which files were saved:
+                    repository.discardCachedStatus();
                     String msg = DialogManager.getMessage("team-error-saving-project");
                     if (msg != null) {
                         msg = Utility.mergeStrings(msg, ioe.getLocalizedMessage());
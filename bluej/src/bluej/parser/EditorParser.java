@@ -109,6 +109,16 @@ public class EditorParser extends JavaParser
         pcuNode.setParentResolver(resolver);
     }
     
+    /**
+     * Constructor for use by subclasses (InfoReader), to parse the given source text.
+     */
+    protected EditorParser(CharSequence source, EntityResolver resolver)
+    {
+        super(source);
+        pcuNode = new ParsedCUNode();
+        pcuNode.setParentResolver(resolver);
+    }
+    
     /**
      * Constructor for an EditorParser to parse a particular document.
      * After construction the normal course of action is to call parseCU(ParsedCUNode).
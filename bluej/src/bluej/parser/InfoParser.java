@@ -21,13 +21,13 @@
  */
 package bluej.parser;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -138,6 +138,15 @@ public class InfoParser extends EditorParser
         super(r, resolver);
     }
 
+    /**
+     * Construct an InfoParser which reads the given Java source, and resolves
+     * reference via the given resolver.
+     */
+    public InfoParser(CharSequence source, EntityResolver resolver)
+    {
+        super(source, resolver);
+    }
+
     /**
      * Attempt to parse the specified source file. Returns null if the file could not be parsed.
      */
@@ -152,13 +161,8 @@ public class InfoParser extends EditorParser
      */
     public static ClassInfo parse(File f, EntityResolver resolver) throws FileNotFoundException
     {
-        FileInputStream fis = new FileInputStream(f);
-        ClassInfo info = parse(new BufferedReader(new InputStreamReader(fis)), resolver, null);
-        try {
-            fis.close();
-        }
-        catch (IOException ioe) {}
-        return info;
+        String source = readFile(f, Charset.defaultCharset());
+        return parse(new InfoParser(source, resolver), null);
     }
     
     /**
@@ -168,17 +172,41 @@ public class InfoParser extends EditorParser
     @OnThread(Tag.FXPlatform)
     public static ClassInfo parseWithPkg(File f, Package pkg) throws FileNotFoundException
     {
-        FileInputStream fis = new FileInputStream(f);
+        return parseWithPkg(readFile(f, pkg.getProject().getProjectCharset()), pkg);
+    }
+
+    /**
+     * Attempt to parse the given source, and resolve references via the specified
+     * package (and its project). Returns null if the source could not be parsed.
+     */
+    @OnThread(Tag.FXPlatform)
+    public static ClassInfo parseWithPkg(CharSequence source, Package pkg)
+    {
         EntityResolver resolver = new PackageResolver(pkg.getProject().getEntityResolver(),
                 pkg.getQualifiedName());
-        Reader reader = new InputStreamReader(fis, pkg.getProject().getProjectCharset());
-        reader = new BufferedReader(reader);
-        ClassInfo info = parse(reader, resolver, pkg.getQualifiedName());
-        try {
-            fis.close();
+        return parse(new InfoParser(source, resolver), pkg.getQualifiedName());
+    }
+
+    /**
+     * Read the complete contents of a source file, so that it can be lexed directly
+     * from memory.  If there is an error part-way through reading, the contents up to
+     * that point are returned.
+     */
+    private static String readFile(File f, Charset charset) throws FileNotFoundException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) f.length());
+        try (FileInputStream fis = new FileInputStream(f)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = fis.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        catch (FileNotFoundException fnfe) {
+            throw fnfe;
         }
         catch (IOException ioe) {}
-        return info;
+        return new String(bytes.toByteArray(), charset);
     }
 
     /**
@@ -189,8 +217,12 @@ public class InfoParser extends EditorParser
     @OnThread(Tag.FXPlatform)
     public static ClassInfo parse(Reader r, EntityResolver resolver, String targetPkg)
     {
-        InfoParser infoParser = null;
-        infoParser = new InfoParser(r, resolver);
+        return parse(new InfoParser(r, resolver), targetPkg);
+    }
+
+    @OnThread(Tag.FXPlatform)
+    private static ClassInfo parse(InfoParser infoParser, String targetPkg)
+    {
         infoParser.targetPkg = targetPkg;
         infoParser.parseCU();
 
@@ -66,6 +66,11 @@ public class JavaParser
         return new JavaLexer(r, line, col, pos);
     }
     
+    private static TokenStream getLexer(CharSequence source)
+    {
+        return new JavaLexer(source);
+    }
+    
     public JavaParser(Reader r)
     {
         TokenStream lexer = getLexer(r);
@@ -84,6 +89,16 @@ public class JavaParser
         tokenStream = new JavaTokenFilter(lexer, this);
     }
     
+    /**
+     * Construct a parser for the given (complete) source text.  This is faster than
+     * reading the same text via a Reader.
+     */
+    public JavaParser(CharSequence source)
+    {
+        TokenStream lexer = getLexer(source);
+        tokenStream = new JavaTokenFilter(lexer, this);
+    }
+    
     public JavaTokenFilter getTokenStream()
     {
         return tokenStream;
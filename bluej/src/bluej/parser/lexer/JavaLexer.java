@@ -22,8 +22,10 @@
 package bluej.parser.lexer;
 
 
+import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -34,13 +36,28 @@ import bluej.parser.TokenStream;
 /**
  * A Java lexer. Breaks up a source stream into tokens.
  * 
+ * <p>A lexer can read from a Reader, or from a snapshot of the complete source text
+ * (given as a CharSequence).  In the latter case, if the source has no unicode escapes,
+ * the lexer works directly on a character array, taking token text from the array and
+ * sharing the text of identifiers, keywords and operators between tokens.
+ * 
  * @author Marion Zalk
  */
 public final class JavaLexer implements TokenStream
 {
-    private StringBuffer textBuffer = new StringBuffer(); // text of current token
-    private EscapedUnicodeReader reader;
+    private StringBuilder textBuffer = new StringBuilder(); // text of current token
+    private EscapedUnicodeReader reader; // null if reading directly from buffer
+    // When reading directly from a snapshot of the source, the source text with any
+    // unicode escapes replaced.  If there were escapes, sourcePositions[i] is the offset
+    // in the original text of buffer[i] (and there is an extra entry for the end):
+    private char[] buffer;
+    private int[] sourcePositions;
+    private int bufferIndex; // index in buffer just after rChar
+    private int beginIndex, endIndex;
+    private TokenTextTable identifiers;
     private int rChar; 
+    // The source position just after rChar:
+    private int line, column, position;
     private int beginColumn, beginLine, beginPosition;
     private int endColumn, endLine, endPosition;
     private boolean generateWhitespaceTokens = false;
@@ -103,6 +120,25 @@ public final class JavaLexer implements TokenStream
         keywords.put("void", JavaTokenTypes.LITERAL_void);
     }
 
+    /**
+     * Keywords (with their token type) and operators, for use when reading from a buffer.
+     * This is not modified after initialisation, so can be shared between threads.
+     */
+    private static final TokenTextTable sharedText = new TokenTextTable(256);
+    
+    static {
+        for (Map.Entry<String, Integer> keyword : keywords.entrySet()) {
+            sharedText.put(keyword.getKey(), keyword.getValue());
+        }
+        String[] operators = {"?", ",", ";", ":", "::", "^", "^=", "~", "(", ")", "[", "]", "{", "}",
+                "@", "&", "&&", "&=", "|", "||", "|=", "!", "!=", "+", "++", "+=", "-", "--", "-=", "->",
+                "=", "==", "%", "%=", "/", "/=", ".", "...", "*", "*=", ">", ">=", ">>", ">>=", ">>>",
+                ">>>=", "<", "<=", "<<", "<<="};
+        for (String operator : operators) {
+            sharedText.put(operator, JavaTokenTypes.INVALID);
+        }
+    }
+
     /**
      * Construct a lexer which readers from the given Reader.
      */
@@ -129,15 +165,129 @@ public final class JavaLexer implements TokenStream
     {
         reader = new EscapedUnicodeReader(in);
         reader.setLineColPos(line, col, position);
-        endColumn = beginColumn = col;
-        endLine = beginLine = line;
-        endPosition = beginPosition = position;
-        try {
-            rChar = reader.read();
+        init(line, col, position);
+    }
+    
+    /**
+     * Construct a lexer which reads from the given source text.
+     */
+    public JavaLexer(CharSequence text)
+    {
+        this(text, 1, 1, 0);
+    }
+    
+    /**
+     * Construct a lexer which reads from the given source text.
+     */
+    public JavaLexer(CharSequence text, boolean handleComments)
+    {
+        this(text, 1, 1, 0);
+        this.handleComments = handleComments;
+    }
+    
+    /**
+     * Construct a lexer which reads from the given source text, assuming that the
+     * text begins at the given line and column within the source document.
+     */
+    public JavaLexer(CharSequence text, int line, int col, int position)
+    {
+        char[] chars = new char[text.length()];
+        if (text instanceof String) {
+            ((String) text).getChars(0, chars.length, chars, 0);
         }
-        catch (IOException ioe) {
-            rChar = -1;
+        else {
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = text.charAt(i);
+            }
+        }
+        
+        if (!hasUnicodeEscape(chars) || decodeEscapes(chars)) {
+            identifiers = new TokenTextTable(256);
+            if (buffer == null) {
+                buffer = chars;
+            }
+        }
+        else {
+            // Malformed escapes; rare, so just use the reader, which deals with them:
+            reader = new EscapedUnicodeReader(new CharArrayReader(chars));
+            reader.setLineColPos(line, col, position);
+        }
+        init(line, col, position);
+    }
+    
+    private void init(int line, int col, int position)
+    {
+        endColumn = beginColumn = this.column = col;
+        endLine = beginLine = this.line = line;
+        endPosition = beginPosition = this.position = position;
+        readChar();
+    }
+    
+    /**
+     * Replace the unicode escapes in the given source, setting buffer and sourcePositions.
+     * This follows the same rules as EscapedUnicodeReader.  Returns false (and does not
+     * set buffer) if there is a malformed escape.
+     */
+    private boolean decodeEscapes(char[] chars)
+    {
+        char[] decoded = new char[chars.length];
+        int[] positions = new int[chars.length + 1];
+        int length = 0;
+        int i = 0;
+        while (i < chars.length) {
+            positions[length] = i;
+            char ch = chars[i];
+            if (ch == '\\' && i + 1 < chars.length && chars[i + 1] == 'u') {
+                // Any number of 'u' characters may appear:
+                int digits = i + 2;
+                while (digits < chars.length && chars[digits] == 'u') {
+                    digits++;
+                }
+                if (digits + 4 > chars.length) {
+                    return false;
+                }
+                int value = 0;
+                for (int d = digits; d < digits + 4; d++) {
+                    int digitVal = Character.digit(chars[d], 16);
+                    if (digitVal == -1) {
+                        return false;
+                    }
+                    value = value * 0x10 + digitVal;
+                }
+                decoded[length++] = (char) value;
+                i = digits + 4;
+            }
+            else if (ch == '\\' && i + 1 < chars.length) {
+                // The character after a backslash can't begin an escape:
+                decoded[length++] = ch;
+                positions[length] = i + 1;
+                decoded[length++] = chars[i + 1];
+                i += 2;
+            }
+            else {
+                decoded[length++] = ch;
+                i++;
+            }
+        }
+        positions[length] = chars.length;
+        
+        buffer = Arrays.copyOf(decoded, length);
+        sourcePositions = positions;
+        return true;
+    }
+    
+    /**
+     * Check whether the given source contains a backslash-u sequence, which may be a
+     * unicode escape.
+     */
+    private static boolean hasUnicodeEscape(char[] chars)
+    {
+        for (int i = 0; i < chars.length - 1; i++) {
+            if (chars[i] == '\\' && chars[i + 1] == 'u') {
+                return true;
+            }
         }
+        return false;
     }
     
     /**
@@ -149,20 +299,20 @@ public final class JavaLexer implements TokenStream
         
         if (generateWhitespaceTokens && Character.isWhitespace((char)rChar))
         {
-            StringBuilder whitespaceBuffer = new StringBuilder();
             while (Character.isWhitespace((char)rChar))
             {
-                whitespaceBuffer.append((char)rChar);                
+                appendText((char)rChar);                
                 readNextChar();
             }
-            return makeToken(JavaTokenTypes.WHITESPACE, whitespaceBuffer.toString());
+            return makeToken(JavaTokenTypes.WHITESPACE, buffer != null ? sliceText(true) : textBuffer.toString());
         }
         else
         {        
             while (Character.isWhitespace((char)rChar)) {
-                beginLine = reader.getLine();
-                beginColumn = reader.getColumn();
-                beginPosition = reader.getPosition();
+                beginLine = line;
+                beginColumn = column;
+                beginPosition = position;
+                beginIndex = bufferIndex;
                 readNextChar();
             }
         }
@@ -177,9 +327,34 @@ public final class JavaLexer implements TokenStream
             return createWordToken(nextChar); 
         }
         if (Character.isDigit(nextChar)) {
-            return makeToken(readDigitToken(nextChar, false), textBuffer.toString());
+            int type = readDigitToken(nextChar, false);
+            return makeToken(type, tokenText(false));
         }
-        return makeToken(getSymbolType(nextChar), textBuffer.toString());
+        int type = getSymbolType(nextChar);
+        return makeToken(type, tokenText(true));
+    }
+    
+    /**
+     * Get the text of the token which has just been read, i.e. from the beginning
+     * position up to the end position.
+     * 
+     * @param share  Whether the text is likely to recur, and so should be shared
+     *               with other tokens where possible
+     */
+    private String tokenText(boolean share)
+    {
+        return buffer != null ? sliceText(share) : textBuffer.toString();
+    }
+    
+    private String sliceText(boolean share)
+    {
+        int start = beginIndex;
+        int length = endIndex - beginIndex;
+        if (share) {
+            int slot = sharedText.find(buffer, start, length);
+            return slot != -1 ? sharedText.getString(slot) : identifiers.intern(buffer, start, length);
+        }
+        return new String(buffer, start, length);
     }
     
     /**
@@ -194,12 +369,23 @@ public final class JavaLexer implements TokenStream
         beginColumn = endColumn;
         beginLine = endLine;
         beginPosition = endPosition;
+        beginIndex = endIndex;
         return tok;
     }
 
     private LocatableToken createWordToken(char nextChar)
     {
         populateTextBuffer(nextChar);
+        if (buffer != null) {
+            // Look for a keyword, without making a string:
+            int start = beginIndex;
+            int length = endIndex - beginIndex;
+            int slot = sharedText.find(buffer, start, length);
+            if (slot != -1 && sharedText.getValue(slot) != JavaTokenTypes.INVALID) {
+                return makeToken(sharedText.getValue(slot), sharedText.getString(slot));
+            }
+            return makeToken(JavaTokenTypes.IDENT, identifiers.intern(buffer, start, length));
+        }
         return makeToken(getWordType(), textBuffer.toString());
     }
 
@@ -207,7 +393,7 @@ public final class JavaLexer implements TokenStream
     {
         char thisChar=ch;
         do {  
-            textBuffer.append(thisChar);
+            appendText(thisChar);
             int rval = readNextChar();
             if (rval==-1){
                 //eof
@@ -234,7 +420,7 @@ public final class JavaLexer implements TokenStream
                 return false;
             }
 
-            textBuffer.append(thisChar);
+            appendText(thisChar);
             if (! escape) {
                 if (thisChar == '\\') {
                     escape = true;
@@ -278,7 +464,7 @@ public final class JavaLexer implements TokenStream
     private int readDigitToken(char ch, boolean dot)
     {
         int rval = ch;
-        textBuffer.append(ch);
+        appendText(ch);
         int type = dot ? JavaTokenTypes.NUM_DOUBLE : JavaTokenTypes.NUM_INT;
 
         boolean fpValid = true; // whether a subsequent dot would be valid.
@@ -288,33 +474,33 @@ public final class JavaLexer implements TokenStream
             rval = readNextChar();
             if (rval == 'x' || rval == 'X') {
                 // hexadecimal
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
                 if (!isHexDigit((char)rval)) {
                     return JavaTokenTypes.INVALID;
                 }
                 
                 do {
-                    textBuffer.append((char) rval);
+                    appendText((char) rval);
                     rval = readNextChar();
                 } while (isHexDigit((char) rval) || rval == '_');
                 if (rval == 'p' || rval == 'P') {
                     // super-funky semi-hexadecimal floating point literal
-                    textBuffer.append((char) rval);
+                    appendText((char) rval);
                     return superFunkyHFPL();
                 }
                 fpValid = false;
             }
             else if (rval == 'b' || rval == 'B') {
                 // Java 7 binary literal
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
                 if (rval != '0' && rval != '1') {
                     return JavaTokenTypes.INVALID;
                 }
                 
                 do {
-                    textBuffer.append((char) rval);
+                    appendText((char) rval);
                     rval = readNextChar();
                 } while (rval == '0' || rval == '1' || rval == '_');
                 fpValid = false;
@@ -322,7 +508,7 @@ public final class JavaLexer implements TokenStream
             else if (Character.isDigit((char) rval)) {
                 do {
                     // octal integer literal, or floating-point literal with leading 0
-                    textBuffer.append((char) rval);
+                    appendText((char) rval);
                     rval = readNextChar();
                 } while (Character.isDigit((char) rval) || rval == '_');
             }
@@ -331,37 +517,37 @@ public final class JavaLexer implements TokenStream
         else {
             rval = readNextChar();
             while (Character.isDigit((char) rval) || rval == '_') {
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
             }
         }
         
         if (rval == '.' && fpValid) {
             // A decimal.
-            textBuffer.append((char) rval);
+            appendText((char) rval);
             rval = readNextChar();
             while (Character.isDigit((char) rval) || rval == '_') {
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
             }
             if (rval == 'e' || rval == 'E') {
                 // exponent
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
                 while (Character.isDigit((char) rval) || rval == '_') {
-                    textBuffer.append((char) rval);
+                    appendText((char) rval);
                     rval = readNextChar();
                 }
             }
             
             // Check for type suffixes
             if (rval == 'f' || rval == 'F') {
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
                 return JavaTokenTypes.NUM_FLOAT;
             }
             if (rval == 'd' || rval == 'D') {
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
             }
             return JavaTokenTypes.NUM_DOUBLE;
@@ -369,28 +555,28 @@ public final class JavaLexer implements TokenStream
         
         if ((rval == 'e' || rval == 'E') && fpValid) {
             // exponent
-            textBuffer.append((char) rval);
+            appendText((char) rval);
             rval = readNextChar();
             while (Character.isDigit((char) rval) || rval == '_') {
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
             }
             type = JavaTokenTypes.NUM_DOUBLE;
         }
         else if (rval == 'l' || rval == 'L') {
-            textBuffer.append((char) rval);
+            appendText((char) rval);
             rval = readNextChar();
             return JavaTokenTypes.NUM_LONG;
         }
         
         if (fpValid) {
             if (rval == 'f' || rval == 'F') {
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
                 return JavaTokenTypes.NUM_FLOAT;
             }
             if (rval == 'd' || rval == 'D') {
-                textBuffer.append((char) rval);
+                appendText((char) rval);
                 rval = readNextChar();
                 return JavaTokenTypes.NUM_DOUBLE;
             }
@@ -417,21 +603,21 @@ public final class JavaLexer implements TokenStream
             return JavaTokenTypes.INVALID;
         }
         
-        textBuffer.append((char) rval);
+        appendText((char) rval);
         rval = readNextChar();
         while (Character.isDigit((char) rval)) {
-            textBuffer.append((char) rval);
+            appendText((char) rval);
             rval = readNextChar();
         }
         
         if (rval == 'f' || rval == 'F') {
-            textBuffer.append((char) rval);
+            appendText((char) rval);
             readNextChar();
             return JavaTokenTypes.NUM_FLOAT;
         }
         
         if (rval == 'd' || rval == 'D') {
-            textBuffer.append((char) rval);
+            appendText((char) rval);
             readNextChar();
         }
         
@@ -441,7 +627,7 @@ public final class JavaLexer implements TokenStream
     private int getMLCommentType(char ch)
     {
         do{
-            textBuffer.append(ch);
+            appendText(ch);
             int rval = readNextChar();
             if (rval == -1) {
                 //eof
@@ -450,13 +636,13 @@ public final class JavaLexer implements TokenStream
 
             ch=(char)rval;
             while (ch=='*') {
-                textBuffer.append((char)rval);
+                appendText((char)rval);
                 rval = readNextChar();
                 if (rval == -1) {
                     return JavaTokenTypes.INVALID;
                 }
                 if (rval == '/') {
-                    textBuffer.append((char)rval);
+                    appendText((char)rval);
                     readNextChar();
                     return JavaTokenTypes.ML_COMMENT;
                 }
@@ -470,7 +656,7 @@ public final class JavaLexer implements TokenStream
         int rval=ch;     
 
         do{  
-            textBuffer.append((char)rval);
+            appendText((char)rval);
             rval=readNextChar();
             //eof
             if (rval==-1 || rval == '\n') {
@@ -482,7 +668,7 @@ public final class JavaLexer implements TokenStream
     private int getSymbolType(char ch)
     {
         int type= JavaTokenTypes.INVALID;
-        textBuffer.append(ch); 
+        appendText(ch); 
         if ('"' == ch)
             return getStringLiteral();
         if ('\'' == ch)
@@ -502,7 +688,7 @@ public final class JavaLexer implements TokenStream
         if (':' == ch) {
             int rval = readNextChar();
             if (rval == ':') {
-                textBuffer.append((char)rval);
+                appendText((char)rval);
                 readNextChar();
                 return JavaTokenTypes.METHOD_REFERENCE;
             }
@@ -580,7 +766,7 @@ public final class JavaLexer implements TokenStream
             return JavaTokenTypes.BXOR;
         }
         char thisChar=(char)rval; 
-        textBuffer.append(thisChar); 
+        appendText(thisChar); 
         readNextChar();
         return JavaTokenTypes.BXOR_ASSIGN;
     }
@@ -593,12 +779,12 @@ public final class JavaLexer implements TokenStream
         int rval=readNextChar();
         char thisChar = (char)rval; 
         if (thisChar=='='){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.BAND_ASSIGN; 
         }
         if (thisChar=='&'){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.LAND; 
         }
@@ -629,12 +815,12 @@ public final class JavaLexer implements TokenStream
         int rval=readNextChar();
         char thisChar=(char)rval; 
         if (thisChar=='=') {
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.BOR_ASSIGN; 
         }
         if (thisChar=='|') {
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.LOR; 
         }
@@ -648,12 +834,12 @@ public final class JavaLexer implements TokenStream
         int rval=readNextChar();
         char thisChar=(char)rval; 
         if (thisChar=='='){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.PLUS_ASSIGN; 
         }
         if (thisChar=='+'){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.INC; 
         }
@@ -668,17 +854,17 @@ public final class JavaLexer implements TokenStream
         char thisChar=(char)rval; 
 
         if (thisChar=='='){
-            textBuffer.append(thisChar);
+            appendText(thisChar);
             readNextChar();
             return JavaTokenTypes.MINUS_ASSIGN; 
         }
         if (thisChar=='-'){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.DEC; 
         }
         if (thisChar == '>'){
-            textBuffer.append(thisChar);
+            appendText(thisChar);
             readNextChar();
             return JavaTokenTypes.LAMBDA;
         }
@@ -692,7 +878,7 @@ public final class JavaLexer implements TokenStream
         int rval = readNextChar();
         char thisChar=(char)rval; 
         if (thisChar=='='){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.EQUAL; 
         }
@@ -706,7 +892,7 @@ public final class JavaLexer implements TokenStream
         int rval = readNextChar();
         char thisChar=(char)rval; 
         if (thisChar == '=') {
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.STAR_ASSIGN; 
         }
@@ -720,7 +906,7 @@ public final class JavaLexer implements TokenStream
         int rval=readNextChar();
         char thisChar=(char)rval; 
         if (thisChar=='='){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.MOD_ASSIGN; 
         }
@@ -734,7 +920,7 @@ public final class JavaLexer implements TokenStream
         int rval=readNextChar();
         char thisChar=(char)rval; 
         if (thisChar=='=') {
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.DIV_ASSIGN; 
         }
@@ -754,29 +940,29 @@ public final class JavaLexer implements TokenStream
         char thisChar=(char)rval;
         //>=
         if (thisChar=='='){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.GE; 
         }
         if (thisChar=='>'){
             //>>
             //>>>; >>>=; >>=
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             rval=readNextChar();
             thisChar = (char)rval;
             if (thisChar=='>') {
-                textBuffer.append(thisChar); 
+                appendText(thisChar); 
                 rval=readNextChar();
                 thisChar = (char)rval;
                 if (thisChar=='='){
-                    textBuffer.append(thisChar); 
+                    appendText(thisChar); 
                     readNextChar();
                     return JavaTokenTypes.BSR_ASSIGN; 
                 }
                 return JavaTokenTypes.BSR;
             }
             if (thisChar=='='){
-                textBuffer.append(thisChar); 
+                appendText(thisChar); 
                 readNextChar();
                 return JavaTokenTypes.SR_ASSIGN; 
             }
@@ -791,16 +977,16 @@ public final class JavaLexer implements TokenStream
         int rval=readNextChar();
         char thisChar = (char)rval; 
         if (thisChar=='='){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.LE; 
         }
         if (thisChar=='<'){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             rval=readNextChar();
             thisChar = (char)rval;
             if (thisChar=='='){
-                textBuffer.append(thisChar); 
+                appendText(thisChar); 
                 readNextChar();
                 return JavaTokenTypes.SL_ASSIGN;
             }
@@ -815,7 +1001,7 @@ public final class JavaLexer implements TokenStream
         int rval=readNextChar();
         char thisChar = (char)rval; 
         if (thisChar=='='){
-            textBuffer.append(thisChar); 
+            appendText(thisChar); 
             readNextChar();
             return JavaTokenTypes.NOT_EQUAL; 
         }
@@ -833,14 +1019,14 @@ public final class JavaLexer implements TokenStream
         }
         //...
         else if (ch=='.'){
-            textBuffer.append(ch); 
+            appendText(ch); 
             rval= readNextChar();
             if (rval==-1){
                 return JavaTokenTypes.INVALID;
             }
             ch = (char)rval;
             if (ch=='.'){
-                textBuffer.append(ch); 
+                appendText(ch); 
                 readNextChar();
                 return JavaTokenTypes.TRIPLE_DOT;
             }
@@ -852,16 +1038,61 @@ public final class JavaLexer implements TokenStream
 
     private int readNextChar()
     {
-        endColumn = reader.getColumn();
-        endLine = reader.getLine();
-        endPosition = reader.getPosition();
+        endColumn = column;
+        endLine = line;
+        endPosition = position;
+        endIndex = bufferIndex;
+        readChar();
+        return rChar;
+    }
+
+    /**
+     * Add a character to the text of the current token.  When reading from a buffer the
+     * text is taken directly from the buffer instead, so this does nothing.
+     */
+    private void appendText(char ch)
+    {
+        if (buffer == null) {
+            textBuffer.append(ch);
+        }
+    }
+
+    /**
+     * Read the next character into rChar, and update the line, column and position.
+     */
+    private void readChar()
+    {
+        if (buffer != null) {
+            if (bufferIndex < buffer.length) {
+                char ch = buffer[bufferIndex++];
+                // An escaped character occupies more than one character in the source
+                // (and an escaped newline does not start a new line):
+                int sourceLength = sourcePositions == null ? 1
+                        : sourcePositions[bufferIndex] - sourcePositions[bufferIndex - 1];
+                position += sourceLength;
+                if (ch == '\n' && sourceLength == 1) {
+                    line++;
+                    column = 1;
+                }
+                else {
+                    column += sourceLength;
+                }
+                rChar = ch;
+            }
+            else {
+                rChar = -1;
+            }
+            return;
+        }
+        
         try{
             rChar = reader.read();
         } catch(IOException e) {
             rChar = -1;
         }
-
-        return rChar;
+        line = reader.getLine();
+        column = reader.getColumn();
+        position = reader.getPosition();
     }
 
     private int getWordType()
@@ -0,0 +1,158 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.parser.lexer;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * A table of strings which can be looked up by a range of characters in an array,
+ * without first creating a String for the range.  Each string has an associated int
+ * value.  Used by JavaLexer to share the text of identifiers, keywords and operators
+ * between tokens.
+ *
+ * Not thread-safe, except for concurrent lookups once the table is no longer modified.
+ */
+@OnThread(Tag.Any)
+final class TokenTextTable
+{
+    private String[] strings;
+    private int[] values;
+    private int size;
+
+    /**
+     * Construct a table with the given initial capacity, which must be a power of two.
+     */
+    TokenTextTable(int capacity)
+    {
+        strings = new String[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Find the slot containing the given characters, or -1 if they are not in the table.
+     */
+    int find(char[] buffer, int start, int length)
+    {
+        int mask = strings.length - 1;
+        for (int slot = hash(buffer, start, length) & mask; ; slot = (slot + 1) & mask)
+        {
+            String s = strings[slot];
+            if (s == null)
+            {
+                return -1;
+            }
+            if (matches(s, buffer, start, length))
+            {
+                return slot;
+            }
+        }
+    }
+
+    String getString(int slot)
+    {
+        return strings[slot];
+    }
+
+    int getValue(int slot)
+    {
+        return values[slot];
+    }
+
+    /**
+     * Get the string in the table with the given characters, adding it (with a value of
+     * zero) if it is not already present.
+     */
+    String intern(char[] buffer, int start, int length)
+    {
+        int slot = find(buffer, start, length);
+        if (slot != -1)
+        {
+            return strings[slot];
+        }
+        String s = new String(buffer, start, length);
+        put(s, 0);
+        return s;
+    }
+
+    /**
+     * Add a string to the table, with the given value.
+     */
+    void put(String s, int value)
+    {
+        if ((size + 1) * 2 > strings.length)
+        {
+            String[] oldStrings = strings;
+            int[] oldValues = values;
+            strings = new String[oldStrings.length * 2];
+            values = new int[oldStrings.length * 2];
+            size = 0;
+            for (int i = 0; i < oldStrings.length; i++)
+            {
+                if (oldStrings[i] != null)
+                {
+                    put(oldStrings[i], oldValues[i]);
+                }
+            }
+        }
+
+        char[] chars = s.toCharArray();
+        int mask = strings.length - 1;
+        int slot = hash(chars, 0, chars.length) & mask;
+        while (strings[slot] != null && !strings[slot].equals(s))
+        {
+            slot = (slot + 1) & mask;
+        }
+        if (strings[slot] == null)
+        {
+            size++;
+        }
+        strings[slot] = s;
+        values[slot] = value;
+    }
+
+    private static int hash(char[] buffer, int start, int length)
+    {
+        int h = 0;
+        for (int i = start; i < start + length; i++)
+        {
+            h = 31 * h + buffer[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String s, char[] buffer, int start, int length)
+    {
+        if (s.length() != length)
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (s.charAt(i) != buffer[start + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
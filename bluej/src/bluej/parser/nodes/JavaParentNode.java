@@ -63,10 +63,11 @@ import threadchecker.Tag;
 public abstract class JavaParentNode extends ParentParsedNode
     implements EntityResolver
 {
+    // Name resolution caches. These start small, but grow if they are being thrashed:
     protected GeneralCache<String,JavaEntity> valueEntityCache =
-        new GeneralCache<String,JavaEntity>(10);
+        new GeneralCache<String,JavaEntity>(10, 160);
     protected GeneralCache<String,PackageOrClass> pocEntityCache =
-        new GeneralCache<String,PackageOrClass>(10);
+        new GeneralCache<String,PackageOrClass>(10, 160);
 
     protected JavaParentNode parentNode;
     
@@ -21,8 +21,14 @@
  */
 package bluej.parser.symtab;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+import bluej.parser.SourceLocation;
+import bluej.parser.SourceSpan;
 import bluej.utility.JavaUtils;
 import bluej.utility.SortedProperties;
 
@@ -48,6 +54,8 @@ import bluej.utility.SortedProperties;
 public final class ClassInfo
 {
     private static final String[] unitTestClasses = { "junit.framework.TestCase" };
+    // Sanity limit on string and list lengths when reading saved information, in case it is damaged:
+    private static final int MAX_SAVED_LENGTH = 16 * 1024 * 1024;
 
     private boolean foundPublicClass = false;
 
@@ -520,6 +528,164 @@ public final class ClassInfo
         return hadParseError;
     }
 
+    /**
+     * Write this information to the given output, in a form which can be read back
+     * by readFrom().  Used to cache the information between sessions.
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        writeString(out, name);
+        out.writeBoolean(foundPublicClass);
+        writeString(out, superclass);
+        writeStrings(out, implemented);
+        writeStrings(out, imported);
+        writeStrings(out, used);
+        out.writeInt(comments.size());
+        for (SavedComment c : comments) {
+            writeString(out, c.target);
+            writeString(out, c.comment);
+            writeString(out, c.paramnames);
+        }
+        writeStrings(out, typeParameterTexts);
+        writeSelection(out, typeParametersSelection);
+        writeSelection(out, extendsReplaceSelection);
+        writeSelection(out, superReplaceSelection);
+        writeSelection(out, extendsInsertSelection);
+        writeSelection(out, implementsInsertSelection);
+        out.writeBoolean(interfaceSelections != null);
+        if (interfaceSelections != null) {
+            out.writeInt(interfaceSelections.size());
+            for (Selection s : interfaceSelections) {
+                writeSelection(out, s);
+            }
+        }
+        out.writeBoolean(packageStatementExists);
+        writeSelection(out, packageStatementSelection);
+        writeSelection(out, packageNameSelection);
+        writeSelection(out, packageSemiSelection);
+        writeString(out, packageName);
+        out.writeBoolean(isInterface);
+        out.writeBoolean(isAbstract);
+        out.writeBoolean(isUnitTest);
+        out.writeBoolean(isEnum);
+        out.writeBoolean(hadParseError);
+    }
+
+    /**
+     * Read information previously written by writeTo().
+     */
+    public static ClassInfo readFrom(DataInput in) throws IOException
+    {
+        ClassInfo info = new ClassInfo();
+        info.name = readString(in);
+        info.foundPublicClass = in.readBoolean();
+        info.superclass = readString(in);
+        info.implemented = readStrings(in);
+        info.imported = readStrings(in);
+        info.used = readStrings(in);
+        int numComments = in.readInt();
+        for (int i = 0; i < numComments; i++) {
+            String target = readString(in);
+            if (target == null) {
+                throw new IOException("Comment without target");
+            }
+            info.comments.add(info.new SavedComment(target, readString(in), readString(in)));
+        }
+        info.typeParameterTexts = readStrings(in);
+        info.typeParametersSelection = readSelection(in);
+        info.extendsReplaceSelection = readSelection(in);
+        info.superReplaceSelection = readSelection(in);
+        info.extendsInsertSelection = readSelection(in);
+        info.implementsInsertSelection = readSelection(in);
+        if (in.readBoolean()) {
+            int numSelections = in.readInt();
+            info.interfaceSelections = new ArrayList<Selection>();
+            for (int i = 0; i < numSelections; i++) {
+                info.interfaceSelections.add(readSelection(in));
+            }
+        }
+        info.packageStatementExists = in.readBoolean();
+        info.packageStatementSelection = readSelection(in);
+        info.packageNameSelection = readSelection(in);
+        info.packageSemiSelection = readSelection(in);
+        info.packageName = readString(in);
+        info.isInterface = in.readBoolean();
+        info.isAbstract = in.readBoolean();
+        info.isUnitTest = in.readBoolean();
+        info.isEnum = in.readBoolean();
+        info.hadParseError = in.readBoolean();
+        return info;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException
+    {
+        if (s == null) {
+            out.writeInt(-1);
+        }
+        else {
+            // Not writeUTF, which is limited to 64k (and comments may be long):
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException
+    {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_SAVED_LENGTH) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutput out, List<String> strings) throws IOException
+    {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            writeString(out, s);
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException
+    {
+        int size = in.readInt();
+        if (size < 0 || size > MAX_SAVED_LENGTH) {
+            throw new IOException("Invalid list length: " + size);
+        }
+        List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static void writeSelection(DataOutput out, Selection s) throws IOException
+    {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeInt(s.getLine());
+            out.writeInt(s.getColumn());
+            out.writeInt(s.getEndLine());
+            out.writeInt(s.getEndColumn());
+        }
+    }
+
+    private static Selection readSelection(DataInput in) throws IOException
+    {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        SourceLocation start = new SourceLocation(in.readInt(), in.readInt());
+        SourceLocation end = new SourceLocation(in.readInt(), in.readInt());
+        return new Selection(new SourceSpan(start, end));
+    }
+
     public void print()
     {
         System.out.println();
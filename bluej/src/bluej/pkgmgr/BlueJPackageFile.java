@@ -25,6 +25,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 import threadchecker.OnThread;
@@ -190,6 +193,14 @@ public class BlueJPackageFile
         }
     }
 
+    public List<File> getFiles()
+    {
+        if (oldPkgFile.exists()) {
+            return Arrays.asList(pkgFile, oldPkgFile);
+        }
+        return Collections.singletonList(pkgFile);
+    }
+
     private void saveToFile(Properties props, File file)
         throws IOException
     {
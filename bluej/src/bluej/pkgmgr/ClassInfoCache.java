@@ -0,0 +1,456 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.pkgmgr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import bluej.Config;
+import bluej.parser.InfoParser;
+import bluej.parser.symtab.ClassInfo;
+import bluej.utility.Debug;
+import bluej.utility.Utility;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * A persistent cache of the ClassInfo (the result of InfoParser) for each source file in a
+ * project, so that unchanged sources need not be parsed again when the project is reopened.
+ *
+ * <p>Entries are keyed by the source path, and are valid only for the same source content
+ * (checked by a hash of the file) analysed in the same context.  The context is a hash of
+ * everything else which affects how names in the source are resolved: the package and the
+ * classes it contains, the project's classpath (including the size and modification time of
+ * each library), and the classes in the project and whether they are compiled.  The source's
+ * own imports are part of its content.  The cache is only used when a package is loaded;
+ * explicit re-analysis of a source (see SourceInfo) always parses it.
+ *
+ * <p>The cache for each project is kept in the user configuration directory, rather than
+ * in the project itself, in a file named by a hash of the project path (the path is also
+ * stored in the file, and checked when it is loaded).  Caches which have not been used for
+ * a while are removed.
+ *
+ * <p>All disk access, apart from reading a source which was not prefetched, is done off the
+ * FX thread: the project fingerprint and the sources are worked out in the background by
+ * prefetch(), and save() only holds the cache's lock while it takes a copy of the entries.
+ */
+public class ClassInfoCache
+{
+    private static final int MAGIC = 0x424A4349; // "BJCI"
+    private static final int FORMAT_VERSION = 2;
+    private static final String DIRECTORY = "classinfo-cache";
+    // Caches which haven't been used for this long are removed:
+    private static final long EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(60);
+    // Set once expired caches have been removed in this session:
+    private static final AtomicBoolean expiredRemoved = new AtomicBoolean(false);
+
+    private final String projectPath;
+    private final File cacheFile;
+    // Keyed by absolute source path:
+    private final Map<String, Entry> entries;
+    private boolean modified = false;
+    // Held while writing the cache file, so that two saves don't write it at once:
+    private final Object saveLock = new Object();
+
+    /**
+     * A hash of the project's classpath and classes, computed by prefetch().  Null
+     * if prefetch() has not been called, in which case the cache is not used.
+     */
+    private String projectFingerprint = null;
+
+    /**
+     * Sources which have been read and hashed ahead of time, by prefetch().
+     * Keyed by absolute source path.
+     */
+    private final Map<String, SourceContent> prefetched = new ConcurrentHashMap<>();
+
+    @OnThread(Tag.Any)
+    private static class Entry
+    {
+        final String hash;
+        final String context;
+        final ClassInfo info;
+
+        Entry(String hash, String context, ClassInfo info)
+        {
+            this.hash = hash;
+            this.context = context;
+            this.info = info;
+        }
+    }
+
+    @OnThread(Tag.Any)
+    private static class SourceContent
+    {
+        final byte[] bytes;
+        final String hash;
+
+        SourceContent(byte[] bytes)
+        {
+            this.bytes = bytes;
+            this.hash = hash(bytes);
+        }
+    }
+
+    /**
+     * Create the cache for the project with the given directory, loading any
+     * previously saved entries.
+     */
+    @OnThread(Tag.Any)
+    public ClassInfoCache(File projectDir)
+    {
+        projectPath = projectDir.getAbsolutePath();
+        cacheFile = new File(new File(Config.getUserConfigDir(), DIRECTORY),
+                hash(projectPath.getBytes(StandardCharsets.UTF_8)) + ".bin");
+        entries = load(cacheFile, projectPath);
+    }
+
+    /**
+     * Get the information for the given source file in the given package, either from the
+     * cache or by parsing the source.  Returns null if the source could not be parsed.
+     */
+    @OnThread(Tag.FXPlatform)
+    public synchronized ClassInfo getInfo(File sourceFile, Package pkg) throws FileNotFoundException
+    {
+        String path = sourceFile.getAbsolutePath();
+        SourceContent content = prefetched.remove(path);
+        if (content == null)
+        {
+            content = new SourceContent(readFile(sourceFile));
+        }
+
+        String context = projectFingerprint == null ? null : getContext(pkg, projectFingerprint);
+        Entry entry = entries.get(path);
+        if (entry != null && entry.hash.equals(content.hash) && entry.context.equals(context))
+        {
+            return entry.info;
+        }
+
+        String source = new String(content.bytes, pkg.getProject().getProjectCharset());
+        ClassInfo info = InfoParser.parseWithPkg(source, pkg);
+        if (info != null && context != null)
+        {
+            entries.put(path, new Entry(content.hash, context, info));
+            modified = true;
+        }
+        return info;
+    }
+
+    /**
+     * Prepare for a following series of calls to getInfo() for the given source files:
+     * in the background, work out the current state of the project's classpath and
+     * classes, and read and hash the sources in parallel.  The returned future completes
+     * (normally, even if there was a problem) once this is done; getInfo() should not be
+     * called for the sources until then.
+     */
+    @OnThread(Tag.FXPlatform)
+    public CompletableFuture<Void> prefetch(Project project, Collection<File> sourceFiles)
+    {
+        URL[] classPath = project.getClassLoader().getURLs();
+        File projectDir = project.getProjectDir();
+        List<File> toRead = new ArrayList<>(sourceFiles);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Utility.runBackground(() -> {
+            try
+            {
+                String fingerprint = makeProjectFingerprint(classPath, projectDir);
+                synchronized (this)
+                {
+                    projectFingerprint = fingerprint;
+                }
+
+                toRead.parallelStream().forEach(sourceFile -> {
+                    try
+                    {
+                        prefetched.put(sourceFile.getAbsolutePath(), new SourceContent(readFile(sourceFile)));
+                    }
+                    catch (FileNotFoundException fnfe)
+                    {
+                        // Will be dealt with by getInfo
+                    }
+                });
+            }
+            finally
+            {
+                done.complete(null);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Save the cache, if it has changed since it was loaded.  Entries for sources
+     * which no longer exist are discarded.  The first save in each session also removes
+     * the caches of projects which have not been opened for a while.  This does disk
+     * access, so should not be called on the FX thread.
+     */
+    @OnThread(Tag.Worker)
+    public void save()
+    {
+        synchronized (saveLock)
+        {
+            if (!expiredRemoved.getAndSet(true))
+            {
+                removeExpired(cacheFile.getParentFile());
+            }
+
+            Map<String, Entry> toSave;
+            synchronized (this)
+            {
+                prefetched.clear();
+                if (!modified)
+                {
+                    return;
+                }
+                toSave = new HashMap<>(entries);
+                modified = false;
+            }
+            toSave.keySet().removeIf(path -> !new File(path).exists());
+
+            if (!write(toSave))
+            {
+                synchronized (this)
+                {
+                    // Try again next time:
+                    modified = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the given entries to the cache file.  Returns false if there was a problem.
+     */
+    @OnThread(Tag.Worker)
+    private boolean write(Map<String, Entry> toSave)
+    {
+        cacheFile.getParentFile().mkdirs();
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+        {
+            os.writeInt(MAGIC);
+            os.writeInt(FORMAT_VERSION);
+            os.writeUTF(projectPath);
+            os.writeInt(toSave.size());
+            for (Map.Entry<String, Entry> e : toSave.entrySet())
+            {
+                os.writeUTF(e.getKey());
+                os.writeUTF(e.getValue().hash);
+                os.writeUTF(e.getValue().context);
+                e.getValue().info.writeTo(os);
+            }
+        }
+        catch (IOException e)
+        {
+            Debug.reportError("Problem writing class information cache", e);
+            tempFile.delete();
+            return false;
+        }
+
+        try
+        {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        }
+        catch (IOException e)
+        {
+            Debug.reportError("Problem saving class information cache", e);
+            tempFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Load the cache from the given file.  Returns an empty cache if the file doesn't exist,
+     * can't be read, is in an old format or is the cache for a different project.
+     */
+    @OnThread(Tag.Any)
+    private static Map<String, Entry> load(File file, String projectPath)
+    {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!file.exists())
+        {
+            return entries;
+        }
+
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (is.readInt() != MAGIC || is.readInt() != FORMAT_VERSION || !is.readUTF().equals(projectPath))
+            {
+                return entries;
+            }
+            int count = is.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                String path = is.readUTF();
+                entries.put(path, new Entry(is.readUTF(), is.readUTF(), ClassInfo.readFrom(is)));
+            }
+            // Mark it as recently used, so that it isn't removed as expired:
+            file.setLastModified(System.currentTimeMillis());
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // A damaged cache; it will be regenerated:
+            Debug.message("Could not read class information cache: " + e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Remove the caches which haven't been used for a while (and any left-over temporary files).
+     */
+    @OnThread(Tag.Any)
+    private static void removeExpired(File directory)
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            long expiry = System.currentTimeMillis() - EXPIRY_MILLIS;
+            for (File f : files)
+            {
+                if (f.lastModified() < expiry)
+                {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a hash of the context in which sources in the given package are analysed:
+     * the package name and the classes it contains, and the project fingerprint.
+     */
+    @OnThread(Tag.FXPlatform)
+    private static String getContext(Package pkg, String projectFingerprint)
+    {
+        List<String> classNames = pkg.getAllClassnames();
+        classNames.sort(null);
+        String context = pkg.getQualifiedName() + ":" + String.join(",", classNames) + ":" + projectFingerprint;
+        return hash(context.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get a hash of the things which affect how names are resolved throughout the
+     * project: the Java version, each classpath element (and the size and modification
+     * time of those which are files), and the names of the source and class files in the
+     * project, since references to project classes resolve differently depending on
+     * whether the classes exist and are compiled.
+     */
+    @OnThread(Tag.Worker)
+    private static String makeProjectFingerprint(URL[] classPath, File projectDir)
+    {
+        StringBuilder fingerprint = new StringBuilder(System.getProperty("java.version"));
+        for (URL url : classPath)
+        {
+            fingerprint.append('\n').append(url);
+            try
+            {
+                File file = "file".equals(url.getProtocol()) ? new File(url.toURI()) : null;
+                if (file != null && file.isFile())
+                {
+                    fingerprint.append(' ').append(file.length()).append(' ').append(file.lastModified());
+                }
+            }
+            catch (URISyntaxException | IllegalArgumentException e)
+            {
+                // Just use the URL
+            }
+        }
+
+        Path projectPath = projectDir.toPath();
+        try (Stream<Path> files = Files.walk(projectPath))
+        {
+            files.map(p -> projectPath.relativize(p).toString())
+                .filter(name -> name.endsWith(".java") || name.endsWith(".stride") || name.endsWith(".class"))
+                .sorted()
+                .forEach(name -> fingerprint.append('\n').append(name));
+        }
+        catch (IOException | UncheckedIOException e)
+        {
+            // We can't tell whether cached entries are valid, so don't use them:
+            Debug.message("Could not list project files: " + e);
+            fingerprint.append('\n').append(UUID.randomUUID());
+        }
+        return hash(fingerprint.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @OnThread(Tag.Any)
+    private static byte[] readFile(File file) throws FileNotFoundException
+    {
+        try
+        {
+            return Files.readAllBytes(file.toPath());
+        }
+        catch (IOException e)
+        {
+            throw new FileNotFoundException(file.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    @OnThread(Tag.Any)
+    private static String hash(byte[] bytes)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // SHA-1 is required to be available on all Java platforms:
+            throw new RuntimeException(e);
+        }
+    }
+}
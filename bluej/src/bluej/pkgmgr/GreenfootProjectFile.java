@@ -25,6 +25,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 import threadchecker.OnThread;
@@ -113,6 +115,11 @@ public class GreenfootProjectFile
         }
     }
     
+    public List<File> getFiles()
+    {
+        return Collections.singletonList(pkgFile);
+    }
+    
     /**
      * Whether a Greenfoot package file exists in this directory.
      */
@@ -143,6 +143,11 @@ public final class Package
     private final List<Target> targetsToPlace = new ArrayList<>();
     // Has this package been sent for data recording yet?
     private boolean recorded = false;
+    // How many uncompiled classes' sources are analysed in one go after a refresh:
+    private static final int ANALYSIS_BATCH_SIZE = 20;
+    // Incremented on each refresh, so that analysis from an earlier refresh is abandoned:
+    @OnThread(Tag.FXPlatform)
+    private int analysisGeneration = 0;
 
     /** Reason code for displaying source line */
     private enum ShowSourceReason
@@ -755,7 +760,8 @@ public final class Package
     
     /**
      * Refresh the targets and dependency arrows in the package, based on whatever
-     * is actually on disk.
+     * is actually on disk.  The sources of uncompiled classes are analysed afterwards,
+     * progressively (see analyseSources).
      */
     public void refreshPackage()
     {
@@ -935,7 +941,9 @@ public final class Package
             }
         }
         
-        // Update class roles
+        // Update class roles.  Uncompiled classes must have their source analysed; this
+        // is done once their sources have been read (see analyseSources):
+        List<ClassTarget> toAnalyse = new ArrayList<>();
         for (Target target : targetsCopy) {
 
             if (target instanceof ClassTarget) {
@@ -950,17 +958,17 @@ public final class Package
                     }
                 }
                 else {
-                    ct.analyseSource();
-                    try {
-                        if ( !ct.getSourceType().equals(SourceType.Stride))
-                            ct.enforcePackage(getQualifiedName());
-                    }
-                    catch (IOException ioe) {
-                        Debug.message("Error enforcing class package: " + ioe.getLocalizedMessage());
-                    }
+                    toAnalyse.add(ct);
                 }
             }
         }
+        
+        // Read the sources which need analysing (and check the state of the project, on
+        // which cached analysis depends) in the background; the analysis itself (which
+        // resolves names in the source) is then done on this thread:
+        int generation = ++analysisGeneration;
+        getProject().getClassInfoCache().prefetch(getProject(), Utility.mapList(toAnalyse, ClassTarget::getJavaSourceFile))
+                .thenRun(() -> Platform.runLater(() -> analyseSources(generation, toAnalyse, 0)));
 
         // our associations are based on name so we mustn't deal with
         // them until all classes/packages have been loaded
@@ -979,6 +987,47 @@ public final class Package
         }
     }
     
+    /**
+     * Analyse the sources of the given (uncompiled) class targets, from the given position
+     * in the list on, using the project's cache of analysis results where the source is
+     * unchanged.  Only a few targets are analysed at a time, with the rest left until the
+     * FX thread has dealt with any other pending events, so that the diagram is updated
+     * progressively and BlueJ stays responsive while a large package is opened.  Abandoned
+     * if the package has been refreshed again, or the project closed, in the meantime.
+     */
+    @OnThread(Tag.FXPlatform)
+    private void analyseSources(int generation, List<ClassTarget> toAnalyse, int start)
+    {
+        if (generation != analysisGeneration || Project.getProject(getProject().getProjectDir()) != getProject()) {
+            return;
+        }
+
+        int end = Math.min(start + ANALYSIS_BATCH_SIZE, toAnalyse.size());
+        for (ClassTarget ct : toAnalyse.subList(start, end)) {
+            if (getTarget(ct.getIdentifierName()) != ct) {
+                // Removed since
+                continue;
+            }
+            // Use the cached analysis, if the source is unchanged:
+            ct.getSourceInfo().getCachedInfo(ct.getJavaSourceFile(), this);
+            ct.analyseSource();
+            try {
+                if ( !ct.getSourceType().equals(SourceType.Stride))
+                    ct.enforcePackage(getQualifiedName());
+            }
+            catch (IOException ioe) {
+                Debug.message("Error enforcing class package: " + ioe.getLocalizedMessage());
+            }
+        }
+
+        if (end < toAnalyse.size()) {
+            Platform.runLater(() -> analyseSources(generation, toAnalyse, end));
+        }
+        else {
+            Utility.runBackground(getProject().getClassInfoCache()::save);
+        }
+    }
+
     /**
      * Returns the file containing information about the package.
      * For BlueJ this is package.bluej (or for older versions bluej.pkg) 
@@ -1588,11 +1637,22 @@ public final class Package
         }
     }
 
+    /**
+     * Get the file(s) which save() writes the package to.
+     */
+    public synchronized List<File> getPackageFiles()
+    {
+        return packageFile.getFiles();
+    }
+
     /**
      * Have all editors in this package save the file the are showing.
      * Called when doing a cvs operation
+     * 
+     * @return The source files of the classes which had unsaved changes, i.e.
+     *         the files which may have been written.
      */
-    public void saveFilesInEditors() throws IOException
+    public List<File> saveFilesInEditors() throws IOException
     {
         // Because we call editor.save() on targets, which can result in
         // a renamed class target, we need to iterate through a copy of
@@ -1602,13 +1662,23 @@ public final class Package
         {
             classTargets = new ArrayList<>(getClassTargets());
         }
+        List<File> savedFiles = new ArrayList<>();
         for (ClassTarget ct : classTargets) {
             Editor ed = ct.getEditor();
             // Editor can be null eg. class file and no src file
             if(ed != null) {
+                boolean modified = ed.isModified();
+                if (modified) {
+                    // Saving can rename the class, so note the files before and after:
+                    ct.getAllSourceFilesJavaLast().forEach(info -> savedFiles.add(info.file));
+                }
                 ed.save();
+                if (modified) {
+                    ct.getAllSourceFilesJavaLast().forEach(info -> savedFiles.add(info.file));
+                }
             }
         }
+        return savedFiles;
     }
     
     /**
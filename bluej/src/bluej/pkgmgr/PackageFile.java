@@ -21,7 +21,9 @@
  */
 package bluej.pkgmgr;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
 
 import threadchecker.OnThread;
@@ -63,4 +65,9 @@ public interface PackageFile
      */
     public void save(Properties p)
         throws IOException;
+
+    /**
+     * Get the file(s) which save() writes to.
+     */
+    public List<File> getFiles();
 }
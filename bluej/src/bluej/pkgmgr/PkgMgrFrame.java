@@ -27,6 +27,7 @@ import bluej.classmgr.BPClassLoader;
 import bluej.collect.DataCollector;
 import bluej.compiler.CompileReason;
 import bluej.compiler.CompileType;
+import bluej.compiler.JobQueue;
 import bluej.debugger.Debugger;
 import bluej.debugger.DebuggerObject;
 import bluej.debugger.ExceptionDescription;
@@ -1208,6 +1209,11 @@ public class PkgMgrFrame
         if (PkgMgrFrame.getAllProjectFrames(proj) == null) {
             Project.cleanUp(proj);
         }
+        else {
+            // Don't keep the package's libraries open for shell compilation (cleanUp
+            // does this if the project is closed):
+            JobQueue.getJobQueue().releaseShellFiles();
+        }
     }
 
     /**
@@ -29,6 +29,7 @@ import bluej.classmgr.ClassMgrPrefPanel;
 import bluej.collect.DataCollector;
 import bluej.compiler.CompileReason;
 import bluej.compiler.CompileType;
+import bluej.compiler.JobQueue;
 import bluej.debugger.Debugger;
 import bluej.debugger.DebuggerClass;
 import bluej.debugger.DebuggerEvent;
@@ -227,6 +228,7 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
     /** The scanner for available imports.  May be null if not requested yet. */
     @OnThread(value = Tag.Any,requireSynchronized = true)
     private ImportScanner importScanner;
+    private ClassInfoCache classInfoCache;
 
     /** check if the project is a dvcs project**/
     private boolean isDVCS=false;
@@ -595,6 +597,11 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
         project.removeAllInspectors();
         project.getDebugger().removeDebuggerListener(project);
         project.getDebugger().close(false);
+        Utility.runBackground(project.getClassInfoCache()::save);
+        JobQueue.getJobQueue().releaseShellFiles();
+        if (project.teamSettingsController != null) {
+            project.teamSettingsController.closeRepository();
+        }
 
         projects.remove(project.getProjectDir());
     }
@@ -1419,35 +1426,45 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
     /**
      * Save all open packages of this project. This doesn't save files open
      * in editor windows - use saveAllEditors() for that.
+     * 
+     * @return The package files which were written.
      */
-    public void saveAll()
+    public List<File> saveAll()
     {
         PkgMgrFrame[] frames = PkgMgrFrame.getAllProjectFrames(this);
+        List<File> savedFiles = new ArrayList<>();
 
         if (frames == null) {
-            return;
+            return savedFiles;
         }
 
         for (PkgMgrFrame frame : frames)
         {
             frame.doSave();
             frame.setStatus(Config.getString("pkgmgr.packageSaved"));
+            if (! frame.isEmptyFrame()) {
+                savedFiles.addAll(frame.getPackage().getPackageFiles());
+            }
         }
+        return savedFiles;
     }
 
     /**
      * Request all open editor windows for the current project to save their
      * contents (if modified).
+     * 
+     * @return The source files which may have been written.
      */
-    public void saveAllEditors() throws IOException
+    public List<File> saveAllEditors() throws IOException
     {
         Iterator<Package> i = packages.values().iterator();
         IOException exception = null;
+        List<File> savedFiles = new ArrayList<>();
 
         while(i.hasNext()) {
             Package pkg = i.next();
             try {
-                pkg.saveFilesInEditors();
+                savedFiles.addAll(pkg.saveFilesInEditors());
             }
             catch(IOException ioe) {
                 exception = ioe;
@@ -1459,6 +1476,7 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
             // Propagate the exception - let the caller know that something went wrong.
             throw exception;
         }
+        return savedFiles;
     }
 
     /**
@@ -2399,6 +2417,17 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
         return importScanner;
     }
 
+    /**
+     * Get the cache of source analysis results for this project.
+     */
+    @OnThread(Tag.Any)
+    public synchronized ClassInfoCache getClassInfoCache()
+    {
+        if (classInfoCache == null)
+            classInfoCache = new ClassInfoCache(getProjectDir());
+        return classInfoCache;
+    }
+
     @OnThread(Tag.FXPlatform)
     public FXTabbedEditor createNewFXTabbedEditor()
     {
@@ -66,6 +66,28 @@ public final class SourceInfo
         return info;
     }
 
+    /**
+     * Similar to getInfo, but uses the project's cache of analysis results if the
+     * source, and the context in which it is analysed, have not changed since it was
+     * cached.  This is used when a package is loaded; getInfo always parses the source.
+     */
+    public ClassInfo getCachedInfo(File sourceFile, Package pkg)
+    {
+        if(info == null)
+        {
+            try
+            {
+                info = pkg.getProject().getClassInfoCache().getInfo(sourceFile, pkg);
+            }
+            catch (FileNotFoundException fnfe)
+            {
+                // info remains null
+            }
+        }
+
+        return info;
+    }
+
     /**
      * Similar to getInfo, but do not parse if info is not available.
      * Instead, return null, if we got no info.
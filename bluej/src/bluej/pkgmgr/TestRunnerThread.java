@@ -34,12 +34,11 @@ import threadchecker.OnThread;
 import threadchecker.Tag;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 /**
  * Provide a thread class for running unit tests.
@@ -94,58 +93,65 @@ public class TestRunnerThread extends Thread
     @OnThread(value = Tag.Worker, ignoreParent = true)
     public void run()
     {
-        while (testIterator.hasNext()) 
+        if (methodName == null)
         {
-
+            runAllTests();
+        }
+        else
+        {
+            // Run only a single test.
             ClassTarget ct = testIterator.next();
+            TestResultsWithRunTime lastResult = project.getDebugger().runTestMethod(ct.getQualifiedName(), methodName);
+            // Add the test result to the test display frame:
+            Platform.runLater(() -> showNextResult(lastResult.getResults().get(0)));
+        }
+    }
 
-            List<String> allMethods;
-            if (methodName == null)
-            {
-                // Run all tests for a target, so find out what they are:
-                CompletableFuture<List<String>> methodsFuture = new CompletableFuture<>();
-                Platform.runLater(() -> startTestFindMethods(ct, methodsFuture));
-                try
-                {
-                    allMethods = methodsFuture.get();
-                }
-                catch (InterruptedException | ExecutionException e)
-                {
-                    Debug.reportError(e);
-                    allMethods = Collections.emptyList();
-                }
-            }
-            else 
-            {
-                // Run only a single test.
-                allMethods = Arrays.asList(methodName);
-            }
+    /**
+     * Run all the tests for all the targets. The tests are all run with a single request
+     * to the debug VM, with the results for each class displayed as they arrive.
+     */
+    @OnThread(Tag.Worker)
+    private void runAllTests()
+    {
+        List<ClassTarget> targets = new ArrayList<>();
+        testIterator.forEachRemaining(targets::add);
 
-            // State 1 has given us the tests we need to run. Now run them:
-            if (allMethods.size() == 1)
+        // Find out what the tests are:
+        CompletableFuture<Void> methodsFound = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            for (ClassTarget ct : targets)
             {
-                TestResultsWithRunTime lastResult = project.getDebugger().runTestMethod(ct.getQualifiedName(), methodName);
-                // Add the test result to the test display frame:
-                Platform.runLater(() -> showNextResult(lastResult.getResults().get(0)));
+                startTestFindMethods(ct);
             }
-            else
-            {
-                TestResultsWithRunTime lastResults = project.getDebugger().runTestMethod(ct.getQualifiedName(), null);
-                // Add all test results to the test display frame:
-                for(DebuggerTestResult result : lastResults.getResults())
+            methodsFound.complete(null);
+        });
+        try
+        {
+            methodsFound.get();
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            Debug.reportError(e);
+        }
+
+        List<String> classNames = targets.stream().map(ClassTarget::getQualifiedName).collect(Collectors.toList());
+        int[] totalRunTime = new int[1];
+        project.getDebugger().runTestClasses(classNames, (className, results) -> {
+            totalRunTime[0] += results.getTotalRunTime();
+            int runTimeSoFar = totalRunTime[0];
+            // Add all test results to the test display frame:
+            Platform.runLater(() -> {
+                for (DebuggerTestResult result : results.getResults())
                 {
-                    Platform.runLater(() -> showNextResult(result));
+                    showNextResult(result);
                 }
-                Platform.runLater(() -> TestDisplayFrame.getTestDisplay()
-                        .setTotalTimeMs(lastResults.getTotalRunTime()));
-            }
-        }
+                TestDisplayFrame.getTestDisplay().setTotalTimeMs(runTimeSoFar);
+            });
+        });
 
         // Finally, tell the PkgMgrFrame that we're done:
-        Platform.runLater(() -> {
-            if (methodName == null)
-                pmf.endTestRun();
-        });
+        Platform.runLater(() -> pmf.endTestRun());
     }
 
     @OnThread(Tag.FXPlatform)
@@ -162,23 +168,14 @@ public class TestRunnerThread extends Thread
     }
 
     @OnThread(Tag.FXPlatform)
-    private void startTestFindMethods(ClassTarget ct, CompletableFuture<List<String>> methodsFuture)
+    private void startTestFindMethods(ClassTarget ct)
     {
-        // State 1 is where we confirm that we really do have an executable unit
-        // test class, and we delegate to the unit test role to gives us some
-        // test methods to executed.
+        // Confirm that we really do have an executable unit test class, and
+        // delegate to the unit test role to set up the display for its tests.
 
         if (ct.isCompiled() && ct.isUnitTest() && ! ct.isAbstract()) {
             UnitTestClassRole utcr = (UnitTestClassRole) ct.getRole();
-
-            List<String> allMethods = utcr.startRunTest(pmf, ct, TestRunnerThread.this);
-            if (allMethods == null)
-                methodsFuture.complete(Collections.emptyList());
-            else
-                methodsFuture.complete(allMethods);
-        }
-        else {
-            methodsFuture.complete(Collections.emptyList());
+            utcr.startRunTest(pmf, ct, TestRunnerThread.this);
         }
     }
 }
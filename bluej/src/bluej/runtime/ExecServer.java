@@ -26,6 +26,10 @@ import java.awt.Toolkit;
 import java.awt.Window;
 import java.awt.event.AWTEventListener;
 import java.awt.event.WindowEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
@@ -33,9 +37,10 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
+import java.net.Socket;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -116,6 +121,8 @@ public class ExecServer
     public static Object methodReturn;
     public static Class<?> executedClass;
     public static Throwable exception;
+    // The results so far of a batch test run (see runTestBatch):
+    public static volatile String testResults;
     
     // These constant values must match the variable names declared above
     public static final String RUN_ON_THREAD_NAME = "threadToRunOn";
@@ -127,6 +134,7 @@ public class ExecServer
     public static final String METHOD_RETURN_NAME = "methodReturn";
     public static final String EXCEPTION_NAME = "exception";
     public static final String EXECUTED_CLASS_NAME = "executedClass";
+    public static final String TEST_RESULTS_NAME = "testResults";
 
     // Possible actions for the main thread
     public static final int EXEC_SHELL = 0;  // Execute a shell class
@@ -139,6 +147,7 @@ public class ExecServer
     public static final int INSTANTIATE_CLASS_ARGS = 7; // use constructor
         // with specified parameter types and arguments
     public static final int LAUNCH_FX_APP = 8;
+    public static final int TEST_RUN_BATCH = 9; // run all tests in a list of classes
 
     // Parameter for worker thread actions
     public static int workerAction = EXIT_VM;
@@ -146,6 +155,7 @@ public class ExecServer
     public static Object object;
     public static String classPath;
     public static String className;
+    public static String classBytes; // class file contents, one char per byte
     public static String scopeId;
     public static ClassLoader classLoader = null; // null to use current loader.
     
@@ -157,6 +167,7 @@ public class ExecServer
     public static final String OBJECT_NAME = "object";
     public static final String CLASSPATH_NAME = "classPath";
     public static final String CLASSNAME_NAME = "className";
+    public static final String CLASS_BYTES_NAME = "classBytes";
     public static final String WORKER_RETURN_NAME = "workerReturn";
     public static final String SCOPE_ID_NAME = "scopeId";
     public static final String CLASSLOADER_NAME = "classLoader";
@@ -168,6 +179,21 @@ public class ExecServer
     public static final int NEW_LOADER    = 3;
     // EXIT_VM ( = 4) is also used in the worker thread
     public static final int LOAD_ALL      = 5; // load class and inner classes
+    public static final int DEFINE_CLASS  = 6; // supply bytecode for a (shell) class
+
+    // System properties used to pass the address of the command channel (see startCommandThread)
+    public static final String COMMAND_PORT_PROPERTY = "bluej.execserver.commandPort";
+    public static final String COMMAND_TOKEN_PROPERTY = "bluej.execserver.commandToken";
+
+    // Commands which can be sent over the command channel
+    public static final int CMD_REMOVE_OBJECT = 1;  // scope id, object name
+    public static final int CMD_DEFINE_CLASS = 2;   // class name, class file contents
+    public static final int CMD_NEW_LOADER = 3;     // class path as for NEW_LOADER
+    public static final int CMD_LOAD_CLASS = 5;     // class name; the class is left in workerReturn
+    public static final int CMD_ADD_OBJECT = 6;     // scope id, object name; the object is in object
+    
+    // The name of the field holding the current class loader
+    public static final String CURRENT_LOADER_NAME = "currentLoader";
 
     // the current class loader
     private static ClassLoader currentLoader;
@@ -231,21 +257,8 @@ public class ExecServer
                             removeObject(scopeId, objectName);
                             break;
                         case LOAD_CLASS:
-                            try {
-                                if (classLoader == null)
-                                    classLoader = currentLoader;
-                                
-                                workerReturn = Class.forName(className, false, currentLoader);
-                                // Cause the class to be prepared (ie. its fields and methods
-                                // enumerated). Otherwise we can get ClassNotPreparedException
-                                // when we try and get the fields on the other VM.
-                                ((Class<?>) workerReturn).getFields();
-                                
-                                classLoader = null;  // reset for next call
-                            }
-                            catch(Throwable cnfe) {
-                                workerReturn = null;
-                            }
+                            workerReturn = loadClass(className);
+                            classLoader = null;  // reset for next call
                             break;
                         case NEW_LOADER:
                             workerReturn = newLoader(classPath);
@@ -254,6 +267,11 @@ public class ExecServer
                             System.exit(0);
                         case LOAD_ALL:
                             workerReturn = loadAllClasses(className);
+                            break;
+                        case DEFINE_CLASS:
+                            workerReturn = defineClass(className, classBytes);
+                            classBytes = null;
+                            break;
                     }
                     // After any action, set the next action to exit. If connection to
                     // primary VM is lost, the secondary VM (i.e. this VM) will then exit.
@@ -300,6 +318,127 @@ public class ExecServer
         // executing in other threads.
         workerThread.setPriority(Thread.MAX_PRIORITY);
         workerThread.start();
+        
+        startCommandThread();
+    }
+
+    /**
+     * Connect to the command channel of the main VM, if it has provided one, and start a thread
+     * to carry out the commands received over it. The command channel is a loopback socket, which
+     * is used instead of resuming the worker thread over the debugger connection. Each command
+     * is an int (one of the CMD_ constants) followed by its parameters; the reply to each command
+     * is an int, 1 for success or 0 for failure. An object which is passed to or returned from a
+     * command is passed in the object or workerReturn field, which the main VM accesses directly.
+     * Like the worker thread, the command thread must not execute user code, nor wait for
+     * anything that may be held up by user code (such as the event thread), since the main
+     * VM waits for each reply.
+     */
+    private static void startCommandThread()
+    {
+        String port = System.getProperty(COMMAND_PORT_PROPERTY);
+        String token = System.getProperty(COMMAND_TOKEN_PROPERTY);
+        // These aren't for user code:
+        System.clearProperty(COMMAND_PORT_PROPERTY);
+        System.clearProperty(COMMAND_TOKEN_PROPERTY);
+        if (port == null || token == null) {
+            return;
+        }
+
+        Thread commandThread = new Thread("BlueJ command thread")
+        {
+            public void run()
+            {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(port))) {
+                    socket.setTcpNoDelay(true);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    out.writeLong(Long.parseLong(token));
+                    out.flush();
+                    
+                    while (true) {
+                        int command = in.readInt();
+                        int result;
+                        try {
+                            result = runCommand(command, in);
+                        }
+                        catch (RuntimeException | LinkageError e) {
+                            // The command failed; the main VM is waiting for the reply, and
+                            // may send further commands, so carry on:
+                            result = 0;
+                        }
+                        out.writeInt(result);
+                        out.flush();
+                    }
+                }
+                catch (IOException | NumberFormatException e) {
+                    // Either the main VM has gone, or we couldn't connect to it. In the latter
+                    // case, it will use the worker thread instead.
+                }
+            }
+        };
+        commandThread.setDaemon(true);
+        commandThread.setPriority(Thread.MAX_PRIORITY);
+        commandThread.start();
+    }
+
+    /**
+     * Carry out a command received over the command channel (see startCommandThread), having
+     * read its parameters, and return the reply: 1 for success or 0 for failure. The parameters
+     * are read before the command is carried out, so that if the command throws an exception,
+     * the next command can still be read.
+     */
+    private static int runCommand(int command, DataInputStream in) throws IOException
+    {
+        int result = 1;
+        switch (command) {
+            case CMD_REMOVE_OBJECT:
+            {
+                String commandScopeId = readCommandString(in);
+                removeObject(commandScopeId, readCommandString(in));
+                break;
+            }
+            case CMD_DEFINE_CLASS:
+            {
+                String commandClassName = readCommandString(in);
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                result = defineClass(commandClassName, bytes) != null ? 1 : 0;
+                break;
+            }
+            case CMD_NEW_LOADER:
+                newLoader(readCommandString(in));
+                break;
+            case CMD_LOAD_CLASS:
+                workerReturn = loadClass(readCommandString(in));
+                result = workerReturn != null ? 1 : 0;
+                break;
+            case CMD_ADD_OBJECT:
+            {
+                String commandScopeId = readCommandString(in);
+                try {
+                    addObject(commandScopeId, readCommandString(in), object);
+                }
+                finally {
+                    object = null;
+                }
+                break;
+            }
+            default:
+                result = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Read a string sent over the command channel: its length, followed by its characters.
+     */
+    private static String readCommandString(DataInputStream in) throws IOException
+    {
+        char[] chars = new char[in.readInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
     }
 
     /**
@@ -366,6 +505,25 @@ public class ExecServer
         }
     }
 
+    /**
+     * Load (but don't initialise) a class using the current class loader.
+     * @return the class, or null if it couldn't be loaded
+     */
+    private static Class<?> loadClass(String className)
+    {
+        try {
+            Class<?> cl = Class.forName(className, false, currentLoader);
+            // Cause the class to be prepared (ie. its fields and methods
+            // enumerated). Otherwise we can get ClassNotPreparedException
+            // when we try and get the fields on the other VM.
+            cl.getFields();
+            return cl;
+        }
+        catch(Throwable cnfe) {
+            return null;
+        }
+    }
+
     /**
      * Create a new class loader for a given classpath.
      * @param urlListAsString a URL list written as a single string (the \n is used to divide entries)
@@ -385,7 +543,7 @@ public class ExecServer
             System.err.println("ExecServer.newLoader() Malformed URL=" + splits[index]);
         }
 
-        currentLoader = new URLClassLoader(urls);
+        currentLoader = new UserClassLoader(urls);
         
         synchronized (objectMaps) {
             objectMaps.clear();
@@ -394,6 +552,33 @@ public class ExecServer
         return currentLoader;
     }
 
+    /**
+     * Supply the bytecode for a class, to be defined by the current class loader when
+     * the class is first loaded. The bytecode is passed as a string with one character
+     * per byte. Returns null if the class cannot be supplied this way.
+     */
+    private static Object defineClass(String className, String classBytes)
+    {
+        byte[] bytes = new byte[classBytes.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) classBytes.charAt(i);
+        }
+        return defineClass(className, bytes);
+    }
+
+    /**
+     * Supply the bytecode for a class, to be defined by the current class loader when
+     * the class is first loaded. Returns null if the class cannot be supplied this way.
+     */
+    private static Object defineClass(String className, byte[] bytes)
+    {
+        if (currentLoader instanceof UserClassLoader) {
+            ((UserClassLoader) currentLoader).addClass(className, bytes);
+            return Boolean.TRUE;
+        }
+        return null;
+    }
+
     /**
      * Load (and prepare) a class in the remote runtime. Return null if the class could not
      * be loaded.
@@ -717,6 +902,56 @@ public class ExecServer
             recorder.testDetails.stream().flatMap(t -> Arrays.stream(t))).toArray();
     }
 
+    /**
+     * Run all the test methods in each of a list of test classes, and return the results
+     * encoded in a single string, so that they can be fetched from this VM at once rather
+     * than an array element at a time. While the tests are running, the results for the
+     * classes which have finished so far are available in the testResults field.<p>
+     *
+     * For each class, the encoded results consist of the class name, the number of items
+     * which follow, and then the items of the array returned by runTestMethod; or, if the
+     * tests could not be run, the class name, "1" and "-1". Each string is written as its
+     * length, a colon, and then its characters.
+     *
+     * @param classNames  the fully qualified names of the classes, separated by newlines
+     */
+    private static String runTestBatch(String classNames)
+    {
+        StringBuilder results = new StringBuilder();
+        for (String className : classNames.split("\n"))
+        {
+            Object[] classResults;
+            try
+            {
+                classResults = runTestMethod(className, null);
+            }
+            catch (Throwable t)
+            {
+                classResults = new Object[] {"-1"};
+            }
+
+            appendTestResult(results, className);
+            appendTestResult(results, String.valueOf(classResults.length));
+            for (Object item : classResults)
+            {
+                appendTestResult(results, (String) item);
+            }
+            testResults = results.toString();
+        }
+        // Don't leave these around for the next batch:
+        testResults = null;
+        return results.toString();
+    }
+
+    private static void appendTestResult(StringBuilder results, String s)
+    {
+        if (s == null)
+        {
+            s = "";
+        }
+        results.append(s.length()).append(':').append(s);
+    }
+
     /**
      * Remove an object from the scope.
      */
@@ -892,6 +1127,9 @@ public class ExecServer
                         case TEST_RUN:
                             methodReturn = runTestMethod(classToRun, methodToRun);
                             break;
+                        case TEST_RUN_BATCH:
+                            methodReturn = runTestBatch(classToRun);
+                            break;
                         case DISPOSE_WINDOWS:
                             disposeWindows();
                             break;
@@ -0,0 +1,74 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.runtime;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The class loader used to load user classes in the debug VM.  As well as loading
+ * classes from the project class path, it can define classes from bytecode supplied
+ * directly by BlueJ; this is used for shell classes, which are compiled in memory
+ * rather than being written to the project directory.
+ *
+ * <p>Shell classes must be defined by the same loader as the user classes, since
+ * they are in the same package and may access package-private members.
+ */
+public class UserClassLoader extends URLClassLoader
+{
+    // Classes which have been supplied but not yet loaded, keyed by binary name:
+    private final Map<String, byte[]> pendingClasses = new HashMap<String, byte[]>();
+
+    public UserClassLoader(URL[] urls)
+    {
+        super(urls);
+    }
+
+    /**
+     * Supply the bytecode for a class. The class will be defined when it is
+     * first loaded.
+     *
+     * @param name   The binary name of the class
+     * @param bytes  The class file contents
+     */
+    public void addClass(String name, byte[] bytes)
+    {
+        synchronized (pendingClasses) {
+            pendingClasses.put(name, bytes);
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException
+    {
+        byte[] bytes;
+        synchronized (pendingClasses) {
+            bytes = pendingClasses.remove(name);
+        }
+        if (bytes != null) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+        return super.findClass(name);
+    }
+}
@@ -113,6 +113,11 @@ public class ClassElement extends DocumentContainerCodeElement implements TopLev
      * needing to always regenerate the document.
      */
     private DocAndPositions sourceDocument;
+    /**
+     * The source document of the earlier version of this class (the element which
+     * this one replaced), which can be updated to become our document; may be null.
+     */
+    private DocAndPositions earlierDocument;
     // Keep track of which slot was completing when we generated sourceDocument,
     // as this affects the content of the document, and we may have to regenerate.
     private ExpressionSlot<?> sourceDocumentCompleting;
@@ -268,6 +273,12 @@ public class ClassElement extends DocumentContainerCodeElement implements TopLev
     
     @Override
     public LocatableElement toXML()
+    {
+        return toXML(true);
+    }
+
+    @Override
+    public LocatableElement toXML(boolean includeMembers)
     {
         LocatableElement classEl = new LocatableElement(this, ELEMENT);
         if (abstractModifier) {
@@ -283,18 +294,31 @@ public class ClassElement extends DocumentContainerCodeElement implements TopLev
             classEl.appendChild(documentation.toXML());
         }
 
-        appendCollection(classEl, imports, "imports");
+        appendCollection(classEl, includeMembers ? imports : Collections.emptyList(), "imports");
         classEl.appendChild(TopLevelCodeElement.typeListToXML(implementsList, "implements", "implementstype", "type"));
         
-        appendCollection(classEl, fields, "fields");
-        appendCollection(classEl, constructors, "constructors");
-        appendCollection(classEl, methods, "methods");
+        appendCollection(classEl, includeMembers ? fields : Collections.emptyList(), "fields");
+        appendCollection(classEl, includeMembers ? constructors : Collections.emptyList(), "constructors");
+        appendCollection(classEl, includeMembers ? methods : Collections.emptyList(), "methods");
 
         classEl.addAttribute(TopLevelCodeElement.getStrideVersionAttribute());
 
         return classEl;
     }
 
+    @Override
+    public List<? extends CodeElement> getMembers(String collectionName)
+    {
+        switch (collectionName)
+        {
+            case "imports": return imports;
+            case "fields": return fields;
+            case "constructors": return constructors;
+            case "methods": return methods;
+            default: return null;
+        }
+    }
+
     private void appendCollection(Element topEl, List<? extends CodeElement> collection, String name)
     {
         Element collectionEl = new Element(name);
@@ -459,11 +483,33 @@ public class ClassElement extends DocumentContainerCodeElement implements TopLev
             {
                 sourceDocument = new DocAndPositions(src, java, positions);
                 documentCache.put(src, sourceDocument);
+                // Documents for completion differ from the usual one, so leave the earlier
+                // document for when the usual one is made:
+                if (completing == null)
+                {
+                    sourceDocument.setEarlierVersion(earlierDocument);
+                    earlierDocument = null;
+                }
             }
         }
         return sourceDocument;
     }
 
+    /**
+     * Set the earlier version of this element, i.e. the element which this one replaces.
+     * Our source document will then be made by updating the earlier version's document,
+     * which is much quicker than making a new one.
+     */
+    public synchronized void setEarlierVersion(ClassElement earlier)
+    {
+        earlierDocument = earlier.getReusableDocument();
+    }
+
+    private synchronized DocAndPositions getReusableDocument()
+    {
+        return sourceDocument != null && sourceDocumentCompleting == null ? sourceDocument : earlierDocument;
+    }
+
     @Override
     public Stream<CodeElement> streamContained()
     {
@@ -614,33 +660,6 @@ public class ClassElement extends DocumentContainerCodeElement implements TopLev
             .collect(Collectors.toList());
     }
 
-    private static class DocAndPositions
-    {
-        public final JavaSource java;
-        public final IdentityHashMap<JavaFragment, Integer> fragmentPositions;
-        private String src;
-        private MoeSyntaxDocument document;
-
-        public DocAndPositions(String src, JavaSource java, IdentityHashMap<JavaFragment, Integer> fragmentPositions)
-        {
-            this.src = src;
-            this.java = java;
-            this.fragmentPositions = fragmentPositions;
-        }
-        
-        @OnThread(Tag.FXPlatform)
-        public MoeSyntaxDocument getDocument(EntityResolver projectResolver)
-        {
-            if (document == null)
-            {
-                document = new MoeSyntaxDocument(projectResolver);
-                document.insertString(0, src);
-                document.enableParser(true);
-            }
-            return document;
-        }
-    }
-
     @Override
     @OnThread(Tag.FXPlatform)
     public Stream<SyntaxCodeError> findEarlyErrors()
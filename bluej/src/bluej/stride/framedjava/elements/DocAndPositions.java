@@ -0,0 +1,124 @@
+/*
+ This file is part of the BlueJ program. 
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+ 
+ This program is free software; you can redistribute it and/or 
+ modify it under the terms of the GNU General Public License 
+ as published by the Free Software Foundation; either version 2 
+ of the License, or (at your option) any later version. 
+ 
+ This program is distributed in the hope that it will be useful, 
+ but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ GNU General Public License for more details. 
+ 
+ You should have received a copy of the GNU General Public License 
+ along with this program; if not, write to the Free Software 
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. 
+ 
+ This file is subject to the Classpath exception as provided in the  
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.stride.framedjava.elements;
+
+import java.util.IdentityHashMap;
+
+import bluej.editor.moe.MoeSyntaxDocument;
+import bluej.parser.entity.EntityResolver;
+import bluej.stride.framedjava.ast.JavaFragment;
+import bluej.stride.framedjava.ast.JavaSource;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * The generated Java source for a top-level element, with the positions of its fragments,
+ * and a (lazily created) parsed document of the source.
+ *
+ * <p>When the source of a class is regenerated after an edit, usually only a small part of
+ * it has changed.  So rather than making and parsing a new document, the document of the
+ * earlier version of the source can be taken over and updated, which only re-parses the
+ * changed part.
+ */
+class DocAndPositions
+{
+    public final JavaSource java;
+    public final IdentityHashMap<JavaFragment, Integer> fragmentPositions;
+    private final String src;
+    private MoeSyntaxDocument document;
+    // An earlier version of the source, whose document we may take over; may be null.
+    private DocAndPositions earlier;
+
+    public DocAndPositions(String src, JavaSource java, IdentityHashMap<JavaFragment, Integer> fragmentPositions)
+    {
+        this.src = src;
+        this.java = java;
+        this.fragmentPositions = fragmentPositions;
+    }
+
+    /**
+     * Set the earlier version of the source, whose document (if it has one when our
+     * document is needed) will be updated to become our document.
+     */
+    @OnThread(Tag.FXPlatform)
+    public void setEarlierVersion(DocAndPositions earlier)
+    {
+        // If the earlier version never made a document, look at the one before it instead:
+        if (earlier != null && earlier.document == null)
+        {
+            earlier = earlier.earlier;
+        }
+        this.earlier = earlier;
+    }
+
+    @OnThread(Tag.FXPlatform)
+    public MoeSyntaxDocument getDocument(EntityResolver projectResolver)
+    {
+        if (document == null)
+        {
+            DocAndPositions from = earlier;
+            earlier = null;
+            if (from != null && from.document != null)
+            {
+                // Take over the earlier document; it will make a new one if it needs it again:
+                document = from.document;
+                from.document = null;
+                replaceChanged(document, from.src, src);
+            }
+            else
+            {
+                document = new MoeSyntaxDocument(projectResolver);
+                document.insertString(0, src);
+                document.enableParser(true);
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Update the document, which contains the old source, to contain the new source, by
+     * replacing only the part between the common start and the common end of the two.
+     */
+    @OnThread(Tag.FXPlatform)
+    private static void replaceChanged(MoeSyntaxDocument document, String oldSrc, String newSrc)
+    {
+        int maxCommon = Math.min(oldSrc.length(), newSrc.length());
+        int prefix = 0;
+        while (prefix < maxCommon && oldSrc.charAt(prefix) == newSrc.charAt(prefix))
+        {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxCommon - prefix
+                && oldSrc.charAt(oldSrc.length() - 1 - suffix) == newSrc.charAt(newSrc.length() - 1 - suffix))
+        {
+            suffix++;
+        }
+
+        int removeLength = oldSrc.length() - prefix - suffix;
+        String insert = newSrc.substring(prefix, newSrc.length() - suffix);
+        if (removeLength != 0 || !insert.isEmpty())
+        {
+            document.replace(prefix, removeLength, insert);
+        }
+    }
+}
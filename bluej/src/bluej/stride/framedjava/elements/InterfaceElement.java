@@ -80,6 +80,11 @@ public class InterfaceElement extends DocumentContainerCodeElement implements To
      * needing to always regenerate the document.
      */
     private DocAndPositions sourceDocument;
+    /**
+     * The source document of the earlier version of this interface (the element which
+     * this one replaced), which can be updated to become our document; may be null.
+     */
+    private DocAndPositions earlierDocument;
     // Keep track of which slot was active when we generated the document,
     // as if affects results:
     private ExpressionSlot<?> sourceDocumentCompleting;
@@ -161,6 +166,12 @@ public class InterfaceElement extends DocumentContainerCodeElement implements To
 
     @Override
     public LocatableElement toXML()
+    {
+        return toXML(true);
+    }
+
+    @Override
+    public LocatableElement toXML(boolean includeMembers)
     {
         LocatableElement interfaceEl = new LocatableElement(this, ELEMENT);
         interfaceEl.addAttributeCode("name", interfaceName);
@@ -177,14 +188,26 @@ public class InterfaceElement extends DocumentContainerCodeElement implements To
             interfaceEl.appendChild(documentation.toXML());
         }
 
-        appendCollection(interfaceEl, imports, "imports");
-        appendCollection(interfaceEl, fields, "fields");
-        appendCollection(interfaceEl, methods, "methods");
+        appendCollection(interfaceEl, includeMembers ? imports : Collections.emptyList(), "imports");
+        appendCollection(interfaceEl, includeMembers ? fields : Collections.emptyList(), "fields");
+        appendCollection(interfaceEl, includeMembers ? methods : Collections.emptyList(), "methods");
 
         interfaceEl.addAttribute(TopLevelCodeElement.getStrideVersionAttribute());
         return interfaceEl;
     }
 
+    @Override
+    public List<? extends CodeElement> getMembers(String collectionName)
+    {
+        switch (collectionName)
+        {
+            case "imports": return imports;
+            case "fields": return fields;
+            case "methods": return methods;
+            default: return null;
+        }
+    }
+
     private void appendCollection(Element topEl, List<? extends CodeElement> collection, String name)
     {
         Element collectionEl = new Element(name);
@@ -342,10 +365,32 @@ public class InterfaceElement extends DocumentContainerCodeElement implements To
             {
                 sourceDocument = new DocAndPositions(src, java, positions);
                 documentCache.put(src, sourceDocument);
+                // Documents for completion differ from the usual one, so leave the earlier
+                // document for when the usual one is made:
+                if (completing == null)
+                {
+                    sourceDocument.setEarlierVersion(earlierDocument);
+                    earlierDocument = null;
+                }
             }
         }
         return sourceDocument;
     }
+
+    /**
+     * Set the earlier version of this element, i.e. the element which this one replaces.
+     * Our source document will then be made by updating the earlier version's document,
+     * which is much quicker than making a new one.
+     */
+    public synchronized void setEarlierVersion(InterfaceElement earlier)
+    {
+        earlierDocument = earlier.getReusableDocument();
+    }
+
+    private synchronized DocAndPositions getReusableDocument()
+    {
+        return sourceDocument != null && sourceDocumentCompleting == null ? sourceDocument : earlierDocument;
+    }
     
     @Override
     public Stream<CodeElement> streamContained()
@@ -380,33 +425,6 @@ public class InterfaceElement extends DocumentContainerCodeElement implements To
         return Collections.emptyList();
     }
 
-    private static class DocAndPositions
-    {
-        public final JavaSource java;
-        public final IdentityHashMap<JavaFragment, Integer> fragmentPositions;
-        private String src;
-        private MoeSyntaxDocument document;
-
-        public DocAndPositions(String src, JavaSource java, IdentityHashMap<JavaFragment, Integer> fragmentPositions)
-        {
-            this.src = src;
-            this.java = java;
-            this.fragmentPositions = fragmentPositions;
-        }
-
-        @OnThread(Tag.FXPlatform)
-        public MoeSyntaxDocument getDocument(EntityResolver projectResolver)
-        {
-            if (document == null)
-            {
-                document = new MoeSyntaxDocument(projectResolver);
-                document.insertString(0, src);
-                document.enableParser(true);
-            }
-            return document;
-        }
-    }
-
     @Override
     public Stream<SyntaxCodeError> findEarlyErrors()
     {
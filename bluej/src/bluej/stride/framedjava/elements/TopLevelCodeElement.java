@@ -124,6 +124,18 @@ public interface TopLevelCodeElement
     // Methods mirroring CodeElement:
     public LocatableElement toXML();
 
+    /**
+     * Get the XML for this element; if includeMembers is false, the collections of members
+     * (imports, fields, constructors and methods) are left empty.
+     */
+    public LocatableElement toXML(boolean includeMembers);
+
+    /**
+     * Get the members in the collection with the given name ("imports", "fields",
+     * "constructors" or "methods"), or null if this element has no such collection.
+     */
+    public List<? extends CodeElement> getMembers(String collectionName);
+
     public TopLevelFrame getFrame();
 
     public Stream<CodeElement> streamContained();
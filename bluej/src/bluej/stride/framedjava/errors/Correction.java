@@ -100,8 +100,9 @@ class Correction extends FixSuggestion
     @OnThread(Tag.Any)
     public static List<Correction> winnowAndCreateCorrections(String cur, Stream<CorrectionInfo> possibleCorrections, FXPlatformConsumer<String> replacer)
     {
+        String curLower = cur.toLowerCase();
         return possibleCorrections
-                .map(n -> new StringAndDist(n, Utility.editDistance(cur.toLowerCase(), n.getCorrection().toLowerCase())))
+                .map(n -> new StringAndDist(n, Utility.editDistance(curLower, n.getCorrection().toLowerCase(), MAX_EDIT_DISTANCE)))
                 .filter(sd -> sd.distance <= MAX_EDIT_DISTANCE)
                 .sorted((a, b) -> Integer.compare(a.distance, b.distance))
                 .limit(3)
@@ -197,10 +197,15 @@ public class ClassFrame extends TopLevelDocumentMultiCanvasFrame<ClassElement>
         List<CodeElement> constructors = getMembers(constructorsCanvas);
         List<CodeElement> methods = getMembers(methodsCanvas);
         List<ImportElement> imports = Utility.mapList(getMembers(importCanvas), e -> (ImportElement)e);
+        ClassElement previous = element;
         element = new ClassElement(this, projectResolver, abstractModifier.get(), paramName.getSlotElement(),
                     showingExtends.get() && !extendsSlot.getText().equals("") ? extendsSlot.getSlotElement() : null,
                     implementsSlot.getTypes(), fields, constructors, methods, new JavadocUnit(getDocumentation()),
                     packageNameLabel == null ? null : packageNameLabel.getText(), imports, frameEnabledProperty.get());
+        if (previous != null)
+        {
+            element.setEarlierVersion(previous);
+        }
     }
 
     @Override
@@ -762,6 +767,16 @@ public class ClassFrame extends TopLevelDocumentMultiCanvasFrame<ClassElement>
         return constructorsCanvas;
     }
 
+    @Override
+    public FrameCanvas getMemberCanvas(String collectionName)
+    {
+        if (collectionName.equals("constructors"))
+        {
+            return constructorsCanvas;
+        }
+        return super.getMemberCanvas(collectionName);
+    }
+
     public void findMethod(String methodName, List<ParamInfo> params, FXConsumer<NormalMethodFrame> callback)
     {
         ClassElement el = getCode();
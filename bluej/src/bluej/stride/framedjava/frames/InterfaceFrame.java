@@ -106,9 +106,14 @@ public class InterfaceFrame extends TopLevelDocumentMultiCanvasFrame<InterfaceEl
         List<CodeElement> fields = getMembers(fieldsCanvas);
         List<CodeElement> methods = getMembers(methodsCanvas);
         List<ImportElement> imports = Utility.mapList(getMembers(importCanvas), e -> (ImportElement)e);
+        InterfaceElement previous = element;
         element = new InterfaceElement(this, projectResolver, paramName.getSlotElement(), extendsList.getTypes(),
                 fields, methods, new JavadocUnit(getDocumentation()), packageNameLabel == null ? null : packageNameLabel.getText(),
                 imports, frameEnabledProperty.get());
+        if (previous != null)
+        {
+            element.setEarlierVersion(previous);
+        }
     }
 
     @Override
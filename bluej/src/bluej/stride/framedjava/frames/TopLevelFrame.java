@@ -66,6 +66,11 @@ public interface TopLevelFrame<T extends CodeElement & TopLevelCodeElement> exte
     public void insertAtEnd(Frame frame);
     public ObservableStringValue nameProperty();
     public FrameCanvas getImportCanvas();
+    /**
+     * Get the canvas holding the members which are saved in the given collection element
+     * (e.g. "methods") of this frame's XML, or null if there is no such canvas.
+     */
+    public FrameCanvas getMemberCanvas(String collectionName);
     public void ensureImportCanvasShowing();
     
     @OnThread(value = Tag.Any, ignoreParent = true)
@@ -785,6 +785,8 @@ public abstract class StructuredSlot<SLOT_FRAGMENT extends StructuredSlotFragmen
         }
         else {
             currentlyCompleting = true;
+            // Code generated for the frame can depend on whether we are completing:
+            parentFrame.markCodeStale();
             // TODO we shouldn't need to regen whole code repeatedly if they only modify this slot:
             editor.afterRegenerateAndReparse(() -> {
                 final int stringPos = topLevel.caretPosToStringPos(topLevel.getCurrentPos(), true);
@@ -237,6 +237,13 @@ public abstract class Frame implements CursorFinder, FocusParent<FrameContentIte
      */
     private boolean alwaysBeenBlank = true;
 
+    /**
+     * Whether the code element of this frame may be out of date, because this frame (or a
+     * frame inside it) has been modified since the code was last regenerated.  This lets
+     * the enclosing class regenerate only the members which have changed.
+     */
+    private boolean codeStale = true;
+
     protected Map<String, BooleanProperty> modifiers = new HashMap<>();
     /**
      * Creates a new frame.
@@ -1362,6 +1369,37 @@ public abstract class Frame implements CursorFinder, FocusParent<FrameContentIte
         alwaysBeenBlank = alwaysBeenBlank && isAlmostBlank();
     }
 
+    /**
+     * Note that this frame has been modified, so its code, and that of all the frames
+     * enclosing it, must be regenerated.
+     */
+    public void markCodeStale()
+    {
+        Frame f = this;
+        while (f != null)
+        {
+            f.codeStale = true;
+            FrameCanvas canvas = f.getParentCanvas();
+            f = canvas == null || canvas.getParent() == null ? null : canvas.getParent().getFrame();
+        }
+    }
+
+    /**
+     * Whether this frame has been modified since markCodeRegenerated was last called.
+     */
+    public boolean isCodeStale()
+    {
+        return codeStale;
+    }
+
+    /**
+     * Note that this frame's code has been regenerated.
+     */
+    public void markCodeRegenerated()
+    {
+        codeStale = false;
+    }
+
     /**
      * Called when escape has been pressed within the frame.
      * @param srcRow The row in which escape was pressed
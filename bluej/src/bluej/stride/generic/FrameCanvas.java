@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -430,6 +431,19 @@ public class FrameCanvas implements FrameContentItem
         return canvas;
     }
 
+    /**
+     * Gets the frames in this canvas which have code, in order.
+     */
+    public List<CodeFrame<?>> getCodeFrames()
+    {
+        List<CodeFrame<?>> r = new ArrayList<>();
+        for (CodeFrame<?> f : getBlocksSubtype(CodeFrame.class))
+        {
+            r.add(f);
+        }
+        return r;
+    }
+
     public <T> List<T> getBlocksSubtype(Class<T> clazz)
     {
         List<T> r = new ArrayList<T>();
@@ -755,6 +769,11 @@ public class FrameCanvas implements FrameContentItem
                 JavaFXUtil.setPseudoclass("bj-empty", empty, canvas);
                 JavaFXUtil.setPseudoclass("bj-non-empty", !empty, canvas);
 
+                // The code of the frame containing us must now be regenerated:
+                if (parent.getFrame() != null)
+                {
+                    parent.getFrame().markCodeStale();
+                }
                 //Notify parent:
                 parent.modifiedCanvasContent();
         });
@@ -1126,28 +1145,26 @@ public class FrameCanvas implements FrameContentItem
     
     public void restore(List<? extends CodeElement> elements, InteractionManager editor)
     {
-        // First, make a mapping of all existing elements to their source
-        Map<String, List<Frame>> existingLookup = new HashMap<>();
-        List<String> existingList = new ArrayList<>();
-        for (CodeFrame f : getBlocksSubtype(CodeFrame.class))
+        List<CodeFrame<?>> existingFrames = getCodeFrames();
+
+        // Elements which are the code of our existing frames (as passed by undo, for frames
+        // which haven't changed) can be matched to their frames without comparing XML:
+        Map<CodeElement, Frame> existingByElement = new IdentityHashMap<>();
+        for (CodeFrame<?> f : existingFrames)
         {
-            String xml = f.getCode().toXML().toXML();
-            existingLookup.merge(xml, new ArrayList<>(Arrays.asList((Frame) f)), (a, b) -> {
-                a.addAll(b);
-                return a;
-            });
-            existingList.add(xml);
+            existingByElement.put(f.getCode(), (Frame) f);
         }
-        List<String> newContentXML = elements.stream().map(el -> el.toXML().toXML()).collect(Collectors.toList());
 
         // Check how many frames differ between the two, if they're of same length
-        if (existingList.size() == newContentXML.size())
+        if (existingFrames.size() == elements.size())
         {
             int numDiff = 0;
             int lastDiff = -1;
-            for (int i = 0; i < existingList.size(); i++)
+            for (int i = 0; i < existingFrames.size(); i++)
             {
-                if (existingList.get(i).equals(newContentXML.get(i)) == false)
+                CodeElement existingCode = existingFrames.get(i).getCode();
+                if (existingCode != elements.get(i)
+                        && existingCode.toXML().toXML().equals(elements.get(i).toXML().toXML()) == false)
                 {
                     numDiff += 1;
                     lastDiff = i;
@@ -1163,28 +1180,55 @@ public class FrameCanvas implements FrameContentItem
                 // Just one frame was changed; can we re-purpose the frame in question?
                 if (blockContents.get(lastDiff).tryRestoreTo(elements.get(lastDiff)))
                 {
-                    // Succesfully restored; we are done.
+                    // Succesfully restored; we are done, but the frame's code must be regenerated:
+                    blockContents.get(lastDiff).markCodeStale();
                     return;
                 }
             }
         }
 
         // If that didn't pan out, make the new list from scratch, but
-        // re-use old unchanged frames wherever possible:
+        // re-use old unchanged frames wherever possible.  First, those which match by identity:
         List<Frame> newContents = new ArrayList<>(elements.size());
-        for (int i = 0; i < elements.size(); i++)
+        boolean allMatched = true;
+        for (CodeElement element : elements)
+        {
+            Frame f = existingByElement.remove(element);
+            newContents.add(f);
+            allMatched &= f != null;
+        }
+
+        if (!allMatched)
         {
-            // We must remove, because if we have two identical frames,
-            // e.g. two blanks, we don't want to re-use the same one twice for
-            // our new list:
-            List<Frame> fs = existingLookup.get(newContentXML.get(i));
-            if (fs != null && fs.size() > 0)
+            // Make a mapping of all remaining existing frames to their source
+            Map<String, List<Frame>> existingLookup = new HashMap<>();
+            for (CodeFrame<?> f : existingFrames)
             {
-                newContents.add(fs.remove(0));
+                if (existingByElement.containsKey(f.getCode()))
+                {
+                    String xml = f.getCode().toXML().toXML();
+                    existingLookup.computeIfAbsent(xml, k -> new ArrayList<>()).add((Frame) f);
+                }
             }
-            else
+
+            for (int i = 0; i < elements.size(); i++)
             {
-                newContents.add(elements.get(i).createFrame(editor));
+                if (newContents.get(i) != null)
+                {
+                    continue;
+                }
+                // We must remove, because if we have two identical frames,
+                // e.g. two blanks, we don't want to re-use the same one twice for
+                // our new list:
+                List<Frame> fs = existingLookup.get(elements.get(i).toXML().toXML());
+                if (fs != null && fs.size() > 0)
+                {
+                    newContents.set(i, fs.remove(0));
+                }
+                else
+                {
+                    newContents.set(i, elements.get(i).createFrame(editor));
+                }
             }
         }
 
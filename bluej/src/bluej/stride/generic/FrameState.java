@@ -23,37 +23,78 @@ package bluej.stride.generic;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import javafx.scene.Node;
 
 import nu.xom.Builder;
+import nu.xom.Element;
+import nu.xom.Elements;
 import bluej.parser.entity.EntityResolver;
+import bluej.stride.framedjava.ast.Loader;
 import bluej.stride.framedjava.elements.ClassElement;
+import bluej.stride.framedjava.elements.CodeElement;
+import bluej.stride.framedjava.elements.ContainerCodeElement;
 import bluej.stride.framedjava.elements.TopLevelCodeElement;
+import bluej.stride.framedjava.frames.CodeFrame;
 import bluej.stride.framedjava.frames.TopLevelFrame;
 import nu.xom.ParsingException;
 
 /**
- * Stores a ClassElement's state as XML
+ * Stores a ClassElement's state as XML.
+ *
+ * <p>The XML of each member (each import, field, constructor and method) is stored
+ * separately from that of the rest of the class.  Members which are unchanged from the
+ * previous state share their XML string with it, so that successive states only take
+ * up space for what has changed, and so that restoring one state over another need only
+ * touch the members which differ between them (see restoreTo).
+ *
+ * <p>The state which is currently shown also remembers the code element which each
+ * member's XML was made from.  A member's frame keeps its code element until the member is
+ * modified, so when the next state is made, members whose code element is unchanged reuse
+ * their XML without serialising them again, and only the modified members are serialised.
  */
 public class FrameState
 {
-    private String classElementXML;
+    // The collection elements of a top-level element whose members are stored separately:
+    private static final List<String> MEMBER_COLLECTIONS = Arrays.asList("imports", "fields", "constructors", "methods");
+
+    // The XML of the top-level element, with the members of each collection removed:
+    private final String headerXML;
+    // The XML of each member, keyed by collection name:
+    private final Map<String, List<String>> memberXML = new HashMap<>();
+    // The code element of each member, keyed by collection name, while this state is the
+    // one shown (so that we don't keep the frames of old states alive); otherwise null:
+    private Map<String, List<CodeElement>> memberCode;
     private int cursorIndex; // Which cursor
     private int cursorInfo; // Saved state, e.g. caret position
 
     public FrameState(TopLevelCodeElement topLevelElement)
     {
-        this.classElementXML = topLevelElement.toXML().toXML();
+        this.headerXML = splitXML(topLevelElement, null);
         cursorIndex = -1;
         cursorInfo = -1;
     }
     
-    public FrameState(TopLevelFrame<?> frame, TopLevelCodeElement classElement, RecallableFocus focusOverride)
+    /**
+     * Create a state for the given frame and its code.
+     *
+     * @param previous  The previous state (with which XML will be shared where possible), or null.
+     *                  This state takes over from it as the state which is shown.
+     */
+    public FrameState(TopLevelFrame<?> frame, TopLevelCodeElement classElement, RecallableFocus focusOverride, FrameState previous)
     {
-        this.classElementXML = classElement.toXML().toXML();
+        this.headerXML = splitXML(classElement, previous);
+        if (previous != null) {
+            previous.memberCode = null;
+        }
         List<RecallableFocus> focusables = frame.getFocusables().collect(Collectors.toList());
         this.cursorIndex = -1;    
 
@@ -72,6 +113,86 @@ public class FrameState
             }
         }
     }
+
+    /**
+     * Fill in memberXML (and memberCode) from the given element, and return the XML of the
+     * rest of it.
+     */
+    private String splitXML(TopLevelCodeElement topLevelElement, FrameState previous)
+    {
+        memberCode = new HashMap<>();
+        for (String collection : MEMBER_COLLECTIONS) {
+            List<? extends CodeElement> members = topLevelElement.getMembers(collection);
+            if (members == null) {
+                continue;
+            }
+            List<String> previousMembers = previous == null ? null : previous.memberXML.get(collection);
+            Map<CodeElement, String> previousByCode = previous == null ? null : previous.getXMLByCode(collection);
+            List<String> xml = new ArrayList<>(members.size());
+            for (int i = 0; i < members.size(); i++) {
+                CodeElement member = members.get(i);
+                String unchanged = previousByCode == null ? null : previousByCode.get(member);
+                xml.add(unchanged != null ? unchanged : share(member.toXML().toXML(), previousMembers, i));
+            }
+            memberXML.put(collection, xml);
+            memberCode.put(collection, new ArrayList<>(members));
+        }
+        String header = topLevelElement.toXML(false).toXML();
+        return previous != null && header.equals(previous.headerXML) ? previous.headerXML : header;
+    }
+
+    /**
+     * Get the XML of the members of the given collection, keyed by the code element they
+     * were made from, or null if that isn't known.
+     */
+    private Map<CodeElement, String> getXMLByCode(String collection)
+    {
+        List<CodeElement> code = memberCode == null ? null : memberCode.get(collection);
+        List<String> xml = memberXML.get(collection);
+        if (code == null || xml == null || code.size() != xml.size()) {
+            return null;
+        }
+        Map<CodeElement, String> byCode = new IdentityHashMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            byCode.put(code.get(i), xml.get(i));
+        }
+        return byCode;
+    }
+
+    /**
+     * Note that this state has been restored, replacing the given state, and that the given
+     * element (the regenerated code of the restored frames) now shows it.
+     */
+    public void noteShown(TopLevelCodeElement shownElement, FrameState replaced)
+    {
+        if (replaced != null && replaced != this) {
+            replaced.memberCode = null;
+        }
+        memberCode = new HashMap<>();
+        for (String collection : memberXML.keySet()) {
+            List<? extends CodeElement> members = shownElement.getMembers(collection);
+            if (members != null) {
+                memberCode.put(collection, new ArrayList<>(members));
+            }
+        }
+    }
+
+    /**
+     * Get the string from the previous members which is equal to the given member XML, if
+     * there is one near the same position, otherwise the given XML.
+     */
+    private static String share(String xml, List<String> previousMembers, int index)
+    {
+        if (previousMembers != null) {
+            // Look at the same position, and either side (in case of an insertion or removal):
+            for (int i = Math.max(0, index - 1); i <= index + 1 && i < previousMembers.size(); i++) {
+                if (previousMembers.get(i).equals(xml)) {
+                    return previousMembers.get(i);
+                }
+            }
+        }
+        return xml;
+    }
     
     /**
      * Create a ClassElement corresponding to this FrameState.
@@ -84,15 +205,115 @@ public class FrameState
     {
         try
         {
-            return new ClassElement(new Builder().build(new StringReader(classElementXML))
-                    .getRootElement(), resolver, packageName);
+            Builder builder = new Builder();
+            Element root = builder.build(new StringReader(headerXML)).getRootElement();
+            for (Map.Entry<String, List<String>> members : memberXML.entrySet()) {
+                Element collectionEl = root.getFirstChildElement(members.getKey());
+                for (String member : members.getValue()) {
+                    collectionEl.appendChild(builder.build(new StringReader(member)).getRootElement().copy());
+                }
+            }
+            return new ClassElement(root, resolver, packageName);
         }
         catch (IOException | ParsingException e)
         {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Restore this state to the given frame, which currently shows the given (other)
+     * state.  Only the members which differ between the two states are re-created; if
+     * anything other than the members differs, the whole class is restored.
+     */
+    public void restoreTo(TopLevelFrame<?> frame, FrameState shown, InteractionManager editor,
+            EntityResolver resolver, String packageName)
+    {
+        List<String> changed = new ArrayList<>();
+        if (shown != null && headerXML.equals(shown.headerXML) && memberXML.keySet().equals(shown.memberXML.keySet())) {
+            for (String collection : memberXML.keySet()) {
+                if (!memberXML.get(collection).equals(shown.memberXML.get(collection))) {
+                    FrameCanvas canvas = frame.getMemberCanvas(collection);
+                    if (canvas == null || !showsMembers(canvas, shown, collection)) {
+                        // The frame doesn't match the state we think it's showing:
+                        changed = null;
+                        break;
+                    }
+                    changed.add(collection);
+                }
+            }
+        }
+        else {
+            changed = null;
+        }
+
+        if (changed == null) {
+            frame.restoreCast(getClassElement(resolver, packageName));
+            return;
+        }
+
+        for (String collection : changed) {
+            FrameCanvas canvas = frame.getMemberCanvas(collection);
+            List<CodeFrame<?>> frames = canvas.getCodeFrames();
+
+            // Find the existing frames for each member, by their XML in the shown state:
+            Map<String, LinkedList<CodeFrame<?>>> framesByXML = new HashMap<>();
+            List<String> shownMembers = shown.memberXML.get(collection);
+            for (int i = 0; i < shownMembers.size(); i++) {
+                framesByXML.computeIfAbsent(shownMembers.get(i), k -> new LinkedList<>()).add(frames.get(i));
+            }
+
+            // The unchanged members are given as the code of their existing frame, which lets the
+            // canvas keep those frames as they are; only the other members are loaded from XML:
+            List<CodeElement> elements = new ArrayList<>();
+            for (String member : memberXML.get(collection)) {
+                LinkedList<CodeFrame<?>> existing = framesByXML.getOrDefault(member, new LinkedList<>());
+                if (!existing.isEmpty()) {
+                    elements.add(existing.removeFirst().getCode());
+                }
+                else {
+                    CodeElement element = Loader.loadElement(member);
+                    if (element == null) {
+                        frame.restoreCast(getClassElement(resolver, packageName));
+                        return;
+                    }
+                    if (frame.getCode() instanceof ContainerCodeElement) {
+                        element.setParent((ContainerCodeElement)frame.getCode());
+                    }
+                    elements.add(element);
+                }
+            }
+            canvas.restore(elements, editor);
+        }
+    }
     
+    /**
+     * Check whether the frames in the given canvas currently show exactly the members of
+     * the given collection in the given state.  Frames whose code is the element the state
+     * took the member from are known to show it, without serialising them again.
+     */
+    private static boolean showsMembers(FrameCanvas canvas, FrameState state, String collection)
+    {
+        List<CodeFrame<?>> frames = canvas.getCodeFrames();
+        List<String> members = state.memberXML.get(collection);
+        List<CodeElement> code = state.memberCode == null ? null : state.memberCode.get(collection);
+        if (frames.size() != members.size()) {
+            return false;
+        }
+        for (int i = 0; i < frames.size(); i++) {
+            CodeFrame<?> f = frames.get(i);
+            // A frame edited since its code was generated can't be showing the member:
+            if (((Frame) f).isCodeStale() || f.getCode() == null) {
+                return false;
+            }
+            boolean sameCode = code != null && code.size() == members.size() && code.get(i) == f.getCode();
+            if (!sameCode && !f.getCode().toXML().toXML().equals(members.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj)
     {
@@ -101,13 +322,13 @@ public class FrameState
         }
         FrameState otherState = (FrameState)obj;
         // Currently, it is equality on the contents only, not on the cursor position.
-        return otherState.classElementXML.equals(classElementXML);//&& cursorPosition == otherState.cursorPosition;
+        return otherState.headerXML.equals(headerXML) && otherState.memberXML.equals(memberXML);
     }
 
     @Override
     public int hashCode()
     {
-        return classElementXML.hashCode();
+        return headerXML.hashCode() * 31 + memberXML.hashCode();
     }
 
     public Node recallFocus(TopLevelFrame<?> frame)
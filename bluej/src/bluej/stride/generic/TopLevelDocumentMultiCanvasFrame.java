@@ -281,7 +281,12 @@ public abstract class TopLevelDocumentMultiCanvasFrame<ELEMENT extends CodeEleme
     {
         List<CodeElement> members = new ArrayList<>();
         for (CodeFrame<?> c : frameCanvas.getBlocksSubtype(CodeFrame.class)) {
-            c.regenerateCode();
+            // Members which haven't been modified keep their existing code:
+            Frame f = (Frame) c;
+            if (f.isCodeStale() || c.getCode() == null) {
+                c.regenerateCode();
+                f.markCodeRegenerated();
+            }
             members.add(c.getCode());
         }
         return members;
@@ -425,6 +430,18 @@ public abstract class TopLevelDocumentMultiCanvasFrame<ELEMENT extends CodeEleme
         return importCanvas;
     }
 
+    @Override
+    public FrameCanvas getMemberCanvas(String collectionName)
+    {
+        switch (collectionName)
+        {
+            case "imports": return importCanvas;
+            case "fields": return fieldsCanvas;
+            case "methods": return methodsCanvas;
+            default: return null;
+        }
+    }
+
     @Override
     public void ensureImportCanvasShowing()
     {
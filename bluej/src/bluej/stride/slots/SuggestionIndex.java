@@ -0,0 +1,197 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.stride.slots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import bluej.utility.Utility;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * An index of the choices in a suggestion list, so that the choices which match what
+ * the user has typed can be found quickly even when there are thousands of them.
+ *
+ * The choices are held lower-cased and in sorted order, so that those beginning with
+ * a prefix can be found by binary search, and the positions at which the words in each
+ * choice begin are worked out in advance.  Choices which might match with a few typos
+ * are narrowed down as the user types more (see getCandidates).
+ */
+@OnThread(Tag.Any)
+class SuggestionIndex
+{
+    /**
+     * The most typos which are ever allowed for a similar match.  (See
+     * SuggestionList.EligibleDetail.close(), which decides the actual limit.)
+     */
+    static final int MAX_DISTANCE = 2;
+
+    // The choices, lower-cased:
+    private final String[] lower;
+    // The indexes of the choices, ordered by their lower-cased text:
+    private final int[] sorted;
+    // The positions in each choice at which a word begins:
+    private final int[][] wordStarts;
+
+    SuggestionIndex(List<String> choices)
+    {
+        lower = new String[choices.size()];
+        wordStarts = new int[choices.size()][];
+        Integer[] order = new Integer[choices.size()];
+        for (int i = 0; i < choices.size(); i++)
+        {
+            lower[i] = choices.get(i).toLowerCase();
+            wordStarts[i] = splitIdentLower(choices.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> lower[a].compareTo(lower[b]));
+        sorted = Arrays.stream(order).mapToInt(i -> i).toArray();
+    }
+
+    /**
+     * Whether the given choice begins with the given (lower-cased) prefix, ignoring case.
+     */
+    boolean startsWith(int choice, String prefixLower)
+    {
+        return lower[choice].startsWith(prefixLower);
+    }
+
+    /**
+     * Gets the indexes of all the choices which begin with the given (lower-cased)
+     * prefix, ignoring case.
+     */
+    int[] getPrefixMatches(String prefixLower)
+    {
+        // Find the first choice which is not less than the prefix:
+        int low = 0, high = sorted.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (lower[sorted[mid]].compareTo(prefixLower) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        // All those beginning with the prefix follow on from there:
+        int end = low;
+        while (end < sorted.length && lower[sorted[end]].startsWith(prefixLower))
+            end++;
+        return Arrays.copyOfRange(sorted, low, end);
+    }
+
+    /**
+     * Gets the indexes of the choices which may match the given (lower-cased) prefix,
+     * either directly or with up to MAX_DISTANCE typos: that is, those which contain
+     * all but at most MAX_DISTANCE of the characters in the prefix.  Adding to the
+     * prefix can only remove choices from this set, so if the prefix extends one for
+     * which the candidates were previously found, those candidates can be passed as
+     * narrowFrom and only they will be checked.  Otherwise, narrowFrom should be null.
+     */
+    int[] getCandidates(String prefixLower, int[] narrowFrom)
+    {
+        int count = narrowFrom != null ? narrowFrom.length : lower.length;
+        int[] candidates = new int[count];
+        int found = 0;
+        for (int k = 0; k < count; k++)
+        {
+            int choice = narrowFrom != null ? narrowFrom[k] : k;
+            if (missingCharacters(lower[choice], prefixLower) <= MAX_DISTANCE)
+                candidates[found++] = choice;
+        }
+        return Arrays.copyOf(candidates, found);
+    }
+
+    private static int missingCharacters(String choiceLower, String prefixLower)
+    {
+        int missing = 0;
+        for (int i = 0; i < prefixLower.length() && missing <= MAX_DISTANCE; i++)
+        {
+            if (choiceLower.indexOf(prefixLower.charAt(i)) == -1)
+                missing++;
+        }
+        return missing;
+    }
+
+    /**
+     * Gets the positions at which the words in the given choice begin.
+     */
+    int[] getWordStarts(int choice)
+    {
+        return wordStarts[choice];
+    }
+
+    /**
+     * Gets the edit distance between the given (lower-cased) prefix and the part of the
+     * choice beginning at the given offset which is the same length as the prefix (or one
+     * character longer or shorter, if that is closer).  Returns maxDistance + 1 if there
+     * is no part within maxDistance.
+     */
+    int distanceTo(String prefixLower, int choice, int offset, int maxDistance)
+    {
+        String candidate = lower[choice];
+        int length = prefixLower.length();
+        String partial = candidate.substring(offset, Math.min(candidate.length(), offset + length));
+        String partialShort = candidate.substring(offset, Math.min(candidate.length(), offset + Math.max(1, length - 1)));
+        String partialLong = candidate.substring(offset, Math.min(candidate.length(), offset + 1 + length));
+
+        int distance = Utility.editDistance(partial, prefixLower, maxDistance);
+        if (distance > 0)
+            distance = Math.min(distance, Utility.editDistance(partialShort, prefixLower, maxDistance));
+        if (distance > 0)
+            distance = Math.min(distance, Utility.editDistance(partialLong, prefixLower, maxDistance));
+        return distance;
+    }
+
+    private static boolean hasCase(char c)
+    {
+        // It has case if one of these methods returns differently to the other:
+        return Character.isUpperCase(c) != Character.isLowerCase(c);
+    }
+
+    private static int[] splitIdentLower(String text)
+    {
+        int startCurWord = 0;
+        List<Integer> r = new ArrayList<>();
+        // We split on a change of case, or an underscore, or a dot (e.g. in Greenfoot.isKeyDown)
+        for (int i = 1 /* start at 2nd char */; i < text.length(); i++)
+        {
+            if ((hasCase(text.charAt(i)) && hasCase(text.charAt(i - 1))) && 
+               (Character.isUpperCase(text.charAt(i)) == Character.isLowerCase(text.charAt(i - 1))
+             || Character.isLowerCase(text.charAt(i)) == Character.isUpperCase(text.charAt(i - 1)))
+               && (startCurWord == 0 || i - startCurWord > 1))
+            {
+                // Case change:
+                r.add(startCurWord);
+                startCurWord = i;
+            }
+            else if ((text.charAt(i) == '_' || text.charAt(i) == '.') && startCurWord < i - 1)
+            {
+                r.add(startCurWord);
+                startCurWord = i + 1; 
+            }
+        }
+        r.add(startCurWord);
+        return r.stream().mapToInt(i -> i).toArray();
+    }
+}
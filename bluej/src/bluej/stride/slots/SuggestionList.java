@@ -146,6 +146,17 @@ public class SuggestionList
      * List of choices available for the user.  Each entry represents a different item.
      */
     private final List<SuggestionDetails> choices;
+    /**
+     * An index of the choices, for finding those that match what the user has typed.
+     */
+    private final SuggestionIndex index;
+    /**
+     * The choices which may be similar to similarCandidatesPrefix, as found last time
+     * calculateEligible was called with allowSimilar.  Used to narrow down the search
+     * as the user types more.  Null if not yet found.
+     */
+    private int[] similarCandidates;
+    private String similarCandidatesPrefix;
     /**
      * This array contains two entries per choice.  There is one complete set from
      * 0 to choices.size() - 1 which are the direct suggestions, and a second
@@ -258,6 +269,20 @@ public class SuggestionList
                 return length >= 10; // Show further matches, but only if you are typing a long identifier
             return false; // distance 3 or higher; Too far away
         }
+
+        /**
+         * The highest distance that close() will accept for the given length of what
+         * the user has typed.
+         */
+        public static int maxDistance(int length)
+        {
+            if (length >= 10)
+                return 2;
+            else if (length >= 3)
+                return 1;
+            else
+                return 0;
+        }
     }
 
     // Whether the suggestion is common (shown from first trigger) or rare (shown only on second trigger)
@@ -434,6 +459,7 @@ public class SuggestionList
 
         this.suggestionListId = nextSuggListId.getAndIncrement();
         this.choices = FXCollections.observableArrayList(choices);
+        this.index = new SuggestionIndex(Utility.mapList(choices, c -> c.choice));
         this.shownState.set(startShown);
         this.listener = listener;
         this.highlightListener = highlightListener;
@@ -830,28 +856,47 @@ public class SuggestionList
         lastPrefix = prefix;
         lastAllowSimilar = allowSimilar;
         eligible.clear();
-        for (int i = 0; i < choices.size(); i++)
+        String prefixLower = prefix.toLowerCase();
+
+        int[] toCheck;
+        if (allowSimilar)
+        {
+            // If the user has only typed more since we last looked, the choices to check
+            // can only be fewer than last time:
+            boolean narrow = similarCandidates != null && prefixLower.startsWith(similarCandidatesPrefix);
+            similarCandidates = index.getCandidates(prefixLower, narrow ? similarCandidates : null);
+            similarCandidatesPrefix = prefixLower;
+            toCheck = similarCandidates;
+        }
+        else
+        {
+            toCheck = index.getPrefixMatches(prefixLower);
+        }
+
+        int maxDistance = EligibleDetail.maxDistance(prefix.length());
+        for (int i : toCheck)
         {
-            String sugg = choices.get(i).choice;
             if (choices.get(i).shown.compareTo(shown) > 0)
             {
                 // Cannot put in eligible because it is rare and we are only showing common
             }
-            else if (sugg.toLowerCase().startsWith(prefix.toLowerCase()))
+            else if (index.startsWith(i, prefixLower))
             {
                 eligible.put(i, new EligibleDetail(0, 0, prefix.length()));
             }
             else if (allowSimilar)
             {
-                // Look if this text starts a word in the identifier:
-                List<Integer> wordStarts = splitIdentLower(sugg);
-                Optional<EligibleDetail> me = wordStarts.stream().map(j -> new EligibleDetail(j, distanceTo(prefix, sugg, j), prefix.length()))
-                    .filter(EligibleDetail::close)
-                    .sorted() // Will put smallest distance first
-                    .findFirst();
-                if (me.isPresent())
+                // Look if this text starts a word in the identifier, keeping the closest:
+                EligibleDetail best = null;
+                for (int j : index.getWordStarts(i))
+                {
+                    EligibleDetail detail = new EligibleDetail(j, index.distanceTo(prefixLower, i, j, maxDistance), prefix.length());
+                    if (detail.close() && (best == null || detail.compareTo(best) < 0))
+                        best = detail;
+                }
+                if (best != null)
                 {
-                    eligible.put(i + doubleSuggestions.size() / 2, me.get());
+                    eligible.put(i + doubleSuggestions.size() / 2, best);
                 }
             }
         }
@@ -864,56 +909,6 @@ public class SuggestionList
         }
     }
     
-    private static int distanceTo(String prefix, String candidate, int offset)
-    {
-        // We check, given a prefix (e.g. "abc"), whether the substring of the same length (e.g. 3)
-        // at the given point in the candidate is a closen enough match by edit distance
-        // An exact match is edit distance 0
-        prefix = prefix.toLowerCase();
-        String partialLower = candidate.substring(offset, Math.min(candidate.length(), offset + prefix.length())).toLowerCase();
-        
-        // We also check for the strings one longer and one shorter, as they might have better edit distance:
-        String partialLowerShort = candidate.substring(offset, Math.min(candidate.length(), offset + Math.max(1, prefix.length() - 1))).toLowerCase();
-        String partialLowerLong = candidate.substring(offset, Math.min(candidate.length(), offset + 1 + prefix.length())).toLowerCase();
-        
-        return Math.min(
-                Utility.editDistance(partialLower, prefix),
-                Math.min(Utility.editDistance(partialLowerShort, prefix), Utility.editDistance(partialLowerLong, prefix))
-               );
-    }
-    
-    private static boolean hasCase(char c)
-    {
-        // It has case if one of these methods returns differently to the other:
-        return Character.isUpperCase(c) != Character.isLowerCase(c);
-    }
-
-    private static List<Integer> splitIdentLower(String text)
-    {
-        int startCurWord = 0;
-        List<Integer> r = new ArrayList<>();
-        // We split on a change of case, or an underscore, or a dot (e.g. in Greenfoot.isKeyDown)
-        for (int i = 1 /* start at 2nd char */; i < text.length(); i++)
-        {
-            if ((hasCase(text.charAt(i)) && hasCase(text.charAt(i - 1))) && 
-               (Character.isUpperCase(text.charAt(i)) == Character.isLowerCase(text.charAt(i - 1))
-             || Character.isLowerCase(text.charAt(i)) == Character.isUpperCase(text.charAt(i - 1)))
-               && (startCurWord == 0 || i - startCurWord > 1))
-            {
-                // Case change:
-                r.add(startCurWord);
-                startCurWord = i;
-            }
-            else if ((text.charAt(i) == '_' || text.charAt(i) == '.') && startCurWord < i - 1)
-            {
-                r.add(startCurWord);
-                startCurWord = i + 1; 
-            }
-        }
-        r.add(startCurWord);
-        return r;
-    }
-
     /**
      * Updates the available options in the dropdown, restricting it to those
      * that are currently marked as eligible.  Thus this function only has a useful effect
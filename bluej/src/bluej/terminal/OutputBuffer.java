@@ -0,0 +1,180 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.application.Platform;
+
+import bluej.utility.javafx.FXPlatformConsumer;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * A buffer for output to the terminal. Output can be written from any thread without
+ * waiting for the FX thread; all the output written since the FX thread last took from
+ * the buffer is handed over at once, with consecutive writes to the same stream joined
+ * together. Writers only have to wait when the FX thread has fallen behind by more than
+ * the capacity of the buffer.
+ */
+@OnThread(Tag.Any)
+final class OutputBuffer
+{
+    // The longest time a writer will wait for space in the buffer:
+    private static final long MAX_WAIT_MILLIS = 2000;
+
+    /**
+     * Some text written to either standard output or standard error.
+     */
+    static final class Chunk
+    {
+        final boolean isError;
+        final String text;
+
+        Chunk(boolean isError, String text)
+        {
+            this.isError = isError;
+            this.text = text;
+        }
+    }
+
+    private final int capacity;
+    private final FXPlatformConsumer<List<Chunk>> receiver;
+    private final ConcurrentLinkedQueue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+    // Number of characters in chunks:
+    private final AtomicInteger pendingChars = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Object spaceLock = new Object();
+
+    /**
+     * Create a buffer which holds up to (roughly) the given number of characters.
+     *
+     * @param capacity  the number of characters which may be waiting before writers must wait
+     * @param receiver  receives the buffered output, on the FX thread
+     */
+    OutputBuffer(int capacity, FXPlatformConsumer<List<Chunk>> receiver)
+    {
+        this.capacity = capacity;
+        this.receiver = receiver;
+    }
+
+    /**
+     * Write some text to the buffer. If the buffer is full, waits (for a limited time)
+     * until there is space.
+     */
+    void write(boolean isError, String s)
+    {
+        if (pendingChars.get() >= capacity && !Platform.isFxApplicationThread())
+        {
+            waitForSpace();
+        }
+
+        chunks.add(new Chunk(isError, s));
+        pendingChars.addAndGet(s.length());
+        if (drainScheduled.compareAndSet(false, true))
+        {
+            Platform.runLater(this::drain);
+        }
+    }
+
+    /**
+     * Pass all the buffered output to the receiver.
+     */
+    @OnThread(Tag.FXPlatform)
+    void drain()
+    {
+        // Clear the flag before taking the chunks, so that any chunk added after
+        // this point is guaranteed to be taken either now or by another drain:
+        drainScheduled.set(false);
+
+        List<Chunk> runs = new ArrayList<>();
+        StringBuilder run = null;
+        boolean runIsError = false;
+        int drained = 0;
+        Chunk chunk;
+        while ((chunk = chunks.poll()) != null)
+        {
+            drained += chunk.text.length();
+            if (run != null && chunk.isError == runIsError)
+            {
+                run.append(chunk.text);
+            }
+            else
+            {
+                if (run != null)
+                {
+                    runs.add(new Chunk(runIsError, run.toString()));
+                }
+                run = new StringBuilder(chunk.text);
+                runIsError = chunk.isError;
+            }
+        }
+        if (run != null)
+        {
+            runs.add(new Chunk(runIsError, run.toString()));
+        }
+
+        if (drained != 0)
+        {
+            pendingChars.addAndGet(-drained);
+            synchronized (spaceLock)
+            {
+                spaceLock.notifyAll();
+            }
+        }
+
+        if (!runs.isEmpty())
+        {
+            receiver.accept(runs);
+        }
+    }
+
+    private void waitForSpace()
+    {
+        long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+        synchronized (spaceLock)
+        {
+            while (pendingChars.get() >= capacity)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    // Something has probably gone wrong with the FX thread; carry on regardless:
+                    return;
+                }
+                try
+                {
+                    spaceLock.wait(remaining);
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
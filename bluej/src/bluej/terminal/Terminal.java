@@ -36,7 +36,6 @@ import bluej.pkgmgr.Package;
 import bluej.pkgmgr.Project;
 import bluej.prefmgr.PrefMgr;
 import bluej.testmgr.record.InvokerRecord;
-import bluej.utility.Debug;
 import bluej.utility.DialogManager;
 import bluej.utility.FileUtility;
 import bluej.utility.JavaNames;
@@ -48,10 +47,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -78,6 +74,7 @@ import org.fxmisc.richtext.NavigationActions.SelectionPolicy;
 import org.fxmisc.richtext.StyledTextArea;
 import org.fxmisc.richtext.TextExt;
 import org.fxmisc.richtext.model.EditableStyledDocument;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
 import org.fxmisc.richtext.model.GenericEditableStyledDocument;
 import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
 import org.fxmisc.richtext.model.SegmentOps;
@@ -100,6 +97,8 @@ public final class Terminal
     implements BlueJEventListener, DebuggerTerminal
 {
     private static final int MAX_BUFFER_LINES = 200;
+    // Characters of output which may be waiting to be shown before the writer must wait:
+    private static final int OUTPUT_BUFFER_CAPACITY = 64 * 1024;
     private VirtualizedScrollPane<?> errorScrollPane;
 
     private static interface TextAreaStyle
@@ -201,6 +200,7 @@ public final class Terminal
     @OnThread(Tag.Any) private final Reader in = new TerminalReader();
     @OnThread(Tag.Any) private final Writer out = new TerminalWriter(false);
     @OnThread(Tag.Any) private final Writer err = new TerminalWriter(true);
+    @OnThread(Tag.Any) private final OutputBuffer outputBuffer = new OutputBuffer(OUTPUT_BUFFER_CAPACITY, this::writeOutput);
 
     private Stage window;
 
@@ -493,6 +493,12 @@ public final class Terminal
             s = s.substring(n + 1);
         }
 
+        if (pane != errorText && !unlimitedBufferingCall.get())
+        {
+            // No point adding more lines than will be kept:
+            s = lastLines(s, MAX_BUFFER_LINES);
+        }
+
         pane.append(styled(s, style));
 
         if (pane != errorText)
@@ -504,6 +510,43 @@ public final class Terminal
         pane.requestFollowCaret();
     }
 
+    /**
+     * Write output from the debug VM, as taken from the output buffer.
+     */
+    private void writeOutput(List<OutputBuffer.Chunk> chunks)
+    {
+        for (OutputBuffer.Chunk chunk : chunks)
+        {
+            if (chunk.isError)
+            {
+                showErrorPane();
+                writeToPane(errorText, chunk.text, StderrStyle.NORMAL);
+            }
+            else
+            {
+                writeToPane(text, chunk.text, StdoutStyle.OUTPUT);
+            }
+        }
+    }
+
+    /**
+     * Get the end of the given text, containing at most the given number of line breaks.
+     */
+    @OnThread(Tag.Any)
+    private static String lastLines(String s, int lines)
+    {
+        int pos = s.length();
+        for (int i = 0; i < lines; i++)
+        {
+            pos = s.lastIndexOf('\n', pos - 1);
+            if (pos == -1)
+            {
+                return s;
+            }
+        }
+        return s.substring(pos + 1);
+    }
+
     private <S extends TextAreaStyle> void trimToMaxBufferLines(StyledTextArea<Void, S> pane)
     {
         if (!unlimitedBufferingCall.get() && pane.getParagraphs().size() >= MAX_BUFFER_LINES)
@@ -535,6 +578,8 @@ public final class Terminal
      */
     private void methodCall(String callString)
     {
+        // Output from before the call belongs before it:
+        outputBuffer.drain();
         newMethodCall = false;
         if(clearOnMethodCall.get()) {
             clear();
@@ -560,6 +605,7 @@ public final class Terminal
 
     private void constructorCall(InvokerRecord ir)
     {
+        outputBuffer.drain();
         newMethodCall = false;
         if(clearOnMethodCall.get()) {
             clear();
@@ -573,6 +619,7 @@ public final class Terminal
     
     private void methodResult(ExecutionEvent event)
     {
+        outputBuffer.drain();
         if (recordMethodCalls.get()) {
             String result = null;
             String resultType = event.getResult();
@@ -613,13 +660,17 @@ public final class Terminal
     }
 
     /**
-     * Looks through the contents of the terminal for lines
-     * that look like they are part of a stack trace.
+     * Looks through the contents of the error pane, from the start of the line
+     * containing the given position, for lines that look like they are part of a
+     * stack trace. (Output is only ever appended, so earlier lines have already
+     * been scanned.)
      */
-    private void scanForStackTrace()
+    private void scanForStackTrace(int fromPosition)
     {
         try {
-            String content = errorText.getText();
+            int paragraph = errorText.offsetToPosition(Math.min(fromPosition, errorText.getLength()), Bias.Backward).getMajor();
+            int start = errorText.getAbsolutePosition(paragraph, 0);
+            String content = errorText.getText(start, errorText.getLength());
 
             Pattern p = java.util.regex.Pattern.compile("at (\\S+)\\((\\S+)\\.java:(\\d+)\\)");
             // Matches things like:
@@ -644,11 +695,11 @@ public final class Terminal
 
                 if (pkg != null && pkg.getAllClassnames().contains(javaFile))
                 {
-                    errorText.setStyle(m.start(1), m.end(), new StderrStyle(new ExceptionSourceLocation(m.start(1), m.end(), pkg, javaFile, lineNumber)));
+                    errorText.setStyle(start + m.start(1), start + m.end(), new StderrStyle(new ExceptionSourceLocation(start + m.start(1), start + m.end(), pkg, javaFile, lineNumber)));
                 }
                 else
                 {
-                    errorText.setStyle(m.start(), m.end(), StderrStyle.FOREIGN_STACK_TRACE);
+                    errorText.setStyle(start + m.start(), start + m.end(), StderrStyle.FOREIGN_STACK_TRACE);
                 }
             }
 
@@ -660,7 +711,7 @@ public final class Terminal
             m = p.matcher(content);
             while (m.find())
             {
-                errorText.setStyle(m.start(), m.end(), StderrStyle.FOREIGN_STACK_TRACE);
+                errorText.setStyle(start + m.start(), start + m.end(), StderrStyle.FOREIGN_STACK_TRACE);
             }
         }
         catch (NumberFormatException e ) {
@@ -779,7 +830,7 @@ public final class Terminal
                     text.deselect();
                 }
             });
-            errorText.plainTextChanges().subscribe(c -> scanForStackTrace());
+            errorText.plainTextChanges().subscribe(c -> scanForStackTrace(c.getPosition()));
             EventHandler<MouseEvent> onClick = e ->
             {
                 CharacterHit hit = errorText.hit(e.getX(), e.getY());
@@ -929,36 +980,10 @@ public final class Terminal
 
         public void write(final char[] cbuf, final int off, final int len)
         {
-            try {
-                // We use a wait so that terminal output is limited to
-                // the processing speed of the event queue. This means the UI
-                // will still respond to user input even if the output is really
-                // gushing.
-                CompletableFuture<Boolean> written = new CompletableFuture<>();
-                Platform.runLater(() -> {
-                    try
-                    {
-                        String s = new String(cbuf, off, len);
-                        if (isErrorOut)
-                        {
-                            showErrorPane();
-                            writeToPane(errorText, s, StderrStyle.NORMAL);
-                        }
-                        else
-                            writeToPane(text, s, StdoutStyle.OUTPUT);
-                    }
-                    finally
-                    {
-                        written.complete(true);
-                    }
-                });
-                // Timeout in case something goes wrong with the printing:
-                written.get(2000, TimeUnit.MILLISECONDS);
-            }
-            catch (InterruptedException | ExecutionException | TimeoutException ie)
-            {
-                Debug.reportError(ie);
-            }
+            // The output is buffered, and shown on the next FX pulse; if the output
+            // is really gushing, the writer is slowed down to the rate at which
+            // it can be shown, so that the UI still responds to user input.
+            outputBuffer.write(isErrorOut, new String(cbuf, off, len));
         }
 
         public void flush() { }
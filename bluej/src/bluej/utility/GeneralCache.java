@@ -21,30 +21,57 @@
  */
 package bluej.utility;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
- * A general cache, which caches a fixed number of key/value combinations, and which
- * uses a recently-used strategy to determine which entries to keep.
+ * A general cache, which caches a limited number of key/value combinations, and which
+ * uses a least-recently-used strategy to determine which entries to keep. All operations
+ * are constant time.
+ * 
+ * <p>The cache may optionally be allowed to grow (up to a maximum size) when it is under
+ * pressure, i.e. when it is full and most lookups miss; this suits caches whose working set
+ * size is not known in advance. Hit and miss counts are kept for each cache.
  * 
  * @author Davin McCall
  */
 public class GeneralCache<K,V>
 {
-    private Map<K,V> cacheMap = new HashMap<K,V>();
-    private List<K> cachedKeys = new LinkedList<K>();
+    // An access-ordered map: iteration order is from least to most recently used.
+    private final LinkedHashMap<K,V> cacheMap;
     private int cacheSize;
+    private final int maxCacheSize;
+    
+    private long hits;
+    private long misses;
+    // Hits and misses since the cache last became full or was resized:
+    private int windowHits;
+    private int windowMisses;
     
     /**
      * Construct a cache to cache the given number of items.
      */
     public GeneralCache(int cacheSize)
+    {
+        this(cacheSize, cacheSize);
+    }
+    
+    /**
+     * Construct a cache which initially caches the given number of items, but which
+     * may grow up to the given maximum number of items if lookups frequently miss
+     * while the cache is full.
+     */
+    public GeneralCache(int cacheSize, int maxCacheSize)
     {
         this.cacheSize = cacheSize;
+        this.maxCacheSize = Math.max(cacheSize, maxCacheSize);
+        cacheMap = new LinkedHashMap<K,V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K,V> eldest)
+            {
+                return size() > GeneralCache.this.cacheSize;
+            }
+        };
     }
     
     /**
@@ -55,16 +82,14 @@ public class GeneralCache<K,V>
     public V get(K key)
     {
         V rval = cacheMap.get(key);
-        if (rval != null) {
-            // Mark the retrieved key as recently used
-            for (Iterator<K> i = cachedKeys.iterator(); ; ) {
-                K k = i.next();
-                if (k.equals(key)) {
-                    i.remove();
-                    cachedKeys.add(key);
-                    break;
-                }
-            }
+        if (rval != null || cacheMap.containsKey(key)) {
+            hits++;
+            windowHits++;
+        }
+        else {
+            misses++;
+            windowMisses++;
+            checkPressure();
         }
         return rval;
     }
@@ -78,25 +103,71 @@ public class GeneralCache<K,V>
     }
     
     /**
-     * Put an item in the cache. The given key must not already have a cached value.
+     * Put an item in the cache. If the cache is full, the least recently used
+     * item is removed.
      */
     public void put(K key, V value)
     {
-        if (cachedKeys.size() >= cacheSize) {
-            K toRemove = cachedKeys.remove(0);
-            cacheMap.remove(toRemove);
-        }
-        
         cacheMap.put(key, value);
-        cachedKeys.add(key);
     }
     
     /**
-     * Remove all cache entries.
+     * Remove all cache entries.  The hit/miss statistics (and the current size limit)
+     * are retained.
      */
     public void clear()
     {
         cacheMap.clear();
-        cachedKeys.clear();
+        windowHits = 0;
+        windowMisses = 0;
+    }
+    
+    /**
+     * Get the number of lookups (via get()) which found a cached value.
+     */
+    public long getHitCount()
+    {
+        return hits;
+    }
+    
+    /**
+     * Get the number of lookups (via get()) which did not find a cached value.
+     */
+    public long getMissCount()
+    {
+        return misses;
+    }
+    
+    /**
+     * Get the maximum number of items which the cache will currently hold.
+     */
+    public int getCacheSize()
+    {
+        return cacheSize;
+    }
+    
+    /**
+     * After a miss, check whether the cache is thrashing and should grow: if it is full
+     * and a cache-size worth of misses have occurred with fewer hits than misses, we
+     * double the size (up to the maximum).
+     */
+    private void checkPressure()
+    {
+        if (cacheSize >= maxCacheSize) {
+            return;
+        }
+        if (cacheMap.size() < cacheSize) {
+            // Not full, so misses are just the cache filling up:
+            windowHits = 0;
+            windowMisses = 0;
+            return;
+        }
+        if (windowMisses >= cacheSize) {
+            if (windowHits < windowMisses) {
+                cacheSize = Math.min(cacheSize * 2, maxCacheSize);
+            }
+            windowHits = 0;
+            windowMisses = 0;
+        }
     }
 }
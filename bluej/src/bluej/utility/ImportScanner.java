@@ -24,6 +24,7 @@ package bluej.utility;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -35,7 +36,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -44,6 +48,7 @@ import java.util.stream.Collectors;
 import bluej.Config;
 import io.github.classgraph.ClassGraph;
 import io.github.classgraph.ClassInfo;
+import io.github.classgraph.ModuleRef;
 import io.github.classgraph.ScanResult;
 import javafx.application.Platform;
 import nu.xom.Attribute;
@@ -53,15 +58,24 @@ import nu.xom.Element;
 import nu.xom.ParsingException;
 
 import bluej.Boot;
+import bluej.parser.AssistContent;
+import bluej.parser.AssistContent.CompletionKind;
 import bluej.parser.ImportedTypeCompletion;
 import bluej.pkgmgr.JavadocResolver;
 import bluej.pkgmgr.Project;
 import bluej.stride.generic.AssistContentThreadSafe;
+import bluej.stride.generic.InteractionManager.Kind;
+import bluej.utility.TypeIndex.IndexedType;
 import threadchecker.OnThread;
 import threadchecker.Tag;
 
 /**
  * A class which manages scanning the classpath for available imports.
+ *
+ * The type names (and basic details of each type) found in JARs and in the JDK are kept
+ * in a persistent TypeIndex, so that on subsequent loads only JARs which have changed
+ * need to be rescanned, and completions for those types can be produced without loading
+ * the classes.
  */
 public class ImportScanner
 {
@@ -87,12 +101,16 @@ public class ImportScanner
         // Value can be null if details not loaded yet
         public final HashMap<String, AssistContentThreadSafe> types = new HashMap<>();
         public final HashMap<String, PackageInfo> subPackages = new HashMap<>();
+        // Details of types from the type index, from which we can make the content
+        // for the types map without loading the class:
+        public final HashMap<String, IndexedType> indexedTypes = new HashMap<>();
     
         // Records a class with the given name (scoped relative to this package).
         // So first we call addClass({"java","lang"},"String") on the root package, then
         // addClass({"lang"}, "String"} on the java package, then
         // addClass({}, "String)" on the java.lang package.
-        protected void addClass(Iterator<String> packageIdents, String name)
+        // The indexed type may be null if the details of the type are not known.
+        protected void addClass(Iterator<String> packageIdents, String name, IndexedType indexedType)
         {
             // If it's a sub-package, create it if necessary, then recurse:
             if (packageIdents.hasNext())
@@ -104,12 +122,16 @@ public class ImportScanner
                     subPkg = new PackageInfo();
                     subPackages.put(ident, subPkg);
                 }
-                subPkg.addClass(packageIdents, name);
+                subPkg.addClass(packageIdents, name, indexedType);
             }
             else
             {
                 // Lives in this package:
                 types.put(name, null);
+                if (indexedType != null)
+                {
+                    indexedTypes.put(name, indexedType);
+                }
             }
         }
 
@@ -124,6 +146,13 @@ public class ImportScanner
         private AssistContentThreadSafe getType(String prefix, String name, JavadocResolver javadocResolver)
         {
             return types.computeIfAbsent(name, s -> {
+                IndexedType indexedType = indexedTypes.get(s);
+                if (indexedType != null)
+                {
+                    // No need to load the class; we have all we need from the index:
+                    return makeTypeContent(indexedType, javadocResolver);
+                }
+
                 // To safely get an AssistContentThreadSafe, we must create one from the FXPlatform thread.
                 // So we need to hop across to the FXPlatform thread.  Because we are an arbitrary background
                 // worker thread, it is safe to use wait afterwards; without risk of deadlock:
@@ -202,6 +231,7 @@ public class ImportScanner
         public void addTypes(PackageInfo from)
         {
             types.putAll(from.types);
+            indexedTypes.putAll(from.indexedTypes);
             from.subPackages.forEach((name, pkg) -> {
                 subPackages.putIfAbsent(name, new PackageInfo());
                 subPackages.get(name).addTypes(pkg);
@@ -212,13 +242,69 @@ public class ImportScanner
     // PackageInfo, but for the root type.
     private class RootPackageInfo extends PackageInfo
     {
-        // Adds fully qualified class name to type list.
-        public void addClass(String name)
+        // Adds a type from the type index to the type list.
+        public void addClass(IndexedType type)
+        {
+            Iterator<String> packageIdents = type.getPackageName().isEmpty() ?
+                    Collections.emptyIterator() : Arrays.asList(type.getPackageName().split("\\.", -1)).iterator();
+            addClass(packageIdents, type.getNameInPackage(), type);
+        }
+
+        // Finds the indexed details for the given fully-qualified (binary) type name, or null if unknown.
+        @OnThread(Tag.Worker)
+        public IndexedType findIndexedType(String name)
         {
             String[] splitParts = name.split("\\.", -1);
-            addClass(Arrays.asList(Arrays.copyOf(splitParts, splitParts.length - 1)).iterator(), splitParts[splitParts.length - 1]);
+            PackageInfo pkg = this;
+            for (int i = 0; i < splitParts.length - 1 && pkg != null; i++)
+            {
+                pkg = pkg.subPackages.get(splitParts[i]);
+            }
+            return pkg == null ? null : pkg.indexedTypes.get(splitParts[splitParts.length - 1]);
         }
     }
+
+    /**
+     * Makes the completion content for a type from the type index, without loading the class.
+     * The content matches that made by ImportedTypeCompletion from the loaded class.
+     */
+    @OnThread(Tag.Worker)
+    private AssistContentThreadSafe makeTypeContent(IndexedType type, JavadocResolver javadocResolver)
+    {
+        String nameInPackage = type.getNameInPackage();
+        int lastDollar = nameInPackage.lastIndexOf('$');
+        String simpleName = nameInPackage.substring(lastDollar + 1);
+        String declaringClass = lastDollar == -1 ? null : nameInPackage.substring(0, lastDollar).replace('$', '.');
+        String canonicalName = type.getName().replace('$', '.');
+
+        Kind typeKind;
+        if (type.isInterface())
+            typeKind = Kind.INTERFACE;
+        else if (type.isEnum())
+            typeKind = Kind.ENUM;
+        else
+            typeKind = Modifier.isFinal(type.getModifiers()) ? Kind.CLASS_FINAL : Kind.CLASS_NON_FINAL;
+
+        // Interfaces, then the superclass chain (which may continue into other sources):
+        List<String> superTypes = new ArrayList<>(type.getInterfaces());
+        RootPackageInfo rootPkg = root.getNow(null);
+        Set<String> seen = new HashSet<>();
+        for (String s = type.getSuperclass(); s != null && seen.add(s); )
+        {
+            superTypes.add(s);
+            IndexedType superType = rootPkg == null ? null : rootPkg.findIndexedType(s);
+            s = superType == null ? null : superType.getSuperclass();
+        }
+        // The index doesn't record java.lang.Object as a superclass:
+        if (!type.isInterface() && !type.getName().equals("java.lang.Object") && !superTypes.contains("java.lang.Object"))
+        {
+            superTypes.add("java.lang.Object");
+        }
+
+        String javadoc = javadocResolver == null ? null : javadocResolver.getJavadoc(type.getModuleName(), canonicalName);
+        return new AssistContentThreadSafe(AssistContent.fromModifiers(type.getModifiers()), declaringClass, javadoc,
+                CompletionKind.TYPE, simpleName, type.getPackageName(), null, superTypes, null, typeKind);
+    }
     
     @OnThread(Tag.Any)
     private CompletableFuture<? extends PackageInfo> getRoot()
@@ -279,13 +365,11 @@ public class ImportScanner
     }
 
     /**
-     * Gets a list of ClassGraph items which can be used to find available classes.
-     * 
-     * Because of the way ClassGraph works, one item is not enough for all classes;
-     * we use one for system classes and one for user classes.
+     * Gets the class loaders which can be used to find available user library classes
+     * (that is, everything other than the JDK classes).
      */
     @OnThread(Tag.Worker)
-    private List<ClassGraph> getClassloaderConfig()
+    private ClassLoader[] getUserClassLoaders()
     {
         // When you override the class loaders in ClassGraph's config, it no longer
         // loads the JDK classes.  So we have one ClassGraph for user code libraries
@@ -306,60 +390,229 @@ public class ImportScanner
             Debug.reportError(e);
         }
         cl.add(new URLClassLoader(Boot.getInstance().getRuntimeUserClassPath()));
+        return cl.toArray(new ClassLoader[0]);
+    }
 
-        // We hide bluej.* classes as users shouldn't be accessing them:
-        ClassGraph userClassGraph = new ClassGraph()
-                .overrideClassLoaders(cl.toArray(new ClassLoader[0]))
-                .blacklistPackages("bluej.*");
-        
+    /**
+     * Gets a ClassGraph which can be used to find available user library classes.
+     * Note that a ClassGraph should only be used once, for a single scan or query.
+     */
+    @OnThread(Tag.Worker)
+    private static ClassGraph makeUserClassGraph(ClassLoader[] classLoaders)
+    {
+        // We hide bluej.* classes as users shouldn't be accessing them.
+        // External classes are enabled so that we can see the names of superclasses outside
+        // the scanned elements (e.g. java.lang.AssertionError), but we don't record them as types:
+        return new ClassGraph()
+                .overrideClassLoaders(classLoaders)
+                .blacklistPackages("bluej.*")
+                .enableClassInfo()
+                .enableExternalClasses();
+    }
+
+    /**
+     * Gets the ClassGraph which can be used to find available JDK classes.
+     */
+    @OnThread(Tag.Worker)
+    private static ClassGraph makeSystemClassGraph()
+    {
         // We have a separate class graph for system libraries (java.*, javafx.*), from which
         // we only take public packages, thus avoiding all the com.sun classes and so on:
         // This has to be separate because enableSystemPackages() doesn't work alongside 
         // overrideClassLoaders():
-        ClassGraph systemClassGraph = new ClassGraph()
+        return new ClassGraph()
             .enableSystemPackages()
-            .whitelistPackages("java.*", "javax.*", "javafx.*");
-
-        return List.of(
-            userClassGraph.enableClassInfo(),
-            systemClassGraph.enableClassInfo()
-        );
+            .whitelistPackages("java.*", "javax.*", "javafx.*")
+            .enableClassInfo()
+            .enableExternalClasses();
     }
 
     /**
      * Gets a package-tree structure which includes all packages and class-names
-     * on the current class-path (by scanning all JARs and class-files on the path).
+     * on the current class-path.  JARs (and the JDK) which are present and unchanged in the
+     * type index are not scanned; all other classpath elements are scanned, and the index
+     * is updated with the results.
      *
-     * @return A package-tree structure with all class names present, but not any further
-     * details about the classes.
+     * @return A package-tree structure with all class names present, and the indexed
+     * details for those classes which came from a JAR or the JDK.
      */
     @OnThread(Tag.Worker)
     private RootPackageInfo findAllTypes()
     {
-        List<ClassGraph> classGraphs = getClassloaderConfig();
         RootPackageInfo r = new RootPackageInfo();
-        
-        if (classGraphs != null)
+        File indexFile = getTypeIndexPath();
+        TypeIndex index = TypeIndex.load(indexFile);
+        List<TypeIndex.Source> changedSources = new ArrayList<>();
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        // User libraries: use each unchanged JAR from the index, and scan the rest:
+        try
         {
-            final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
-            for (ClassGraph classGraph : classGraphs)
+            ClassLoader[] userClassLoaders = getUserClassLoaders();
+            Set<File> toScan = new HashSet<>();
+            for (File element : makeUserClassGraph(userClassLoaders).getClasspathFiles())
             {
-                try (ScanResult result = classGraph.scan(threads))
+                element = element.getAbsoluteFile();
+                TypeIndex.Source source = element.isFile() ? index.getSource(element.getPath()) : null;
+                if (source != null && source.isUpToDate(element))
                 {
-                    for (ClassInfo c : result.getAllClasses())
-                    {
-                        r.addClass(c.getName());
-                    }
+                    source.getTypes().forEach(r::addClass);
                 }
-                catch (Throwable t)
+                else
                 {
-                    Debug.reportError(t);
+                    toScan.add(element);
                 }
             }
+
+            if (!toScan.isEmpty())
+            {
+                ClassGraph userClassGraph = makeUserClassGraph(userClassLoaders)
+                        .filterClasspathElements(path -> toScan.contains(new File(path).getAbsoluteFile()));
+                scanInto(userClassGraph, threads, r, changedSources, toScan, null);
+            }
+        }
+        catch (Throwable t)
+        {
+            Debug.reportError(t);
+        }
+
+        // System classes: the JDK (indexed as a whole against the runtime modules file) and
+        // any other system libraries such as the JavaFX JARs.  These are scanned together,
+        // so we only use the index if every one of the files is unchanged:
+        try
+        {
+            File modulesFile = new File(System.getProperty("java.home"), "lib" + File.separator + "modules").getAbsoluteFile();
+            Set<File> systemFiles = getSystemFiles(modulesFile);
+            List<TypeIndex.Source> systemSources = new ArrayList<>();
+            for (File file : systemFiles)
+            {
+                TypeIndex.Source source = index.getSource(file.getPath());
+                if (source == null || !source.isUpToDate(file))
+                {
+                    systemSources = null;
+                    break;
+                }
+                systemSources.add(source);
+            }
+
+            if (systemSources != null && !systemSources.isEmpty())
+            {
+                systemSources.forEach(s -> s.getTypes().forEach(r::addClass));
+            }
+            else
+            {
+                scanInto(makeSystemClassGraph(), threads, r, changedSources, systemFiles,
+                        modulesFile.isFile() ? modulesFile : null);
+            }
+        }
+        catch (Throwable t)
+        {
+            Debug.reportError(t);
+        }
+
+        if (!changedSources.isEmpty())
+        {
+            TypeIndex.update(indexFile, changedSources);
         }
         return r;
     }
 
+    /**
+     * Gets the files which the system classes are loaded from: the JDK's runtime modules
+     * file (if there is one), and every JAR which the system class graph scans.
+     */
+    @OnThread(Tag.Worker)
+    private static Set<File> getSystemFiles(File modulesFile)
+    {
+        Set<File> files = new LinkedHashSet<>();
+        if (modulesFile.isFile())
+        {
+            files.add(modulesFile);
+        }
+        for (File element : makeSystemClassGraph().getClasspathFiles())
+        {
+            if (element.isFile())
+            {
+                files.add(element.getAbsoluteFile());
+            }
+        }
+        for (ModuleRef module : makeSystemClassGraph().getModules())
+        {
+            File location = module.getLocationFile();
+            if (location != null && location.isFile())
+            {
+                files.add(location.getAbsoluteFile());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Runs the given class graph scan, adding all types found to the given root package.
+     * The types found in each of the given files are also added as sources to the given
+     * list, for saving into the type index.  Every one of the given files gets a source,
+     * even if no types were found in it, so that it is not scanned again until it changes.
+     *
+     * @param indexedFiles The files (JARs, or the JDK's modules file) to record types against.
+     * @param otherTypesFile If non-null, types not found in one of the indexed files are
+     *                       recorded against this file; otherwise they aren't recorded.
+     */
+    @OnThread(Tag.Worker)
+    private void scanInto(ClassGraph classGraph, int threads, RootPackageInfo r,
+                          List<TypeIndex.Source> changedSources, Set<File> indexedFiles, File otherTypesFile)
+    {
+        Map<File, List<IndexedType>> typesByElement = new LinkedHashMap<>();
+        for (File file : indexedFiles)
+        {
+            if (file.isFile())
+            {
+                typesByElement.put(file, new ArrayList<>());
+            }
+        }
+        try (ScanResult result = classGraph.scan(threads))
+        {
+            for (ClassInfo c : result.getAllClasses())
+            {
+                if (c.isExternalClass())
+                {
+                    continue;
+                }
+                IndexedType type = toIndexedType(c);
+                r.addClass(type);
+                File element = c.getClasspathElementFile();
+                List<IndexedType> types = element == null ? null : typesByElement.get(element.getAbsoluteFile());
+                if (types == null && otherTypesFile != null)
+                {
+                    types = typesByElement.computeIfAbsent(otherTypesFile, f -> new ArrayList<>());
+                }
+                if (types != null)
+                {
+                    types.add(type);
+                }
+            }
+        }
+
+        typesByElement.forEach((element, types) ->
+            changedSources.add(new TypeIndex.Source(element.getPath(), element.length(), element.lastModified(), types)));
+    }
+
+    /**
+     * Gets the details for the type index from a ClassGraph class.
+     */
+    @OnThread(Tag.Worker)
+    private static IndexedType toIndexedType(ClassInfo c)
+    {
+        String name = c.getName();
+        int lastDot = name.lastIndexOf('.');
+        ClassInfo superclass = c.getSuperclass();
+        ModuleRef module = c.getModuleRef();
+        return new IndexedType(lastDot == -1 ? "" : name.substring(0, lastDot), name.substring(lastDot + 1),
+                c.getModifiers(), c.isInterfaceOrAnnotation(), c.isEnum(),
+                module == null ? null : module.getName(),
+                superclass == null ? null : superclass.getName(),
+                new ArrayList<>(c.getInterfaces().getNames()));
+    }
+
     /**
      * Starts scanning for available importable types from the classpath.
      * Will operate in a background thread.
@@ -417,6 +670,12 @@ public class ImportScanner
         return new File(Config.getUserConfigDir(), "import-cache.xml");
     }
 
+    /** Type index path to save to/load from */
+    private static File getTypeIndexPath()
+    {
+        return new File(Config.getUserConfigDir(), "type-index.bin");
+    }
+
     /**
      * Loads cached (java.**) imports into the given root package, if possible.
      */
@@ -0,0 +1,371 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * A persistent index of the types found in classpath elements (JARs, and the JDK), used
+ * by ImportScanner so that unchanged JARs do not need to be rescanned every time a project
+ * is opened, and so that basic type information is available without loading classes.
+ *
+ * <p>The index is made up of sources, one per classpath element.  Each source records the
+ * fingerprint (path, size, modification time) of the element when it was scanned, so that
+ * a changed element can be detected and rescanned on its own.
+ *
+ * <p>The index is stored in a compact binary format: a string table (so that package names
+ * and commonly-used supertypes are only stored once), followed by the sources.  It is
+ * read into memory in one go when loaded.  (It is not memory-mapped: the whole index is
+ * decoded straight away, and on Windows a mapped file can't be replaced, which update()
+ * must do while other projects may have the index loaded.)
+ */
+@OnThread(Tag.Worker)
+public class TypeIndex
+{
+    private static final int MAGIC = 0x424A5449; // "BJTI"
+    private static final int FORMAT_VERSION = 1;
+
+    // Held while loading or saving the index file, since several projects may share it:
+    private static final Object fileLock = new Object();
+
+    // Keyed by source path:
+    private final Map<String, Source> sources = new LinkedHashMap<>();
+
+    /**
+     * The information held about a single type.
+     */
+    @OnThread(Tag.Any)
+    public static final class IndexedType
+    {
+        private final String packageName;
+        // The binary name without the package, e.g. "Map$Entry":
+        private final String nameInPackage;
+        private final int modifiers;
+        private final boolean isInterface;
+        private final boolean isEnum;
+        private final String moduleName; // may be null
+        private final String superclass; // may be null
+        private final List<String> interfaces;
+
+        public IndexedType(String packageName, String nameInPackage, int modifiers, boolean isInterface,
+                           boolean isEnum, String moduleName, String superclass, List<String> interfaces)
+        {
+            this.packageName = packageName;
+            this.nameInPackage = nameInPackage;
+            this.modifiers = modifiers;
+            this.isInterface = isInterface;
+            this.isEnum = isEnum;
+            this.moduleName = moduleName;
+            this.superclass = superclass;
+            this.interfaces = interfaces;
+        }
+
+        /** The package name, e.g. "java.util" (or "" for the default package) */
+        public String getPackageName() { return packageName; }
+
+        /** The binary name within the package, e.g. "Map$Entry" */
+        public String getNameInPackage() { return nameInPackage; }
+
+        /** The fully-qualified binary name, e.g. "java.util.Map$Entry" */
+        public String getName()
+        {
+            return packageName.isEmpty() ? nameInPackage : packageName + "." + nameInPackage;
+        }
+
+        public int getModifiers() { return modifiers; }
+
+        public boolean isInterface() { return isInterface; }
+
+        public boolean isEnum() { return isEnum; }
+
+        /** The module containing the type, or null if not known/applicable */
+        public String getModuleName() { return moduleName; }
+
+        /** The fully-qualified name of the direct superclass, or null if none */
+        public String getSuperclass() { return superclass; }
+
+        /** The fully-qualified names of implemented interfaces */
+        public List<String> getInterfaces() { return interfaces; }
+    }
+
+    /**
+     * The types found in one classpath element, along with the element's fingerprint.
+     */
+    @OnThread(Tag.Any)
+    public static final class Source
+    {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final List<IndexedType> types;
+
+        public Source(String path, long size, long lastModified, List<IndexedType> types)
+        {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.types = types;
+        }
+
+        public String getPath() { return path; }
+
+        public List<IndexedType> getTypes() { return Collections.unmodifiableList(types); }
+
+        /**
+         * Checks whether this source was created from the given file in its current state.
+         */
+        public boolean isUpToDate(File file)
+        {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Gets the indexed types for the given source (classpath element) path, or null if
+     * the source is not in the index.  Callers should check the fingerprint using
+     * Source.isUpToDate before using the result.
+     */
+    public Source getSource(String path)
+    {
+        return sources.get(path);
+    }
+
+    /**
+     * Adds (or replaces) a source in the index.
+     */
+    public void putSource(Source source)
+    {
+        sources.put(source.path, source);
+    }
+
+    /**
+     * Loads the index from the given file.  If the file does not exist or cannot be read,
+     * an empty index is returned.
+     */
+    public static TypeIndex load(File file)
+    {
+        synchronized (fileLock)
+        {
+            TypeIndex index = new TypeIndex();
+            if (!file.exists())
+            {
+                return index;
+            }
+
+            try
+            {
+                index.readFrom(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+            }
+            catch (IOException | BufferUnderflowException | IndexOutOfBoundsException
+                    | IllegalArgumentException | NegativeArraySizeException e)
+            {
+                Debug.message(e.getClass().getName() + " while reading type index: " + e.getMessage());
+                index.sources.clear();
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Merges the given sources into the index stored in the given file, and saves it.
+     * The file is re-read first, so that entries saved by other projects are kept.
+     * Entries for classpath elements which no longer exist are discarded.
+     */
+    public static void update(File file, Collection<Source> newSources)
+    {
+        synchronized (fileLock)
+        {
+            TypeIndex index = load(file);
+            for (Source source : newSources)
+            {
+                index.putSource(source);
+            }
+            index.sources.keySet().removeIf(path -> !new File(path).exists());
+
+            File tempFile = new File(file.getPath() + ".tmp");
+            try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+            {
+                index.writeTo(os);
+            }
+            catch (IOException e)
+            {
+                Debug.reportError("Problem writing type index", e);
+                tempFile.delete();
+                return;
+            }
+
+            try
+            {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (IOException e)
+            {
+                Debug.reportError("Problem saving type index", e);
+                tempFile.delete();
+            }
+        }
+    }
+
+    private void writeTo(DataOutputStream os) throws IOException
+    {
+        // Build the string table first:
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Source source : sources.values())
+        {
+            addString(source.path, stringIndexes, strings);
+            for (IndexedType type : source.types)
+            {
+                addString(type.packageName, stringIndexes, strings);
+                addString(type.nameInPackage, stringIndexes, strings);
+                addString(type.moduleName, stringIndexes, strings);
+                addString(type.superclass, stringIndexes, strings);
+                for (String i : type.interfaces)
+                {
+                    addString(i, stringIndexes, strings);
+                }
+            }
+        }
+
+        os.writeInt(MAGIC);
+        os.writeInt(FORMAT_VERSION);
+        os.writeInt(strings.size());
+        for (String s : strings)
+        {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            os.writeInt(bytes.length);
+            os.write(bytes);
+        }
+
+        os.writeInt(sources.size());
+        for (Source source : sources.values())
+        {
+            os.writeInt(stringIndexes.get(source.path));
+            os.writeLong(source.size);
+            os.writeLong(source.lastModified);
+            os.writeInt(source.types.size());
+            for (IndexedType type : source.types)
+            {
+                os.writeInt(stringIndexes.get(type.packageName));
+                os.writeInt(stringIndexes.get(type.nameInPackage));
+                os.writeInt(type.modifiers);
+                os.writeByte((type.isInterface ? 1 : 0) | (type.isEnum ? 2 : 0));
+                os.writeInt(type.moduleName == null ? -1 : stringIndexes.get(type.moduleName));
+                os.writeInt(type.superclass == null ? -1 : stringIndexes.get(type.superclass));
+                os.writeShort(type.interfaces.size());
+                for (String i : type.interfaces)
+                {
+                    os.writeInt(stringIndexes.get(i));
+                }
+            }
+        }
+    }
+
+    private static void addString(String s, Map<String, Integer> stringIndexes, List<String> strings)
+    {
+        if (s != null && !stringIndexes.containsKey(s))
+        {
+            stringIndexes.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+
+    private void readFrom(ByteBuffer buffer)
+    {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+        {
+            // Not an index, or an old format; ignore it (and it will be regenerated):
+            return;
+        }
+
+        String[] strings = new String[readCount(buffer, 4)];
+        for (int i = 0; i < strings.length; i++)
+        {
+            byte[] bytes = new byte[readCount(buffer, 1)];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int sourceCount = readCount(buffer, 24);
+        for (int s = 0; s < sourceCount; s++)
+        {
+            String path = strings[buffer.getInt()];
+            long size = buffer.getLong();
+            long lastModified = buffer.getLong();
+            int typeCount = readCount(buffer, 23);
+            List<IndexedType> types = new ArrayList<>(typeCount);
+            for (int t = 0; t < typeCount; t++)
+            {
+                String packageName = strings[buffer.getInt()];
+                String nameInPackage = strings[buffer.getInt()];
+                int modifiers = buffer.getInt();
+                byte flags = buffer.get();
+                int moduleIndex = buffer.getInt();
+                int superclassIndex = buffer.getInt();
+                int interfaceCount = buffer.getShort() & 0xFFFF;
+                List<String> interfaces = new ArrayList<>(interfaceCount);
+                for (int i = 0; i < interfaceCount; i++)
+                {
+                    interfaces.add(strings[buffer.getInt()]);
+                }
+                types.add(new IndexedType(packageName, nameInPackage, modifiers, (flags & 1) != 0, (flags & 2) != 0,
+                        moduleIndex == -1 ? null : strings[moduleIndex],
+                        superclassIndex == -1 ? null : strings[superclassIndex], interfaces));
+            }
+            sources.put(path, new Source(path, size, lastModified, types));
+        }
+    }
+
+    /**
+     * Reads a count of items from the buffer, checking that the rest of the buffer is
+     * big enough to hold that many items (of at least the given size), so that a corrupt
+     * file can't make us allocate a huge (or negative-sized) array.
+     */
+    private static int readCount(ByteBuffer buffer, int minItemSize)
+    {
+        int count = buffer.getInt();
+        if (count < 0 || (long)count * minItemSize > buffer.remaining())
+        {
+            throw new IllegalArgumentException("Invalid count in type index: " + count);
+        }
+        return count;
+    }
+}
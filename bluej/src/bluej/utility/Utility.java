@@ -1072,6 +1072,100 @@ public class Utility
     {
         return dla.execute(s, t);
     }
+
+    /**
+     * Damerau-Levenshtein distance, as for editDistance(String, String), but only
+     * calculated in full when it is no more than the given maximum; otherwise, max + 1
+     * is returned.  This is much quicker when most strings are not close.
+     */
+    public static int editDistance(String s, String t, int max)
+    {
+        if (Math.abs(s.length() - t.length()) > max)
+            return max + 1;
+
+        int restricted = restrictedEditDistance(s, t, max);
+        // The restricted distance is the same as the full distance up to 2, but beyond
+        // that it can be greater (e.g. "ca" to "abc" is 3, not 2):
+        if (restricted <= 2)
+            return restricted;
+        // Each character which can't be matched up needs at least one edit:
+        if (unmatchedCharacters(s, t) > max)
+            return max + 1;
+        return Math.min(dla.execute(s, t), max + 1);
+    }
+
+    /**
+     * The "optimal string alignment" distance: like Damerau-Levenshtein, but where no
+     * part of the string is edited more than once.  Returns max + 1 if the distance is
+     * more than max.
+     */
+    private static int restrictedEditDistance(String s, String t, int max)
+    {
+        // We only keep the last three rows of the table:
+        int[] beforePrev = new int[t.length() + 1];
+        int[] prev = new int[t.length() + 1];
+        int[] cur = new int[t.length() + 1];
+        for (int j = 0; j <= t.length(); j++)
+            prev[j] = j;
+        int prevMin = 0;
+
+        for (int i = 1; i <= s.length(); i++)
+        {
+            cur[0] = i;
+            int curMin = i;
+            for (int j = 1; j <= t.length(); j++)
+            {
+                int d = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1),
+                        prev[j - 1] + (s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1));
+                if (i > 1 && j > 1 && s.charAt(i - 1) == t.charAt(j - 2) && s.charAt(i - 2) == t.charAt(j - 1))
+                    d = Math.min(d, beforePrev[j - 2] + 1);
+                cur[j] = d;
+                curMin = Math.min(curMin, d);
+            }
+            // Every later entry is at least the minimum of the last two rows:
+            if (curMin > max && prevMin > max)
+                return max + 1;
+            prevMin = curMin;
+
+            int[] recycled = beforePrev;
+            beforePrev = prev;
+            prev = cur;
+            cur = recycled;
+        }
+        return Math.min(prev[t.length()], max + 1);
+    }
+
+    /**
+     * The number of characters in one string which have no counterpart in the other,
+     * for whichever string has more such characters.
+     */
+    private static int unmatchedCharacters(String s, String t)
+    {
+        char[] sc = s.toCharArray();
+        char[] tc = t.toCharArray();
+        Arrays.sort(sc);
+        Arrays.sort(tc);
+        int i = 0, j = 0, onlyS = 0, onlyT = 0;
+        while (i < sc.length && j < tc.length)
+        {
+            if (sc[i] == tc[j])
+            {
+                i++;
+                j++;
+            }
+            else if (sc[i] < tc[j])
+            {
+                onlyS++;
+                i++;
+            }
+            else
+            {
+                onlyT++;
+                j++;
+            }
+        }
+        return Math.max(onlyS + sc.length - i, onlyT + tc.length - j);
+    }
     
     public static String escapeAngleBrackets(String sig)
     {
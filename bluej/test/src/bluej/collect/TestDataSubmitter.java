@@ -0,0 +1,294 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+ 
+ This program is free software; you can redistribute it and/or 
+ modify it under the terms of the GNU General Public License 
+ as published by the Free Software Foundation; either version 2 
+ of the License, or (at your option) any later version. 
+ 
+ This program is distributed in the hope that it will be useful, 
+ but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ GNU General Public License for more details. 
+ 
+ You should have received a copy of the GNU General Public License 
+ along with this program; if not, write to the Free Software 
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. 
+ 
+ This file is subject to the Classpath exception as provided in the  
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.collect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.entity.mime.MultipartEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the data submission spool, and for DataSubmitter sending to a
+ * local stand-in for the server.
+ */
+public class TestDataSubmitter
+{
+    private File spoolFile;
+    private HttpServer server;
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private int failuresToSimulate;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        spoolFile = File.createTempFile("spool", ".dat");
+        spoolFile.delete();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/master_events", exchange -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream is = exchange.getRequestBody())
+            {
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = is.read(buffer)) != -1)
+                {
+                    body.write(buffer, 0, n);
+                }
+            }
+
+            boolean fail;
+            synchronized (this)
+            {
+                fail = failuresToSimulate > 0;
+                if (fail)
+                {
+                    failuresToSimulate -= 1;
+                }
+            }
+            if (fail)
+            {
+                exchange.sendResponseHeaders(503, -1);
+            }
+            else
+            {
+                received.add(body.toString("UTF-8"));
+                exchange.getResponseHeaders().add("X-Status", "Created");
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+        spoolFile.delete();
+    }
+
+    @Test
+    public void testSpoolSurvivesReopen() throws IOException
+    {
+        EventSpool spool = new EventSpool(spoolFile);
+        for (int i = 0; i < 3; i++)
+        {
+            spool.append(new EventSpool.SpooledEvent("text/plain", ("event " + i).getBytes(StandardCharsets.UTF_8)), () -> {});
+        }
+        spool.sync();
+        Assert.assertEquals("event 0", new String(spool.peek().body, StandardCharsets.UTF_8));
+        spool.removeFirst();
+        spool.close();
+
+        spool = new EventSpool(spoolFile);
+        // Another instance can't use the spool while it is open:
+        try
+        {
+            new EventSpool(spoolFile).close();
+            Assert.fail("Spool was opened twice");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+        for (int i = 1; i < 3; i++)
+        {
+            EventSpool.SpooledEvent event = spool.peek();
+            Assert.assertEquals("text/plain", event.contentType);
+            Assert.assertEquals("event " + i, new String(event.body, StandardCharsets.UTF_8));
+            spool.removeFirst();
+        }
+        Assert.assertTrue(spool.isEmpty());
+        Assert.assertNull(spool.peek());
+        spool.close();
+    }
+
+    @Test
+    public void testSendWithRetry() throws IOException
+    {
+        synchronized (this)
+        {
+            failuresToSimulate = 2;
+        }
+        List<Integer> acknowledged = new ArrayList<>();
+        EventSpool spool = new EventSpool(spoolFile);
+        for (int i = 0; i < 5; i++)
+        {
+            int n = i;
+            spool.append(makeEvent(i), () -> {
+                // Only acknowledged once the server has the event:
+                Assert.assertEquals(n + 1, received.size());
+                acknowledged.add(n);
+            });
+        }
+        spool.sync();
+
+        Assert.assertEquals(DataSubmitter.PostResult.SENT, DataSubmitter.sendSpooledEvents(spool, getUrl()));
+        Assert.assertTrue(spool.isEmpty());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), acknowledged);
+        Assert.assertEquals(5, received.size());
+        for (int i = 0; i < 5; i++)
+        {
+            Assert.assertTrue(received.get(i).contains("test-event-" + i));
+        }
+        spool.close();
+    }
+
+    @Test
+    public void testUnsentEventsKept() throws IOException
+    {
+        synchronized (this)
+        {
+            failuresToSimulate = 100;
+        }
+        EventSpool spool = new EventSpool(spoolFile);
+        spool.append(makeEvent(0), () -> Assert.fail("Event was not sent"));
+        spool.sync();
+        Assert.assertEquals(DataSubmitter.PostResult.FAILED, DataSubmitter.sendSpooledEvents(spool, getUrl()));
+        Assert.assertFalse(spool.isEmpty());
+        spool.close();
+
+        // It is sent in a later session:
+        synchronized (this)
+        {
+            failuresToSimulate = 0;
+        }
+        spool = new EventSpool(spoolFile);
+        Assert.assertEquals(DataSubmitter.PostResult.SENT, DataSubmitter.sendSpooledEvents(spool, getUrl()));
+        Assert.assertEquals(1, received.size());
+        spool.delete();
+        Assert.assertFalse(spoolFile.exists());
+    }
+
+    @Test
+    public void testSpoolCompacted() throws IOException
+    {
+        // Incompressible, so that each record is about 10K:
+        Random random = new Random(42);
+        EventSpool spool = new EventSpool(spoolFile);
+        int appended = 0;
+        int removed = 0;
+        // Keep a few events unsent, as if sending is only just keeping up:
+        for (int i = 0; i < 200; i++)
+        {
+            byte[] body = new byte[10000];
+            random.nextBytes(body);
+            body[0] = (byte)appended++;
+            spool.append(new EventSpool.SpooledEvent("text/plain", body), () -> {});
+            if (appended - removed > 3)
+            {
+                Assert.assertEquals((byte)removed, spool.peek().body[0]);
+                spool.removeFirst();
+                removed += 1;
+            }
+        }
+        spool.sync();
+        // Without compaction, the file would hold all 200 records:
+        Assert.assertTrue(spoolFile.length() < 100 * 10000);
+        spool.close();
+
+        // The unsent events survive, in order:
+        spool = new EventSpool(spoolFile);
+        while (!spool.isEmpty())
+        {
+            Assert.assertEquals((byte)removed, spool.peek().body[0]);
+            spool.removeFirst();
+            removed += 1;
+        }
+        Assert.assertEquals(appended, removed);
+        spool.close();
+    }
+
+    @Test
+    public void testSpoolFull() throws IOException
+    {
+        Random random = new Random(42);
+        EventSpool spool = new EventSpool(spoolFile);
+        byte[] body = new byte[64 * 1024];
+        long total = 0;
+        while (!spool.isFull())
+        {
+            random.nextBytes(body);
+            spool.append(new EventSpool.SpooledEvent("text/plain", body), () -> {});
+            total += body.length;
+            Assert.assertTrue(total <= EventSpool.MAX_UNSENT_SIZE + body.length);
+        }
+        // Sending makes room again:
+        spool.removeFirst();
+        Assert.assertFalse(spool.isFull());
+        spool.delete();
+    }
+
+    private String getUrl()
+    {
+        return "http://localhost:" + server.getAddress().getPort() + "/master_events";
+    }
+
+    private static EventSpool.SpooledEvent makeEvent(int number) throws IOException
+    {
+        MultipartEntity mpe = new NumberedEvent(number).makeData(number + 1, new HashMap<>());
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        mpe.writeTo(body);
+        return new EventSpool.SpooledEvent(mpe.getContentType().getValue(), body.toByteArray());
+    }
+
+    private static class NumberedEvent implements Event
+    {
+        private final int number;
+
+        public NumberedEvent(int number)
+        {
+            this.number = number;
+        }
+
+        @Override
+        public MultipartEntity makeData(int sequenceNum, Map<FileKey, List<String>> fileVersions)
+        {
+            MultipartEntity mpe = new MultipartEntity();
+            mpe.addPart("event[name]", CollectUtility.toBody("test-event-" + number));
+            mpe.addPart("event[sequence_id]", CollectUtility.toBody(Integer.toString(sequenceNum)));
+            return mpe;
+        }
+
+        @Override
+        public void success(Map<FileKey, List<String>> fileVersions)
+        {
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package bluej.editor.moe;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks that LineStartIndex, updated incrementally, agrees with a fresh scan of the text.
+ */
+public class TestLineStartIndex
+{
+    @Test
+    public void testEmpty()
+    {
+        LineStartIndex index = new LineStartIndex();
+        Assert.assertEquals(1, index.getLineCount());
+        Assert.assertEquals(0, index.getLineStart(0));
+        Assert.assertEquals(0, index.getLineForOffset(0));
+    }
+
+    @Test
+    public void testRandomEdits()
+    {
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        LineStartIndex index = new LineStartIndex();
+        String[] fragments = {"a", "bc", "\n", "x\ny", "\n\n", "class Foo {\n  int x;\n}\n", ""};
+
+        for (int edit = 0; edit < 5000; edit++)
+        {
+            int position = random.nextInt(text.length() + 1);
+            int removeLength = random.nextInt(3) == 0 ? random.nextInt(Math.min(20, text.length() - position) + 1) : 0;
+            String removed = text.substring(position, position + removeLength);
+            String inserted = fragments[random.nextInt(fragments.length)];
+            text.replace(position, position + removeLength, inserted);
+            index.replace(position, removed, inserted);
+
+            checkAgainstScan(text, index);
+        }
+    }
+
+    private static void checkAgainstScan(CharSequence text, LineStartIndex index)
+    {
+        LineStartIndex fresh = new LineStartIndex();
+        fresh.reset(text);
+        Assert.assertEquals("Line count", fresh.getLineCount(), index.getLineCount());
+        for (int line = 0; line < fresh.getLineCount(); line++)
+        {
+            Assert.assertEquals("Start of line " + line, fresh.getLineStart(line), index.getLineStart(line));
+        }
+
+        int line = 0;
+        for (int offset = 0; offset <= text.length(); offset++)
+        {
+            Assert.assertEquals("Line of offset " + offset, line, index.getLineForOffset(offset));
+            if (offset < text.length() && text.charAt(offset) == '\n')
+            {
+                line += 1;
+            }
+        }
+    }
+}
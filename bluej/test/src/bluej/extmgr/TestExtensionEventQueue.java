@@ -0,0 +1,159 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+ 
+ This program is free software; you can redistribute it and/or 
+ modify it under the terms of the GNU General Public License 
+ as published by the Free Software Foundation; either version 2 
+ of the License, or (at your option) any later version. 
+ 
+ This program is distributed in the hope that it will be useful, 
+ but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ GNU General Public License for more details. 
+ 
+ You should have received a copy of the GNU General Public License 
+ along with this program; if not, write to the Free Software 
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. 
+ 
+ This file is subject to the Classpath exception as provided in the  
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.extmgr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import bluej.extensions.event.ExtensionEvent;
+
+/**
+ * Tests for the order in which ExtensionEventQueue delivers events, and for the events
+ * it drops when an extension falls behind.
+ */
+public class TestExtensionEventQueue
+{
+    private static class NumberedEvent implements ExtensionEvent
+    {
+        private final int number;
+
+        NumberedEvent(int number)
+        {
+            this.number = number;
+        }
+    }
+
+    private final List<Integer> delivered = new ArrayList<>();
+
+    private ExtensionEventQueue makeQueue(long handlerMillis)
+    {
+        return new ExtensionEventQueue(() -> "TestExtension", event -> {
+            delivered.add(((NumberedEvent) event).number);
+            if (handlerMillis > 0)
+            {
+                try
+                {
+                    Thread.sleep(handlerMillis);
+                }
+                catch (InterruptedException ie)
+                {
+                    throw new RuntimeException(ie);
+                }
+            }
+        });
+    }
+
+    private static List<Integer> range(int from, int to)
+    {
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = from; i < to; i++)
+        {
+            numbers.add(i);
+        }
+        return numbers;
+    }
+
+    /**
+     * Let the GUI thread run until the given number of events have been delivered.
+     */
+    private void waitForDelivered(int count) throws Exception
+    {
+        for (int i = 0; i < 100 && delivered.size() < count; i++)
+        {
+            SwingUtilities.invokeAndWait(() -> {});
+        }
+    }
+
+    @Test
+    public void testPostDeliversLaterInOrder() throws Exception
+    {
+        ExtensionEventQueue queue = makeQueue(0);
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < 10; i++)
+            {
+                queue.post(new NumberedEvent(i));
+            }
+            // Not delivered until the GUI thread is free:
+            Assert.assertEquals(0, delivered.size());
+        });
+        waitForDelivered(10);
+        Assert.assertEquals(range(0, 10), delivered);
+        Assert.assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testOverflowDropsOldest() throws Exception
+    {
+        ExtensionEventQueue queue = makeQueue(0);
+        int extra = 10;
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < ExtensionEventQueue.CAPACITY + extra; i++)
+            {
+                queue.post(new NumberedEvent(i));
+            }
+        });
+        waitForDelivered(ExtensionEventQueue.CAPACITY);
+        Assert.assertEquals(range(extra, ExtensionEventQueue.CAPACITY + extra), delivered);
+        Assert.assertEquals(extra, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testDeliverNowFlushesWaitingEventsFirst() throws Exception
+    {
+        ExtensionEventQueue queue = makeQueue(0);
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < 3; i++)
+            {
+                queue.post(new NumberedEvent(i));
+            }
+            queue.deliverNow(new NumberedEvent(99));
+            // Delivered immediately, after the waiting events:
+            Assert.assertEquals(List.of(0, 1, 2, 99), delivered);
+        });
+        // The waiting events must not be delivered again:
+        SwingUtilities.invokeAndWait(() -> {});
+        Assert.assertEquals(List.of(0, 1, 2, 99), delivered);
+    }
+
+    @Test
+    public void testSlowHandlerYieldsBetweenEvents() throws Exception
+    {
+        // Each event takes longer than a slice, so the GUI thread should get a turn
+        // after each one:
+        ExtensionEventQueue queue = makeQueue(30);
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < 3; i++)
+            {
+                queue.post(new NumberedEvent(i));
+            }
+        });
+        SwingUtilities.invokeAndWait(() -> {});
+        Assert.assertEquals(List.of(0), delivered);
+        waitForDelivered(3);
+        Assert.assertEquals(range(0, 3), delivered);
+    }
+}
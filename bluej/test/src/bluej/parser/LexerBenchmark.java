@@ -0,0 +1,67 @@
+package bluej.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import bluej.parser.lexer.JavaLexer;
+import bluej.parser.lexer.JavaTokenTypes;
+
+/**
+ * A simple benchmark comparing the lexer reading from a Reader with the lexer reading
+ * directly from a snapshot of the source text, over the parser test corpus.
+ * Not a unit test; run the main method by hand.
+ */
+public class LexerBenchmark
+{
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int TIMED_ROUNDS = 1000;
+    
+    public static void main(String[] args) throws IOException
+    {
+        String[] sources = new String[LexerTest.CORPUS.length];
+        int totalLength = 0;
+        for (int i = 0; i < sources.length; i++)
+        {
+            sources[i] = LexerTest.readCorpusFile(LexerTest.CORPUS[i]);
+            totalLength += sources[i].length();
+        }
+        
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+        {
+            lexAll(sources, false);
+            lexAll(sources, true);
+        }
+        
+        long readerTime = 0;
+        long snapshotTime = 0;
+        int tokens = 0;
+        for (int i = 0; i < TIMED_ROUNDS; i++)
+        {
+            long start = System.nanoTime();
+            tokens = lexAll(sources, false);
+            readerTime += System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            lexAll(sources, true);
+            snapshotTime += System.nanoTime() - start;
+        }
+        
+        System.out.println("Corpus: " + sources.length + " files, " + totalLength + " chars, " + tokens + " tokens");
+        System.out.printf("Reader:   %.3f ms per pass%n", readerTime / 1e6 / TIMED_ROUNDS);
+        System.out.printf("Snapshot: %.3f ms per pass%n", snapshotTime / 1e6 / TIMED_ROUNDS);
+    }
+    
+    private static int lexAll(String[] sources, boolean snapshot)
+    {
+        int tokens = 0;
+        for (String source : sources)
+        {
+            JavaLexer lexer = snapshot ? new JavaLexer(source) : new JavaLexer(new StringReader(source));
+            while (lexer.nextToken().getType() != JavaTokenTypes.EOF)
+            {
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+}
@@ -1,12 +1,17 @@
 package bluej.parser;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
+import bluej.parser.lexer.JavaLexer;
 import bluej.parser.lexer.JavaTokenFilter;
 import bluej.parser.lexer.JavaTokenTypes;
 import bluej.parser.lexer.LocatableToken;
@@ -19,6 +24,30 @@ import bluej.parser.lexer.LocatableToken;
  */
 public class LexerTest extends junit.framework.TestCase
 {
+    /** Source files from the parser tests, used to check the lexer against real code */
+    static final String[] CORPUS = {"14_assertion.dat", "15_generic.dat", "A.dat", "AffinedTransformer.dat",
+            "B.dat", "C.dat", "D.dat", "E.dat", "F.dat", "G.dat", "H.dat", "I.dat", "escaped_unicode_method.dat",
+            "escaped_unicode_string.dat", "generic_selections.dat", "java_basic.dat", "multi_interface.dat"};
+    
+    static String readCorpusFile(String name) throws IOException
+    {
+        try (InputStream is = LexerTest.class.getResourceAsStream("/bluej/parser/ast/data/" + name))
+        {
+            byte[] buffer = new byte[is.available() + 1];
+            int length = 0;
+            int n;
+            while ((n = is.read(buffer, length, buffer.length - length)) != -1)
+            {
+                length += n;
+                if (length == buffer.length)
+                {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+    
     private TokenStream getLexerFor(String s)
     {
         TokenStream lexer = JavaParser.getLexer(new StringReader(s));
@@ -927,4 +956,53 @@ public class LexerTest extends junit.framework.TestCase
             }
         }
     }
+    
+    /**
+     * Check that lexing from a snapshot of the text gives exactly the same tokens as
+     * lexing from a Reader.
+     */
+    public void testSnapshotLexing() throws IOException
+    {
+        for (String name : CORPUS)
+        {
+            String source = readCorpusFile(name);
+            checkSnapshotLexing(source, false);
+            checkSnapshotLexing(source, true);
+        }
+        
+        String[] awkward = {"", "a", "x\\u0041y \\u0022s\\u0022", "\"unterminated\nnext", "'c",
+                "0x 0b2 0xAp-3f 1e5d .5 1_000L", ".. ... /* unterminated",
+                "a\\u000ab \\uu0041 \"\\\\u0041\" \\\\\\u0041", "bad \\u00g1 escape",
+                "// comment\r\n  # @ \\ ->::", "\t\n \n"};
+        for (String source : awkward)
+        {
+            checkSnapshotLexing(source, false);
+            checkSnapshotLexing(source, true);
+        }
+    }
+    
+    private void checkSnapshotLexing(String source, boolean whitespace)
+    {
+        JavaLexer fromReader = new JavaLexer(new StringReader(source), 3, 5, 100);
+        JavaLexer fromText = new JavaLexer(source, 3, 5, 100);
+        fromReader.setGenerateWhitespaceTokens(whitespace);
+        fromText.setGenerateWhitespaceTokens(whitespace);
+        
+        LocatableToken expected;
+        do
+        {
+            expected = fromReader.nextToken();
+            LocatableToken actual = fromText.nextToken();
+            String where = " at " + expected.getLine() + ":" + expected.getColumn();
+            assertEquals("Type" + where, expected.getType(), actual.getType());
+            assertEquals("Text" + where, expected.getText(), actual.getText());
+            assertEquals("Line" + where, expected.getLine(), actual.getLine());
+            assertEquals("Column" + where, expected.getColumn(), actual.getColumn());
+            assertEquals("End line" + where, expected.getEndLine(), actual.getEndLine());
+            assertEquals("End column" + where, expected.getEndColumn(), actual.getEndColumn());
+            assertEquals("Position" + where, expected.getPosition(), actual.getPosition());
+            assertEquals("Length" + where, expected.getLength(), actual.getLength());
+        }
+        while (expected.getType() != JavaTokenTypes.EOF);
+    }
 }
@@ -0,0 +1,275 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+ 
+ This program is free software; you can redistribute it and/or 
+ modify it under the terms of the GNU General Public License 
+ as published by the Free Software Foundation; either version 2 
+ of the License, or (at your option) any later version. 
+ 
+ This program is distributed in the hope that it will be useful, 
+ but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ GNU General Public License for more details. 
+ 
+ You should have received a copy of the GNU General Public License 
+ along with this program; if not, write to the Free Software 
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. 
+ 
+ This file is subject to the Classpath exception as provided in the  
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.stride.slots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import bluej.utility.Utility;
+
+/**
+ * Tests for SuggestionIndex: its prefix matches, the narrowing of its typo-match
+ * candidates as more is typed, and the matches found through it, compared with a plain
+ * linear scan of all the choices (as SuggestionList did before it had the index).
+ */
+public class TestSuggestionIndex
+{
+    private static final String[] WORDS = {"get", "set", "actor", "world", "x", "key", "down",
+            "image", "is", "value", "act", "Greenfoot", "size"};
+
+    /**
+     * Make some identifiers from the words above, in camel case, with underscores, or with dots.
+     */
+    private static List<String> makeChoices(Random r, int count)
+    {
+        List<String> choices = new ArrayList<>();
+        for (int n = 0; n < count; n++)
+        {
+            StringBuilder sb = new StringBuilder();
+            int words = 1 + r.nextInt(3);
+            int style = r.nextInt(4);
+            for (int w = 0; w < words; w++)
+            {
+                String word = WORDS[r.nextInt(WORDS.length)];
+                if (w > 0 && style == 1)
+                    sb.append('_').append(word.toUpperCase());
+                else if (w > 0 && style == 2)
+                    sb.append('.').append(word);
+                else if (w > 0 || style == 3)
+                    sb.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+                else
+                    sb.append(word);
+            }
+            choices.add(sb.toString());
+        }
+        return choices;
+    }
+
+    /**
+     * Make something which the user might type: part of a choice, perhaps with a typo.
+     */
+    private static String makeTyped(Random r, List<String> choices)
+    {
+        String choice = choices.get(r.nextInt(choices.size()));
+        int start = r.nextInt(Math.max(1, choice.length() / 2));
+        StringBuilder sb = new StringBuilder(choice.substring(start, start + r.nextInt(choice.length() - start + 1)));
+        int typos = r.nextInt(3);
+        for (int t = 0; t < typos && sb.length() > 0; t++)
+            sb.setCharAt(r.nextInt(sb.length()), (char)('a' + r.nextInt(26)));
+        return sb.toString();
+    }
+
+    @Test
+    public void testWordStarts()
+    {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("getActorX", "Greenfoot.isKeyDown", "MAX_VALUE", "x"));
+        Assert.assertArrayEquals(new int[] {0, 3, 8}, index.getWordStarts(0));
+        // (A word which begins with a capital letter is split after it, as it always has been:)
+        Assert.assertArrayEquals(new int[] {0, 1, 10, 12, 15}, index.getWordStarts(1));
+        Assert.assertArrayEquals(new int[] {0, 4}, index.getWordStarts(2));
+        Assert.assertArrayEquals(new int[] {0}, index.getWordStarts(3));
+    }
+
+    @Test
+    public void testPrefixMatches()
+    {
+        Random r = new Random(1);
+        List<String> choices = makeChoices(r, 300);
+        // Duplicates, and choices differing only in case:
+        choices.add(choices.get(0));
+        choices.add(choices.get(1).toUpperCase());
+        SuggestionIndex index = new SuggestionIndex(choices);
+
+        for (int n = 0; n < 500; n++)
+        {
+            String prefixLower = makeTyped(r, choices).toLowerCase();
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < choices.size(); i++)
+            {
+                if (choices.get(i).toLowerCase().startsWith(prefixLower))
+                    expected.add(i);
+            }
+            Assert.assertEquals(prefixLower, expected, sorted(index.getPrefixMatches(prefixLower)));
+        }
+    }
+
+    @Test
+    public void testCandidatesNarrowing()
+    {
+        Random r = new Random(2);
+        List<String> choices = makeChoices(r, 300);
+        SuggestionIndex index = new SuggestionIndex(choices);
+
+        for (int n = 0; n < 200; n++)
+        {
+            String typed = makeTyped(r, choices).toLowerCase();
+            int[] candidates = null;
+            for (int length = 0; length <= typed.length(); length++)
+            {
+                String prefixLower = typed.substring(0, length);
+                // Narrowing the previous candidates must give the same as checking all choices:
+                int[] narrowed = index.getCandidates(prefixLower, candidates);
+                int[] all = index.getCandidates(prefixLower, null);
+                Assert.assertEquals(prefixLower, sorted(all), sorted(narrowed));
+                candidates = narrowed;
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesAgainstLinearScan()
+    {
+        Random r = new Random(3);
+        List<String> choices = makeChoices(r, 400);
+        SuggestionIndex index = new SuggestionIndex(choices);
+
+        for (int n = 0; n < 200; n++)
+        {
+            // Type the text a character at a time, narrowing the candidates as SuggestionList does:
+            String typed = makeTyped(r, choices);
+            int[] candidates = null;
+            for (int length = 1; length <= typed.length(); length++)
+            {
+                String prefix = typed.substring(0, length);
+                String prefixLower = prefix.toLowerCase();
+                candidates = index.getCandidates(prefixLower, candidates);
+                Assert.assertEquals(prefix, linearMatches(choices, index, prefix), indexedMatches(index, candidates, prefix));
+            }
+        }
+    }
+
+    /**
+     * The matches found by SuggestionList through the index, from the given candidates:
+     * a description of the best match for each choice which matches, keyed by choice.
+     */
+    private static TreeMap<Integer, String> indexedMatches(SuggestionIndex index, int[] candidates, String prefix)
+    {
+        String prefixLower = prefix.toLowerCase();
+        int maxDistance = maxDistance(prefix.length());
+        TreeMap<Integer, String> matches = new TreeMap<>();
+        for (int i : candidates)
+        {
+            if (index.startsWith(i, prefixLower))
+            {
+                matches.put(i, "0:0");
+                continue;
+            }
+            int bestOffset = -1, bestDistance = -1;
+            for (int j : index.getWordStarts(i))
+            {
+                int distance = index.distanceTo(prefixLower, i, j, maxDistance);
+                if (close(j, distance, prefix.length()) && (bestOffset == -1 || better(j, distance, bestOffset, bestDistance)))
+                {
+                    bestOffset = j;
+                    bestDistance = distance;
+                }
+            }
+            if (bestOffset != -1)
+                matches.put(i, bestOffset + ":" + bestDistance);
+        }
+        return matches;
+    }
+
+    /**
+     * The same as indexedMatches, but found by checking every choice, with the full
+     * (unbounded) edit distance.
+     */
+    private static TreeMap<Integer, String> linearMatches(List<String> choices, SuggestionIndex index, String prefix)
+    {
+        String prefixLower = prefix.toLowerCase();
+        TreeMap<Integer, String> matches = new TreeMap<>();
+        for (int i = 0; i < choices.size(); i++)
+        {
+            String choice = choices.get(i);
+            if (choice.toLowerCase().startsWith(prefixLower))
+            {
+                matches.put(i, "0:0");
+                continue;
+            }
+            int bestOffset = -1, bestDistance = -1;
+            for (int j : index.getWordStarts(i))
+            {
+                int distance = linearDistanceTo(prefixLower, choice.toLowerCase(), j);
+                if (close(j, distance, prefix.length()) && (bestOffset == -1 || better(j, distance, bestOffset, bestDistance)))
+                {
+                    bestOffset = j;
+                    bestDistance = distance;
+                }
+            }
+            if (bestOffset != -1)
+                matches.put(i, bestOffset + ":" + bestDistance);
+        }
+        return matches;
+    }
+
+    private static int linearDistanceTo(String prefixLower, String candidateLower, int offset)
+    {
+        int length = prefixLower.length();
+        String partial = candidateLower.substring(offset, Math.min(candidateLower.length(), offset + length));
+        String partialShort = candidateLower.substring(offset, Math.min(candidateLower.length(), offset + Math.max(1, length - 1)));
+        String partialLong = candidateLower.substring(offset, Math.min(candidateLower.length(), offset + 1 + length));
+        return Math.min(Utility.editDistance(partial, prefixLower),
+                Math.min(Utility.editDistance(partialShort, prefixLower), Utility.editDistance(partialLong, prefixLower)));
+    }
+
+    // As SuggestionList.EligibleDetail.close():
+    private static boolean close(int offset, int distance, int length)
+    {
+        if (distance == 0)
+            return offset == 0 || length >= 2;
+        if (distance == 1)
+            return length >= 3;
+        if (distance == 2)
+            return length >= 10;
+        return false;
+    }
+
+    // As SuggestionList.EligibleDetail.maxDistance():
+    private static int maxDistance(int length)
+    {
+        return length >= 10 ? 2 : (length >= 3 ? 1 : 0);
+    }
+
+    // As SuggestionList.EligibleDetail.compareTo() < 0:
+    private static boolean better(int offset, int distance, int otherOffset, int otherDistance)
+    {
+        if ((offset == 0) == (otherOffset == 0))
+            return distance < otherDistance;
+        return offset == 0;
+    }
+
+    private static List<Integer> sorted(int[] indexes)
+    {
+        int[] copy = indexes.clone();
+        Arrays.sort(copy);
+        List<Integer> list = new ArrayList<>();
+        for (int i : copy)
+            list.add(i);
+        return list;
+    }
+}
@@ -1,5 +1,7 @@
 package bluej.utility;
 
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 public class EditDistanceTest extends TestCase
@@ -10,4 +12,29 @@ public class EditDistanceTest extends TestCase
         assertEquals("geto-gteo == 1", 1, Utility.editDistance("geto", "gteo"));
         assertEquals("edge-gteo == 4", 4, Utility.editDistance("edge", "gteo"));
     }
+
+    public void testBoundedEditDistance()
+    {
+        assertEquals(1, Utility.editDistance("geto", "gteo", 2));
+        assertEquals(2, Utility.editDistance("ca", "abc", 2));
+        assertEquals(3, Utility.editDistance("edge", "gteo", 2));
+        assertEquals(3, Utility.editDistance("getActor", "actorX", 2));
+
+        // Should agree with the full distance whenever that is in range:
+        Random r = new Random(1);
+        for (int n = 0; n < 2000; n++)
+        {
+            String s = randomString(r), t = randomString(r);
+            int max = r.nextInt(4);
+            assertEquals(s + "-" + t, Math.min(Utility.editDistance(s, t), max + 1), Utility.editDistance(s, t, max));
+        }
+    }
+
+    private static String randomString(Random r)
+    {
+        char[] cs = new char[r.nextInt(7)];
+        for (int i = 0; i < cs.length; i++)
+            cs[i] = (char)('a' + r.nextInt(3));
+        return new String(cs);
+    }
 }
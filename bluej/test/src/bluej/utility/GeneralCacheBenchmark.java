@@ -0,0 +1,102 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2019  Michael Kolling and John Rosenberg
+ 
+ This program is free software; you can redistribute it and/or 
+ modify it under the terms of the GNU General Public License 
+ as published by the Free Software Foundation; either version 2 
+ of the License, or (at your option) any later version. 
+ 
+ This program is distributed in the hope that it will be useful, 
+ but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ GNU General Public License for more details. 
+ 
+ You should have received a copy of the GNU General Public License 
+ along with this program; if not, write to the Free Software 
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. 
+ 
+ This file is subject to the Classpath exception as provided in the  
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.utility;
+
+import java.util.Random;
+
+/**
+ * A simple benchmark of GeneralCache lookups, with a skewed pattern of keys like that of
+ * name resolution, comparing a fixed-size cache of the old default size with one which may
+ * grow (as the name-resolution caches in JavaParentNode may) and with a large fixed-size
+ * cache, reporting the time per lookup and the hit rate of each.
+ * Not a unit test; run the main method by hand.
+ */
+public class GeneralCacheBenchmark
+{
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int TIMED_ROUNDS = 1000;
+    // How many distinct keys are looked up, and how many lookups there are in a pass:
+    private static final int KEYS = 100;
+    private static final int LOOKUPS = 10000;
+
+    public static void main(String[] args)
+    {
+        // Keys are chosen with a skewed distribution: a few names are looked up most often.
+        String[] names = new String[KEYS];
+        for (int i = 0; i < KEYS; i++)
+        {
+            names[i] = "name" + i;
+        }
+        Random random = new Random(1);
+        String[] lookups = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++)
+        {
+            double r = random.nextDouble();
+            lookups[i] = names[(int)(r * r * r * KEYS)];
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+        {
+            lookupAll(lookups, new GeneralCache<>(10));
+            lookupAll(lookups, new GeneralCache<>(10, 160));
+            lookupAll(lookups, new GeneralCache<>(160));
+        }
+
+        System.out.println("Lookups: " + LOOKUPS + " per pass, over " + KEYS + " keys");
+        time("Fixed (10):         ", lookups, 10, 10);
+        time("Growable (10-160):  ", lookups, 10, 160);
+        time("Fixed (160):        ", lookups, 160, 160);
+    }
+
+    private static void time(String label, String[] lookups, int cacheSize, int maxCacheSize)
+    {
+        long time = 0;
+        GeneralCache<String, String> cache = null;
+        for (int i = 0; i < TIMED_ROUNDS; i++)
+        {
+            cache = new GeneralCache<>(cacheSize, maxCacheSize);
+            long start = System.nanoTime();
+            lookupAll(lookups, cache);
+            time += System.nanoTime() - start;
+        }
+
+        long total = cache.getHitCount() + cache.getMissCount();
+        System.out.printf("%s%.1f ns per lookup, %.1f%% hits, final size %d%n", label,
+                (double) time / TIMED_ROUNDS / lookups.length, 100.0 * cache.getHitCount() / total,
+                cache.getCacheSize());
+    }
+
+    /**
+     * Look up each key in turn, putting a value in the cache when the lookup misses
+     * (as the users of the cache do).
+     */
+    private static void lookupAll(String[] lookups, GeneralCache<String, String> cache)
+    {
+        for (String key : lookups)
+        {
+            if (cache.get(key) == null)
+            {
+                cache.put(key, key);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package bluej.utility;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the least-recently-used behaviour of GeneralCache.
+ */
+public class TestGeneralCache
+{
+    @Test
+    public void testLeastRecentlyUsedEviction()
+    {
+        GeneralCache<String, Integer> cache = new GeneralCache<>(3);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+
+        // Using "a" makes "b" the least recently used:
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.put("d", 4);
+
+        Assert.assertTrue(cache.containsKey("a"));
+        Assert.assertFalse(cache.containsKey("b"));
+        Assert.assertTrue(cache.containsKey("c"));
+        Assert.assertTrue(cache.containsKey("d"));
+    }
+
+    @Test
+    public void testNullValues()
+    {
+        GeneralCache<String, Integer> cache = new GeneralCache<>(2);
+        cache.put("a", null);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertTrue(cache.containsKey("a"));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(1, cache.getMissCount());
+
+        // Null values count as use, so "a" should survive here:
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+        Assert.assertTrue(cache.containsKey("a"));
+        Assert.assertFalse(cache.containsKey("b"));
+    }
+
+    @Test
+    public void testGrowsUnderPressure()
+    {
+        GeneralCache<Integer, Integer> cache = new GeneralCache<>(4, 16);
+        // Cycle through a working set larger than the cache, which thrashes an LRU cache:
+        for (int round = 0; round < 20; round++)
+        {
+            for (int i = 0; i < 12; i++)
+            {
+                if (cache.get(i) == null)
+                {
+                    cache.put(i, i);
+                }
+            }
+        }
+        Assert.assertEquals(16, cache.getCacheSize());
+
+        // Once grown, the working set fits:
+        long misses = cache.getMissCount();
+        for (int i = 0; i < 12; i++)
+        {
+            Assert.assertEquals(Integer.valueOf(i), cache.get(i));
+        }
+        Assert.assertEquals(misses, cache.getMissCount());
+    }
+
+    @Test
+    public void testFixedSizeDoesNotGrow()
+    {
+        GeneralCache<Integer, Integer> cache = new GeneralCache<>(4);
+        for (int i = 0; i < 100; i++)
+        {
+            if (cache.get(i % 10) == null)
+            {
+                cache.put(i % 10, i);
+            }
+        }
+        Assert.assertEquals(4, cache.getCacheSize());
+    }
+}
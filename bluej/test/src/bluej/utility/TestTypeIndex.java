@@ -0,0 +1,133 @@
+package bluej.utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import bluej.utility.TypeIndex.IndexedType;
+import bluej.utility.TypeIndex.Source;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for saving and loading the type index.
+ */
+public class TestTypeIndex
+{
+    private File directory;
+    private File indexFile;
+    private File jarA;
+    private File jarB;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("typeindex").toFile();
+        indexFile = new File(directory, "index");
+        // Sources whose files no longer exist are dropped, so the sources need real files:
+        jarA = new File(directory, "a.jar");
+        jarB = new File(directory, "b.jar");
+        Files.write(jarA.toPath(), new byte[] {1, 2, 3});
+        Files.write(jarB.toPath(), new byte[0]);
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File f : directory.listFiles())
+        {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    private void saveIndex()
+    {
+        List<IndexedType> types = new ArrayList<>();
+        types.add(new IndexedType("p.q", "Outer$Inner", Modifier.PUBLIC | Modifier.STATIC, false, false,
+                null, "p.q.Base", Arrays.asList("java.lang.Runnable", "p.q.Marker")));
+        types.add(new IndexedType("", "Top", 0, true, false, "mod", null, Collections.emptyList()));
+        types.add(new IndexedType("p.q", "Colour", Modifier.PUBLIC | Modifier.FINAL, false, true,
+                "mod", "java.lang.Enum", Collections.emptyList()));
+        TypeIndex.update(indexFile, Arrays.asList(
+                new Source(jarA.getPath(), jarA.length(), jarA.lastModified(), types),
+                new Source(jarB.getPath(), jarB.length(), jarB.lastModified(), new ArrayList<>())));
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        saveIndex();
+        TypeIndex index = TypeIndex.load(indexFile);
+
+        Source a = index.getSource(jarA.getPath());
+        Assert.assertNotNull(a);
+        Assert.assertTrue(a.isUpToDate(jarA));
+        Assert.assertEquals(3, a.getTypes().size());
+
+        IndexedType inner = a.getTypes().get(0);
+        Assert.assertEquals("p.q.Outer$Inner", inner.getName());
+        Assert.assertEquals(Modifier.PUBLIC | Modifier.STATIC, inner.getModifiers());
+        Assert.assertFalse(inner.isInterface());
+        Assert.assertNull(inner.getModuleName());
+        Assert.assertEquals("p.q.Base", inner.getSuperclass());
+        Assert.assertEquals(Arrays.asList("java.lang.Runnable", "p.q.Marker"), inner.getInterfaces());
+
+        IndexedType top = a.getTypes().get(1);
+        Assert.assertEquals("Top", top.getName());
+        Assert.assertTrue(top.isInterface());
+        Assert.assertEquals("mod", top.getModuleName());
+        Assert.assertNull(top.getSuperclass());
+
+        Assert.assertTrue(a.getTypes().get(2).isEnum());
+
+        // A source with no types is kept, so that its file isn't scanned again:
+        Source b = index.getSource(jarB.getPath());
+        Assert.assertNotNull(b);
+        Assert.assertTrue(b.getTypes().isEmpty());
+
+        // A changed file is not up to date:
+        jarA.setLastModified(jarA.lastModified() - 10000);
+        Assert.assertFalse(a.isUpToDate(jarA));
+    }
+
+    @Test
+    public void testCorruptFile() throws IOException
+    {
+        saveIndex();
+        long length = indexFile.length();
+
+        // Every truncation of the file must load (as an empty index) without throwing:
+        byte[] contents = Files.readAllBytes(indexFile.toPath());
+        for (int n = 0; n < length; n++)
+        {
+            Files.write(indexFile.toPath(), Arrays.copyOf(contents, n));
+            Assert.assertNull(TypeIndex.load(indexFile).getSource(jarA.getPath()));
+        }
+
+        // Nor must an invalid (negative, or huge) count:
+        for (int count : new int[] {-1, Integer.MAX_VALUE})
+        {
+            Files.write(indexFile.toPath(), contents);
+            try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw"))
+            {
+                // The string count follows the magic number and version:
+                raf.seek(8);
+                raf.writeInt(count);
+            }
+            Assert.assertNull(TypeIndex.load(indexFile).getSource(jarA.getPath()));
+        }
+
+        // And an update after corruption rebuilds the index:
+        saveIndex();
+        Assert.assertNotNull(TypeIndex.load(indexFile).getSource(jarA.getPath()));
+    }
+}
@@ -21,6 +21,7 @@
  */
 package greenfoot;
 
+import greenfoot.collision.CollisionMask;
 import greenfoot.collision.ibsp.Rect;
 import greenfoot.platforms.ActorDelegate;
 import greenfoot.util.GreenfootUtil;
@@ -828,15 +829,12 @@ public abstract class Actor
         else {
             Rect thisBounds = getBoundingRect();
             Rect otherBounds = other.getBoundingRect();
-            if (rotation == 0 && other.rotation == 0) {
-                return thisBounds.intersects(otherBounds);
+            // First do a check based only on axis-aligned bounding boxes.
+            if (! thisBounds.intersects(otherBounds)) {
+                return false;
             }
-            else {
-                // First do a check based only on axis-aligned bounding boxes.
-                if (! thisBounds.intersects(otherBounds)) {
-                    return false;
-                }
-                
+            
+            if (rotation != 0 || other.rotation != 0) {
                 int [] myX = boundingXs;
                 int [] myY = boundingYs;
                 int [] otherX = other.boundingXs;
@@ -849,6 +847,17 @@ public abstract class Actor
                     return false;
                 }
             }
+            
+            boolean myPixels = world.usesPixelCollision(this);
+            boolean otherPixels = world.usesPixelCollision(other);
+            if (myPixels || otherPixels) {
+                // The bounds overlap, but do the pixels?
+                int cellSize = world.getCellSize();
+                CollisionMask myMask = image.getCollisionMask(rotation, cellSize, ! myPixels);
+                CollisionMask otherMask = other.image.getCollisionMask(other.rotation, cellSize, ! otherPixels);
+                return myMask.intersects(x * cellSize + cellSize / 2, y * cellSize + cellSize / 2,
+                        otherMask, other.x * cellSize + cellSize / 2, other.y * cellSize + cellSize / 2);
+            }
         }
         
         return true;
@@ -1016,6 +1025,16 @@ public abstract class Actor
             calcBounds(); // Make sure bounds are up-to-date
         }
         
+        if (world.usesPixelCollision(this)) {
+            if (px < boundingRect.getX() || px >= boundingRect.getRight()
+                    || py < boundingRect.getY() || py >= boundingRect.getTop()) {
+                return false;
+            }
+            int cellSize = world.getCellSize();
+            CollisionMask mask = image.getCollisionMask(rotation, cellSize, false);
+            return mask.contains(px - (x * cellSize + cellSize / 2), py - (y * cellSize + cellSize / 2));
+        }
+        
         if (rotation == 0 || rotation == 90 || rotation == 270) {
             // We can just check the bounding rectangle
             return (px >= boundingRect.getX() && px < boundingRect.getRight()
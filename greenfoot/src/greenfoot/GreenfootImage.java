@@ -21,8 +21,10 @@
  */
 package greenfoot;
 
+import greenfoot.collision.CollisionMask;
 import greenfoot.util.GraphicsUtilities;
 import greenfoot.util.GreenfootUtil;
+import greenfoot.util.TextImageCache;
 
 import java.awt.AlphaComposite;
 import java.awt.Color;
@@ -43,6 +45,8 @@ import java.awt.image.VolatileImage;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 /**
@@ -82,6 +86,13 @@ public class GreenfootImage
      * Value from 0 to 255, with 0 being completely transparent and 255 being opaque.
      */
     private int transparency = 255;
+    
+    /**
+     * Collision masks of this image, for actors which use pixel-level collision checking,
+     * keyed as by getCollisionMask. Discarded whenever the image may have changed.
+     */
+    private Map<Integer, CollisionMask> collisionMasks;
+    private static final int MAX_COLLISION_MASKS = 64;
 
     /**
      * Create an image from an image file. Supported file formats are JPEG, GIF
@@ -185,14 +196,9 @@ public class GreenfootImage
      */
     GreenfootImage(String string, int size, Color foreground, Color background, Color outline)
     {
-        String[] lines = GraphicsUtilities.splitLines(string);
-        GraphicsUtilities.MultiLineStringDimensions d = GraphicsUtilities.getMultiLineStringDimensions(lines, Font.BOLD, size);
-        image = GraphicsUtilities.createCompatibleTranslucentImage(d.getWidth(), d.getHeight());
-        Graphics2D g = (Graphics2D)image.getGraphics();
-        g.setColor(background == null ? new Color(0, 0, 0, 0) : background);
-        g.fillRect(0, 0, image.getWidth(), image.getHeight());
-        GraphicsUtilities.drawOutlinedText(g, d, foreground, outline);
-        g.dispose();
+        // The rendered text is shared with other images of the same text:
+        image = TextImageCache.getTextImage(string, Font.BOLD, size, foreground, background, outline);
+        copyOnWrite = true;
     }
     
     /**
@@ -315,6 +321,7 @@ public class GreenfootImage
         }
         this.image = getBufferedImage(image);
         copyOnWrite = false;
+        collisionMasks = null;
     }
 
 
@@ -336,9 +343,7 @@ public class GreenfootImage
      */
     private Graphics2D getGraphics()
     {
-        if (copyOnWrite) {
         ensureWritableImage();
-        }
         Graphics2D graphics = image.createGraphics();
         initGraphics(graphics);
         return graphics;
@@ -843,6 +848,34 @@ public class GreenfootImage
         }
     }
 
+    /**
+     * Get the collision mask of this image at the given rotation, in a world with
+     * the given cell size.
+     * 
+     * @param solid  If true, the mask covers the whole image rather than just
+     *               the pixels which are not fully transparent
+     */
+    CollisionMask getCollisionMask(int rotation, int cellSize, boolean solid)
+    {
+        // Only the parity of the cell size affects the mask:
+        int key = ((rotation * 2 + cellSize % 2) * 2) + (solid ? 1 : 0);
+        if (collisionMasks == null) {
+            collisionMasks = new LinkedHashMap<Integer, CollisionMask>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, CollisionMask> eldest)
+                {
+                    return size() > MAX_COLLISION_MASKS;
+                }
+            };
+        }
+        CollisionMask mask = collisionMasks.get(key);
+        if (mask == null) {
+            mask = CollisionMask.create(image, rotation, cellSize, solid);
+            collisionMasks.put(key, mask);
+        }
+        return mask;
+    }
+
     /**
      * Ensure we have an image which we are allowed to write to. If we are
      * a copy-on-write image, create a copy of the image (and set up the
@@ -850,6 +883,8 @@ public class GreenfootImage
      */
     private void ensureWritableImage()
     {
+        // We are about to be written to:
+        collisionMasks = null;
         if (copyOnWrite) {
             BufferedImage bImage = GraphicsUtilities.createCompatibleTranslucentImage(image.getWidth(null), image.getHeight(null));
             Graphics2D graphics = bImage.createGraphics();
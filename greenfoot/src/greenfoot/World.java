@@ -33,9 +33,11 @@ import threadchecker.Tag;
 import java.awt.Graphics;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -95,6 +97,11 @@ public abstract class World
     
     /** Whether actors are bound to stay inside the world */
     private boolean isBounded;
+    
+    /** Classes whose actors use pixel-level collision checking (empty if none do) */
+    private Class<?>[] pixelCollisionClasses = new Class<?>[0];
+    /** Cache of whether actors of a particular class use pixel-level collision checking */
+    private final Map<Class<?>, Boolean> pixelCollisionByClass = new HashMap<Class<?>, Boolean>();
 
     /**
      * Construct a new world. The size of the world (in number of cells) and the
@@ -411,6 +418,54 @@ public abstract class World
         objectsInActOrder.setClassOrder(false, classes);
     }
     
+    /**
+     * Set the classes of actors whose collisions are checked using the pixels of
+     * their images, rather than their bounding rectangles. Fully transparent pixels
+     * of these actors' images do not collide with anything, so that (for example)
+     * transparent space around a sprite does not count as touching.
+     * 
+     * <p>This applies to all collision methods (such as isTouching and
+     * getIntersectingObjects) and to finding actors at a location. If either of two
+     * actors uses pixel-level checking they will only be considered to intersect
+     * if their visible pixels overlap the other actor. Subclasses of the given
+     * classes also use pixel-level checking.
+     * 
+     * <p>Pixel-level checking is slower than the normal checking, so it should only
+     * be used for those classes which need it.
+     * 
+     * @param classes  The classes which should use pixel-level collision checking,
+     *                 or none (or null) for no classes
+     */
+    public void setPixelCollision(Class<?> ... classes)
+    {
+        pixelCollisionClasses = (classes == null) ? new Class<?>[0] : classes.clone();
+        pixelCollisionByClass.clear();
+    }
+    
+    /**
+     * Check whether the given actor uses pixel-level collision checking.
+     */
+    boolean usesPixelCollision(Actor actor)
+    {
+        if (pixelCollisionClasses.length == 0) {
+            return false;
+        }
+        
+        Class<?> actorClass = actor.getClass();
+        Boolean uses = pixelCollisionByClass.get(actorClass);
+        if (uses == null) {
+            uses = false;
+            for (Class<?> cls : pixelCollisionClasses) {
+                if (cls.isAssignableFrom(actorClass)) {
+                    uses = true;
+                    break;
+                }
+            }
+            pixelCollisionByClass.put(actorClass, uses);
+        }
+        return uses;
+    }
+    
     /**
      * Add an Actor to the world.
      * 
@@ -0,0 +1,212 @@
+/*
+ This file is part of the Greenfoot program.
+ Copyright (C) 2019  Poul Henriksen and Michael Kolling
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package greenfoot.collision;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The pixels covered by an actor's image at a particular rotation, used for pixel-level
+ * collision checking. A mask is positioned relative to the pixel at the centre of the
+ * actor's cell, and holds one bit per world pixel (set if the rotated image has a pixel
+ * there which is not fully transparent), packed into longs row by row so that two masks
+ * can be compared 64 pixels at a time.
+ *
+ * <p>The pixels covered match the way that WorldRenderer draws a rotated actor image:
+ * the image is centred on the centre of the cell, and rotated about that point.
+ */
+public final class CollisionMask
+{
+    private final int offsetX;
+    private final int offsetY;
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    /** Row-major; pixel x of a row is bit (x &amp; 63) of word (x / 64) of that row. */
+    private final long[] bits;
+
+    private CollisionMask(int offsetX, int offsetY, int width, int height)
+    {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >> 6;
+        this.bits = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Create the mask for an image.
+     *
+     * @param image     The actor's image
+     * @param rotation  The actor's rotation, in degrees (0-359)
+     * @param cellSize  The world's cell size
+     * @param solid     If true, every pixel of the image is treated as covered, rather than
+     *                  just those which are not fully transparent
+     */
+    public static CollisionMask create(BufferedImage image, int rotation, int cellSize, boolean solid)
+    {
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+        int[] argb = solid ? null : image.getRGB(0, 0, imageWidth, imageHeight, null, 0, imageWidth);
+
+        // The centre of the cell (x * cellSize + cellSize / 2., as in WorldRenderer) is on
+        // the corner between four pixels if the cell size is even, and at the centre of a
+        // pixel if it is odd; this is its offset from the top-left of the centre pixel:
+        double centre = (cellSize % 2) / 2.0;
+        // The top-left of the (unrotated) image, as painted, relative to the centre pixel:
+        int paintX = (int) Math.floor(centre - imageWidth / 2.0);
+        int paintY = (int) Math.floor(centre - imageHeight / 2.0);
+
+        if (rotation == 0) {
+            CollisionMask mask = new CollisionMask(paintX, paintY, imageWidth, imageHeight);
+            for (int y = 0; y < imageHeight; y++) {
+                for (int x = 0; x < imageWidth; x++) {
+                    if (solid || (argb[y * imageWidth + x] >>> 24) != 0) {
+                        mask.set(x, y);
+                    }
+                }
+            }
+            return mask;
+        }
+
+        double rotR = Math.toRadians(rotation);
+        double sinR = Math.sin(rotR);
+        double cosR = Math.cos(rotR);
+        // Image corners, relative to the centre of the cell:
+        double left = paintX - centre;
+        double top = paintY - centre;
+        double[] cornerXs = {left, left + imageWidth, left + imageWidth, left};
+        double[] cornerYs = {top, top, top + imageHeight, top + imageHeight};
+        double minX = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            double rx = cornerXs[i] * cosR - cornerYs[i] * sinR;
+            double ry = cornerXs[i] * sinR + cornerYs[i] * cosR;
+            minX = Math.min(minX, rx);
+            maxX = Math.max(maxX, rx);
+            minY = Math.min(minY, ry);
+            maxY = Math.max(maxY, ry);
+        }
+
+        int maskX = (int) Math.floor(minX + centre);
+        int maskY = (int) Math.floor(minY + centre);
+        CollisionMask mask = new CollisionMask(maskX, maskY,
+                (int) Math.ceil(maxX + centre) - maskX, (int) Math.ceil(maxY + centre) - maskY);
+        for (int y = 0; y < mask.height; y++) {
+            // The centre of this world pixel, relative to the centre of the cell:
+            double v = maskY + y + 0.5 - centre;
+            for (int x = 0; x < mask.width; x++) {
+                double u = maskX + x + 0.5 - centre;
+                // Rotate back to find the image pixel drawn here:
+                int ix = (int) Math.floor(u * cosR + v * sinR - left);
+                int iy = (int) Math.floor(v * cosR - u * sinR - top);
+                if (ix >= 0 && ix < imageWidth && iy >= 0 && iy < imageHeight
+                        && (solid || (argb[iy * imageWidth + ix] >>> 24) != 0)) {
+                    mask.set(x, y);
+                }
+            }
+        }
+        return mask;
+    }
+
+    private void set(int x, int y)
+    {
+        bits[y * wordsPerRow + (x >> 6)] |= 1L << (x & 63);
+    }
+
+    /**
+     * Check whether the mask covers a given pixel.
+     *
+     * @param x  The x coordinate of the pixel, relative to the mask's centre pixel
+     * @param y  The y coordinate of the pixel, relative to the mask's centre pixel
+     */
+    public boolean contains(int x, int y)
+    {
+        x -= offsetX;
+        y -= offsetY;
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return false;
+        }
+        return (bits[y * wordsPerRow + (x >> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    /**
+     * Check whether this mask and another mask cover any of the same pixels.
+     *
+     * @param x  The x coordinate of this mask's centre pixel
+     * @param y  The y coordinate of this mask's centre pixel
+     * @param other  The other mask
+     * @param otherX  The x coordinate of the other mask's centre pixel
+     * @param otherY  The y coordinate of the other mask's centre pixel
+     */
+    public boolean intersects(int x, int y, CollisionMask other, int otherX, int otherY)
+    {
+        int left = x + offsetX;
+        int top = y + offsetY;
+        int otherLeft = otherX + other.offsetX;
+        int otherTop = otherY + other.offsetY;
+
+        int overlapLeft = Math.max(left, otherLeft);
+        int overlapRight = Math.min(left + width, otherLeft + other.width);
+        int overlapTop = Math.max(top, otherTop);
+        int overlapBottom = Math.min(top + height, otherTop + other.height);
+        if (overlapLeft >= overlapRight || overlapTop >= overlapBottom) {
+            return false;
+        }
+
+        int start = overlapLeft - left;
+        int otherStart = overlapLeft - otherLeft;
+        int length = overlapRight - overlapLeft;
+        for (int wy = overlapTop; wy < overlapBottom; wy++) {
+            int row = (wy - top) * wordsPerRow;
+            int otherRow = (wy - otherTop) * other.wordsPerRow;
+            for (int done = 0; done < length; done += 64) {
+                long word = getBits(row, start + done) & other.getBits(otherRow, otherStart + done);
+                int remaining = length - done;
+                if (remaining < 64) {
+                    word &= (1L << remaining) - 1;
+                }
+                if (word != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get (up to) 64 bits of a row, starting at the given pixel. Bits past the end of
+     * the row are zero.
+     */
+    private long getBits(int row, int start)
+    {
+        int word = start >> 6;
+        int shift = start & 63;
+        long result = bits[row + word] >>> shift;
+        if (shift != 0 && word + 1 < wordsPerRow) {
+            result |= bits[row + word + 1] << (64 - shift);
+        }
+        return result;
+    }
+}
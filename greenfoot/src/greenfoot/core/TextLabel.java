@@ -21,11 +21,12 @@
  */
 package greenfoot.core;
 
-import greenfoot.util.GraphicsUtilities;
+import greenfoot.util.TextImageCache;
 
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 
 /**
  * Representation for text labels appearing on the world.
@@ -37,8 +38,7 @@ public class TextLabel
     private final int xpos;
     private final int ypos;
     private final String text;
-    private final String[] lines;
-    private GraphicsUtilities.MultiLineStringDimensions dimensions;
+    private BufferedImage image;
     
     /**
      * Construct a TextLabel with the given text and position.
@@ -46,7 +46,6 @@ public class TextLabel
     public TextLabel(String s, int xpos, int ypos)
     {
         text = s;
-        lines = GraphicsUtilities.splitLines(text);
         this.xpos = xpos;
         this.ypos = ypos;
     }
@@ -58,20 +57,18 @@ public class TextLabel
      */
     public void draw(Graphics2D g, int cellsize)
     {
-        if (dimensions == null) {
-            dimensions = GraphicsUtilities.getMultiLineStringDimensions(lines, Font.BOLD, 25.0);
+        if (image == null) {
+            // Labels are often re-created with the same text (e.g. a score shown every act),
+            // so the rendered text is shared between labels:
+            image = TextImageCache.getTextImage(text, Font.BOLD, 25.0, Color.WHITE, null, Color.BLACK);
         }
         
-        // Position of base line:
-        int ydraw = ypos * cellsize - dimensions.getHeight() / 2 + cellsize / 2;
+        // Position of top-left:
+        int ydraw = ypos * cellsize - image.getHeight() / 2 + cellsize / 2;
         
-        int xdraw = xpos * cellsize - dimensions.getWidth() / 2 + cellsize / 2;
+        int xdraw = xpos * cellsize - image.getWidth() / 2 + cellsize / 2;
         
-        g.translate(xdraw, ydraw);
-        
-        GraphicsUtilities.drawOutlinedText(g, dimensions, Color.WHITE, Color.BLACK);
-        
-        g.translate(-xdraw, -ydraw);
+        g.drawImage(image, xdraw, ydraw, null);
     }
     
     /**
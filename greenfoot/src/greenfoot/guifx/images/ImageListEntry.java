@@ -21,12 +21,11 @@
  */
 package greenfoot.guifx.images;
 
-import bluej.utility.Debug;
-
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import java.io.File;
-import java.net.MalformedURLException;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
 
 /**
  * An entry in a ListView of image files, which is used in the image lists' frames.
@@ -74,6 +73,7 @@ public class ImageListEntry
      *
      * @return an Image view of the image file.
      */
+    @OnThread(Tag.FXPlatform)
     public ImageView getIcon()
     {
         if (icon == null && imageFile != null)
@@ -84,31 +84,29 @@ public class ImageListEntry
     }
 
     /**
-     * Loads the image file and construct an image view of it.
-     * This view is returned of the loading succeeded, otherwise
-     * an empty view is returned.
+     * Constructs an image view for a thumbnail of the image file. The view is
+     * empty until the thumbnail has been loaded in the background, and stays
+     * empty if the loading fails.
      *
-     * @return an image view containing a thumbnail of the image.
+     * @return an image view which will contain a thumbnail of the image.
      */
+    @OnThread(Tag.FXPlatform)
     private ImageView getImageView()
     {
-        try
-        {
-            Image image = new Image(imageFile.toURI().toURL().toExternalForm());
-            ImageView view = new ImageView(image);
-            int maxWidth = inProjectList ? 40 : 60;
-            if (image.getWidth() > maxWidth)
+        ImageView view = new ImageView();
+        int maxWidth = inProjectList ? 40 : 60;
+        // We load thumbnails at twice the width we display them, so that they look
+        // sharp on high-resolution displays:
+        ThumbnailCache.getThumbnail(imageFile, lastModified, maxWidth * 2, thumbnail -> {
+            if (thumbnail.getWidth() > maxWidth)
             {
                 view.setFitWidth(maxWidth);
                 view.setPreserveRatio(true);
+                view.setSmooth(true);
             }
-            return view;
-        }
-        catch (MalformedURLException e)
-        {
-            Debug.reportError(e);
-        }
-        return new ImageView();
+            view.setImage(thumbnail);
+        });
+        return view;
     }
 
     /**
@@ -0,0 +1,244 @@
+/*
+ This file is part of the Greenfoot program.
+ Copyright (C) 2019  Poul Henriksen and Michael Kolling
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package greenfoot.guifx.images;
+
+import bluej.Config;
+import bluej.utility.Debug;
+import bluej.utility.javafx.FXPlatformConsumer;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+import javax.imageio.ImageIO;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * Thumbnails of image files, for display in the image lists. Thumbnails are decoded on a
+ * background thread, so that opening a directory of large images doesn't hold up the GUI,
+ * and are kept both in memory and on disk (in the user configuration directory) keyed by
+ * the file's path and modification time.  Only images which need scaling down are kept on
+ * disk, since small images load as quickly as their thumbnails would.
+ */
+@OnThread(Tag.FXPlatform)
+final class ThumbnailCache
+{
+    // The number of thumbnails to keep in memory:
+    private static final int MEMORY_ENTRIES = 500;
+    // Thumbnails on disk which haven't been used for this long are removed:
+    private static final long DISK_EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(60);
+    private static final String DISK_DIRECTORY = "thumbnails";
+
+    private static final Map<String, Image> thumbnails = new LinkedHashMap<String, Image>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest)
+        {
+            return size() > MEMORY_ENTRIES;
+        }
+    };
+    // Callbacks waiting for thumbnails which are being loaded:
+    private static final Map<String, List<FXPlatformConsumer<Image>>> pending = new HashMap<>();
+
+    // A single thread, so that a directory full of images doesn't occupy all the
+    // general background threads:
+    @OnThread(Tag.Any)
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Greenfoot thumbnail loader");
+        t.setDaemon(true);
+        return t;
+    });
+    private static boolean expiredRemoved = false;
+
+    private ThumbnailCache()
+    {
+    }
+
+    /**
+     * Get a thumbnail of an image file, no wider than the given width.  The thumbnail is
+     * passed to the callback, immediately if it is available and otherwise once it has been
+     * loaded. If the image cannot be loaded, the callback is not called.
+     *
+     * @param file          The image file
+     * @param lastModified  The modification time of the file (a different time gives a different thumbnail)
+     * @param maxWidth      The maximum width of the thumbnail
+     * @param callback      Receives the thumbnail
+     */
+    static void getThumbnail(File file, long lastModified, int maxWidth, FXPlatformConsumer<Image> callback)
+    {
+        String key = file.getAbsolutePath() + "|" + lastModified + "|" + maxWidth;
+        Image thumbnail = thumbnails.get(key);
+        if (thumbnail != null)
+        {
+            callback.accept(thumbnail);
+            return;
+        }
+
+        List<FXPlatformConsumer<Image>> waiting = pending.get(key);
+        if (waiting != null)
+        {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        pending.put(key, waiting);
+
+        boolean removeExpired = !expiredRemoved;
+        expiredRemoved = true;
+        loader.execute(() -> {
+            File diskDirectory = new File(Config.getUserConfigDir(), DISK_DIRECTORY);
+            if (removeExpired)
+            {
+                removeExpired(diskDirectory);
+            }
+            Image loaded = loadThumbnail(file, maxWidth, new File(diskDirectory, diskName(key)));
+            Platform.runLater(() -> {
+                List<FXPlatformConsumer<Image>> callbacks = pending.remove(key);
+                if (loaded != null)
+                {
+                    thumbnails.put(key, loaded);
+                    callbacks.forEach(c -> c.accept(loaded));
+                }
+            });
+        });
+    }
+
+    /**
+     * Load a thumbnail, from the disk cache if it is there, otherwise from the image file itself.
+     * Returns null if the image couldn't be loaded.
+     */
+    @OnThread(Tag.Worker)
+    private static Image loadThumbnail(File file, int maxWidth, File diskFile)
+    {
+        if (diskFile.isFile())
+        {
+            Image image = new Image(diskFile.toURI().toString());
+            if (!image.isError())
+            {
+                // Mark it as recently used:
+                diskFile.setLastModified(System.currentTimeMillis());
+                return image;
+            }
+        }
+
+        try
+        {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null)
+            {
+                // Not a format which ImageIO understands; leave it to JavaFX:
+                Image fxImage = new Image(file.toURI().toString(), maxWidth, 0, true, true);
+                return fxImage.isError() ? null : fxImage;
+            }
+            if (image.getWidth() > maxWidth)
+            {
+                image = scale(image, maxWidth);
+                File directory = diskFile.getParentFile();
+                if (directory.isDirectory() || directory.mkdirs())
+                {
+                    ImageIO.write(image, "png", diskFile);
+                }
+            }
+            return SwingFXUtils.toFXImage(image, null);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Debug.message("Could not load thumbnail for " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Scale an image down to the given width, preserving its aspect ratio.
+     */
+    @OnThread(Tag.Worker)
+    private static BufferedImage scale(BufferedImage image, int width)
+    {
+        int height = Math.max(1, Math.round((float) image.getHeight() * width / image.getWidth()));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    /**
+     * Remove thumbnails from the disk cache which haven't been used for a while.
+     */
+    @OnThread(Tag.Worker)
+    private static void removeExpired(File diskDirectory)
+    {
+        File[] files = diskDirectory.listFiles();
+        if (files != null)
+        {
+            long expiry = System.currentTimeMillis() - DISK_EXPIRY_MILLIS;
+            for (File f : files)
+            {
+                if (f.lastModified() < expiry)
+                {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * The name of the file on disk for the thumbnail with the given key.
+     */
+    @OnThread(Tag.Any)
+    private static String diskName(String key)
+    {
+        try
+        {
+            StringBuilder name = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8)))
+            {
+                name.append(String.format("%02x", b));
+            }
+            return name.append(".png").toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // SHA-1 is always available:
+            throw new IllegalStateException(e);
+        }
+    }
+}
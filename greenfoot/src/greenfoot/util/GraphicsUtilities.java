@@ -49,6 +49,8 @@ import java.awt.RenderingHints;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 import javax.imageio.ImageIO;
 
 /**
@@ -346,6 +348,19 @@ public class GraphicsUtilities {
      */
     private static void setFontOfPixelHeight(Graphics2D g, int style, double targetSize)
     {
+        // The search below is slow, so we remember its result (the metrics only depend
+        // on the render context, which is always that of a compatible image here):
+        String key = style + ":" + targetSize;
+        Font cached;
+        synchronized (pixelHeightFonts) {
+            cached = pixelHeightFonts.get(key);
+        }
+        if (cached != null)
+        {
+            g.setFont(cached);
+            return;
+        }
+        
         // Likely DPI ranges for a monitor: 120 to 500 pixels per inch (via wikipedia)
         // An inch is 72 points, so range is something like 1 pixel per point to 8 pixels per point
         // So we explore from 1 point, up to the desired pixel size in points.
@@ -367,9 +382,15 @@ public class GraphicsUtilities {
             }
         }
         g.setFont(font);
+        synchronized (pixelHeightFonts) {
+            pixelHeightFonts.put(key, font);
+        }
     
     }
 
+    // Fonts chosen by setFontOfPixelHeight, keyed by style and target size:
+    private static final Map<String, Font> pixelHeightFonts = new HashMap<>();
+
     // Splits lines by newlines, and strips \r:
     public static String[] splitLines(String string)
     {
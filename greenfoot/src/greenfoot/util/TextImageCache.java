@@ -0,0 +1,148 @@
+/*
+ This file is part of the Greenfoot program.
+ Copyright (C) 2019  Poul Henriksen and Michael Kolling
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package greenfoot.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A cache of text drawn into images, so that text which is drawn repeatedly (such as
+ * World.showText labels, or scores which are redrawn every act) is only laid out and
+ * rendered once. The cache is bounded both in the number of images and in their total
+ * size; the least recently used images are discarded first.
+ */
+public class TextImageCache
+{
+    private static final int MAX_ENTRIES = 256;
+    private static final long MAX_PIXELS = 4 * 1024 * 1024;
+
+    private static final Map<Key, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private static long totalPixels = 0;
+
+    /**
+     * Get an image of the given text, drawn as by GraphicsUtilities.drawOutlinedText. The
+     * image is shared, and so must not be modified.
+     *
+     * @param text  The text, which is split into lines at newlines
+     * @param style  The font style (e.g. Font.BOLD)
+     * @param size  The height in pixels of each line of text
+     * @param foreground  The colour of the text (black if null)
+     * @param background  The colour behind the text (transparent if null)
+     * @param outline  The colour of the outline around the text (no outline if null)
+     * @return An image of the text
+     */
+    public static BufferedImage getTextImage(String text, int style, double size, Color foreground,
+            Color background, Color outline)
+    {
+        Key key = new Key(text, style, size, foreground, background, outline);
+        synchronized (images) {
+            BufferedImage image = images.get(key);
+            if (image != null) {
+                return image;
+            }
+        }
+
+        // We render outside the lock, since it may take a while; at worst, two threads
+        // render the same text at the same time.
+        BufferedImage image = render(text, style, size, foreground, background, outline);
+        synchronized (images) {
+            BufferedImage previous = images.put(key, image);
+            if (previous != null) {
+                totalPixels -= pixels(previous);
+            }
+            totalPixels += pixels(image);
+
+            Iterator<BufferedImage> eldest = images.values().iterator();
+            while ((images.size() > MAX_ENTRIES || totalPixels > MAX_PIXELS) && images.size() > 1) {
+                totalPixels -= pixels(eldest.next());
+                eldest.remove();
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage render(String text, int style, double size, Color foreground,
+            Color background, Color outline)
+    {
+        String[] lines = GraphicsUtilities.splitLines(text);
+        GraphicsUtilities.MultiLineStringDimensions d = GraphicsUtilities.getMultiLineStringDimensions(lines, style, size);
+        BufferedImage image = GraphicsUtilities.createCompatibleTranslucentImage(d.getWidth(), d.getHeight());
+        Graphics2D g = (Graphics2D)image.getGraphics();
+        g.setColor(background == null ? new Color(0, 0, 0, 0) : background);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        GraphicsUtilities.drawOutlinedText(g, d, foreground, outline);
+        g.dispose();
+        return image;
+    }
+
+    private static long pixels(BufferedImage image)
+    {
+        return (long)image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * The text and appearance of a cached image.
+     */
+    private static class Key
+    {
+        private final String text;
+        private final int style;
+        private final double size;
+        private final Color foreground;
+        private final Color background;
+        private final Color outline;
+
+        Key(String text, int style, double size, Color foreground, Color background, Color outline)
+        {
+            this.text = text;
+            this.style = style;
+            this.size = size;
+            this.foreground = foreground;
+            this.background = background;
+            this.outline = outline;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            // Colours are compared including their alpha, by Color.equals:
+            return text.equals(k.text) && style == k.style && size == k.size
+                    && Objects.equals(foreground, k.foreground) && Objects.equals(background, k.background)
+                    && Objects.equals(outline, k.outline);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(text, style, size, foreground, background, outline);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ This file is part of the Greenfoot program. 
+ Copyright (C) 2019  Poul Henriksen and Michael Kolling 
+ 
+ This program is free software; you can redistribute it and/or 
+ modify it under the terms of the GNU General Public License 
+ as published by the Free Software Foundation; either version 2 
+ of the License, or (at your option) any later version. 
+ 
+ This program is distributed in the hope that it will be useful, 
+ but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ GNU General Public License for more details. 
+ 
+ You should have received a copy of the GNU General Public License 
+ along with this program; if not, write to the Free Software 
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. 
+ 
+ This file is subject to the Classpath exception as provided in the  
+ LICENSE.txt file that accompanied this code.
+ */
+package greenfoot.vmcomm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * Access to the counters in the shared memory buffer which are used to hand the buffer
+ * back and forth between the server VM and the debug VM, in the sequence-counter version
+ * of the communications protocol (see VMCommsMain).
+ * 
+ * A counter is written with release semantics after the data it covers has been written,
+ * and read with acquire semantics before that data is read, so the data is always seen
+ * complete by the other VM (the two VMs map the same memory).  Waiting for a counter to
+ * change spins briefly, and then parks for increasing periods, so that a VM which is
+ * waiting for the other uses very little CPU.
+ */
+@OnThread(Tag.Any)
+class SharedMemoryHandoff
+{
+    // Access to ints in the buffer.  The counters (and protocol word) are kept big-endian on
+    // purpose, whatever the platform: the IntBuffer views of the buffer used for the rest of
+    // the data are in native order, so these slots must only ever be accessed through this
+    // class, never through those views (sharedMemory in VMCommsMain/VMCommsSimulation):
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    // How many times to check a counter before starting to yield, and then to park:
+    private static final int SPINS = 200;
+    private static final int YIELDS = 20;
+    // The range of times to park for, between checks of a counter:
+    private static final long MIN_PARK_NANOS = 20_000L;
+    private static final long MAX_PARK_NANOS = 1_000_000L;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Create a handoff for the given shared memory buffer.
+     */
+    SharedMemoryHandoff(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Read the int at the given position (in ints), with acquire semantics.
+     */
+    int getAcquire(int pos)
+    {
+        return (int) INTS.getAcquire(buffer, pos * 4);
+    }
+
+    /**
+     * Write the int at the given position (in ints), with release semantics.
+     */
+    void setRelease(int pos, int value)
+    {
+        INTS.setRelease(buffer, pos * 4, value);
+    }
+
+    /**
+     * Wait until the int at the given position satisfies the given condition, or until
+     * keepWaiting returns false (which is checked between reads).
+     * 
+     * @return the last value read
+     */
+    int await(int pos, IntPredicate done, BooleanSupplier keepWaiting)
+    {
+        long parkNanos = MIN_PARK_NANOS;
+        for (int i = 0; ; i++)
+        {
+            int value = getAcquire(pos);
+            if (done.test(value) || !keepWaiting.getAsBoolean())
+            {
+                return value;
+            }
+            
+            if (i < SPINS)
+            {
+                Thread.onSpinWait();
+            }
+            else if (i < SPINS + YIELDS)
+            {
+                Thread.yield();
+            }
+            else
+            {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -78,11 +79,40 @@ public class VMCommsMain implements Closeable
     // The acquisition order is B-->A, A-->C, and C-->B. This ensures that there can never
     // be deadlock. No process holds all three locks at once and each process always holds at
     // least one lock.
+    //
+    // Each lock operation is a system call, though, and there are several per frame on each
+    // side. So there is a second version of the protocol which uses sequence counters in the
+    // shared memory instead (see SharedMemoryHandoff):
+    //
+    //    Server                          Debug
+    // [command issued/want update]
+    //  (writes A)
+    //     -> increment server counter
+    //                                    (sees server counter change)
+    //                                    (reads A, writes B)
+    //                                    -> set debug counter to server counter
+    //  (sees debug counter match)
+    //  (reads B)
+    //
+    // Each side only touches the other's area after seeing its counter change, and doesn't
+    // touch its own area again until the other side has replied, so the areas are never
+    // read while they are being written.
+    //
+    // The version is negotiated through the (otherwise unused) sync area: the server VM
+    // offers the sequence-counter version by writing PROTOCOL_VERSION_SEQUENCE there, and
+    // the debug VM accepts by negating it. If the debug VM doesn't accept, the locks are used.
 
     public static final int DEFAULT_MAPPED_SIZE = 20_000_000;
     public static final int USER_AREA_OFFSET = 0x1000; // offset in 4-byte chunks; 16KB worth.
     public static final int USER_AREA_OFFSET_BYTES = USER_AREA_OFFSET * 4;
 
+    // Positions (in ints) of the protocol version, and of the counters in the sequence-counter
+    // version of the protocol.  The counters are at the end of the server area, after any commands.
+    public static final int PROTOCOL_POS = 0;
+    public static final int SERVER_COUNTER_POS = USER_AREA_OFFSET - 2;
+    public static final int DEBUG_COUNTER_POS = USER_AREA_OFFSET - 1;
+    public static final int PROTOCOL_VERSION_SEQUENCE = 2;
+
     public static final int SERVER_AREA_OFFSET_BYTES = 4;
     public static final int SERVER_AREA_SIZE_BYTES = USER_AREA_OFFSET_BYTES - SERVER_AREA_OFFSET_BYTES;
     
@@ -94,6 +124,8 @@ public class VMCommsMain implements Closeable
     private FileChannel fc;
     private MappedByteBuffer sharedMemoryByte;
     private IntBuffer sharedMemory;
+    private SharedMemoryHandoff handoff;
+    // The locks held, when using the file-lock version of the protocol (null otherwise):
     private FileLock putLock;
     private FileLock syncLock;
 
@@ -147,9 +179,13 @@ public class VMCommsMain implements Closeable
         shmFile.deleteOnExit();
         fc = new RandomAccessFile(shmFile, "rw").getChannel();
         sharedMemoryByte = fc.map(MapMode.READ_WRITE, 0, fileSize);
-        sharedMemory = sharedMemoryByte.asIntBuffer();
+        // Native byte order, so that the image can be copied in and out in bulk:
+        sharedMemory = sharedMemoryByte.order(ByteOrder.nativeOrder()).asIntBuffer();
+        handoff = new SharedMemoryHandoff(sharedMemoryByte);
+        handoff.setRelease(PROTOCOL_POS, PROTOCOL_VERSION_SEQUENCE);
         
-        // Obtain the put-area lock right from the start:
+        // Obtain the put-area lock right from the start (we use the file-lock protocol until
+        // a debug VM agrees otherwise):
         putLock = fc.lock(SERVER_AREA_OFFSET_BYTES, SERVER_AREA_SIZE_BYTES, false);
         syncLock = fc.lock(SYNC_AREA_OFFSET_BYTES, SYNC_AREA_SIZE_BYTES, false);
         
@@ -235,7 +271,7 @@ public class VMCommsMain implements Closeable
         {
             // sequence, type, extra info:
             int totalLength = pendingCommand.extraInfo.length + 2;
-            if (sharedMemory.position() + totalLength > USER_AREA_OFFSET)
+            if (sharedMemory.position() + totalLength > SERVER_COUNTER_POS)
             {
                 // We can't write all commands in the available buffer:
                 sharedMemory.put(pendingCountPos, numIssued);
@@ -273,7 +309,7 @@ public class VMCommsMain implements Closeable
      * Check for input / send output, and apply received data to the stage.
      */
     @OnThread(Tag.FXPlatform)
-    public synchronized void checkIO(GreenfootStage stage)
+    public void checkIO(GreenfootStage stage)
     {
         if (checkingIO)
         {
@@ -282,50 +318,94 @@ public class VMCommsMain implements Closeable
         
         checkingIO = true;
 
-        // We should only draw if either the world didn't change, or there
-        // was a change, but a world is left.  i.e. don't draw if the world got removed:
-        boolean shouldDraw = !worldChanged || worldPresentAfterChange;
-        if (worldChanged)
+        // We take what we need while synchronized, but pass it to the stage afterwards, so that
+        // the IO thread isn't held up while the stage is updated (in particular, while the
+        // world image is uploaded):
+        boolean changedWorld;
+        boolean worldPresent;
+        IntBuffer image = null;
+        int imageWidth = 0;
+        int imageHeight = 0;
+        int imageSeq = -1;
+        boolean errorCountUpdated;
+        int simulationSpeed;
+        int[] prompt = null;
+        long execStartTime;
+        boolean inDelayLoop;
+        synchronized (this)
         {
-            stage.worldChanged(worldPresentAfterChange);
+            // We should only draw if either the world didn't change, or there
+            // was a change, but a world is left.  i.e. don't draw if the world got removed:
+            boolean shouldDraw = !worldChanged || worldPresentAfterChange;
+            changedWorld = worldChanged;
+            worldPresent = worldPresentAfterChange;
             worldChanged = false;
+            
+            if (haveUpdatedImage && shouldDraw)
+            {
+                // skip: sequence number, last paint sequence, then:
+                image = sharedMemory.asReadOnlyBuffer();
+                image.position(USER_AREA_OFFSET + 2);
+                imageWidth = image.get();
+                imageHeight = image.get();
+                imageSeq = lastPaintSeq;
+                haveUpdatedImage = false;
+            }
+            
+            errorCountUpdated = haveUpdatedErrorCount;
+            haveUpdatedErrorCount = false;
+            simulationSpeed = updatedSimulationSpeed;
+            updatedSimulationSpeed = -1;
+            
+            if (promptCodepoints != null && askId > lastAnswer)
+            {
+                prompt = promptCodepoints;
+                promptCodepoints = null;
+            }
+            
+            execStartTime = lastExecStartTime;
+            inDelayLoop = delayLoop;
         }
         
-        if (haveUpdatedImage && shouldDraw)
+        if (changedWorld)
         {
-            // skip: sequence number, last paint sequence, then:
-            IntBuffer copy = sharedMemory.asReadOnlyBuffer();
-            copy.position(USER_AREA_OFFSET + 2);
-            int width = copy.get();
-            int height = copy.get();
-            stage.receivedWorldImage(width, height, copy);
-            haveUpdatedImage = false;
-            lastConsumedImg = lastPaintSeq;
+            stage.worldChanged(worldPresent);
         }
         
-        if (haveUpdatedErrorCount)
+        if (image != null)
+        {
+            // The debug VM won't overwrite the image until we tell it (below) that we have
+            // consumed it, so it's safe to read it directly from the shared memory:
+            stage.receivedWorldImage(imageWidth, imageHeight, image);
+        }
+        
+        if (errorCountUpdated)
         {
             stage.bringTerminalToFront();
-            haveUpdatedErrorCount = false;
         }
         
-        if (updatedSimulationSpeed != -1)
+        if (simulationSpeed != -1)
         {
-            stage.notifySimulationSpeed(updatedSimulationSpeed);
-            updatedSimulationSpeed = -1;
+            stage.notifySimulationSpeed(simulationSpeed);
         }        
         
-        if (promptCodepoints != null && askId > lastAnswer)
+        if (prompt != null)
         {
-            stage.receivedAsk(promptCodepoints);
-            promptCodepoints = null;
+            stage.receivedAsk(prompt);
         }
 
-        stage.setLastUserExecutionStartTime(lastExecStartTime, delayLoop);
+        stage.setLastUserExecutionStartTime(execStartTime, inDelayLoop);
             
         checkingIO = false;
         
-        notifyAll(); // wake IO thread
+        synchronized (this)
+        {
+            if (image != null)
+            {
+                lastConsumedImg = imageSeq;
+            }
+            notifyAll(); // wake IO thread
+        }
     }
 
     /**
@@ -334,14 +414,51 @@ public class VMCommsMain implements Closeable
      */
     @OnThread(Tag.Worker)
     private boolean checkIO()
+    {
+        if (handoff.getAcquire(PROTOCOL_POS) == -PROTOCOL_VERSION_SEQUENCE)
+        {
+            if (putLock != null)
+            {
+                // The debug VM has agreed to use sequence counters, so we no longer need the locks:
+                releaseLocks();
+            }
+            exchangeBySequence();
+        }
+        else
+        {
+            if (putLock == null)
+            {
+                // A new debug VM, which hasn't agreed to use sequence counters (or not yet):
+                acquireLocks();
+            }
+            exchangeByLocks();
+        }
+        
+        // To avoid consuming close to 100% CPU, we wait on the animation timer:
+        synchronized (this)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                // Nothing needs to be done.
+            }
+            return shmFile != null;
+        }
+    }
+
+    /**
+     * Exchange data with the debug VM, using the file-lock protocol.
+     */
+    @OnThread(Tag.Worker)
+    private void exchangeByLocks()
     {
         FileChannel sharedMemoryLock = this.fc;
 
         // We are holding the lock for the main put area:
-        sharedMemory.position(1);
-        sharedMemory.put(-lastSeq);
-        sharedMemory.put(lastConsumedImg);
-        writeCommands(pendingCommands);
+        writeServerArea();
         
         FileLock fileLock = null;
         
@@ -351,96 +468,7 @@ public class VMCommsMain implements Closeable
             fileLock = sharedMemoryLock.lock(USER_AREA_OFFSET_BYTES, fileSize - USER_AREA_OFFSET_BYTES, false);
             syncLock.release();
 
-            int seq = sharedMemory.get(USER_AREA_OFFSET);
-            if (seq > lastSeq)
-            {
-                // The client VM has painted a new frame for us:
-                lastSeq = seq;
-
-                synchronized (this)
-                {
-                    sharedMemory.position(USER_AREA_OFFSET + 1);
-                    int paintSeq = sharedMemory.get();
-                    int width = sharedMemory.get();
-                    int height = sharedMemory.get();
-                    if (width != 0 && height != 0 && paintSeq != lastPaintSeq)
-                    {
-                        lastPaintSeq = paintSeq;
-                        haveUpdatedImage = true;
-                    }
-                    sharedMemory.position(sharedMemory.position() + width * height);
-    
-                    // Get rid of all commands that the client has confirmed it has seen:
-                    int lastAckCommand = sharedMemory.get();
-                    if (lastAckCommand != -1)
-                    {
-                        for (Iterator<Command> iterator = pendingCommands.iterator(); iterator.hasNext(); )
-                        {
-                            Command pendingCommand = iterator.next();
-                            if (pendingCommand.commandSequence <= lastAckCommand)
-                            {
-                                if(pendingCommand.commandType == COMMAND_SET_SPEED)
-                                {
-                                    setSpeedCommandCount = setSpeedCommandCount - 1;
-                                }
-                                iterator.remove();
-                            }
-                        }
-                    }
-                    
-                    // If there's a new error, show the terminal at the front so that the user sees it: 
-                    int latestStoppedWithErrorCount = sharedMemory.get();
-                    if (latestStoppedWithErrorCount != previousStoppedWithErrorCount)
-                    {
-                        //stage.bringTerminalToFront();
-                        previousStoppedWithErrorCount = latestStoppedWithErrorCount;
-                        haveUpdatedErrorCount = true;
-                    }
-                    
-                    int highTime = sharedMemory.get();
-                    int lowTime = sharedMemory.get();
-                    lastExecStartTime = (((long)highTime) << 32) | ((long)lowTime & 0xFFFFFFFFL);
-    
-                    int simSpeed = sharedMemory.get();
-                    // Only send the new speed value if the pendingCommands does not include setSpeed commands
-                    if (setSpeedCommandCount == 0)
-                    {
-                        updatedSimulationSpeed = simSpeed;
-                    }
-    
-                    int worldCounter = sharedMemory.get();
-                    // If the new counter is different (zero/non-zero change, or incremented),
-                    // store that into our fields:
-                    if (worldCounter != prevWorldCounter)
-                    {
-                        worldChanged = true;
-                        worldPresentAfterChange = worldCounter != 0;
-                        prevWorldCounter = worldCounter;
-                    }
-                    
-                    worldCellSize = sharedMemory.get();
-                    
-                    int askId = sharedMemory.get();
-                    if (askId > 0 && askId > lastAnswer)
-                    {
-                        this.askId = askId;
-                        // Length followed by codepoints for the prompt string:
-                        int askLength = sharedMemory.get();
-                        promptCodepoints = new int[askLength];
-                        sharedMemory.get(promptCodepoints);
-                    }
-
-                    int delayLoopStatus = sharedMemory.get();
-                    if (delayLoopStatus == 1)
-                    {
-                        delayLoop = true;
-                    }
-                    else
-                    {
-                        delayLoop = false;
-                    }
-                }
-            }
+            readDebugArea();
         }
         catch (IOException ex)
         {
@@ -469,20 +497,177 @@ public class VMCommsMain implements Closeable
                 Debug.reportError(ex);
             }
         }
+    }
+
+    /**
+     * Exchange data with the debug VM, using the sequence-counter protocol.
+     */
+    @OnThread(Tag.Worker)
+    private void exchangeBySequence()
+    {
+        writeServerArea();
+        int request = handoff.getAcquire(SERVER_COUNTER_POS) + 1;
+        handoff.setRelease(SERVER_COUNTER_POS, request);
         
-        
-        // To avoid consuming close to 100% CPU, we wait on the animation timer:
-        synchronized (this)
+        // The debug VM replies once it has read our area and written its own (which is very
+        // quick, unless it is suspended).  Stop waiting if the debug VM goes away:
+        int reply = handoff.await(DEBUG_COUNTER_POS, counter -> counter == request,
+                () -> isOpen() && handoff.getAcquire(PROTOCOL_POS) == -PROTOCOL_VERSION_SEQUENCE);
+        if (reply == request)
         {
             try
             {
-                wait();
+                readDebugArea();
             }
-            catch (InterruptedException ie)
+            catch (IllegalArgumentException ex)
             {
-                // Nothing needs to be done.
+                // Happens when world size is too large: as for exchangeByLocks().
+            }
+        }
+    }
+
+    @OnThread(Tag.Worker)
+    private void acquireLocks()
+    {
+        try
+        {
+            putLock = fc.lock(SERVER_AREA_OFFSET_BYTES, SERVER_AREA_SIZE_BYTES, false);
+            syncLock = fc.lock(SYNC_AREA_OFFSET_BYTES, SYNC_AREA_SIZE_BYTES, false);
+        }
+        catch (IOException ex)
+        {
+            Debug.reportError(ex);
+        }
+    }
+
+    @OnThread(Tag.Worker)
+    private void releaseLocks()
+    {
+        try
+        {
+            putLock.release();
+            syncLock.release();
+        }
+        catch (IOException ex)
+        {
+            Debug.reportError(ex);
+        }
+        putLock = null;
+        syncLock = null;
+    }
+
+    private synchronized boolean isOpen()
+    {
+        return shmFile != null;
+    }
+
+    /**
+     * Write our sequence, the last consumed image and any pending commands into the server area.
+     */
+    @OnThread(Tag.Worker)
+    private void writeServerArea()
+    {
+        sharedMemory.position(1);
+        sharedMemory.put(-lastSeq);
+        sharedMemory.put(lastConsumedImg);
+        writeCommands(pendingCommands);
+    }
+
+    /**
+     * Read the debug VM area, if the debug VM has written a new frame.
+     */
+    @OnThread(Tag.Worker)
+    private void readDebugArea()
+    {
+        int seq = sharedMemory.get(USER_AREA_OFFSET);
+        if (seq > lastSeq)
+        {
+            // The client VM has painted a new frame for us:
+            lastSeq = seq;
+
+            synchronized (this)
+            {
+                sharedMemory.position(USER_AREA_OFFSET + 1);
+                int paintSeq = sharedMemory.get();
+                int width = sharedMemory.get();
+                int height = sharedMemory.get();
+                if (width != 0 && height != 0 && paintSeq != lastPaintSeq)
+                {
+                    lastPaintSeq = paintSeq;
+                    haveUpdatedImage = true;
+                }
+                sharedMemory.position(sharedMemory.position() + width * height);
+
+                // Get rid of all commands that the client has confirmed it has seen:
+                int lastAckCommand = sharedMemory.get();
+                if (lastAckCommand != -1)
+                {
+                    for (Iterator<Command> iterator = pendingCommands.iterator(); iterator.hasNext(); )
+                    {
+                        Command pendingCommand = iterator.next();
+                        if (pendingCommand.commandSequence <= lastAckCommand)
+                        {
+                            if(pendingCommand.commandType == COMMAND_SET_SPEED)
+                            {
+                                setSpeedCommandCount = setSpeedCommandCount - 1;
+                            }
+                            iterator.remove();
+                        }
+                    }
+                }
+                
+                // If there's a new error, show the terminal at the front so that the user sees it: 
+                int latestStoppedWithErrorCount = sharedMemory.get();
+                if (latestStoppedWithErrorCount != previousStoppedWithErrorCount)
+                {
+                    //stage.bringTerminalToFront();
+                    previousStoppedWithErrorCount = latestStoppedWithErrorCount;
+                    haveUpdatedErrorCount = true;
+                }
+                
+                int highTime = sharedMemory.get();
+                int lowTime = sharedMemory.get();
+                lastExecStartTime = (((long)highTime) << 32) | ((long)lowTime & 0xFFFFFFFFL);
+
+                int simSpeed = sharedMemory.get();
+                // Only send the new speed value if the pendingCommands does not include setSpeed commands
+                if (setSpeedCommandCount == 0)
+                {
+                    updatedSimulationSpeed = simSpeed;
+                }
+
+                int worldCounter = sharedMemory.get();
+                // If the new counter is different (zero/non-zero change, or incremented),
+                // store that into our fields:
+                if (worldCounter != prevWorldCounter)
+                {
+                    worldChanged = true;
+                    worldPresentAfterChange = worldCounter != 0;
+                    prevWorldCounter = worldCounter;
+                }
+                
+                worldCellSize = sharedMemory.get();
+                
+                int askId = sharedMemory.get();
+                if (askId > 0 && askId > lastAnswer)
+                {
+                    this.askId = askId;
+                    // Length followed by codepoints for the prompt string:
+                    int askLength = sharedMemory.get();
+                    promptCodepoints = new int[askLength];
+                    sharedMemory.get(promptCodepoints);
+                }
+
+                int delayLoopStatus = sharedMemory.get();
+                if (delayLoopStatus == 1)
+                {
+                    delayLoop = true;
+                }
+                else
+                {
+                    delayLoop = false;
+                }
             }
-            return shmFile != null;
         }
     }
     
@@ -634,6 +819,8 @@ public class VMCommsMain implements Closeable
         // Zero the buffer:
         sharedMemoryByte.position(0);
         sharedMemoryByte.put(new byte[fileSize], 0, fileSize);
+        // Offer the sequence-counter protocol to the new debug VM:
+        handoff.setRelease(PROTOCOL_POS, PROTOCOL_VERSION_SEQUENCE);
     }
 
     /**
@@ -40,6 +40,7 @@ import java.awt.image.DataBufferInt;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.BufferOverflowException;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -78,16 +79,18 @@ public class VMCommsSimulation
      * Shared memory documentation (this comment may get moved to somewhere more appropriate later).
      *
      * The shared memory consists of two successive lumps of memory. One is used by the server VM to
-     * transmit data, and the other is used by the debug VM for the same purpose. File locks protect
-     * both regions to prevent (in cases where it matters) either side from reading a potentially
-     * incomplete data frame while the other side is still writing it. The locking protocol is
-     * described in VMCommsMain.
+     * transmit data, and the other is used by the debug VM for the same purpose. Either file locks or
+     * sequence counters protect both regions to prevent (in cases where it matters) either side from
+     * reading a potentially incomplete data frame while the other side is still writing it. The
+     * protocols are described in VMCommsMain.
      * 
-     * Its format is as follows, where each position is an integer position (i.e. bytes times four):
+     * Its format is as follows, where each position is an integer position (i.e. bytes times four).
+     * Integers are in the native byte order, except for the protocol version and counters, which
+     * are big-endian:
      * 
      * Server area (16kb):
-     * Pos 0: Reserved. Currently this region is locked independently; the "real" server area starts
-     *        following this position.
+     * Pos 0: Protocol version (see VMCommsMain.PROTOCOL_POS). Currently this region is also locked
+     *        independently; the "real" server area starts following this position.
      * Pos 1: When the number is negative, it indicates that the server VM has sent back
      *        information to the debug VM to read.  This includes keyboard and mouse events,
      *        as shown below.
@@ -102,6 +105,8 @@ public class VMCommsSimulation
      *        command type, and the amount of other integers depend on the command.  For example,
      *        GreenfootStage.COMMAND_RUN just has the command type integer and no more, whereas
      *        mouse events have four integers.
+     * Last two positions: the server VM and debug VM counters used by the sequence-counter
+     *        protocol (see VMCommsMain.SERVER_COUNTER_POS and DEBUG_COUNTER_POS).
      *
      * Debug VM area (10M - 16kb): [Positions relative to beginning]
      * 
@@ -128,6 +133,11 @@ public class VMCommsSimulation
     private final IntBuffer sharedMemory;
     private int seq = 1;
     private final FileChannel shmFileChannel;
+    private final SharedMemoryHandoff handoff;
+    // Whether we are using the sequence-counter protocol, rather than the file-lock protocol:
+    private final boolean useSequence;
+    // The last server VM counter value that we replied to (sequence-counter protocol only):
+    private int lastRequest = 0;
     private FileLock putLock;
     private long lastPaintNanos = System.nanoTime();
     private int lastAckCommand = -1;
@@ -163,9 +173,21 @@ public class VMCommsSimulation
             shmFileChannel = new RandomAccessFile(shmFilePath, "rw").getChannel();
             this.fileSize = fileSize;
             MappedByteBuffer mbb = shmFileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
-            sharedMemory = mbb.asIntBuffer();
-            putLock = shmFileChannel.lock(VMCommsMain.USER_AREA_OFFSET_BYTES,
-                    fileSize - VMCommsMain.USER_AREA_OFFSET_BYTES, false);
+            sharedMemory = mbb.order(ByteOrder.nativeOrder()).asIntBuffer();
+            handoff = new SharedMemoryHandoff(mbb);
+            
+            // Accept the sequence-counter protocol if the server VM offers it:
+            useSequence = handoff.getAcquire(VMCommsMain.PROTOCOL_POS) == VMCommsMain.PROTOCOL_VERSION_SEQUENCE;
+            if (useSequence)
+            {
+                lastRequest = handoff.getAcquire(VMCommsMain.SERVER_COUNTER_POS);
+                handoff.setRelease(VMCommsMain.PROTOCOL_POS, -VMCommsMain.PROTOCOL_VERSION_SEQUENCE);
+            }
+            else
+            {
+                putLock = shmFileChannel.lock(VMCommsMain.USER_AREA_OFFSET_BYTES,
+                        fileSize - VMCommsMain.USER_AREA_OFFSET_BYTES, false);
+            }
             
             new Thread() {
                 @OnThread(value = Tag.Worker,ignoreParent = true)
@@ -173,7 +195,14 @@ public class VMCommsSimulation
                 {
                     while (true)
                     {
-                        doInterVMComms();
+                        if (useSequence)
+                        {
+                            doInterVMCommsBySequence();
+                        }
+                        else
+                        {
+                            doInterVMComms();
+                        }
                     }
                 }
             }.start();
@@ -284,7 +313,7 @@ public class VMCommsSimulation
     }
     
     /**
-     * Perform communications exchange with the other VM.
+     * Perform communications exchange with the other VM, using the file-lock protocol.
      */
     @OnThread(Tag.Worker)
     private void doInterVMComms()
@@ -301,128 +330,7 @@ public class VMCommsSimulation
             fileLock = shmFileChannel.lock(VMCommsMain.SERVER_AREA_OFFSET_BYTES,
                     VMCommsMain.SERVER_AREA_SIZE_BYTES, false);
 
-            boolean doUpdateImage;
-            World curWorld;
-            int curWorldCounter;
-            synchronized (this)
-            {
-                // Don't send double-buffered image if world has since disappeared:
-                doUpdateImage = updateImage && world != null;
-                curWorld = this.world;
-                curWorldCounter = this.worldCounter;
-            }
-            
-            sharedMemory.position(1);
-            int recvSeq = sharedMemory.get();
-            if (recvSeq < 0 && Simulation.getInstance() != null)
-            {
-                int lastConsumedImg = sharedMemory.get();
-                // Only update the image if the previous one was consumed:
-                doUpdateImage &= (lastConsumedImg >= lastPaintSeq);
-                int latest = readCommands(answer);
-                if (latest != -1)
-                {
-                    lastAckCommand = latest;
-                }
-            }
-            
-            BufferedImage img;
-            synchronized (this)
-            {
-                img = doUpdateImage ? worldImages[drawnWorld] : null;
-                transferringImage = (img != null);
-                if (img != null)
-                {
-                    // We want to clear the updateImage flag nice and early, so that any new image
-                    // generated in the meantime can correctly set it back to true:
-                    updateImage = false;
-                }
-            }
-            
-            int [] raw = (img == null) ? null : ((DataBufferInt) img.getData().getDataBuffer()).getData();
-
-            int imageWidth = 0;
-            int imageHeight = 0;
-            if (img != null)
-            {
-                imageWidth = img.getWidth();
-                imageHeight = img.getHeight();
-            }
-            
-            sharedMemory.position(VMCommsMain.USER_AREA_OFFSET);
-            sharedMemory.put(this.seq++);
-            if (img == null)
-            {
-                sharedMemory.put(lastPaintSeq);
-                sharedMemory.get(); // skip width
-                sharedMemory.get(); // skip height
-                sharedMemory.position(sharedMemory.position() + lastPaintSize);
-            }
-            else
-            {
-                lastPaintSeq = (seq - 1);
-                sharedMemory.put(lastPaintSeq);
-                sharedMemory.put(imageWidth);
-                sharedMemory.put(imageHeight);
-                for (int i = 0; i < raw.length; i++)
-                {
-                    sharedMemory.put(raw[i]);
-                }
-                lastPaintSize = raw.length;
-                paintScheduled = false;
-                synchronized (this)
-                {
-                    transferringImage = false;
-                    // If another world image has been painted in the meantime, make sure that
-                    // drawnWorld indexes the correct image in the array (updateImage will have
-                    // been set true in paintRemote()):
-                    if (updateImage)
-                    {
-                        drawnWorld = 1 - drawnWorld;
-                    }
-                }
-            }
-            sharedMemory.put(lastAckCommand);
-            sharedMemory.put(stoppedWithErrorCount);
-            sharedMemory.put((int)(startOfCurExecution >> 32));
-            sharedMemory.put((int)(startOfCurExecution & 0xFFFFFFFFL));
-            if (Simulation.getInstance() != null)
-            {
-                sharedMemory.put(Simulation.getInstance().getSpeed());
-            }
-            else
-            {
-                sharedMemory.put(0);
-            }
-            sharedMemory.put(curWorld == null ? 0 : curWorldCounter);
-            sharedMemory.put(curWorld == null ? 0 : WorldVisitor.getCellSize(curWorld));
-            
-            // If not asking, put -1
-            synchronized (this)
-            {
-                if (pAskPrompt == null || answer[0] != null)
-                {
-                    sharedMemory.put(-1);
-                }
-                else
-                {
-                    // Asking, so put the ask ID, and the prompt string:
-                    int[] codepoints = pAskPrompt.codePoints().toArray();
-                    sharedMemory.put(pAskId);
-                    sharedMemory.put(codepoints.length);
-                    sharedMemory.put(codepoints);
-                }
-            }
-
-            // Write the status of the delay loop
-            if (delayLoopEntered == true)
-            {
-                sharedMemory.put(1);
-            }
-            else
-            {
-                sharedMemory.put(0);
-            }
+            exchangeFrame(answer);
 
             putLock.release();
 
@@ -459,11 +367,7 @@ public class VMCommsSimulation
                 }
             }
             catch (Exception e) {}
-            // Note: the user will see this message in the terminal, so it should be helpful:
-            Debug.message("World size is too large.  If your world contains more than around 2.5 million pixels you will need to do the following.\n"
-                + "Close your project, then edit project.greenfoot in a text editor to add the following line:\n"
-                + "shm.size=40000000\n"
-                + "(The default is 20000000, keep increasing if needed.)  Save the file and re-open the project in Greenfoot.");
+            reportWorldTooLarge();
         }
             
         if (answer[0] != null)
@@ -471,6 +375,180 @@ public class VMCommsSimulation
             gotAskAnswer(answer[0]);
         }
     }
+
+    /**
+     * Perform communications exchange with the other VM, using the sequence-counter protocol.
+     */
+    @OnThread(Tag.Worker)
+    private void doInterVMCommsBySequence()
+    {
+        // Wait for the server VM to ask for a frame:
+        int request = handoff.await(VMCommsMain.SERVER_COUNTER_POS, counter -> counter != lastRequest, () -> true);
+        lastRequest = request;
+        
+        // One element array to allow a reference to be set by readCommands:
+        String[] answer = new String[] {null};
+        try
+        {
+            exchangeFrame(answer);
+        }
+        catch (BufferOverflowException ex)
+        {
+            reportWorldTooLarge();
+        }
+        
+        // Always reply, so that the server VM doesn't wait for us:
+        handoff.setRelease(VMCommsMain.DEBUG_COUNTER_POS, request);
+        
+        if (answer[0] != null)
+        {
+            gotAskAnswer(answer[0]);
+        }
+    }
+    
+    /**
+     * Read the commands from the server area, and write a frame into our area.  The caller
+     * must make sure that the server VM is not accessing the areas meanwhile.
+     * 
+     * @param answer A one-element array in which to store an ask-answer, if received
+     */
+    @OnThread(Tag.Worker)
+    private void exchangeFrame(String[] answer)
+    {
+        boolean doUpdateImage;
+        World curWorld;
+        int curWorldCounter;
+        synchronized (this)
+        {
+            // Don't send double-buffered image if world has since disappeared:
+            doUpdateImage = updateImage && world != null;
+            curWorld = this.world;
+            curWorldCounter = this.worldCounter;
+        }
+        
+        sharedMemory.position(1);
+        int recvSeq = sharedMemory.get();
+        if (recvSeq < 0 && Simulation.getInstance() != null)
+        {
+            int lastConsumedImg = sharedMemory.get();
+            // Only update the image if the previous one was consumed:
+            doUpdateImage &= (lastConsumedImg >= lastPaintSeq);
+            int latest = readCommands(answer);
+            if (latest != -1)
+            {
+                lastAckCommand = latest;
+            }
+        }
+        
+        BufferedImage img;
+        synchronized (this)
+        {
+            img = doUpdateImage ? worldImages[drawnWorld] : null;
+            transferringImage = (img != null);
+            if (img != null)
+            {
+                // We want to clear the updateImage flag nice and early, so that any new image
+                // generated in the meantime can correctly set it back to true:
+                updateImage = false;
+            }
+        }
+        
+        // The image won't be drawn into while it is being transferred, so we can copy from its
+        // own buffer (rather than a copy of it, as getData() would give):
+        int [] raw = (img == null) ? null : ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+        int imageWidth = 0;
+        int imageHeight = 0;
+        if (img != null)
+        {
+            imageWidth = img.getWidth();
+            imageHeight = img.getHeight();
+        }
+        
+        sharedMemory.position(VMCommsMain.USER_AREA_OFFSET);
+        sharedMemory.put(this.seq++);
+        if (img == null)
+        {
+            sharedMemory.put(lastPaintSeq);
+            sharedMemory.get(); // skip width
+            sharedMemory.get(); // skip height
+            sharedMemory.position(sharedMemory.position() + lastPaintSize);
+        }
+        else
+        {
+            lastPaintSeq = (seq - 1);
+            sharedMemory.put(lastPaintSeq);
+            sharedMemory.put(imageWidth);
+            sharedMemory.put(imageHeight);
+            sharedMemory.put(raw);
+            lastPaintSize = raw.length;
+            paintScheduled = false;
+            synchronized (this)
+            {
+                transferringImage = false;
+                // If another world image has been painted in the meantime, make sure that
+                // drawnWorld indexes the correct image in the array (updateImage will have
+                // been set true in paintRemote()):
+                if (updateImage)
+                {
+                    drawnWorld = 1 - drawnWorld;
+                }
+            }
+        }
+        sharedMemory.put(lastAckCommand);
+        sharedMemory.put(stoppedWithErrorCount);
+        sharedMemory.put((int)(startOfCurExecution >> 32));
+        sharedMemory.put((int)(startOfCurExecution & 0xFFFFFFFFL));
+        if (Simulation.getInstance() != null)
+        {
+            sharedMemory.put(Simulation.getInstance().getSpeed());
+        }
+        else
+        {
+            sharedMemory.put(0);
+        }
+        sharedMemory.put(curWorld == null ? 0 : curWorldCounter);
+        sharedMemory.put(curWorld == null ? 0 : WorldVisitor.getCellSize(curWorld));
+        
+        // If not asking, put -1
+        synchronized (this)
+        {
+            if (pAskPrompt == null || answer[0] != null)
+            {
+                sharedMemory.put(-1);
+            }
+            else
+            {
+                // Asking, so put the ask ID, and the prompt string:
+                int[] codepoints = pAskPrompt.codePoints().toArray();
+                sharedMemory.put(pAskId);
+                sharedMemory.put(codepoints.length);
+                sharedMemory.put(codepoints);
+            }
+        }
+
+        // Write the status of the delay loop
+        if (delayLoopEntered == true)
+        {
+            sharedMemory.put(1);
+        }
+        else
+        {
+            sharedMemory.put(0);
+        }
+    }
+
+    /**
+     * Report (in the terminal) that the world image won't fit in the shared memory.
+     */
+    private void reportWorldTooLarge()
+    {
+        // Note: the user will see this message in the terminal, so it should be helpful:
+        Debug.message("World size is too large.  If your world contains more than around 2.5 million pixels you will need to do the following.\n"
+            + "Close your project, then edit project.greenfoot in a text editor to add the following line:\n"
+            + "shm.size=40000000\n"
+            + "(The default is 20000000, keep increasing if needed.)  Save the file and re-open the project in Greenfoot.");
+    }
     
     /**
      * An "ask" answer has been received from the other VM; record it and signal the simulation
@@ -0,0 +1,132 @@
+/*
+ This file is part of the Greenfoot program.
+ Copyright (C) 2019  Poul Henriksen and Michael Kolling
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package greenfoot.collision;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the pixel masks used in pixel-level collision checking.
+ */
+public class CollisionMaskTest extends TestCase
+{
+    /**
+     * Make an image which is transparent except for the given rectangle.
+     */
+    private static BufferedImage makeImage(int width, int height, int x, int y, int w, int h)
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int i = x; i < x + w; i++) {
+            for (int j = y; j < y + h; j++) {
+                image.setRGB(i, j, 0xff000000);
+            }
+        }
+        return image;
+    }
+
+    public void testTransparentPadding()
+    {
+        // 10x10 images, opaque only in their top-left 2x2 corner:
+        BufferedImage image = makeImage(10, 10, 0, 0, 2, 2);
+        CollisionMask mask = CollisionMask.create(image, 0, 1, false);
+        CollisionMask solid = CollisionMask.create(image, 0, 1, true);
+
+        // Bounding boxes overlap, but the corners don't:
+        assertFalse(mask.intersects(0, 0, mask, 5, 5));
+        assertTrue(solid.intersects(0, 0, solid, 5, 5));
+        assertTrue(mask.intersects(0, 0, solid, -5, -5));
+        // Now the corners overlap:
+        assertTrue(mask.intersects(0, 0, mask, 1, 1));
+        assertFalse(mask.intersects(0, 0, mask, 2, 0));
+
+        // With a cell size of one, the image is drawn from 5 pixels left of the centre:
+        assertTrue(mask.contains(-5, -5));
+        assertTrue(mask.contains(-4, -4));
+        assertFalse(mask.contains(-3, -5));
+        assertFalse(mask.contains(0, 0));
+        assertTrue(solid.contains(4, 4));
+        assertFalse(solid.contains(5, 4));
+    }
+
+    public void testRotation()
+    {
+        // A horizontal line, which becomes vertical when rotated by 90 degrees:
+        BufferedImage image = makeImage(21, 1, 0, 0, 21, 1);
+        CollisionMask mask = CollisionMask.create(image, 90, 2, false);
+        assertTrue(mask.contains(0, -9));
+        assertTrue(mask.contains(0, 9));
+        assertFalse(mask.contains(9, 0));
+        assertFalse(mask.contains(-9, 0));
+
+        // At 45 degrees, a (thicker) line runs diagonally:
+        image = makeImage(21, 3, 0, 0, 21, 3);
+        mask = CollisionMask.create(image, 45, 2, false);
+        assertTrue(mask.contains(5, 5));
+        assertTrue(mask.contains(-5, -5));
+        assertFalse(mask.contains(5, -5));
+    }
+
+    public void testIntersectsMatchesPixels()
+    {
+        // Compare intersection to a pixel-by-pixel check, with masks wide enough to
+        // span several words:
+        Random random = new Random(1);
+        for (int n = 0; n < 300; n++) {
+            BufferedImage imageA = randomImage(random);
+            BufferedImage imageB = randomImage(random);
+            int cellSize = 1 + random.nextInt(4);
+            CollisionMask a = CollisionMask.create(imageA, random.nextInt(360), cellSize, false);
+            CollisionMask b = CollisionMask.create(imageB, random.nextInt(4) * 90, cellSize, random.nextBoolean());
+            int bx = random.nextInt(200) - 100;
+            int by = random.nextInt(200) - 100;
+
+            boolean expected = false;
+            for (int x = -150; x <= 150 && !expected; x++) {
+                for (int y = -150; y <= 150 && !expected; y++) {
+                    expected = a.contains(x, y) && b.contains(x - bx, y - by);
+                }
+            }
+            assertEquals(expected, a.intersects(0, 0, b, bx, by));
+            assertEquals(expected, b.intersects(bx, by, a, 0, 0));
+        }
+    }
+
+    private static BufferedImage randomImage(Random random)
+    {
+        int width = 1 + random.nextInt(150);
+        int height = 1 + random.nextInt(60);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        // A few small opaque blobs, so that overlaps are neither certain nor impossible:
+        for (int i = 0; i < 3; i++) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            for (int j = x; j < Math.min(width, x + 3); j++) {
+                for (int k = y; k < Math.min(height, y + 3); k++) {
+                    image.setRGB(j, k, 0x80ffffff);
+                }
+            }
+        }
+        return image;
+    }
+}
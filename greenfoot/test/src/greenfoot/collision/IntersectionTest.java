@@ -208,4 +208,36 @@ public class IntersectionTest extends TestCase
         o2.setLocation(100, 100);
         assertNull(o2.getOneIntersectingObjectP(TestObject.class));
     }
+    
+    /**
+     * Tests that pixel-level collision applies to unrotated actors, so that transparent
+     * padding around their images does not count as touching.
+     */
+    public void testPixelCollisionUnrotated()
+    {
+        world = WorldCreator.createWorld(100, 100, 1);
+        TestObject o1 = new TestObject(20,20);
+        TestObject o2 = new TestObject(20,20);
+        // Only the central 10x10 pixels of each image are opaque:
+        o1.getImage().fillRect(5, 5, 10, 10);
+        o2.getImage().fillRect(5, 5, 10, 10);
+        world.addObject(o1, 30, 30);
+        world.addObject(o2, 45, 30);
+        
+        // The bounding rectangles overlap:
+        assertTrue(o1.intersectsP(o2));
+        assertTrue(o1.isTouchingP(TestObject.class));
+        
+        world.setPixelCollision(TestObject.class);
+        assertFalse(o1.intersectsP(o2));
+        assertFalse(o2.intersectsP(o1));
+        assertFalse(o1.isTouchingP(TestObject.class));
+        assertTrue(o1.getIntersectingObjectsP(TestObject.class).isEmpty());
+        
+        // Move so that the opaque pixels overlap:
+        o2.setLocation(38, 30);
+        assertTrue(o1.intersectsP(o2));
+        assertTrue(o1.isTouchingP(TestObject.class));
+        assertEquals(o2, o1.getOneIntersectingObjectP(TestObject.class));
+    }
 }
@@ -0,0 +1,262 @@
+/*
+ This file is part of the Greenfoot program. 
+ Copyright (C) 2019  Poul Henriksen and Michael Kolling 
+ 
+ This program is free software; you can redistribute it and/or 
+ modify it under the terms of the GNU General Public License 
+ as published by the Free Software Foundation; either version 2 
+ of the License, or (at your option) any later version. 
+ 
+ This program is distributed in the hope that it will be useful, 
+ but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ GNU General Public License for more details. 
+ 
+ You should have received a copy of the GNU General Public License 
+ along with this program; if not, write to the Free Software 
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. 
+ 
+ This file is subject to the Classpath exception as provided in the  
+ LICENSE.txt file that accompanied this code.
+ */
+package greenfoot.vmcomm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+
+/**
+ * Measures the frame rate and CPU use of the two versions of the inter-VM protocol (file
+ * locks, and sequence counters; see VMCommsMain), with a second process playing the part
+ * of the debug VM.  Each frame, the "server" writes a few commands and the "debug VM" writes
+ * an image and some status, using the same areas of the shared memory as Greenfoot does.
+ * 
+ * Run with no arguments; the same class path is used for the second process.
+ */
+public class SharedMemoryBenchmark
+{
+    private static final int FILE_SIZE = VMCommsMain.DEFAULT_MAPPED_SIZE;
+    private static final long RUN_NANOS = 2_000_000_000L;
+    // The interval between frames when paced, as for the server VM's animation timer:
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    // Commands sent in server area position 3:
+    private static final int CMD_NONE = 0;
+    private static final int CMD_START_TIMING = 1;
+    private static final int CMD_STOP = 2;
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length > 0)
+        {
+            runDebugSide(new File(args[0]), args[1].equals("sequence"), Integer.parseInt(args[2]));
+            return;
+        }
+
+        for (int imageSize : new int[] {0, 600 * 400})
+        {
+            for (boolean paced : new boolean[] {false, true})
+            {
+                for (boolean sequence : new boolean[] {false, true})
+                {
+                    runServerSide(sequence, paced, imageSize);
+                }
+            }
+        }
+    }
+
+    private static void runServerSide(boolean sequence, boolean paced, int imageSize) throws Exception
+    {
+        File file = File.createTempFile("greenfoot", "shmbench");
+        file.deleteOnExit();
+        try (FileChannel fc = new RandomAccessFile(file, "rw").getChannel())
+        {
+            MappedByteBuffer mbb = fc.map(MapMode.READ_WRITE, 0, FILE_SIZE);
+            IntBuffer shm = mbb.order(ByteOrder.nativeOrder()).asIntBuffer();
+            SharedMemoryHandoff handoff = new SharedMemoryHandoff(mbb);
+            
+            FileLock putLock = null;
+            FileLock syncLock = null;
+            if (!sequence)
+            {
+                putLock = fc.lock(VMCommsMain.SERVER_AREA_OFFSET_BYTES, VMCommsMain.SERVER_AREA_SIZE_BYTES, false);
+                syncLock = fc.lock(VMCommsMain.SYNC_AREA_OFFSET_BYTES, VMCommsMain.SYNC_AREA_SIZE_BYTES, false);
+            }
+
+            Process debug = new ProcessBuilder(System.getProperty("java.home") + "/bin/java",
+                    "-cp", System.getProperty("java.class.path"), SharedMemoryBenchmark.class.getName(),
+                    file.getAbsolutePath(), sequence ? "sequence" : "locks", Integer.toString(imageSize))
+                    .redirectErrorStream(true).start();
+            BufferedReader debugOut = new BufferedReader(new InputStreamReader(debug.getInputStream()));
+            // Wait until the debug side has set itself up:
+            debugOut.readLine();
+
+            int request = 0;
+            int frames = 0;
+            long startCpu = 0;
+            long start = 0;
+            long warmupEnd = System.nanoTime() + RUN_NANOS / 2;
+            long nextFrame = System.nanoTime();
+            int command = CMD_NONE;
+            while (command != CMD_STOP)
+            {
+                long now = System.nanoTime();
+                if (start == 0 && now > warmupEnd)
+                {
+                    command = CMD_START_TIMING;
+                    start = now;
+                    startCpu = getProcessCpuTime();
+                }
+                else if (start != 0 && now - start > RUN_NANOS)
+                {
+                    command = CMD_STOP;
+                }
+                
+                if (paced)
+                {
+                    while (System.nanoTime() < nextFrame)
+                    {
+                        Thread.sleep(1);
+                    }
+                    nextFrame += FRAME_NANOS;
+                }
+
+                // Some commands, as if for mouse movement:
+                shm.position(1);
+                shm.put(-request);
+                shm.put(request);
+                shm.put(command);
+                for (int i = 0; i < 5; i++)
+                {
+                    shm.put(i);
+                }
+
+                if (sequence)
+                {
+                    request += 1;
+                    int r = request;
+                    handoff.setRelease(VMCommsMain.SERVER_COUNTER_POS, r);
+                    handoff.await(VMCommsMain.DEBUG_COUNTER_POS, counter -> counter == r, () -> true);
+                    readFrame(shm);
+                }
+                else
+                {
+                    request += 1;
+                    putLock.release();
+                    FileLock fileLock = fc.lock(VMCommsMain.USER_AREA_OFFSET_BYTES, FILE_SIZE - VMCommsMain.USER_AREA_OFFSET_BYTES, false);
+                    syncLock.release();
+                    readFrame(shm);
+                    putLock = fc.lock(VMCommsMain.SERVER_AREA_OFFSET_BYTES, VMCommsMain.SERVER_AREA_SIZE_BYTES, false);
+                    fileLock.release();
+                    syncLock = fc.lock(VMCommsMain.SYNC_AREA_OFFSET_BYTES, VMCommsMain.SYNC_AREA_SIZE_BYTES, false);
+                }
+                if (start != 0)
+                {
+                    frames++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            long serverCpu = getProcessCpuTime() - startCpu;
+            long debugCpu = Long.parseLong(debugOut.readLine());
+            debug.waitFor();
+
+            System.out.printf("%-9s %-8s image %7d ints: %8.0f frames/s, CPU %5.1f%% server, %5.1f%% debug%n",
+                    sequence ? "sequence" : "locks", paced ? "paced" : "unpaced", imageSize,
+                    frames * 1e9 / elapsed, serverCpu * 100.0 / elapsed, debugCpu * 100.0 / elapsed);
+        }
+        file.delete();
+    }
+
+    private static void runDebugSide(File file, boolean sequence, int imageSize) throws IOException
+    {
+        try (FileChannel fc = new RandomAccessFile(file, "rw").getChannel())
+        {
+            MappedByteBuffer mbb = fc.map(MapMode.READ_WRITE, 0, FILE_SIZE);
+            IntBuffer shm = mbb.order(ByteOrder.nativeOrder()).asIntBuffer();
+            SharedMemoryHandoff handoff = new SharedMemoryHandoff(mbb);
+            FileLock putLock = sequence ? null : fc.lock(VMCommsMain.USER_AREA_OFFSET_BYTES,
+                    FILE_SIZE - VMCommsMain.USER_AREA_OFFSET_BYTES, false);
+            System.out.println("ready");
+            System.out.flush();
+
+            int[] image = new int[imageSize];
+            int lastRequest = 0;
+            int seq = 1;
+            long startCpu = 0;
+            while (true)
+            {
+                FileLock fileLock = null;
+                int request = 0;
+                if (sequence)
+                {
+                    int last = lastRequest;
+                    request = handoff.await(VMCommsMain.SERVER_COUNTER_POS, counter -> counter != last, () -> true);
+                    lastRequest = request;
+                }
+                else
+                {
+                    fileLock = fc.lock(VMCommsMain.SERVER_AREA_OFFSET_BYTES, VMCommsMain.SERVER_AREA_SIZE_BYTES, false);
+                }
+
+                int command = shm.get(3);
+                if (command == CMD_START_TIMING && startCpu == 0)
+                {
+                    startCpu = getProcessCpuTime();
+                }
+
+                // Write a frame, much as VMCommsSimulation does:
+                shm.position(VMCommsMain.USER_AREA_OFFSET);
+                shm.put(seq++);
+                shm.put(seq);
+                shm.put(imageSize);
+                shm.put(1);
+                shm.put(image);
+                for (int i = 0; i < 10; i++)
+                {
+                    shm.put(i);
+                }
+
+                if (sequence)
+                {
+                    handoff.setRelease(VMCommsMain.DEBUG_COUNTER_POS, request);
+                }
+                else
+                {
+                    putLock.release();
+                    FileLock syncLock = fc.lock(VMCommsMain.SYNC_AREA_OFFSET_BYTES, VMCommsMain.SYNC_AREA_SIZE_BYTES, false);
+                    fileLock.release();
+                    putLock = fc.lock(VMCommsMain.USER_AREA_OFFSET_BYTES, FILE_SIZE - VMCommsMain.USER_AREA_OFFSET_BYTES, false);
+                    syncLock.release();
+                }
+
+                if (command == CMD_STOP)
+                {
+                    System.out.println(getProcessCpuTime() - startCpu);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void readFrame(IntBuffer shm)
+    {
+        shm.position(VMCommsMain.USER_AREA_OFFSET + 2);
+        int width = shm.get();
+        int height = shm.get();
+        shm.position(shm.position() + width * height + 10);
+    }
+
+    private static long getProcessCpuTime()
+    {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}